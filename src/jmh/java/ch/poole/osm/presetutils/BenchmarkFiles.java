@@ -0,0 +1,34 @@
+package ch.poole.osm.presetutils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Locate input files for the benchmarks
+ */
+final class BenchmarkFiles {
+
+    static final String DIR_PROPERTY = "presetutils.benchmark.dir";
+
+    /**
+     * Private constructor
+     */
+    private BenchmarkFiles() {
+        // empty
+    }
+
+    /**
+     * Get the path for a benchmark input file
+     *
+     * @param name the file name
+     * @return the Path
+     */
+    static Path get(String name) {
+        Path path = Paths.get(System.getProperty(DIR_PROPERTY, "build/tmp"), name);
+        if (!Files.exists(path)) {
+            throw new IllegalStateException(path.toAbsolutePath() + " not found, set " + DIR_PROPERTY + " to the directory containing the input files");
+        }
+        return path;
+    }
+}
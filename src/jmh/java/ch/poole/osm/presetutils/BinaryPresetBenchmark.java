@@ -0,0 +1,116 @@
+package ch.poole.osm.presetutils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Compare loading the XML preset with loading the compiled binary version
+ *
+ * The heap retained by each representation is printed during setup
+ *
+ * @author Simon Poole
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BinaryPresetBenchmark {
+
+    @Param({ "master_preset.xml" })
+    String file;
+
+    Path xml;
+    Path compiled;
+
+    @Setup
+    public void setup() throws ParserConfigurationException, SAXException, IOException {
+        xml = BenchmarkFiles.get(file);
+        compiled = Files.createTempFile("preset", ".bin");
+        try (InputStream is = Files.newInputStream(xml); OutputStream os = Files.newOutputStream(compiled)) {
+            PresetCompiler.compile(PresetParser.parse(is, file), os);
+        }
+        long before = usedHeap();
+        Preset preset = saxModel();
+        long model = usedHeap() - before;
+        before = usedHeap();
+        BinaryPreset binary = BinaryPreset.load(compiled);
+        binary.getItemCount();
+        long mapped = usedHeap() - before;
+        System.out.printf("%n%s: model retains approx. %d bytes, compiled %d bytes on disk and %d bytes heap%n", file, model, Files.size(compiled), // NOSONAR
+                mapped);
+        // keep both reachable until measured
+        System.out.println(preset.getElementCount() + binary.getElementCount()); // NOSONAR
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(compiled);
+    }
+
+    /**
+     * Get the used heap after garbage collection
+     *
+     * @return the used heap in bytes
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc(); // NOSONAR
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Benchmark
+    public Preset saxModel() throws ParserConfigurationException, SAXException, IOException {
+        try (InputStream is = Files.newInputStream(xml)) {
+            return PresetParser.parse(is, file);
+        }
+    }
+
+    @Benchmark
+    public void saxReplay() throws ParserConfigurationException, SAXException, IOException {
+        try (InputStream is = Files.newInputStream(xml)) {
+            PresetParser.newSAXParser().parse(is, new DefaultHandler());
+        }
+    }
+
+    @Benchmark
+    public int binaryLoad() throws IOException {
+        BinaryPreset binary = BinaryPreset.load(compiled);
+        return binary.getItemCount() + binary.getChunk("name");
+    }
+
+    @Benchmark
+    public void binaryReplay() throws IOException, SAXException {
+        BinaryPreset.load(compiled).replay(new DefaultHandler());
+    }
+
+    @Benchmark
+    public Preset binaryModel() throws IOException {
+        return BinaryPreset.load(compiled).toPreset();
+    }
+}
@@ -0,0 +1,98 @@
+package ch.poole.osm.presetutils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compare the Gson and the UTF-8 JsonInput implementations on the iD schema and NSI files
+ *
+ * The files are expected in build/tmp, or in the directory set with the presetutils.benchmark.dir system property
+ *
+ * @author Simon Poole
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JsonInputBenchmark {
+
+    @Param({ "presets.json", "fields.json", "name-suggestions.min.json" })
+    String file;
+
+    @Param({ "GSON", "UTF8" })
+    JsonInputFactory.Kind kind;
+
+    Path path;
+
+    @Setup
+    public void setup() {
+        path = BenchmarkFiles.get(file);
+    }
+
+    @Benchmark
+    public void read(Blackhole bh) throws IOException {
+        try (JsonInput input = JsonInputFactory.open(kind, path)) {
+            walk(input, bh);
+        }
+    }
+
+    /**
+     * Read every token of the input
+     *
+     * @param input the JsonInput
+     * @param bh Blackhole for the values
+     * @throws IOException if reading fails
+     */
+    static void walk(JsonInput input, Blackhole bh) throws IOException {
+        int depth = 0;
+        do {
+            switch (input.peek()) {
+            case BEGIN_OBJECT:
+                input.beginObject();
+                depth++;
+                break;
+            case END_OBJECT:
+                input.endObject();
+                depth--;
+                break;
+            case BEGIN_ARRAY:
+                input.beginArray();
+                depth++;
+                break;
+            case END_ARRAY:
+                input.endArray();
+                depth--;
+                break;
+            case NAME:
+                bh.consume(input.nextName());
+                break;
+            case BOOLEAN:
+                bh.consume(input.nextBoolean());
+                break;
+            case NULL:
+                input.skipValue();
+                break;
+            default:
+                bh.consume(input.nextString());
+            }
+        } while (depth > 0);
+    }
+}
+
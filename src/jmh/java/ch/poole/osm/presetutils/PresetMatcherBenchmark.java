@@ -0,0 +1,127 @@
+package ch.poole.osm.presetutils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xml.sax.SAXException;
+
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Match the tag sets from the name suggestion index against a preset
+ *
+ * Results are per tag set
+ *
+ * @author Simon Poole
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PresetMatcherBenchmark {
+
+    private static final int    TAG_SETS    = 10000;
+    private static final String TAGS_FIELD  = "tags";
+
+    @Param({ "master_preset.xml" })
+    String file;
+
+    @Param({ "name-suggestions.min.json" })
+    String nsi;
+
+    PresetMatcher             matcher;
+    List<Map<String, String>> tagSets = new ArrayList<>();
+
+    @Setup
+    public void setup() throws ParserConfigurationException, SAXException, IOException {
+        try (InputStream is = Files.newInputStream(BenchmarkFiles.get(file))) {
+            matcher = new PresetMatcher(PresetParser.parse(is, file));
+        }
+        List<Map<String, String>> all = new ArrayList<>();
+        try (JsonInput input = JsonInputFactory.open(BenchmarkFiles.get(nsi))) {
+            collectTags(input, all);
+        }
+        // use a fixed number of tag sets spread over the whole file so that results are comparable
+        for (int i = 0; i < TAG_SETS && !all.isEmpty(); i++) {
+            tagSets.add(all.get((int) ((long) i * all.size() / TAG_SETS)));
+        }
+    }
+
+    /**
+     * Collect the contents of every tags object in the input
+     *
+     * @param input the JsonInput
+     * @param result list to add the tag maps to
+     * @throws IOException if reading fails
+     */
+    private static void collectTags(JsonInput input, List<Map<String, String>> result) throws IOException {
+        switch (input.peek()) {
+        case BEGIN_OBJECT:
+            input.beginObject();
+            while (input.hasNext()) {
+                if (TAGS_FIELD.equals(input.nextName()) && input.peek() == JsonToken.BEGIN_OBJECT) {
+                    Map<String, String> tags = new HashMap<>();
+                    input.beginObject();
+                    while (input.hasNext()) {
+                        tags.put(input.nextName(), input.nextString());
+                    }
+                    input.endObject();
+                    result.add(tags);
+                } else {
+                    collectTags(input, result);
+                }
+            }
+            input.endObject();
+            break;
+        case BEGIN_ARRAY:
+            input.beginArray();
+            while (input.hasNext()) {
+                collectTags(input, result);
+            }
+            input.endArray();
+            break;
+        default:
+            input.skipValue();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TAG_SETS)
+    public void match(Blackhole bh) {
+        for (Map<String, String> tags : tagSets) {
+            bh.consume(matcher.match(tags, null, null));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TAG_SETS)
+    public void matchGeometryRegion(Blackhole bh) {
+        for (Map<String, String> tags : tagSets) {
+            bh.consume(matcher.match(tags, PresetMatcher.Geometry.NODE, "DE"));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package ch.poole.osm.presetutils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Compare plain SAX parsing with building the preset model, and replaying the model
+ *
+ * The retained heap per item is printed during setup, run with -prof gc for allocation rates
+ *
+ * @author Simon Poole
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PresetModelBenchmark {
+
+    @Param({ "master_preset.xml" })
+    String file;
+
+    Path   path;
+    Preset preset;
+
+    @Setup
+    public void setup() throws ParserConfigurationException, SAXException, IOException {
+        path = BenchmarkFiles.get(file);
+        Runtime runtime = Runtime.getRuntime();
+        long before = usedHeap(runtime);
+        preset = parseModel();
+        long after = usedHeap(runtime);
+        System.out.printf("%n%s: %d items %d elements, retained approx. %d bytes, %d bytes per item%n", file, preset.getItems().size(), // NOSONAR
+                preset.getElementCount(), after - before, (after - before) / Math.max(1, preset.getItems().size()));
+        StringPool pool = new StringPool();
+        try (InputStream is = Files.newInputStream(path)) {
+            PresetParser.parse(is, file, pool);
+        }
+        System.out.printf("%s: string pool %s%n", file, pool); // NOSONAR
+    }
+
+    /**
+     * Get the used heap after garbage collection
+     *
+     * @param runtime the Runtime
+     * @return the used heap in bytes
+     */
+    private static long usedHeap(Runtime runtime) {
+        for (int i = 0; i < 3; i++) {
+            System.gc(); // NOSONAR
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Parse the file in to the model
+     *
+     * @return the Preset
+     */
+    private Preset parseModel() throws ParserConfigurationException, SAXException, IOException {
+        try (InputStream is = Files.newInputStream(path)) {
+            return PresetParser.parse(is, file);
+        }
+    }
+
+    @Benchmark
+    public void sax() throws ParserConfigurationException, SAXException, IOException {
+        try (InputStream is = Files.newInputStream(path)) {
+            PresetParser.newSAXParser().parse(is, new DefaultHandler());
+        }
+    }
+
+    @Benchmark
+    public Preset model() throws ParserConfigurationException, SAXException, IOException {
+        return parseModel();
+    }
+
+    @Benchmark
+    public void replay(Blackhole bh) throws SAXException {
+        preset.replay(new DefaultHandler());
+        bh.consume(preset);
+    }
+}
@@ -0,0 +1,74 @@
+package ch.poole.osm.presetutils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+/**
+ * Compare the SAX and StAX backends of PresetParser, building the full model and skipping what ListIcons doesn't need
+ *
+ * @author Simon Poole
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PresetParserBenchmark {
+
+    @Param({ "master_preset.xml" })
+    String file;
+
+    @Param({ "SAX", "STAX" })
+    PresetParser.Backend backend;
+
+    Path path;
+
+    @Setup
+    public void setup() throws IOException {
+        path = BenchmarkFiles.get(file);
+    }
+
+    /**
+     * Parse the file
+     *
+     * @param skip the element types to skip
+     * @return the Preset
+     */
+    private Preset parse(Set<ElementType> skip) throws ParserConfigurationException, SAXException, IOException {
+        try (InputStream is = Files.newInputStream(path)) {
+            return PresetParser.parse(backend, is, file, new StringPool(), skip);
+        }
+    }
+
+    @Benchmark
+    public Preset full() throws ParserConfigurationException, SAXException, IOException {
+        return parse(EnumSet.noneOf(ElementType.class));
+    }
+
+    @Benchmark
+    public Preset skipFields() throws ParserConfigurationException, SAXException, IOException {
+        return parse(ListIcons.SKIP);
+    }
+}
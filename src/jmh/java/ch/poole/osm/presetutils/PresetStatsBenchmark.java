@@ -0,0 +1,87 @@
+package ch.poole.osm.presetutils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+/**
+ * Measure PresetStats on a synthetic preset with very large combos that are expanded in to one entry per value, each
+ * followed by a number of fields and chunk references
+ *
+ * @author Simon Poole
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PresetStatsBenchmark {
+
+    private static final int ITEMS  = 200;
+    private static final int FIELDS = 30;
+
+    @Param({ "100", "1000" })
+    int values;
+
+    Preset preset;
+
+    @Setup
+    public void setup() throws ParserConfigurationException, SAXException, IOException {
+        preset = PresetParser.parse(new ByteArrayInputStream(synthetic(ITEMS, values, FIELDS).getBytes(StandardCharsets.UTF_8)), "synthetic.xml");
+    }
+
+    /**
+     * Generate a preset where every item has a second level combo that PresetStats expands
+     *
+     * @param items number of items
+     * @param values number of values per combo
+     * @param fields number of fields following the combo
+     * @return the preset
+     */
+    static String synthetic(int items, int values, int fields) {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<presets><chunk id=\"address\"><text key=\"addr:street\"/><text key=\"addr:housenumber\"/></chunk><group name=\"Food\">");
+        for (int i = 0; i < items; i++) {
+            xml.append("<item name=\"Restaurant ").append(i).append("\"><key key=\"amenity\" value=\"restaurant\"/><combo key=\"cuisine\" values=\"");
+            for (int v = 0; v < values; v++) {
+                xml.append(v > 0 ? "," : "").append("cuisine_").append(i).append('_').append(v);
+            }
+            xml.append("\"/>");
+            for (int f = 0; f < fields; f++) {
+                if (f % 3 == 0) {
+                    xml.append("<reference ref=\"address\"/>");
+                } else {
+                    xml.append(f % 3 == 1 ? "<text key=\"" : "<check key=\"").append("field_").append(f).append("\"/>");
+                }
+            }
+            xml.append("</item>");
+        }
+        xml.append("</group></presets>");
+        return xml.toString();
+    }
+
+    @Benchmark
+    public PresetStats stats() throws SAXException {
+        PresetStats stats = new PresetStats();
+        stats.process(false, false, preset);
+        return stats;
+    }
+}
@@ -0,0 +1,70 @@
+package ch.poole.osm.presetutils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+/**
+ * Measure building the tag index and running queries against it
+ *
+ * @author Simon Poole
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TagIndexBenchmark {
+
+    @Param({ "master_preset.xml" })
+    String file;
+
+    Preset   preset;
+    TagIndex index;
+
+    @Setup
+    public void setup() throws ParserConfigurationException, SAXException, IOException {
+        try (InputStream is = Files.newInputStream(BenchmarkFiles.get(file))) {
+            preset = PresetParser.parse(is, file);
+        }
+        index = new TagIndex(preset);
+    }
+
+    @Benchmark
+    public TagIndex build() {
+        return new TagIndex(preset);
+    }
+
+    @Benchmark
+    public int[] and() {
+        return index.and("amenity=restaurant", "cuisine=pizza");
+    }
+
+    @Benchmark
+    public int[] or() {
+        return index.or("shop=bakery", "shop=supermarket", "shop=convenience");
+    }
+
+    @Benchmark
+    public int[] query() {
+        return index.query("amenity=restaurant & cuisine=pizza | amenity=fast_food & cuisine=pizza");
+    }
+}
@@ -0,0 +1,68 @@
+package ch.poole.osm.presetutils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measure the processing in TagsFromTaginfo without network access by replaying recorded taginfo responses
+ *
+ * The recording is expected as taginfo_recording.txt in build/tmp, or in the directory set with the
+ * presetutils.benchmark.dir system property, it can be created with TagsFromTaginfo -r
+ *
+ * @author Simon Poole
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TagsFromTaginfoBenchmark {
+
+    TaginfoRecording recording;
+    PrintStream      out;
+
+    @Setup
+    public void setup() throws IOException {
+        recording = TaginfoRecording.read(BenchmarkFiles.get("taginfo_recording.txt"));
+        // TagsFromTaginfo reports discarded keys on standard out
+        out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                // discard
+            }
+        }));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(out);
+    }
+
+    @Benchmark
+    public StringWriter dumpTags() {
+        TagsFromTaginfo t = new TagsFromTaginfo();
+        t.source = recording;
+        StringWriter result = new StringWriter();
+        t.dumpTags(new PrintWriter(result), 0, true);
+        return result;
+    }
+}
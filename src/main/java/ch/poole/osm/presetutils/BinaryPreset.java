@@ -0,0 +1,415 @@
+package ch.poole.osm.presetutils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Read only access to a preset compiled with {@link PresetCompiler}
+ *
+ * Files are memory mapped and nothing is decoded up front, elements are addressed by their index in document order (0
+ * is the root element) and strings are decoded on first access. {@link #toPreset()} materializes the full model.
+ *
+ * @author Simon Poole
+ *
+ */
+public class BinaryPreset {
+
+    static final int   MAGIC       = 0x50525354; // PRST
+    static final short VERSION     = 1;
+    static final int   HEADER_SIZE = 64;
+
+    private static final int    ELEMENT_SIZE = 32;
+    private static final String CDATA        = "CDATA";
+
+    private final ByteBuffer buffer;
+    private final String[]   strings;
+    private final int        sourceIndex;
+    private final int        stringOffsetsOffset;
+    private final int        stringDataOffset;
+    private final int        elementCount;
+    private final int        elementsOffset;
+    private final int        attrOffset;
+    private final int        childOffset;
+    private final int        chunkCount;
+    private final int        chunkOffset;
+    private final int        itemCount;
+    private final int        itemOffset;
+    private final int        groupCount;
+    private final int        groupOffset;
+
+    private Map<String, Integer> chunks;
+
+    /**
+     * Construct a new instance
+     *
+     * @param buffer a ByteBuffer containing the compiled preset
+     * @throws IOException if the contents are not a compiled preset in a supported version
+     */
+    public BinaryPreset(@NotNull ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a compiled preset");
+        }
+        short version = buffer.getShort(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported compiled preset version " + version);
+        }
+        int pos = 8;
+        sourceIndex = buffer.getInt(pos);
+        strings = new String[buffer.getInt(pos += 4)];
+        stringOffsetsOffset = buffer.getInt(pos += 4);
+        stringDataOffset = buffer.getInt(pos += 4);
+        elementCount = buffer.getInt(pos += 4);
+        elementsOffset = buffer.getInt(pos += 4);
+        attrOffset = buffer.getInt(pos += 4);
+        childOffset = buffer.getInt(pos += 4);
+        chunkCount = buffer.getInt(pos += 4);
+        chunkOffset = buffer.getInt(pos += 4);
+        itemCount = buffer.getInt(pos += 4);
+        itemOffset = buffer.getInt(pos += 4);
+        groupCount = buffer.getInt(pos += 4);
+        groupOffset = buffer.getInt(pos + 4);
+    }
+
+    /**
+     * Memory map and open a compiled preset
+     *
+     * @param path the Path of the file
+     * @return a BinaryPreset
+     * @throws IOException if the file can't be read or is not a compiled preset
+     */
+    @NotNull
+    public static BinaryPreset load(@NotNull Path path) throws IOException {
+        return new BinaryPreset(JsonInputFactory.map(path));
+    }
+
+    /**
+     * Check if a file is a compiled preset
+     *
+     * @param path the Path of the file
+     * @return true if the file starts with the magic number
+     * @throws IOException if the file can't be read
+     */
+    public static boolean isCompiled(@NotNull Path path) throws IOException {
+        try (InputStream is = Files.newInputStream(path)) {
+            byte[] magic = new byte[4];
+            return is.read(magic) == 4 && ByteBuffer.wrap(magic).getInt() == MAGIC;
+        }
+    }
+
+    /**
+     * Get a String from the string table, decoding it if necessary
+     *
+     * @param index the index in the string table
+     * @return the String
+     */
+    @NotNull
+    String getString(int index) {
+        String s = strings[index];
+        if (s == null) {
+            int start = buffer.getInt(stringOffsetsOffset + index * 4);
+            int end = buffer.getInt(stringOffsetsOffset + (index + 1) * 4);
+            byte[] bytes = new byte[end - start];
+            ByteBuffer view = buffer.duplicate();
+            view.position(stringDataOffset + start);
+            view.get(bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+            strings[index] = s;
+        }
+        return s;
+    }
+
+    /**
+     * Read an int field of an element record
+     *
+     * @param element the element index
+     * @param field the field number
+     * @return the value
+     */
+    private int field(int element, int field) {
+        return buffer.getInt(elementsOffset + element * ELEMENT_SIZE + field * 4);
+    }
+
+    /**
+     * @return the name of the source the preset was compiled from
+     */
+    @NotNull
+    public String getSource() {
+        return getString(sourceIndex);
+    }
+
+    /**
+     * @return the total number of elements
+     */
+    public int getElementCount() {
+        return elementCount;
+    }
+
+    /**
+     * @param element the element index
+     * @return the element name
+     */
+    @NotNull
+    public String getName(int element) {
+        return getString(field(element, 0));
+    }
+
+    /**
+     * @param element the element index
+     * @return the ElementType
+     */
+    @NotNull
+    public ElementType getType(int element) {
+        return ElementType.fromName(getName(element));
+    }
+
+    /**
+     * @param element the element index
+     * @return the line the element starts on in the source
+     */
+    public int getLine(int element) {
+        return field(element, 1);
+    }
+
+    /**
+     * @param element the element index
+     * @return the line the element ends on in the source
+     */
+    public int getEndLine(int element) {
+        return field(element, 2);
+    }
+
+    /**
+     * @param element the element index
+     * @return the number of attributes
+     */
+    public int getAttributeCount(int element) {
+        return field(element, 4);
+    }
+
+    /**
+     * @param element the element index
+     * @param index the attribute index
+     * @return the attribute name
+     */
+    @NotNull
+    public String getAttributeName(int element, int index) {
+        return getString(buffer.getInt(attrOffset + (field(element, 3) + index) * 8));
+    }
+
+    /**
+     * @param element the element index
+     * @param index the attribute index
+     * @return the attribute value
+     */
+    @NotNull
+    public String getAttributeValue(int element, int index) {
+        return getString(buffer.getInt(attrOffset + (field(element, 3) + index) * 8 + 4));
+    }
+
+    /**
+     * Get the value of an attribute
+     *
+     * @param element the element index
+     * @param name the attribute name
+     * @return the value or null if not present
+     */
+    @Nullable
+    public String getAttribute(int element, @NotNull String name) {
+        int count = getAttributeCount(element);
+        for (int i = 0; i < count; i++) {
+            if (name.equals(getAttributeName(element, i))) {
+                return getAttributeValue(element, i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param element the element index
+     * @return the number of children
+     */
+    public int getChildCount(int element) {
+        return field(element, 6);
+    }
+
+    /**
+     * @param element the element index
+     * @param index the child index
+     * @return the element index of the child
+     */
+    public int getChild(int element, int index) {
+        return buffer.getInt(childOffset + (field(element, 5) + index) * 4);
+    }
+
+    /**
+     * Get the chunk a reference element refers to
+     *
+     * @param element the element index
+     * @return the element index of the chunk or -1 if this is not a resolved reference
+     */
+    public int getReferencedChunk(int element) {
+        return field(element, 7);
+    }
+
+    /**
+     * Get a chunk by id
+     *
+     * @param id the chunk id
+     * @return the element index of the chunk or -1 if not found
+     */
+    public int getChunk(@NotNull String id) {
+        if (chunks == null) {
+            Map<String, Integer> temp = new HashMap<>();
+            for (int i = 0; i < chunkCount; i++) {
+                temp.put(getString(buffer.getInt(chunkOffset + i * 8)), buffer.getInt(chunkOffset + i * 8 + 4));
+            }
+            chunks = temp;
+        }
+        Integer chunk = chunks.get(id);
+        return chunk != null ? chunk : -1;
+    }
+
+    /**
+     * @return the number of chunks
+     */
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * @return the number of items
+     */
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * @param index the item number in document order
+     * @return the element index of the item
+     */
+    public int getItem(int index) {
+        return buffer.getInt(itemOffset + index * 4);
+    }
+
+    /**
+     * @return the number of groups
+     */
+    public int getGroupCount() {
+        return groupCount;
+    }
+
+    /**
+     * @param index the group number in document order
+     * @return the element index of the group
+     */
+    public int getGroup(int index) {
+        return buffer.getInt(groupOffset + index * 4);
+    }
+
+    /**
+     * Build the full in memory model
+     *
+     * @return a Preset
+     */
+    @NotNull
+    public Preset toPreset() {
+        return new Preset(getSource(), toElement(0));
+    }
+
+    /**
+     * Build an element and its children
+     *
+     * @param element the element index
+     * @return a Preset.Element
+     */
+    @NotNull
+    private Preset.Element toElement(int element) {
+        int attrCount = getAttributeCount(element);
+        String[] attributes = new String[attrCount * 2];
+        for (int i = 0; i < attrCount; i++) {
+            attributes[i * 2] = getAttributeName(element, i);
+            attributes[i * 2 + 1] = getAttributeValue(element, i);
+        }
+        int childCount = getChildCount(element);
+        Preset.Element[] children = new Preset.Element[childCount];
+        for (int i = 0; i < childCount; i++) {
+            children[i] = toElement(getChild(element, i));
+        }
+        return new Preset.Element(getName(element), attributes, children, getLine(element), getEndLine(element));
+    }
+
+    /**
+     * Replay the preset as SAX events without building the model, the Locator reports the original line numbers
+     *
+     * @param handler the ContentHandler
+     * @throws SAXException if the handler throws
+     */
+    public void replay(@NotNull ContentHandler handler) throws SAXException {
+        final int[] line = new int[1];
+        final String source = getSource();
+        handler.setDocumentLocator(new Locator() {
+            @Override
+            public String getPublicId() {
+                return null;
+            }
+
+            @Override
+            public String getSystemId() {
+                return source;
+            }
+
+            @Override
+            public int getLineNumber() {
+                return line[0];
+            }
+
+            @Override
+            public int getColumnNumber() {
+                return -1;
+            }
+        });
+        handler.startDocument();
+        replay(handler, 0, new AttributesImpl(), line);
+        handler.endDocument();
+    }
+
+    /**
+     * Replay an element and its children
+     *
+     * @param handler the ContentHandler
+     * @param element the element index
+     * @param attr re-usable Attributes
+     * @param line holder for the current line
+     * @throws SAXException if the handler throws
+     */
+    private void replay(@NotNull ContentHandler handler, int element, @NotNull AttributesImpl attr, @NotNull int[] line) throws SAXException {
+        attr.clear();
+        int attrCount = getAttributeCount(element);
+        for (int i = 0; i < attrCount; i++) {
+            attr.addAttribute("", "", getAttributeName(element, i), CDATA, getAttributeValue(element, i));
+        }
+        String name = getName(element);
+        line[0] = getLine(element);
+        handler.startElement("", "", name, attr);
+        int childCount = getChildCount(element);
+        for (int i = 0; i < childCount; i++) {
+            replay(handler, getChild(element, i), attr, line);
+        }
+        line[0] = getEndLine(element);
+        handler.endElement("", "", name);
+    }
+}
@@ -48,8 +48,6 @@ import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -70,7 +68,7 @@ import org.xml.sax.helpers.DefaultHandler;
  * Check performed
  * 
  * - ensure that display_values attributes are consistent with the values - check that chunks are defined before they
- * are referenced
+ * are referenced - check that chunk references don't form cycles
  * 
  * Licence Apache 2.0
  * 
@@ -92,9 +90,56 @@ public class CheckPreset {
     boolean     error      = false;
 
     void parseXML(@NotNull final InputStream input) throws ParserConfigurationException, SAXException, IOException {
-        SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
+        process(PresetParser.parse(input, inputFilename));
+    }
+
+    /**
+     * Run the checks on an already parsed preset
+     * 
+     * @param preset the Preset
+     * @throws SAXException if the checks fail fatally
+     */
+    void process(@NotNull Preset preset) throws SAXException {
+        preset.replay(getHandler());
+        checkChunkCycles(new ChunkExpander(preset));
+    }
 
-        saxParser.parse(input, new DefaultHandler() {
+    /**
+     * Run the checks on a set of presets, messages refer to the individual files, chunk cycles are checked on the merged
+     * preset
+     * 
+     * @param presets the PresetSet
+     * @throws SAXException if the checks fail fatally
+     */
+    void process(@NotNull PresetSet presets) throws SAXException {
+        for (Preset preset : presets.getPresets()) {
+            inputFilename = preset.getSource();
+            preset.replay(getHandler());
+        }
+        checkChunkCycles(new ChunkExpander(presets.merge()));
+    }
+
+    /**
+     * Expand all chunk references and report cycles
+     * 
+     * @param expander the ChunkExpander for the preset
+     */
+    void checkChunkCycles(@NotNull ChunkExpander expander) {
+        expander.expandAll();
+        for (List<String> cycle : expander.getCycles()) {
+            LOGGER.log(Level.SEVERE, "chunk reference cycle {0}", String.join(" -> ", cycle) + " -> " + cycle.get(0));
+            error = true;
+        }
+    }
+
+    /**
+     * Get the handler that performs the checks
+     * 
+     * @return a DefaultHandler
+     */
+    @NotNull
+    DefaultHandler getHandler() {
+        return new DefaultHandler() {
 
             private Locator locator;
 
@@ -231,7 +276,7 @@ public class CheckPreset {
                 }
             }
 
-        });
+        };
     }
 
     private void setInputFilename(String fn) {
@@ -251,11 +296,12 @@ public class CheckPreset {
 
         // defaults
         InputStream is = System.in;
+        String[] inputs = null;
         CheckPreset p = new CheckPreset();
         p.setInputFilename("stdin");
 
         // arguments
-        Option inputFile = Option.builder("i").longOpt(INPUT_OPTION).hasArg().desc("input preset file, default: standard in").build();
+        Option inputFile = Option.builder("i").longOpt(INPUT_OPTION).hasArgs().desc("input preset files or directories, default: standard in").build();
 
         Options options = new Options();
 
@@ -267,9 +313,12 @@ public class CheckPreset {
                 // parse the command line arguments
                 CommandLine line = parser.parse(options, args);
                 if (line.hasOption(INPUT_OPTION)) {
-                    String input = line.getOptionValue(INPUT_OPTION);
-                    p.setInputFilename(input);
-                    is = new FileInputStream(input);
+                    inputs = line.getOptionValues(INPUT_OPTION);
+                    if (PresetSet.isSingleFile(inputs)) {
+                        p.setInputFilename(inputs[0]);
+                        is = new FileInputStream(inputs[0]);
+                        inputs = null;
+                    }
                 }
             } catch (ParseException exp) {
                 HelpFormatter formatter = new HelpFormatter();
@@ -281,7 +330,11 @@ public class CheckPreset {
             }
 
             try {
-                p.parseXML(is);
+                if (inputs != null) {
+                    p.process(PresetSet.parse(inputs));
+                } else {
+                    p.parseXML(is);
+                }
             } catch (ParserConfigurationException | SAXException | IOException e) {
                 e.printStackTrace();
             }
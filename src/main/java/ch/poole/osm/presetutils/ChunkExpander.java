@@ -0,0 +1,257 @@
+package ch.poole.osm.presetutils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Resolve chunk references in a {@link Preset}
+ *
+ * The contents of every chunk are expanded only once and then shared by all reference sites, as the model is immutable
+ * this is safe. Elements that don't contain references, directly or indirectly, are returned unchanged. References
+ * to chunks that don't exist and references that would create a cycle are left in place and recorded.
+ *
+ * @author Simon Poole
+ *
+ */
+public class ChunkExpander {
+
+    private static final Preset.Element[] NO_CHILDREN = new Preset.Element[0];
+
+    private final Preset                              preset;
+    private final Map<String, Preset.Element[]>       expandedChunks   = new HashMap<>();
+    private final Map<Preset.Element, Preset.Element> expandedElements = new IdentityHashMap<>();
+    private final Deque<String>                       inProgress       = new ArrayDeque<>();
+    private final List<Preset.Element>                unresolved       = new ArrayList<>();
+    private final List<List<String>>                  cycles           = new ArrayList<>();
+
+    /**
+     * Construct a new expander for a preset
+     *
+     * @param preset the Preset
+     */
+    public ChunkExpander(@NotNull Preset preset) {
+        this.preset = preset;
+    }
+
+    /**
+     * Get the expanded contents of a chunk
+     *
+     * @param id the chunk id
+     * @return the expanded child elements of the chunk or null if the chunk doesn't exist, if the chunk is part of a cycle
+     *         the reference that closes the cycle is left in place
+     */
+    @Nullable
+    public List<Preset.Element> expandChunk(@NotNull String id) {
+        Preset.Element[] children = chunkContents(id);
+        return children != null ? Collections.unmodifiableList(Arrays.asList(children)) : null;
+    }
+
+    /**
+     * Get an element with all references, including nested ones, replaced by the contents of the chunks
+     *
+     * @param element the element to expand, typically an item
+     * @return the expanded element, the original if there was nothing to expand
+     */
+    @NotNull
+    public Preset.Element expand(@NotNull Preset.Element element) {
+        Preset.Element expanded = expandedElements.get(element);
+        if (expanded == null) {
+            Preset.Element[] children = expandChildren(element);
+            expanded = children == null ? element
+                    : new Preset.Element(element.getName(), attributes(element), children, element.getLine(), element.getEndLine());
+            expandedElements.put(element, expanded);
+        }
+        return expanded;
+    }
+
+    /**
+     * Get the fields of an element, including those in chunks and optional sections, in document order
+     *
+     * @param element the element, typically an item
+     * @return a list of fields
+     */
+    @NotNull
+    public List<Preset.Element> getFields(@NotNull Preset.Element element) {
+        List<Preset.Element> result = new ArrayList<>();
+        collectFields(expand(element), result);
+        return result;
+    }
+
+    /**
+     * Expand all items and chunks, this is useful to find all unresolved references and cycles
+     */
+    public void expandAll() {
+        for (String id : preset.getChunks().keySet()) {
+            chunkContents(id);
+        }
+        for (Preset.Element item : preset.getItems()) {
+            expand(item);
+        }
+    }
+
+    /**
+     * @return the reference elements that couldn't be resolved because the chunk doesn't exist
+     */
+    @NotNull
+    public List<Preset.Element> getUnresolved() {
+        return Collections.unmodifiableList(unresolved);
+    }
+
+    /**
+     * @return the cycles found, each as the list of chunk ids involved
+     */
+    @NotNull
+    public List<List<String>> getCycles() {
+        return Collections.unmodifiableList(cycles);
+    }
+
+    /**
+     * Recursively collect fields
+     *
+     * @param element the current element
+     * @param result list to add the fields to
+     */
+    private static void collectFields(@NotNull Preset.Element element, @NotNull List<Preset.Element> result) {
+        for (int i = 0; i < element.getChildCount(); i++) {
+            Preset.Element child = element.getChild(i);
+            if (child.getType().isField()) {
+                result.add(child);
+            } else {
+                collectFields(child, result);
+            }
+        }
+    }
+
+    /**
+     * Get the expanded contents of a chunk, expanding them if necessary
+     *
+     * @param id the chunk id
+     * @return the expanded children or null if the chunk doesn't exist or is already being expanded, that is the
+     *         reference closes a cycle
+     */
+    @Nullable
+    private Preset.Element[] chunkContents(@NotNull String id) {
+        Preset.Element[] contents = expandedChunks.get(id);
+        if (contents != null) {
+            return contents;
+        }
+        Preset.Element chunk = preset.getChunk(id);
+        if (chunk == null) {
+            return null;
+        }
+        if (inProgress.contains(id)) {
+            List<String> cycle = new ArrayList<>();
+            for (String c : inProgress) {
+                cycle.add(0, c);
+                if (c.equals(id)) {
+                    break;
+                }
+            }
+            cycles.add(cycle);
+            return null;
+        }
+        inProgress.push(id);
+        try {
+            contents = expandChildren(chunk);
+            if (contents == null) {
+                contents = children(chunk);
+            }
+            expandedChunks.put(id, contents);
+            return contents;
+        } finally {
+            inProgress.pop();
+        }
+    }
+
+    /**
+     * Expand the children of an element
+     *
+     * @param element the element
+     * @return the new children or null if nothing changed
+     */
+    @Nullable
+    private Preset.Element[] expandChildren(@NotNull Preset.Element element) {
+        List<Preset.Element> result = null;
+        for (int i = 0; i < element.getChildCount(); i++) {
+            Preset.Element child = element.getChild(i);
+            Preset.Element[] replacement = null;
+            if (child.getType() == ElementType.REFERENCE) {
+                replacement = resolve(child);
+            } else if (child.getChildCount() > 0) {
+                Preset.Element expanded = expand(child);
+                if (expanded != child) {
+                    replacement = new Preset.Element[] { expanded };
+                }
+            }
+            if (replacement != null && result == null) {
+                result = new ArrayList<>();
+                for (int j = 0; j < i; j++) {
+                    result.add(element.getChild(j));
+                }
+            }
+            if (replacement != null) {
+                Collections.addAll(result, replacement);
+            } else if (result != null) {
+                result.add(child);
+            }
+        }
+        return result != null ? result.toArray(NO_CHILDREN) : null;
+    }
+
+    /**
+     * Resolve a reference
+     *
+     * @param reference the reference element
+     * @return the expanded chunk contents or null if the reference can't be resolved
+     */
+    @Nullable
+    private Preset.Element[] resolve(@NotNull Preset.Element reference) {
+        String ref = reference.getAttribute(PresetConstants.REF);
+        if (ref == null || preset.getChunk(ref) == null) {
+            unresolved.add(reference);
+            return null;
+        }
+        return chunkContents(ref);
+    }
+
+    /**
+     * Get the children of an element as an array
+     *
+     * @param element the element
+     * @return an array of the children
+     */
+    @NotNull
+    private static Preset.Element[] children(@NotNull Preset.Element element) {
+        Preset.Element[] result = new Preset.Element[element.getChildCount()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = element.getChild(i);
+        }
+        return result;
+    }
+
+    /**
+     * Get the attributes of an element in the form the Element constructor expects
+     *
+     * @param element the element
+     * @return alternating attribute names and values
+     */
+    @NotNull
+    private static String[] attributes(@NotNull Preset.Element element) {
+        String[] result = new String[element.getAttributeCount() * 2];
+        for (int i = 0; i < element.getAttributeCount(); i++) {
+            result[i * 2] = element.getAttributeName(i);
+            result[i * 2 + 1] = element.getAttributeValue(i);
+        }
+        return result;
+    }
+}
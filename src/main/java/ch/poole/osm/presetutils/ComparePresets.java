@@ -4,12 +4,11 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.nio.charset.MalformedInputException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -19,10 +18,13 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Compare the output of PresetStats for two presets
  * 
+ * The tags of both presets are loaded in to tries with one level per hierarchy step, the coverage for all depths and
+ * for the subtrees of each top level key is determined in one pass over the tries.
  * 
  * Licence Apache 2.0
  * 
@@ -35,6 +37,182 @@ public class ComparePresets {
     private static final String REFERENCE = "reference";
     private static final String INPUT     = "input";
     private static final String DEPTH     = "depth";
+    private static final String ALL       = "all";
+    private static final String SUBTREES  = "subtrees";
+
+    private static final String HIERARCHY_SEPARATOR = "/";
+    private static final String TOTAL               = "*";
+
+    /**
+     * A trie of tags with one level per hierarchy step
+     */
+    static final class Trie {
+
+        /**
+         * A node in the trie
+         */
+        static final class Node {
+            Map<String, Node> children = null;
+            boolean           terminal = false;
+
+            /**
+             * Get a child, creating it if it doesn't exist
+             * 
+             * @param step the hierarchy step
+             * @return the child Node
+             */
+            @NotNull
+            Node child(@NotNull String step) {
+                if (children == null) {
+                    children = new HashMap<>();
+                }
+                Node child = children.get(step);
+                if (child == null) {
+                    child = new Node();
+                    children.put(step, child);
+                }
+                return child;
+            }
+
+            /**
+             * Get a child
+             * 
+             * @param step the hierarchy step
+             * @return the child Node or null
+             */
+            @Nullable
+            Node get(@NotNull String step) {
+                return children == null ? null : children.get(step);
+            }
+        }
+
+        final Node root   = new Node();
+        int        height = 0;
+
+        /**
+         * Add a tag
+         * 
+         * @param tag the tag in the format h0 / h1 / h2 ....
+         */
+        void add(@NotNull String tag) {
+            String[] steps = tag.split(HIERARCHY_SEPARATOR);
+            Node node = root;
+            for (String step : steps) {
+                node = node.child(step.trim());
+            }
+            node.terminal = true;
+            height = Math.max(height, steps.length);
+        }
+
+        /**
+         * Create a trie from the tags in a TagStats instance
+         * 
+         * @param stats the TagStats
+         * @return a Trie
+         */
+        @NotNull
+        static Trie of(@NotNull TagStats stats) {
+            Trie trie = new Trie();
+            for (int i = 0; i < stats.size(); i++) {
+                trie.add(stats.getTag(i));
+            }
+            return trie;
+        }
+    }
+
+    /**
+     * Coverage counts for all depths
+     * 
+     * For each level the nodes at that level and the nodes that end a tag at that level are counted, the number of
+     * distinct tags truncated to a depth is the number of nodes at that level plus the tags that end at a lower level.
+     */
+    static final class Coverage {
+        final int[] referenceLevel;
+        final int[] referenceEnd;
+        final int[] inputLevel;
+        final int[] inputEnd;
+        final int[] bothLevel;
+        final int[] bothEnd;
+
+        /**
+         * Construct a new instance
+         * 
+         * @param height the maximum number of levels
+         */
+        Coverage(int height) {
+            referenceLevel = new int[height + 1];
+            referenceEnd = new int[height + 1];
+            inputLevel = new int[height + 1];
+            inputEnd = new int[height + 1];
+            bothLevel = new int[height + 1];
+            bothEnd = new int[height + 1];
+        }
+
+        /**
+         * Add the counts of another instance
+         * 
+         * @param other the other Coverage
+         */
+        void add(@NotNull Coverage other) {
+            for (int i = 0; i < referenceLevel.length; i++) {
+                referenceLevel[i] += other.referenceLevel[i];
+                referenceEnd[i] += other.referenceEnd[i];
+                inputLevel[i] += other.inputLevel[i];
+                inputEnd[i] += other.inputEnd[i];
+                bothLevel[i] += other.bothLevel[i];
+                bothEnd[i] += other.bothEnd[i];
+            }
+        }
+
+        /**
+         * @return the maximum depth
+         */
+        int height() {
+            return referenceLevel.length - 1;
+        }
+
+        /**
+         * @param depth the number of hierarchies, 0 = all
+         * @return the number of distinct reference tags
+         */
+        int reference(int depth) {
+            return count(referenceLevel, referenceEnd, depth);
+        }
+
+        /**
+         * @param depth the number of hierarchies, 0 = all
+         * @return the number of distinct input tags
+         */
+        int input(int depth) {
+            return count(inputLevel, inputEnd, depth);
+        }
+
+        /**
+         * @param depth the number of hierarchies, 0 = all
+         * @return the number of distinct input tags that are in the reference
+         */
+        int both(int depth) {
+            return count(bothLevel, bothEnd, depth);
+        }
+
+        /**
+         * Get the number of distinct tags truncated to depth
+         * 
+         * @param level the nodes per level
+         * @param end the tags ending per level
+         * @param depth the number of hierarchies, 0 = all
+         * @return the count
+         */
+        private int count(@NotNull int[] level, @NotNull int[] end, int depth) {
+            int height = height();
+            int d = depth == 0 || depth > height ? height + 1 : depth;
+            int count = d <= height ? level[d] : 0;
+            for (int i = 1; i < d; i++) {
+                count += end[i];
+            }
+            return count;
+        }
+    }
 
     public static void main(String[] args) {
         // defaults
@@ -43,6 +221,8 @@ public class ComparePresets {
         String input = null;
         String reference = null;
         int depth = 0;
+        boolean all = false;
+        boolean subtrees = false;
         try {
             os = new OutputStreamWriter(System.out, "UTF-8");
 
@@ -53,11 +233,17 @@ public class ComparePresets {
             
             Option depthOpt = Option.builder("d").longOpt(DEPTH).hasArg().desc("number of hierarchy steps to consider, 0 = all and is the default").build();
 
+            Option allOpt = Option.builder("a").longOpt(ALL).desc("output the coverage for all depths").build();
+
+            Option subtreesOpt = Option.builder("s").longOpt(SUBTREES).desc("output the coverage for each top level key at the selected depth").build();
+
             Options options = new Options();
 
             options.addOption(inputFile);
             options.addOption(referenceFile);
             options.addOption(depthOpt);
+            options.addOption(allOpt);
+            options.addOption(subtreesOpt);
 
             CommandLineParser parser = new DefaultParser();
             try {
@@ -77,53 +263,36 @@ public class ComparePresets {
                         throw new ParseException(e.getMessage());
                     }
                 }
+                all = line.hasOption(ALL);
+                subtrees = line.hasOption(SUBTREES);
             } catch (ParseException exp) {
                 HelpFormatter formatter = new HelpFormatter();
                 formatter.printHelp("ComparePresets", options);
                 return;
             }
 
-            List<String> referenceList = null;
-            List<String> inputList = null;
+            TagStats referenceStats = null;
+            TagStats inputStats = null;
             try {
-                referenceList = Files.readAllLines(Paths.get(reference), StandardCharsets.UTF_8);
+                referenceStats = TagStats.read(Paths.get(reference));
             } catch (MalformedInputException mie) {
                 System.out.println("Exception reading " + input);
             }
             try {
-                inputList = Files.readAllLines(Paths.get(input), StandardCharsets.UTF_8);
+                inputStats = TagStats.read(Paths.get(input));
             } catch (MalformedInputException mie) {
                 System.out.println("Exception reading " + input);
             }
 
-            Set<String> referenceTags = new HashSet<>();
-            for (String line : referenceList) {
-                String[] v = line.split(",");
-                referenceTags.add(truncHierarchy(depth,v[0]));
+            pw = new PrintWriter(os);
+            Map<String, Coverage> coverage = coverage(Trie.of(referenceStats), Trie.of(inputStats));
+            print(coverage.get(TOTAL), depth, pw);
+            if (all) {
+                printDepths(coverage.get(TOTAL), pw);
             }
-
-            Set<String> inputTags = new HashSet<>();
-            for (String line : inputList) {
-                String[] v = line.split(",");
-                inputTags.add(truncHierarchy(depth,v[0]));
+            if (subtrees) {
+                printSubtrees(coverage, depth, pw);
             }
-
-            int inReference = 0;
-            int notInReference = 0;
-
-            for (String tag : inputTags) {
-                if (referenceTags.contains(tag)) {
-                    inReference++;
-                } else {
-                    notInReference++;
-                }
-            }
-
-            pw = new PrintWriter(os);
-            pw.println("Total tags in reference " + referenceTags.size());
-            pw.println("Total tags in input preset " + inputTags.size());
-            pw.println("Tags in input preset and reference " + inReference + " " + (((float) inReference) / referenceTags.size()) * 100 + "%");
-            pw.println("Tags in input preset not in reference " + notInReference);
             pw.flush();
         } catch (IOException e) {
             e.printStackTrace();
@@ -142,22 +311,177 @@ public class ComparePresets {
     }
 
     /**
-     * Get the number of hierarchies specified by depth from value 
+     * Compare the tags of a preset with a reference and print the results
      * 
-     * @param depth the number of hierarchies, 0 = all
-     * @param value the input string in the format h0 / h1 / h2 ....
-     * @return
+     * @param reference the reference tags
+     * @param input the tags of the preset
+     * @param depth the number of hierarchies to compare, 0 = all
+     * @param pw the PrintWriter to write the results to
+     */
+    static void compare(@NotNull TagStats reference, @NotNull TagStats input, int depth, @NotNull PrintWriter pw) {
+        print(coverage(Trie.of(reference), Trie.of(input)).get(TOTAL), depth, pw);
+        pw.flush();
+    }
+
+    /**
+     * Determine the coverage of the input by the reference in one pass over both tries
+     * 
+     * @param reference the reference Trie
+     * @param input the input Trie
+     * @return the Coverage for each top level key in key order, and for all tags with the key "*"
      */
-    private static String truncHierarchy(int depth, @NotNull String value) {
-        if (depth == 0) {
-            return value;
-        } else {
-            StringBuilder result = new StringBuilder();
-            String[] hierarchies = value.split("/");
-            for (int i = 0; i < Integer.min(depth, hierarchies.length); i++) {
-                result.append(hierarchies[i].trim()); 
+    @NotNull
+    static Map<String, Coverage> coverage(@NotNull Trie reference, @NotNull Trie input) {
+        int height = Math.max(reference.height, input.height);
+        Map<String, Coverage> result = new TreeMap<>();
+        Coverage total = new Coverage(height);
+        if (reference.root.children != null) {
+            for (Entry<String, Trie.Node> child : reference.root.children.entrySet()) {
+                Coverage c = subtree(result, child.getKey(), height);
+                count(child.getValue(), 1, c.referenceLevel, c.referenceEnd);
             }
-            return result.toString();
         }
+        if (input.root.children != null) {
+            for (Entry<String, Trie.Node> child : input.root.children.entrySet()) {
+                Coverage c = subtree(result, child.getKey(), height);
+                count(child.getValue(), reference.root.get(child.getKey()), 1, c);
+            }
+        }
+        for (Coverage c : result.values()) {
+            total.add(c);
+        }
+        result.put(TOTAL, total);
+        return result;
+    }
+
+    /**
+     * Get the Coverage for the key of a top level tag, creating it if necessary
+     * 
+     * @param subtrees the Coverage per key
+     * @param tag the top level tag
+     * @param height the maximum number of levels
+     * @return the Coverage
+     */
+    @NotNull
+    private static Coverage subtree(@NotNull Map<String, Coverage> subtrees, @NotNull String tag, int height) {
+        int eq = tag.indexOf('=');
+        String key = eq < 0 ? tag : tag.substring(0, eq);
+        Coverage c = subtrees.get(key);
+        if (c == null) {
+            c = new Coverage(height);
+            subtrees.put(key, c);
+        }
+        return c;
+    }
+
+    /**
+     * Count the nodes and tag ends per level of a subtree
+     * 
+     * @param node the root of the subtree
+     * @param level the level of node
+     * @param levelCount the nodes per level
+     * @param endCount the tag ends per level
+     */
+    private static void count(@NotNull Trie.Node node, int level, @NotNull int[] levelCount, @NotNull int[] endCount) {
+        levelCount[level]++;
+        if (node.terminal) {
+            endCount[level]++;
+        }
+        if (node.children != null) {
+            for (Trie.Node child : node.children.values()) {
+                count(child, level + 1, levelCount, endCount);
+            }
+        }
+    }
+
+    /**
+     * Count the nodes and tag ends per level of an input subtree and those that are in the reference
+     * 
+     * @param node the root of the input subtree
+     * @param reference the node with the same path in the reference or null
+     * @param level the level of node
+     * @param c the Coverage
+     */
+    private static void count(@NotNull Trie.Node node, @Nullable Trie.Node reference, int level, @NotNull Coverage c) {
+        c.inputLevel[level]++;
+        if (reference != null) {
+            c.bothLevel[level]++;
+        }
+        if (node.terminal) {
+            c.inputEnd[level]++;
+            if (reference != null && reference.terminal) {
+                c.bothEnd[level]++;
+            }
+        }
+        if (node.children != null) {
+            for (Entry<String, Trie.Node> child : node.children.entrySet()) {
+                count(child.getValue(), reference != null ? reference.get(child.getKey()) : null, level + 1, c);
+            }
+        }
+    }
+
+    /**
+     * Print the results for one depth
+     * 
+     * @param c the Coverage
+     * @param depth the number of hierarchies, 0 = all
+     * @param pw the PrintWriter to write the results to
+     */
+    private static void print(@NotNull Coverage c, int depth, @NotNull PrintWriter pw) {
+        int inReference = c.both(depth);
+        pw.println("Total tags in reference " + c.reference(depth));
+        pw.println("Total tags in input preset " + c.input(depth));
+        pw.println("Tags in input preset and reference " + inReference + " " + percentage(inReference, c.reference(depth)) + "%");
+        pw.println("Tags in input preset not in reference " + (c.input(depth) - inReference));
+    }
+
+    /**
+     * Print a table with the results for all depths
+     * 
+     * @param c the Coverage
+     * @param pw the PrintWriter to write the results to
+     */
+    private static void printDepths(@NotNull Coverage c, @NotNull PrintWriter pw) {
+        pw.println("depth,reference,input,in_reference,coverage,not_in_reference");
+        for (int depth = 1; depth <= c.height(); depth++) {
+            printRow(Integer.toString(depth), c, depth, pw);
+        }
+    }
+
+    /**
+     * Print a table with the results for each top level key
+     * 
+     * @param coverage the Coverage per key
+     * @param depth the number of hierarchies, 0 = all
+     * @param pw the PrintWriter to write the results to
+     */
+    private static void printSubtrees(@NotNull Map<String, Coverage> coverage, int depth, @NotNull PrintWriter pw) {
+        pw.println("key,reference,input,in_reference,coverage,not_in_reference");
+        for (Entry<String, Coverage> entry : coverage.entrySet()) {
+            printRow(entry.getKey(), entry.getValue(), depth, pw);
+        }
+    }
+
+    /**
+     * Print one table row
+     * 
+     * @param label the value of the first column
+     * @param c the Coverage
+     * @param depth the number of hierarchies, 0 = all
+     * @param pw the PrintWriter to write the results to
+     */
+    private static void printRow(@NotNull String label, @NotNull Coverage c, int depth, @NotNull PrintWriter pw) {
+        int inReference = c.both(depth);
+        pw.println(label + "," + c.reference(depth) + "," + c.input(depth) + "," + inReference + "," + percentage(inReference, c.reference(depth)) + ","
+                + (c.input(depth) - inReference));
+    }
+
+    /**
+     * @param count the count
+     * @param total the total
+     * @return count as percentage of total
+     */
+    private static float percentage(int count, int total) {
+        return (((float) count) / total) * 100;
     }
 }
@@ -0,0 +1,82 @@
+package ch.poole.osm.presetutils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The element types that can occur in a JOSM/Vespucci format preset
+ *
+ * @author Simon Poole
+ *
+ */
+public enum ElementType {
+    PRESETS(PresetConstants.PRESETS), GROUP(PresetConstants.GROUP), ITEM(PresetConstants.ITEM), CHUNK(PresetConstants.CHUNK),
+    SEPARATOR(PresetConstants.SEPARATOR), ITEM_SEPARATOR("item_separator"), LABEL(PresetConstants.LABEL), OPTIONAL(PresetConstants.OPTIONAL),
+    SPACE(PresetConstants.SPACE), LINK(PresetConstants.LINK), PRESET_LINK(PresetConstants.PRESET_LINK), REFERENCE(PresetConstants.REFERENCE),
+    KEY(PresetConstants.KEY_FIELD, true), TEXT(PresetConstants.TEXT_FIELD, true), CHECK(PresetConstants.CHECK_FIELD, true),
+    CHECKGROUP(PresetConstants.CHECKGROUP), COMBO(PresetConstants.COMBO_FIELD, true), MULTISELECT(PresetConstants.MULTISELECT_FIELD, true),
+    LIST_ENTRY(PresetConstants.LIST_ENTRY), ROLES(PresetConstants.ROLES), ROLE(PresetConstants.ROLE), OTHER("");
+
+    private static final Map<String, ElementType> BY_NAME = new HashMap<>();
+    static {
+        for (ElementType type : values()) {
+            BY_NAME.put(type.elementName, type);
+        }
+    }
+
+    private final String  elementName;
+    private final boolean field;
+
+    /**
+     * Construct a new type
+     *
+     * @param elementName the XML element name
+     */
+    ElementType(@NotNull String elementName) {
+        this(elementName, false);
+    }
+
+    /**
+     * Construct a new type
+     *
+     * @param elementName the XML element name
+     * @param field true if this is a field that sets a tag
+     */
+    ElementType(@NotNull String elementName, boolean field) {
+        this.elementName = elementName;
+        this.field = field;
+    }
+
+    /**
+     * Get the XML element name
+     *
+     * @return the element name, empty for OTHER
+     */
+    @NotNull
+    public String getElementName() {
+        return elementName;
+    }
+
+    /**
+     * Check if this is a field that sets a tag
+     *
+     * @return true if a field
+     */
+    public boolean isField() {
+        return field;
+    }
+
+    /**
+     * Get the type for an element name
+     *
+     * @param name the XML element name
+     * @return the ElementType, OTHER if unknown
+     */
+    @NotNull
+    public static ElementType fromName(@NotNull String name) {
+        ElementType type = BY_NAME.get(name);
+        return type != null ? type : OTHER;
+    }
+}
@@ -0,0 +1,147 @@
+package ch.poole.osm.presetutils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Forward the events from one SAX stream to several handlers in the order they were added
+ *
+ * If a {@link StringPool} is set element names and attribute values are interned before they are forwarded, so that
+ * handlers that retain them share the same instances.
+ *
+ * @author Simon Poole
+ *
+ */
+public class FanOutHandler extends DefaultHandler {
+
+    private final List<ContentHandler> handlers = new ArrayList<>();
+    private final StringPool           pool;
+    private final AttributesImpl       interned = new AttributesImpl();
+
+    /**
+     * Construct a new instance that forwards events unchanged
+     */
+    public FanOutHandler() {
+        this(null);
+    }
+
+    /**
+     * Construct a new instance
+     *
+     * @param pool StringPool to intern names and values with or null
+     */
+    public FanOutHandler(@Nullable StringPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Add a handler
+     *
+     * @param handler the ContentHandler
+     */
+    public void add(@NotNull ContentHandler handler) {
+        handlers.add(handler);
+    }
+
+    /**
+     * @return the number of handlers
+     */
+    public int size() {
+        return handlers.size();
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+        for (ContentHandler handler : handlers) {
+            handler.setDocumentLocator(locator);
+        }
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        for (ContentHandler handler : handlers) {
+            handler.startDocument();
+        }
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        for (ContentHandler handler : handlers) {
+            handler.endDocument();
+        }
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) throws SAXException {
+        for (ContentHandler handler : handlers) {
+            handler.startPrefixMapping(prefix, uri);
+        }
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) throws SAXException {
+        for (ContentHandler handler : handlers) {
+            handler.endPrefixMapping(prefix);
+        }
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+        if (pool != null) {
+            qName = pool.intern(qName);
+            interned.clear();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                interned.addAttribute(attributes.getURI(i), attributes.getLocalName(i), pool.intern(attributes.getQName(i)), attributes.getType(i),
+                        pool.intern(attributes.getValue(i)));
+            }
+            attributes = interned;
+        }
+        for (ContentHandler handler : handlers) {
+            handler.startElement(uri, localName, qName, attributes);
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        for (ContentHandler handler : handlers) {
+            handler.endElement(uri, localName, qName);
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        for (ContentHandler handler : handlers) {
+            handler.characters(ch, start, length);
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        for (ContentHandler handler : handlers) {
+            handler.ignorableWhitespace(ch, start, length);
+        }
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException {
+        for (ContentHandler handler : handlers) {
+            handler.processingInstruction(target, data);
+        }
+    }
+
+    @Override
+    public void skippedEntity(String name) throws SAXException {
+        for (ContentHandler handler : handlers) {
+            handler.skippedEntity(name);
+        }
+    }
+}
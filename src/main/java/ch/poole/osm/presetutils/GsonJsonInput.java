@@ -0,0 +1,111 @@
+package ch.poole.osm.presetutils;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * JsonInput implementation that delegates to Gson
+ *
+ * Property names and short values are interned with a {@link StringPool}, by default one per input.
+ *
+ * @author Simon Poole
+ *
+ */
+public class GsonJsonInput implements JsonInput {
+
+    private static final int MAX_INTERN_LENGTH = 64;
+
+    private final JsonReader reader;
+    private final StringPool pool;
+
+    /**
+     * Construct a new instance
+     *
+     * @param input the Reader to read from
+     */
+    public GsonJsonInput(@NotNull Reader input) {
+        this(input, new StringPool());
+    }
+
+    /**
+     * Construct a new instance
+     *
+     * @param input the Reader to read from
+     * @param pool the StringPool to intern names and short values with
+     */
+    public GsonJsonInput(@NotNull Reader input, @NotNull StringPool pool) {
+        reader = new JsonReader(input);
+        this.pool = pool;
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        reader.beginObject();
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        reader.endObject();
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        reader.beginArray();
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        reader.endArray();
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        return reader.hasNext();
+    }
+
+    @Override
+    public JsonToken peek() throws IOException {
+        return reader.peek();
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        return pool.intern(reader.nextName());
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        String s = reader.nextString();
+        return s.length() <= MAX_INTERN_LENGTH ? pool.intern(s) : s;
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException {
+        return reader.nextBoolean();
+    }
+
+    @Override
+    public int nextInt() throws IOException {
+        return reader.nextInt();
+    }
+
+    @Override
+    public double nextDouble() throws IOException {
+        return reader.nextDouble();
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+        reader.skipValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -4,7 +4,6 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
@@ -32,7 +31,6 @@ import org.apache.commons.cli.ParseException;
 import org.apache.commons.text.StringEscapeUtils;
 import org.jetbrains.annotations.NotNull;
 
-import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
 
 /**
@@ -66,9 +64,17 @@ public class ID2JOSM {
     private static final String DEFAULT_PRESET_URL      = "https://raw.githubusercontent.com/openstreetmap/id-tagging-schema/main/dist/presets.json";
     private static final String DEFAULT_TRANSLATION_URL = "https://raw.githubusercontent.com/openstreetmap/id-tagging-schema/main/dist/translations/en.json";
 
+    // property names in the iD files, these are pre-encoded by the utf8 JsonInput implementation
+    private static final String[] PRESET_NAMES      = { "icon", "searchable", "tags", "addTags", "removeTags", "geometry", "fields", "moreFields", "reference",
+            "key", "value", "matchScore", "countryCodes", "replacement", "imageURL", "terms", "name" };
+    private static final String[] FIELD_NAMES       = { "label", "type", "default", "geometry", "key", "keys", "options", "caseSensitive", "snake_case",
+            "placeholder", "strings", "universal", "terms" };
+    private static final String[] TRANSLATION_NAMES = { "presets", "fields", "categories", "name", "terms", "label", "options", "title",
+            "description", "placeholder", "aliases" };
+
     private static String fieldsUrl      = DEFAULT_FIELD_URL;
     private static String presetUrl      = DEFAULT_PRESET_URL;
-    private static String translationUrl = DEFAULT_TRANSLATION_URL;
+    private static String[] translationUrls = { DEFAULT_TRANSLATION_URL };
 
     enum Geometry {
         POINT, VERTEX, LINE, AREA, RELATION;
@@ -357,7 +363,7 @@ public class ID2JOSM {
 
         public void toJosm(PrintWriter writer) {
             indent(writer, 1);
-            String translatedName = presetNameTranslations.get(name);
+            String translatedName = presetTranslations.get(name, null);
             writer.print("<item name=\"" + StringEscapeUtils.escapeXml11(translatedName != null ? translatedName : name) + "\" ");
             if (icon != null) {
                 writer.print("icon=\"" + StringEscapeUtils.escapeXml11(icon) + "\" ");
@@ -491,8 +497,9 @@ public class ID2JOSM {
 
     static LinkedHashMap<String, Item> items = new LinkedHashMap<>();
 
-    private static Map<String, String> presetNameTranslations = new HashMap<>();
-    private static Map<String, String> fieldTranslations      = new HashMap<>();
+    private static TranslationTable presetTranslations = new TranslationTable();
+    private static TranslationTable fieldTranslations  = new TranslationTable();
+    private static StringPool       pool               = new StringPool();
 
     private static boolean chunkMode    = false;
     private static boolean tagInfoMode  = true;
@@ -504,9 +511,16 @@ public class ID2JOSM {
      */
     static void convertId(@NotNull PrintWriter printWriter) {
         try {
-            parseIdTranslation(new URL(translationUrl)); // retrieve before fields
+            for (String translationUrl : translationUrls) { // retrieve before fields
+                parseIdTranslation(new URL(translationUrl));
+            }
+            presetTranslations.freeze();
+            fieldTranslations.freeze();
+            LOGGER.log(Level.INFO, "Translations for {0} retain approx. {1} bytes",
+                    new Object[] { fieldTranslations.getLanguages(), presetTranslations.retainedSize() + fieldTranslations.retainedSize() });
             parseIdFields(new URL(fieldsUrl));
             parseIdPreset(new URL(presetUrl));
+            LOGGER.log(Level.INFO, "String pool: {0}", pool);
 
             // print out
             printWriter.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
@@ -551,10 +565,12 @@ public class ID2JOSM {
      * @throws IOException if something goes wrong
      */
     private static void parseIdTranslation(@NotNull URL url) throws IOException {
-        try (InputStream is = Utils.openConnection(url); JsonReader reader = new JsonReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+        try (InputStream is = Utils.openConnection(url); JsonInput reader = JsonInputFactory.open(is, pool, TRANSLATION_NAMES)) {
             reader.beginObject();
             if (reader.hasNext()) {
                 String jsonName = reader.nextName();
+                int presetLanguage = presetTranslations.addLanguage(jsonName);
+                int fieldLanguage = fieldTranslations.addLanguage(jsonName);
                 reader.beginObject();
                 while (reader.hasNext()) {
                     jsonName = reader.nextName();
@@ -569,7 +585,7 @@ public class ID2JOSM {
                                     reader.beginObject();
                                     while (reader.hasNext()) {
                                         if ("name".equals(reader.nextName())) {
-                                            presetNameTranslations.put(fieldName, reader.nextString());
+                                            presetTranslations.put(presetLanguage, fieldName, null, reader.nextString());
                                         } else {
                                             reader.skipValue();
                                         }
@@ -585,7 +601,7 @@ public class ID2JOSM {
                                     while (reader.hasNext()) {
                                         jsonName = reader.nextName();
                                         if ("label".equals(jsonName)) {
-                                            fieldTranslations.put(fieldName, reader.nextString());
+                                            fieldTranslations.put(fieldLanguage, fieldName, null, reader.nextString());
                                         } else if ("options".equals(jsonName)) {
                                             reader.beginObject();
                                             while (reader.hasNext()) {
@@ -594,14 +610,14 @@ public class ID2JOSM {
                                                     reader.beginObject();
                                                     while (reader.hasNext()) {
                                                         if ("title".equals(reader.nextName())) {
-                                                            fieldTranslations.put(optionsKey(fieldName, jsonName), reader.nextString());
+                                                            fieldTranslations.put(fieldLanguage, fieldName, jsonName, reader.nextString());
                                                         } else {
                                                             reader.skipValue();
                                                         }
                                                     }
                                                     reader.endObject();
                                                 } else {
-                                                    fieldTranslations.put(optionsKey(fieldName, jsonName), reader.nextString());
+                                                    fieldTranslations.put(fieldLanguage, fieldName, jsonName, reader.nextString());
                                                 }
                                             }
                                             reader.endObject();
@@ -630,17 +646,6 @@ public class ID2JOSM {
         }
     }
 
-    /**
-     * Construct a key for a field "option"/value
-     * 
-     * @param fieldName the field name
-     * @param optionName the option name
-     * @return a hopefully unique key
-     */
-    private static String optionsKey(String fieldName, String optionName) {
-        return fieldName + "|options|" + optionName;
-    }
-
     /**
      * Retrieve and parse an iD preset file
      * 
@@ -650,7 +655,7 @@ public class ID2JOSM {
      * @throws IOException if something goes wrong
      */
     private static void parseIdPreset(@NotNull URL url) throws IOException {
-        try (InputStream is = Utils.openConnection(url); JsonReader reader = new JsonReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+        try (InputStream is = Utils.openConnection(url); JsonInput reader = JsonInputFactory.open(is, pool, PRESET_NAMES)) {
             reader.beginObject();
             while (reader.hasNext()) {
                 String jsonName = reader.nextName();
@@ -825,7 +830,7 @@ public class ID2JOSM {
      * @throws IOException if something goes wrong
      */
     private static void parseIdFields(@NotNull URL url) throws IOException {
-        try (InputStream is = Utils.openConnection(url); JsonReader reader = new JsonReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+        try (InputStream is = Utils.openConnection(url); JsonInput reader = JsonInputFactory.open(is, pool, FIELD_NAMES)) {
             reader.beginObject();
             while (reader.hasNext()) {
                 String fieldName = reader.nextName();
@@ -875,7 +880,7 @@ public class ID2JOSM {
                         while (reader.hasNext()) {
                             ValueAndDescription value = new ValueAndDescription();
                             value.value = reader.nextString();
-                            value.description = fieldTranslations.get(optionsKey(current.name, value.value));
+                            value.description = fieldTranslations.get(current.name, value.value);
                             current.options.add(value);
                         }
                         reader.endArray();
@@ -892,7 +897,7 @@ public class ID2JOSM {
                 }
                 reader.endObject();
                 if (current.label == null) {
-                    current.label = fieldTranslations.get(fieldName);
+                    current.label = fieldTranslations.get(fieldName, null);
                 }
             }
             reader.endObject();
@@ -961,8 +966,8 @@ public class ID2JOSM {
                 .build();
         Option presetUrlOpt = Option.builder(PRESETURL_OPT_SHORT).longOpt(PRESETURL_OPT_LONG).hasArg()
                 .desc("url for alternative location of preset definitions").build();
-        Option translationUrlOpt = Option.builder(TRANSLATIONURL_OPT_SHORT).longOpt(TRANSLATIONURL_OPT_LONG).hasArg()
-                .desc("url for alternative location of preset translations").build();
+        Option translationUrlOpt = Option.builder(TRANSLATIONURL_OPT_SHORT).longOpt(TRANSLATIONURL_OPT_LONG).hasArgs()
+                .desc("url(s) for alternative location of preset translations, later files are used as fallback").build();
 
         Options options = new Options();
 
@@ -992,7 +997,7 @@ public class ID2JOSM {
                 presetUrl = line.getOptionValue(PRESETURL_OPT_LONG);
             }
             if (line.hasOption(TRANSLATIONURL_OPT_SHORT)) {
-                translationUrl = line.getOptionValue(TRANSLATIONURL_OPT_LONG);
+                translationUrls = line.getOptionValues(TRANSLATIONURL_OPT_LONG);
             }
             convertId(new PrintWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8)));
         } catch (ParseException exp) {
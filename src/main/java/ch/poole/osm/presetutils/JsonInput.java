@@ -0,0 +1,112 @@
+package ch.poole.osm.presetutils;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Minimal pull style JSON reader, this mirrors the subset of the Gson JsonReader API that we actually use so that the
+ * implementation can be swapped
+ *
+ * @author Simon Poole
+ *
+ */
+public interface JsonInput extends Closeable {
+
+    /**
+     * Consume the start of a JSON object
+     *
+     * @throws IOException on IO and parse errors
+     */
+    void beginObject() throws IOException;
+
+    /**
+     * Consume the end of a JSON object
+     *
+     * @throws IOException on IO and parse errors
+     */
+    void endObject() throws IOException;
+
+    /**
+     * Consume the start of a JSON array
+     *
+     * @throws IOException on IO and parse errors
+     */
+    void beginArray() throws IOException;
+
+    /**
+     * Consume the end of a JSON array
+     *
+     * @throws IOException on IO and parse errors
+     */
+    void endArray() throws IOException;
+
+    /**
+     * Check if the current array or object has more elements
+     *
+     * @return true if there are more elements
+     * @throws IOException on IO and parse errors
+     */
+    boolean hasNext() throws IOException;
+
+    /**
+     * Get the type of the next token without consuming it
+     *
+     * @return the JsonToken
+     * @throws IOException on IO and parse errors
+     */
+    @NotNull
+    JsonToken peek() throws IOException;
+
+    /**
+     * Consume the next property name
+     *
+     * @return the name
+     * @throws IOException on IO and parse errors
+     */
+    @NotNull
+    String nextName() throws IOException;
+
+    /**
+     * Consume the next string value, numbers are returned as strings
+     *
+     * @return the value
+     * @throws IOException on IO and parse errors
+     */
+    @NotNull
+    String nextString() throws IOException;
+
+    /**
+     * Consume the next boolean value
+     *
+     * @return the value
+     * @throws IOException on IO and parse errors
+     */
+    boolean nextBoolean() throws IOException;
+
+    /**
+     * Consume the next int value
+     *
+     * @return the value
+     * @throws IOException on IO and parse errors
+     */
+    int nextInt() throws IOException;
+
+    /**
+     * Consume the next double value
+     *
+     * @return the value
+     * @throws IOException on IO and parse errors
+     */
+    double nextDouble() throws IOException;
+
+    /**
+     * Skip the next value including any nested arrays and objects
+     *
+     * @throws IOException on IO and parse errors
+     */
+    void skipValue() throws IOException;
+}
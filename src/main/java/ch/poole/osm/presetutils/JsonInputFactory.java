@@ -0,0 +1,159 @@
+package ch.poole.osm.presetutils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Create JsonInput instances
+ *
+ * The implementation can be selected with the presetutils.json system property, valid values are "gson" and "utf8",
+ * the default is utf8
+ *
+ * @author Simon Poole
+ *
+ */
+public final class JsonInputFactory {
+
+    static final String KIND_PROPERTY = "presetutils.json";
+
+    public enum Kind {
+        GSON, UTF8
+    }
+
+    /**
+     * Private constructor
+     */
+    private JsonInputFactory() {
+        // empty
+    }
+
+    /**
+     * Get the implementation selected by the system property
+     *
+     * @return the Kind
+     */
+    @NotNull
+    public static Kind defaultKind() {
+        return Kind.valueOf(System.getProperty(KIND_PROPERTY, Kind.UTF8.name()).toUpperCase(Locale.US));
+    }
+
+    /**
+     * Open an InputStream with the default implementation
+     *
+     * @param is the InputStream, the utf8 implementation will read it completely
+     * @param knownNames property names that are expected to occur
+     * @return a JsonInput
+     * @throws IOException if reading fails
+     */
+    @NotNull
+    public static JsonInput open(@NotNull InputStream is, @NotNull String... knownNames) throws IOException {
+        return open(defaultKind(), is, knownNames);
+    }
+
+    /**
+     * Open an InputStream
+     *
+     * @param kind the implementation to use
+     * @param is the InputStream, the utf8 implementation will read it completely
+     * @param knownNames property names that are expected to occur
+     * @return a JsonInput
+     * @throws IOException if reading fails
+     */
+    @NotNull
+    public static JsonInput open(@NotNull Kind kind, @NotNull InputStream is, @NotNull String... knownNames) throws IOException {
+        if (kind == Kind.GSON) {
+            return new GsonJsonInput(new InputStreamReader(is, StandardCharsets.UTF_8));
+        }
+        return new Utf8JsonInput(ByteBuffer.wrap(readAll(is)), knownNames);
+    }
+
+    /**
+     * Open an InputStream with the default implementation, sharing interned strings with other inputs
+     *
+     * @param is the InputStream, the utf8 implementation will read it completely
+     * @param pool the StringPool to use
+     * @param knownNames property names that are expected to occur
+     * @return a JsonInput
+     * @throws IOException if reading fails
+     */
+    @NotNull
+    public static JsonInput open(@NotNull InputStream is, @NotNull StringPool pool, @NotNull String... knownNames) throws IOException {
+        if (defaultKind() == Kind.GSON) {
+            return new GsonJsonInput(new InputStreamReader(is, StandardCharsets.UTF_8), pool);
+        }
+        return new Utf8JsonInput(ByteBuffer.wrap(readAll(is)), pool, knownNames);
+    }
+
+    /**
+     * Open a file with the default implementation
+     *
+     * @param path the Path of the file
+     * @param knownNames property names that are expected to occur
+     * @return a JsonInput
+     * @throws IOException if reading fails
+     */
+    @NotNull
+    public static JsonInput open(@NotNull Path path, @NotNull String... knownNames) throws IOException {
+        return open(defaultKind(), path, knownNames);
+    }
+
+    /**
+     * Open a file, the utf8 implementation will memory map the file
+     *
+     * @param kind the implementation to use
+     * @param path the Path of the file
+     * @param knownNames property names that are expected to occur
+     * @return a JsonInput
+     * @throws IOException if reading fails
+     */
+    @NotNull
+    public static JsonInput open(@NotNull Kind kind, @NotNull Path path, @NotNull String... knownNames) throws IOException {
+        if (kind == Kind.GSON) {
+            return new GsonJsonInput(new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8));
+        }
+        return new Utf8JsonInput(map(path), knownNames);
+    }
+
+    /**
+     * Memory map a file read only
+     *
+     * @param path the Path of the file
+     * @return a MappedByteBuffer
+     * @throws IOException if mapping fails
+     */
+    @NotNull
+    static ByteBuffer map(@NotNull Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Read an InputStream completely
+     *
+     * @param is the InputStream
+     * @return a byte array with the contents
+     * @throws IOException if reading fails
+     */
+    @NotNull
+    static byte[] readAll(@NotNull InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
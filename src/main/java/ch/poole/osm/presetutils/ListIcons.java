@@ -30,14 +30,15 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -71,15 +72,43 @@ public class ListIcons {
     private static final Pattern vespucciIconPattern2 = Pattern.compile("^\\$\\{ICONPATH\\}(.+)\\.\\$\\{ICONTYPE\\}$");
     private static final Pattern josmIconPattern      = Pattern.compile("^(.*\\/)(.+)\\.(.+)$");
 
+    /**
+     * Elements that don't contain icons and are ignored by the handler, these are not parsed when ListIcons is the only
+     * consumer of the preset
+     */
+    static final Set<ElementType> SKIP = Collections.unmodifiableSet(EnumSet.of(ElementType.KEY, ElementType.TEXT, ElementType.REFERENCE));
+
     HashMap<String, MultiHashMap<String, String>> msgs = new HashMap<>();
 
     String inputFilename;
     int    groupCount = 0;
 
     void parseXML(@NotNull final InputStream input, @NotNull final PrintWriter pw, @Nullable final PrintWriter mapOutput) throws ParserConfigurationException, SAXException, IOException {
-        SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
+        process(PresetParser.parse(input, inputFilename, SKIP), pw, mapOutput);
+    }
+
+    /**
+     * List the icons of an already parsed preset
+     * 
+     * @param preset the Preset
+     * @param pw the output PrintWriter
+     * @param mapOutput optional PrintWriter for the icon map
+     * @throws SAXException if processing fails
+     */
+    void process(@NotNull Preset preset, @NotNull final PrintWriter pw, @Nullable final PrintWriter mapOutput) throws SAXException {
+        preset.replay(getHandler(pw, mapOutput));
+    }
 
-        saxParser.parse(input, new DefaultHandler() {
+    /**
+     * Get the handler that lists the icons
+     * 
+     * @param pw the output PrintWriter
+     * @param mapOutput optional PrintWriter for the icon map
+     * @return a DefaultHandler
+     */
+    @NotNull
+    DefaultHandler getHandler(@NotNull final PrintWriter pw, @Nullable final PrintWriter mapOutput) {
+        return new DefaultHandler() {
 
             String group     = null;
             String preset    = null;
@@ -217,7 +246,7 @@ public class ListIcons {
                 }
             }
 
-        });
+        };
     }
 
     private void setInputFilename(String fn) {
@@ -229,11 +258,12 @@ public class ListIcons {
         InputStream is = System.in;
         OutputStream os = System.out;
         OutputStream mapOutput = null;
+        String[] inputs = null;
         ListIcons p = new ListIcons();
         p.setInputFilename("stdin");
 
         // arguments
-        Option inputFile = Option.builder("i").longOpt(INPUT_OPTION).hasArg().desc("input preset file, default: standard in").build();
+        Option inputFile = Option.builder("i").longOpt(INPUT_OPTION).hasArgs().desc("input preset files or directories, default: standard in").build();
         Option outputFile = Option.builder("o").longOpt(OUTPUT_OPTION).hasArg().desc("output file, default: standard out").build();
         Option mapOutputFile = Option.builder("m").longOpt(MAP_OUTPUT_OPTION).hasArg().desc("map output file, default: none").build();
 
@@ -250,9 +280,12 @@ public class ListIcons {
                 CommandLine line = parser.parse(options, args);
                 if (line.hasOption(INPUT_OPTION)) {
                     // initialise the member variable
-                    String input = line.getOptionValue(INPUT_OPTION);
-                    p.setInputFilename(input);
-                    is = new FileInputStream(input);
+                    inputs = line.getOptionValues(INPUT_OPTION);
+                    if (PresetSet.isSingleFile(inputs)) {
+                        p.setInputFilename(inputs[0]);
+                        is = new FileInputStream(inputs[0]);
+                        inputs = null;
+                    }
                 }
                 if (line.hasOption(OUTPUT_OPTION)) {
                     String output = line.getOptionValue(OUTPUT_OPTION);
@@ -272,7 +305,14 @@ public class ListIcons {
             }
 
             try {
-                p.parseXML(is, new PrintWriter(os), mapOutput != null ? new PrintWriter(mapOutput) : null);
+                PrintWriter mapWriter = mapOutput != null ? new PrintWriter(mapOutput) : null;
+                if (inputs != null) {
+                    Preset merged = PresetSet.parse(inputs).merge();
+                    p.setInputFilename(merged.getSource());
+                    p.process(merged, new PrintWriter(os), mapWriter);
+                } else {
+                    p.parseXML(is, new PrintWriter(os), mapWriter);
+                }
             } catch (ParserConfigurationException | SAXException | IOException e) {
                 e.printStackTrace();
             }
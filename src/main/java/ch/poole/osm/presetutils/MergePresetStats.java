@@ -1,5 +1,8 @@
 package ch.poole.osm.presetutils;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -8,11 +11,14 @@ import java.io.PrintWriter;
 import java.nio.charset.MalformedInputException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.function.IntPredicate;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -21,10 +27,13 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
+import org.jetbrains.annotations.NotNull;
 
 /**
  * Merge output of PresetStats
  * 
+ * The inputs are merged in tag order one row at a time, inputs that are not sorted are split in to sorted runs in
+ * temporary files first, so that memory use depends on the number of inputs and not on the number of tags.
  * 
  * Licence Apache 2.0
  * 
@@ -36,12 +45,346 @@ public class MergePresetStats {
 
     private static final String INPUT  = "input";
     private static final String OUTPUT = "output";
+    private static final String QUERY  = "query";
+
+    /** number of lines that are sorted in memory */
+    static final int RUN_SIZE = 100000;
+
+    private static final Comparator<String> LINE_ORDER = Comparator.comparing(TagStats::tag);
+
+    /**
+     * The current tag of a sorted source for one column
+     */
+    abstract static class Cursor implements Closeable {
+        final int column;
+        String    tag;
+        int       count;
+        boolean   deprecated;
+
+        /**
+         * Construct a new instance
+         * 
+         * @param column the column of the merged table
+         */
+        Cursor(int column) {
+            this.column = column;
+        }
+
+        /**
+         * Move to the next tag
+         * 
+         * @return false if there are no more tags
+         * @throws IOException if reading fails
+         */
+        abstract boolean next() throws IOException;
+
+        @Override
+        public void close() throws IOException {
+            // nothing to do
+        }
+    }
+
+    /**
+     * Cursor over a sorted file in the PresetStats format
+     */
+    static final class LineCursor extends Cursor {
+        private final BufferedReader reader;
+        private final Path           temp;
+
+        /**
+         * Construct a new instance
+         * 
+         * @param column the column of the merged table
+         * @param file the sorted file
+         * @param temp true if the file should be deleted when closed
+         * @throws IOException if the file can't be opened
+         */
+        LineCursor(int column, @NotNull Path file, boolean temp) throws IOException {
+            super(column);
+            reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+            this.temp = temp ? file : null;
+        }
+
+        @Override
+        boolean next() throws IOException {
+            String line = reader.readLine();
+            if (line == null) {
+                return false;
+            }
+            tag = TagStats.tag(line);
+            count = TagStats.count(line);
+            deprecated = TagStats.isDeprecated(line);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * Cursor over TagStats in tag order
+     */
+    static final class TagStatsCursor extends Cursor {
+        private final TagStats stats;
+        private final int[]    order;
+        private int            pos = 0;
+
+        /**
+         * Construct a new instance
+         * 
+         * @param column the column of the merged table
+         * @param stats the TagStats
+         */
+        TagStatsCursor(int column, @NotNull TagStats stats) {
+            super(column);
+            this.stats = stats;
+            order = stats.sortedIndices();
+        }
+
+        @Override
+        boolean next() {
+            if (pos >= order.length) {
+                return false;
+            }
+            int i = order[pos++];
+            tag = stats.getTag(i);
+            count = stats.getCount(i);
+            deprecated = stats.isDeprecated(i);
+            return true;
+        }
+    }
+
+    /**
+     * Merge the tags of several presets in to one table with a column per preset
+     * 
+     * @param stats the tags for each preset
+     * @param pw the PrintWriter to write the table to
+     * @throws IOException if writing fails
+     */
+    static void merge(@NotNull List<TagStats> stats, @NotNull PrintWriter pw) throws IOException {
+        List<String> names = new ArrayList<>();
+        List<Cursor> cursors = new ArrayList<>();
+        for (int i = 0; i < stats.size(); i++) {
+            names.add(stats.get(i).getName());
+            cursors.add(new TagStatsCursor(i, stats.get(i)));
+        }
+        merge(names, cursors, pw);
+    }
+
+    /**
+     * Receives the merged rows in tag order
+     */
+    interface RowHandler {
+
+        /**
+         * Handle one row, the arrays are reused for the next row
+         * 
+         * @param tag the tag
+         * @param present true for each column that contains the tag
+         * @param deprecated true for each column where the tag is deprecated
+         * @param count the maximum count or TagStats.NO_COUNT
+         */
+        void row(@NotNull String tag, @NotNull boolean[] present, @NotNull boolean[] deprecated, int count);
+    }
+
+    /**
+     * Merge sorted sources in to one table with a column per name, rows are sorted by tag
+     * 
+     * @param names the column names
+     * @param cursors the sources, they are closed when exhausted
+     * @param pw the PrintWriter to write the table to
+     * @throws IOException if reading fails
+     */
+    static void merge(@NotNull List<String> names, @NotNull List<Cursor> cursors, @NotNull PrintWriter pw) throws IOException {
+        final int columns = names.size();
+        printHeader(pw, names);
+        merge(columns, cursors, (tag, present, deprecated, count) -> printRow(pw, tag, columns, i -> present[i], i -> deprecated[i], count));
+        pw.flush();
+    }
+
+    /**
+     * Merge sorted sources, rows are passed to the handler in tag order
+     * 
+     * A column can have more than one source, and a source can contain the same tag more than once.
+     * 
+     * @param columns the number of columns
+     * @param cursors the sources, they are closed when exhausted
+     * @param handler the RowHandler
+     * @throws IOException if reading fails
+     */
+    static void merge(int columns, @NotNull List<Cursor> cursors, @NotNull RowHandler handler) throws IOException {
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(Math.max(1, cursors.size()), (c1, c2) -> c1.tag.compareTo(c2.tag));
+        for (Cursor cursor : cursors) {
+            advance(cursor, queue);
+        }
+        boolean[] present = new boolean[columns];
+        boolean[] deprecated = new boolean[columns];
+        while (!queue.isEmpty()) {
+            String tag = queue.peek().tag;
+            Arrays.fill(present, false);
+            Arrays.fill(deprecated, false);
+            int count = TagStats.NO_COUNT;
+            while (!queue.isEmpty() && tag.equals(queue.peek().tag)) {
+                Cursor cursor = queue.poll();
+                present[cursor.column] = true;
+                deprecated[cursor.column] |= cursor.deprecated;
+                count = Math.max(count, cursor.count);
+                advance(cursor, queue);
+            }
+            handler.row(tag, present, deprecated, count);
+        }
+    }
+
+    /**
+     * Print the header line of the merged table
+     * 
+     * @param pw the PrintWriter
+     * @param names the column names
+     */
+    static void printHeader(@NotNull PrintWriter pw, @NotNull List<String> names) {
+        pw.print("Tag");
+        for (String name : names) {
+            pw.print(",");
+            pw.print(name);
+        }
+        pw.print(",Count");
+        pw.println();
+    }
+
+    /**
+     * Print one row of the merged table
+     * 
+     * @param pw the PrintWriter
+     * @param tag the tag
+     * @param columns the number of columns
+     * @param present true for each column that contains the tag
+     * @param deprecated true for each column where the tag is deprecated
+     * @param count the maximum count or TagStats.NO_COUNT
+     */
+    static void printRow(@NotNull PrintWriter pw, @NotNull String tag, int columns, @NotNull IntPredicate present, @NotNull IntPredicate deprecated,
+            int count) {
+        pw.print(tag);
+        for (int i = 0; i < columns; i++) {
+            pw.print(",");
+            if (present.test(i)) {
+                pw.print(deprecated.test(i) ? "D" : "X");
+            }
+        }
+        pw.print(",");
+        // historically tags without any count are output with "null"
+        pw.println(count != TagStats.NO_COUNT ? Integer.toString(count) : "null");
+    }
+
+    /**
+     * Move a cursor to its next tag and queue it, or close it if it is exhausted
+     * 
+     * @param cursor the Cursor
+     * @param queue the queue
+     * @throws IOException if reading fails
+     */
+    private static void advance(@NotNull Cursor cursor, @NotNull PriorityQueue<Cursor> queue) throws IOException {
+        if (cursor.next()) {
+            queue.add(cursor);
+        } else {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Open a file in the PresetStats format for merging
+     * 
+     * If the file is not sorted by tag it is split in to sorted runs of at most runSize lines that are written to
+     * temporary files.
+     * 
+     * @param column the column of the merged table
+     * @param file the file
+     * @param runSize the maximum number of lines that are sorted in memory
+     * @return a List of Cursors
+     * @throws IOException if reading or writing fails
+     */
+    @NotNull
+    static List<Cursor> open(int column, @NotNull Path file, int runSize) throws IOException {
+        List<Cursor> cursors = new ArrayList<>();
+        if (isSorted(file)) {
+            cursors.add(new LineCursor(column, file, false));
+            return cursors;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            List<String> run = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                run.add(line);
+                if (run.size() == runSize) {
+                    cursors.add(writeRun(column, run));
+                }
+            }
+            if (!run.isEmpty()) {
+                cursors.add(writeRun(column, run));
+            }
+        } catch (IOException e) {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+            throw e;
+        }
+        return cursors;
+    }
+
+    /**
+     * Sort lines and write them to a temporary file
+     * 
+     * @param column the column of the merged table
+     * @param run the lines, cleared afterwards
+     * @return a Cursor for the temporary file
+     * @throws IOException if writing fails
+     */
+    @NotNull
+    private static Cursor writeRun(int column, @NotNull List<String> run) throws IOException {
+        run.sort(LINE_ORDER);
+        Path temp = Files.createTempFile("merge", ".txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (String line : run) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+        run.clear();
+        return new LineCursor(column, temp, true);
+    }
+
+    /**
+     * Check if a file in the PresetStats format is sorted by tag
+     * 
+     * @param file the file
+     * @return true if sorted
+     * @throws IOException if reading fails
+     */
+    static boolean isSorted(@NotNull Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String previous = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String tag = TagStats.tag(line);
+                if (previous != null && previous.compareTo(tag) > 0) {
+                    return false;
+                }
+                previous = tag;
+            }
+        }
+        return true;
+    }
 
     public static void main(String[] args) {
         // defaults
         OutputStreamWriter os = null;
         PrintWriter pw = null;
         String[] input = null;
+        String query = null;
         try {
             os = new OutputStreamWriter(System.out, "UTF-8");
 
@@ -50,10 +393,14 @@ public class MergePresetStats {
 
             Option outputFile = Option.builder("o").longOpt(OUTPUT).hasArg().desc("output stats file, default: standard out").build();
 
+            Option queryOpt = Option.builder("q").longOpt(QUERY).hasArg()
+                    .desc("only output the tags matching a set query on the inputs, for example \"a.txt & b.txt & !c.txt\"").build();
+
             Options options = new Options();
 
             options.addOption(inputFile);
             options.addOption(outputFile);
+            options.addOption(queryOpt);
 
             CommandLineParser parser = new DefaultParser();
             try {
@@ -66,6 +413,7 @@ public class MergePresetStats {
                     String output = line.getOptionValue(OUTPUT);
                     os = new OutputStreamWriter(new FileOutputStream(output), "UTF-8");
                 }
+                query = line.getOptionValue(QUERY);
             } catch (ParseException exp) {
                 HelpFormatter formatter = new HelpFormatter();
                 formatter.printHelp("MergedPresetStats", options);
@@ -75,71 +423,26 @@ public class MergePresetStats {
                 return;
             }
 
-            Map<String, boolean[]> mergedStats = new HashMap<>();
-            Map<String, Integer> mergedCounts = new HashMap<>();
-            Map<String, boolean[]> mergedDeprecated = new HashMap<>();
+            List<Cursor> cursors = new ArrayList<>();
             for (int i = 0; i < input.length; i++) {
-
-                List<String> list = null;
                 try {
-                    list = Files.readAllLines(Paths.get(input[i]), StandardCharsets.UTF_8);
+                    cursors.addAll(open(i, Paths.get(input[i]), RUN_SIZE));
                 } catch (MalformedInputException mie) {
                     System.out.println("Exception reading " + input[i]);
                     mie.printStackTrace();
-                    continue;
-                }
-                for (String line : list) {
-                    String[] v = line.split(",");
-                    boolean[] stats = mergedStats.get(v[0]);
-                    if (stats == null) {
-                        stats = new boolean[input.length];
-                        mergedStats.put(v[0], stats);
-                    }
-                    stats[i] = true;
-                    Integer count = mergedCounts.get(v[0]);
-                    try {
-                        Integer countValue = Integer.valueOf(v[1]);
-                        if (count == null || countValue > count) {
-                            mergedCounts.put(v[0], countValue);
-                        }
-                    } catch (Exception e) {
-                        System.out.println(e.getMessage());
-                    }
-                    if (v.length == 3 && "D".equals(v[2])) {
-                        boolean[] deprecated = mergedDeprecated.get(v[0]);
-                        if (deprecated == null) {
-                            deprecated = new boolean[input.length];
-                            mergedDeprecated.put(v[0], deprecated);
-                        }
-                        deprecated[i] = true;
-                    }
                 }
             }
             pw = new PrintWriter(os);
-            pw.print("Tag");
-            for (String h : input) {
-                pw.print(",");
-                pw.print(h);
-            }
-            pw.print(",Count");
-            pw.println();
-            for (Entry<String, boolean[]> tags : mergedStats.entrySet()) {
-                String key = tags.getKey();
-                pw.print(key);
-                for (int i = 0; i < input.length; i++) {
-                    boolean b = tags.getValue()[i];
-                    pw.print(",");
-                    if (b) {
-                        boolean[] deprecated = mergedDeprecated.get(key);
-                        if (deprecated != null && deprecated[i]) {
-                            pw.print("D");
-                        } else {
-                            pw.print("X");
-                        }
-                    }
+            if (query != null) {
+                TagMatrix matrix = new TagMatrix(Arrays.asList(input));
+                merge(input.length, cursors, matrix);
+                try {
+                    matrix.write(pw, matrix.query(query));
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e.getMessage());
                 }
-                pw.print(",");
-                pw.println(mergedCounts.get(key));
+            } else {
+                merge(Arrays.asList(input), cursors, pw);
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -1,14 +1,14 @@
 package ch.poole.osm.presetutils;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -40,7 +40,6 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
-import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
 
 /**
@@ -74,6 +73,10 @@ public class NsiStats {
 
     private static final String NSI_FILE = "name-suggestions.min.json";
 
+    private static final String[] NSI_NAMES = { NSI_FIELD, PROPERTIES_FIELD, ITEMS_FIELD, DISPLAY_NAME_FIELD, LOCATION_SET_FIELD, INCLUDE_FIELD,
+            EXCLUDE_FIELD, TAGS_FIELD, "id", "matchNames", "matchTags", "path", "preserveTags", "exclude", "_meta", "version", "generated", "url",
+            "hash" };
+
     public class TagMap extends TreeMap<String, String> {
 
         private static final long serialVersionUID = 1L;
@@ -224,10 +227,10 @@ public class NsiStats {
     /**
      * Read the NSI configuration from assets
      * 
-     * @param is InputStream to read from
+     * @param input JsonInput to read from
      */
-    private void readNSI(@NotNull InputStream is) {
-        try (JsonReader reader = new JsonReader(new InputStreamReader(is))) {
+    private void readNSI(@NotNull JsonInput input) {
+        try (JsonInput reader = input) {
             reader.beginObject(); // top level
             while (reader.hasNext()) {
                 if (NSI_FIELD.equals(reader.nextName())) {
@@ -309,11 +312,11 @@ public class NsiStats {
     /**
      * Read and filter tags
      * 
-     * @param reader the JsonReader
+     * @param reader the JsonInput
      * @param tags the map to save the tags in
      * @throws IOException if reading or parsing fails
      */
-    private void readTags(@NotNull JsonReader reader, @NotNull TagMap tags) throws IOException {
+    private void readTags(@NotNull JsonInput reader, @NotNull TagMap tags) throws IOException {
         reader.beginObject();
         while (reader.hasNext()) {
             String k = reader.nextName();
@@ -326,12 +329,12 @@ public class NsiStats {
     /**
      * Read a JsonArray of string in to a String[]
      * 
-     * @param reader the JsonReader
+     * @param reader the JsonInput
      * @return a String[] with the JSON strings
      * @throws IOException on IO and parse errors
      */
     @Nullable
-    private List<String> readStringArray(@NotNull JsonReader reader) throws IOException {
+    private List<String> readStringArray(@NotNull JsonInput reader) throws IOException {
         boolean valid = true;
         List<String> result = new ArrayList<>();
         reader.beginArray();
@@ -415,6 +418,7 @@ public class NsiStats {
     public static void main(String[] args) {
         // defaults
         InputStream is = System.in;
+        String input = null;
         OutputStreamWriter os = null;
 
         try {
@@ -437,8 +441,10 @@ public class NsiStats {
                 CommandLine line = parser.parse(options, args);
                 if (line.hasOption(INPUT)) {
                     // initialise the member variable
-                    String input = line.getOptionValue(INPUT);
-                    is = new FileInputStream(input);
+                    input = line.getOptionValue(INPUT);
+                    if (!new File(input).exists()) {
+                        throw new FileNotFoundException(input);
+                    }
                 }
                 if (line.hasOption(OUTPUT)) {
                     String output = line.getOptionValue(OUTPUT);
@@ -453,7 +459,7 @@ public class NsiStats {
                 return;
             }
 
-            nsiStats.readNSI(is);
+            nsiStats.readNSI(input != null ? JsonInputFactory.open(Paths.get(input), NSI_NAMES) : JsonInputFactory.open(is, NSI_NAMES));
             nsiStats.dumpStats(new PrintWriter(os));
 
         } catch (IOException e) {
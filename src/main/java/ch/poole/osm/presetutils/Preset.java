@@ -0,0 +1,393 @@
+package ch.poole.osm.presetutils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Immutable in memory representation of a JOSM/Vespucci format preset
+ *
+ * The model is built once by {@link PresetParser} and can then be consumed directly or replayed as SAX events to the
+ * existing handlers of the tools.
+ *
+ * @author Simon Poole
+ *
+ */
+public final class Preset {
+
+    private static final String   CDATA       = "CDATA";
+    private static final String[] NO_ATTR     = new String[0];
+    private static final Element[] NO_CHILDREN = new Element[0];
+
+    /**
+     * A single element of the preset
+     */
+    public static final class Element {
+        private final ElementType type;
+        private final String      name;
+        private final String[]    attributes;
+        private final Element[]   children;
+        private final int         line;
+        private final int         endLine;
+        private final int         hash;
+
+        /**
+         * Construct a new Element
+         *
+         * @param name the element name
+         * @param attributes alternating attribute names and values
+         * @param children the child elements
+         * @param line the line the element starts on
+         * @param endLine the line the element ends on
+         */
+        Element(@NotNull String name, @Nullable String[] attributes, @Nullable Element[] children, int line, int endLine) {
+            this(ElementType.fromName(name), name, attributes, children, line, endLine);
+        }
+
+        /**
+         * Construct a new Element for which the type is already known
+         *
+         * @param type the ElementType
+         * @param name the element name
+         * @param attributes alternating attribute names and values
+         * @param children the child elements
+         * @param line the line the element starts on
+         * @param endLine the line the element ends on
+         */
+        Element(@NotNull ElementType type, @NotNull String name, @Nullable String[] attributes, @Nullable Element[] children, int line, int endLine) {
+            this.type = type;
+            this.name = name;
+            this.attributes = attributes == null || attributes.length == 0 ? NO_ATTR : attributes;
+            this.children = children == null || children.length == 0 ? NO_CHILDREN : children;
+            this.line = line;
+            this.endLine = endLine;
+            // children are constructed first so their hashes are already available
+            // attribute order is not significant in XML, so the pairs are summed up
+            int attributeHash = 0;
+            for (int i = 0; i < this.attributes.length; i += 2) {
+                attributeHash += 31 * this.attributes[i].hashCode() + this.attributes[i + 1].hashCode();
+            }
+            int h = 31 * name.hashCode() + attributeHash;
+            for (Element child : this.children) {
+                h = 31 * h + child.hash;
+            }
+            hash = h;
+        }
+
+        /**
+         * @return the type
+         */
+        @NotNull
+        public ElementType getType() {
+            return type;
+        }
+
+        /**
+         * @return the element name
+         */
+        @NotNull
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Get the value of an attribute
+         *
+         * @param attrName the attribute name
+         * @return the value or null if not present
+         */
+        @Nullable
+        public String getAttribute(@NotNull String attrName) {
+            for (int i = 0; i < attributes.length; i += 2) {
+                if (attributes[i].equals(attrName)) {
+                    return attributes[i + 1];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the number of attributes
+         */
+        public int getAttributeCount() {
+            return attributes.length / 2;
+        }
+
+        /**
+         * @param index the attribute index
+         * @return the name of the attribute
+         */
+        @NotNull
+        public String getAttributeName(int index) {
+            return attributes[index * 2];
+        }
+
+        /**
+         * @param index the attribute index
+         * @return the value of the attribute
+         */
+        @NotNull
+        public String getAttributeValue(int index) {
+            return attributes[index * 2 + 1];
+        }
+
+        /**
+         * @return an unmodifiable view of the child elements
+         */
+        @NotNull
+        public List<Element> getChildren() {
+            return Collections.unmodifiableList(Arrays.asList(children));
+        }
+
+        /**
+         * @return the number of child elements
+         */
+        public int getChildCount() {
+            return children.length;
+        }
+
+        /**
+         * @param index the index
+         * @return the child element
+         */
+        @NotNull
+        public Element getChild(int index) {
+            return children[index];
+        }
+
+        /**
+         * @return the line the element starts on in the source
+         */
+        public int getLine() {
+            return line;
+        }
+
+        /**
+         * @return the line the element ends on in the source
+         */
+        public int getEndLine() {
+            return endLine;
+        }
+
+        /**
+         * Get a hash of the name, attributes and children of the element, line numbers and the order of the attributes are
+         * not included
+         *
+         * Two elements with the same contents in different versions of a preset have the same hash, the hash is
+         * computed when the element is constructed.
+         *
+         * @return the hash
+         */
+        public int contentHash() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return name + "@" + line;
+        }
+    }
+
+    private final String               source;
+    private final Element              root;
+    private final Map<String, Element> chunks = new LinkedHashMap<>();
+    private final List<Element>        groups = new ArrayList<>();
+    private final List<Element>        items  = new ArrayList<>();
+    private int                        elementCount;
+
+    /**
+     * Construct a new Preset and index it
+     *
+     * @param source name of the source, typically the file name
+     * @param root the root element
+     */
+    Preset(@NotNull String source, @NotNull Element root) {
+        this.source = source;
+        this.root = root;
+        index(root);
+    }
+
+    /**
+     * Index groups, items and chunks
+     *
+     * @param element the current element
+     */
+    private void index(@NotNull Element element) {
+        elementCount++;
+        switch (element.type) {
+        case GROUP:
+            groups.add(element);
+            break;
+        case ITEM:
+            items.add(element);
+            break;
+        case CHUNK:
+            String id = element.getAttribute(PresetConstants.ID);
+            if (id != null) {
+                chunks.put(id, element);
+            }
+            break;
+        default:
+            // nothing
+        }
+        for (Element child : element.children) {
+            index(child);
+        }
+    }
+
+    /**
+     * @return the name of the source
+     */
+    @NotNull
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return the root element
+     */
+    @NotNull
+    public Element getRoot() {
+        return root;
+    }
+
+    /**
+     * Get a chunk
+     *
+     * @param id the chunk id
+     * @return the chunk element or null if not found
+     */
+    @Nullable
+    public Element getChunk(@NotNull String id) {
+        return chunks.get(id);
+    }
+
+    /**
+     * @return an unmodifiable map of chunk id to chunk element in document order
+     */
+    @NotNull
+    public Map<String, Element> getChunks() {
+        return Collections.unmodifiableMap(chunks);
+    }
+
+    /**
+     * @return an unmodifiable list of all groups in document order
+     */
+    @NotNull
+    public List<Element> getGroups() {
+        return Collections.unmodifiableList(groups);
+    }
+
+    /**
+     * @return an unmodifiable list of all items in document order
+     */
+    @NotNull
+    public List<Element> getItems() {
+        return Collections.unmodifiableList(items);
+    }
+
+    /**
+     * @return the total number of elements
+     */
+    public int getElementCount() {
+        return elementCount;
+    }
+
+    /**
+     * Replay the preset as SAX events, the Locator passed to the handler reports the original line numbers
+     *
+     * @param handler the ContentHandler
+     * @throws SAXException if the handler throws
+     */
+    public void replay(@NotNull ContentHandler handler) throws SAXException {
+        ReplayLocator locator = new ReplayLocator(source);
+        handler.setDocumentLocator(locator);
+        handler.startDocument();
+        replay(handler, root, new AttributesImpl(), locator);
+        handler.endDocument();
+    }
+
+    /**
+     * Replay a single element and its children without the document events, the element doesn't need to be part of
+     * this preset, for example an element returned by {@link ChunkExpander}
+     *
+     * @param handler the ContentHandler
+     * @param element the element
+     * @throws SAXException if the handler throws
+     */
+    void replay(@NotNull ContentHandler handler, @NotNull Element element) throws SAXException {
+        replay(handler, element, new AttributesImpl(), new ReplayLocator(source));
+    }
+
+    /**
+     * Replay an element and its children
+     *
+     * @param handler the ContentHandler
+     * @param element the current element
+     * @param attr re-usable Attributes
+     * @param locator the Locator
+     * @throws SAXException if the handler throws
+     */
+    private static void replay(@NotNull ContentHandler handler, @NotNull Element element, @NotNull AttributesImpl attr, @NotNull ReplayLocator locator)
+            throws SAXException {
+        attr.clear();
+        String[] attributes = element.attributes;
+        for (int i = 0; i < attributes.length; i += 2) {
+            attr.addAttribute("", "", attributes[i], CDATA, attributes[i + 1]);
+        }
+        locator.line = element.line;
+        handler.startElement("", "", element.name, attr);
+        for (Element child : element.children) {
+            replay(handler, child, attr, locator);
+        }
+        locator.line = element.endLine;
+        handler.endElement("", "", element.name);
+    }
+
+    /**
+     * Locator that reports the line numbers stored in the model
+     */
+    private static final class ReplayLocator implements Locator {
+        private final String systemId;
+        private int          line;
+
+        /**
+         * Construct a new Locator
+         *
+         * @param systemId the system id to report
+         */
+        ReplayLocator(@NotNull String systemId) {
+            this.systemId = systemId;
+        }
+
+        @Override
+        public String getPublicId() {
+            return null;
+        }
+
+        @Override
+        public String getSystemId() {
+            return systemId;
+        }
+
+        @Override
+        public int getLineNumber() {
+            return line;
+        }
+
+        @Override
+        public int getColumnNumber() {
+            return -1;
+        }
+    }
+}
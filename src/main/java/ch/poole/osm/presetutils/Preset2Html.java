@@ -10,11 +10,8 @@ import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.HashMap;
-import java.util.Map;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -40,7 +37,6 @@ public class Preset2Html {
     private static final String TRUE                       = "true";
     private static final String LIST_ENTRY_ELEMENT         = "list_entry";
     private static final String REFERENCE_ELEMENT          = "reference";
-    private static final String ROLE_ELEMENT               = "role";
     private static final String PRESET_LINK_ELEMENT        = "preset_link";
     private static final String TEXT_ELEMENT               = "text";
     private static final String CHECK_ELEMENT              = "check";
@@ -56,7 +52,6 @@ public class Preset2Html {
     private static final String ITEM_ELEMENT               = "item";
     private static final String DEPRECATED_ATTRIBUTE       = "deprecated";
     private static final String SHORTDESCRIPTION_ATTRIBUTE = "shortdescription";
-    private static final String ID_ATTRIBUTE               = "id";
     private static final String ICON_ATTRIBUTE             = "icon";
     private static final String REF_ATTRIBUTE              = "ref";
     private static final String KEY_ATTRIBUTE              = "key";
@@ -76,41 +71,68 @@ public class Preset2Html {
     int    groupCount   = 0;
 
     void parseXML(final InputStream input, final PrintWriter pw) throws ParserConfigurationException, SAXException, IOException {
-        SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
-        pw.write(
-                "<?xml version='1.0' encoding='utf-8' ?><!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\" \"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\">");
-        pw.write("<html xmlns=\"http://www.w3.org/1999/xhtml\">");
-        pw.write("<head>");
-        pw.write("<meta http-equiv=\"Content-Type\" content=\"text/html; charset=utf-8\"/>");
-        pw.write("<link rel=\"stylesheet\" href=\"website/preset.css\" type=\"text/css\" />");
-        pw.write("</head><body>");
-
-        saxParser.parse(input, new DefaultHandler() {
-
-            String              group             = null;
-            String              preset            = null;
-            String              regions           = null;
-            String              chunk             = null;
-            Map<String, String> chunkKeys         = new HashMap<>();
-            Map<String, String> chunkOptionalKeys = new HashMap<>();
-            Map<String, String> chunkLinks        = new HashMap<>();
-            Map<String, String> chunkRoles        = new HashMap<>();
-            String              icon              = null;
-            String              icon2             = null;
-            String              keys              = null;
-            String              optionalKeys      = null;
-            String              links             = null;
-            String              roles             = null;
-            boolean             optional          = false;
-            StringBuilder       buffer            = new StringBuilder();
-            boolean             deprecated        = false;
-            boolean             separator         = false;
+        process(PresetParser.parse(input, inputFilename), pw);
+    }
+
+    /**
+     * Generate the HTML for an already parsed preset
+     * 
+     * The chunk references are replaced by the contents of the chunks with ChunkExpander before the model is replayed,
+     * so the handler sees the fields of the chunks in the items.
+     * 
+     * @param preset the Preset
+     * @param pw the output PrintWriter
+     * @throws SAXException if processing fails
+     */
+    void process(final Preset preset, final PrintWriter pw) throws SAXException {
+        ChunkExpander expander = new ChunkExpander(preset);
+        new Preset(preset.getSource(), expander.expand(preset.getRoot())).replay(getHandler(pw, preset));
+    }
+
+    /**
+     * Get the handler that generates the HTML from a preset with expanded chunk references
+     * 
+     * @param pw the output PrintWriter
+     * @param original the Preset before expansion, used to report references to missing chunks
+     * @return a DefaultHandler
+     */
+    private DefaultHandler getHandler(final PrintWriter pw, final Preset original) {
+        return new DefaultHandler() {
+
+            String        group        = null;
+            String        preset       = null;
+            String        regions      = null;
+            boolean       inChunk      = false;
+            String        icon         = null;
+            String        icon2        = null;
+            String        keys         = null;
+            String        optionalKeys = null;
+            String        links        = null;
+            int           optional     = 0;
+            StringBuilder buffer       = new StringBuilder();
+            boolean       deprecated   = false;
+            boolean       separator    = false;
+
+            @Override
+            public void startDocument() {
+                pw.write(
+                        "<?xml version='1.0' encoding='utf-8' ?><!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\" \"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\">");
+                pw.write("<html xmlns=\"http://www.w3.org/1999/xhtml\">");
+                pw.write("<head>");
+                pw.write("<meta http-equiv=\"Content-Type\" content=\"text/html; charset=utf-8\"/>");
+                pw.write("<link rel=\"stylesheet\" href=\"website/preset.css\" type=\"text/css\" />");
+                pw.write("</head><body>");
+            }
 
             /**
              * ${@inheritDoc}.
              */
             @Override
             public void startElement(String uri, String localName, String name, Attributes attr) throws SAXException {
+                if (inChunk) {
+                    // the contents of the chunks are output with the items that reference them
+                    return;
+                }
                 switch (name) {
                 case PRESETS_ELEMENT:
                     String shortdescription = attr.getValue(SHORTDESCRIPTION_ATTRIBUTE);
@@ -166,22 +188,22 @@ public class Preset2Html {
                     }
                     break;
                 case CHUNK_ELEMENT:
-                    chunk = attr.getValue(ID_ATTRIBUTE);
-                    keys = "";
+                    inChunk = true;
                     break;
                 case SEPARATOR_ELEMENT:
                     break;
                 case LABEL_ELEMENT:
                     break;
                 case OPTIONAL_ELEMENT:
-                    optional = true;
+                    // optional sections from chunks may be nested in an optional section of the item
+                    optional++;
                     break;
                 case KEY_ELEMENT:
                 case MULTISELECT_ELEMENT:
                 case COMBO_ELEMENT:
                 case CHECK_ELEMENT:
                 case TEXT_ELEMENT:
-                    if (!optional) {
+                    if (optional == 0) {
                         keys = addTags(keys, attr);
                     } else {
                         optionalKeys = addTags(optionalKeys, attr);
@@ -197,62 +219,10 @@ public class Preset2Html {
                         }
                     }
                     break;
-                case ROLE_ELEMENT:
-                    String role = attr.getValue(KEY_ATTRIBUTE);
-                    if (role != null && !"".equals(role)) {
-                        if (roles == null) {
-                            roles = role;
-                        } else {
-                            roles = roles + "<BR>" + role;
-                        }
-                    }
-                    break;
                 case REFERENCE_ELEMENT:
+                    // only references that couldn't be expanded are left, cycles are reported by CheckPreset
                     String ref = attr.getValue(REF_ATTRIBUTE);
-                    String refKeys = chunkKeys.get(ref);
-                    if (refKeys != null) {
-                        if (!optional) {
-                            if (keys != null) {
-                                keys = keys + refKeys;
-                            } else {
-                                keys = refKeys;
-                            }
-                        } else {
-                            if (optionalKeys != null) {
-                                optionalKeys = optionalKeys + refKeys;
-                            } else {
-                                optionalKeys = refKeys;
-                            }
-                        }
-                    }
-                    String refOptionalKeys = chunkOptionalKeys.get(ref);
-                    if (refOptionalKeys != null) {
-                        if (optionalKeys != null) {
-                            optionalKeys = optionalKeys + refOptionalKeys;
-                        } else {
-                            optionalKeys = refOptionalKeys;
-                        }
-                    }
-
-                    String refLinks = chunkLinks.get(ref);
-                    if (refLinks != null) {
-                        if (links != null) {
-                            links = links + refLinks;
-                        } else {
-                            links = refLinks;
-                        }
-                    }
-                    String refRoles = chunkRoles.get(ref);
-                    if (refRoles != null) {
-                        if (roles != null) {
-                            roles = roles + refLinks;
-                        } else {
-                            roles = refRoles;
-                        }
-                    }
-
-                    if ((refKeys == null || "".equals(refKeys)) && (refOptionalKeys == null || "".equals(refOptionalKeys))
-                            && (refLinks == null || "".equals(refLinks)) && (refRoles == null || "".equals(refRoles))) {
+                    if (ref == null || original.getChunk(ref) == null) {
                         System.err.println(ref + " was not found for preset " + preset);
                     }
                     break;
@@ -296,6 +266,10 @@ public class Preset2Html {
 
             @Override
             public void endElement(String uri, String localMame, String name) throws SAXException {
+                if (inChunk) {
+                    inChunk = !CHUNK_ELEMENT.equals(name);
+                    return;
+                }
                 switch (name) {
                 case GROUP_ELEMENT:
                     group = null;
@@ -304,7 +278,7 @@ public class Preset2Html {
                     buffer.append("<div style=\"clear: both; margin-left: " + ((groupCount - 1) * GROUP_INDENT) + "px\"></div>");
                     break;
                 case OPTIONAL_ELEMENT:
-                    optional = false;
+                    optional--;
                     break;
                 case ITEM_ELEMENT:
                     if (preset != null) {
@@ -334,28 +308,6 @@ public class Preset2Html {
                     optionalKeys = null;
                     links = null;
                     break;
-                case CHUNK_ELEMENT:
-                    if (chunk != null) {
-                        if (keys != null) {
-                            chunkKeys.put(chunk, keys);
-                        }
-                        if (optionalKeys != null) {
-                            chunkOptionalKeys.put(chunk, optionalKeys);
-                        }
-                        if (links != null) {
-                            chunkLinks.put(chunk, links);
-                        }
-                        if (roles != null) {
-                            chunkRoles.put(chunk, roles);
-                        }
-                    } else {
-                        System.err.println("chunk null");
-                    }
-                    keys = null;
-                    optionalKeys = null;
-                    chunk = null;
-                    links = null;
-                    break;
                 case SEPARATOR_ELEMENT:
                     separator = true;
                     break;
@@ -391,7 +343,7 @@ public class Preset2Html {
                 pw.write("<div class=\"footer\">Page generated by Preset2Html, Simon Poole</body>");
                 pw.flush();
             }
-        });
+        };
     }
 
     private void setVespucciLink(String optionValue) {
@@ -410,11 +362,12 @@ public class Preset2Html {
         // defaults
         InputStream is = System.in;
         OutputStream os = System.out;
+        String[] inputs = null;
         Preset2Html p = new Preset2Html();
         p.setInputFilename("stdin");
 
         // arguments
-        Option inputFile = Option.builder("i").longOpt("input").hasArg().desc("input preset file, default: standard in").build();
+        Option inputFile = Option.builder("i").longOpt("input").hasArgs().desc("input preset files or directories, default: standard in").build();
 
         Option outputFile = Option.builder("o").longOpt("output").hasArg().desc("output .html file, default: standard out").build();
 
@@ -436,9 +389,12 @@ public class Preset2Html {
                 CommandLine line = parser.parse(options, args);
                 if (line.hasOption("input")) {
                     // initialise the member variable
-                    String input = line.getOptionValue("input");
-                    p.setInputFilename(input);
-                    is = new FileInputStream(input);
+                    inputs = line.getOptionValues("input");
+                    if (PresetSet.isSingleFile(inputs)) {
+                        p.setInputFilename(inputs[0]);
+                        is = new FileInputStream(inputs[0]);
+                        inputs = null;
+                    }
                 }
                 if (line.hasOption("output")) {
                     String output = line.getOptionValue("output");
@@ -460,7 +416,13 @@ public class Preset2Html {
             }
 
             try {
-                p.parseXML(is, new PrintWriter(os));
+                if (inputs != null) {
+                    Preset merged = PresetSet.parse(inputs).merge();
+                    p.setInputFilename(merged.getSource());
+                    p.process(merged, new PrintWriter(os));
+                } else {
+                    p.parseXML(is, new PrintWriter(os));
+                }
             } catch (ParserConfigurationException | SAXException | IOException e) {
                 e.printStackTrace();
             }
@@ -16,10 +16,7 @@ import java.util.Locale;
 import java.util.Map.Entry;
 import java.util.regex.Pattern;
 
-import javax.xml.XMLConstants;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -32,6 +29,7 @@ import org.jetbrains.annotations.Nullable;
 import org.xml.sax.Attributes;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 import org.xml.sax.helpers.AttributesImpl;
 import org.xml.sax.helpers.DefaultHandler;
 
@@ -54,12 +52,13 @@ public class Preset2Pot {
 
     LinkedHashMap<String, MultiHashMap<String, String>> msgs = new LinkedHashMap<>();
 
-    String    inputFilename;
-    MyHandler handler;
+    String     inputFilename;
+    MyHandler  handler;
+    StringPool pool = new StringPool();
 
     @Nullable
     public Locator getLocator() {
-        return handler.locator;
+        return handler != null ? handler.locator : null;
     }
 
     class MyHandler extends DefaultHandler {
@@ -152,7 +151,7 @@ public class Preset2Pot {
                 }
                 for (String s : displayValues.split(Pattern.quote(delimiter))) {
                     if (s != null && !"".equals(s)) {
-                        msgs.get(context).add(s, inputFilename + ":" + (locator != null ? locator.getLineNumber() : 0) + "(" + tag + ":" + valueAttr
+                        msgs.get(context).add(pool.intern(s), inputFilename + ":" + (locator != null ? locator.getLineNumber() : 0) + "(" + tag + ":" + valueAttr
                                 + presetContext() + (key != null ? "|" + keyName + ":" + key : "") + ")");
                     }
                 }
@@ -265,11 +264,52 @@ public class Preset2Pot {
     }
 
     void parseXML(InputStream input) throws ParserConfigurationException, SAXException, IOException {
-        SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
-        saxParser.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-        saxParser.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+        process(PresetParser.parse(input, inputFilename, pool));
+    }
+
+    /**
+     * Extract the strings from an already parsed preset
+     * 
+     * @param preset the Preset
+     * @throws SAXException if processing fails
+     */
+    void process(Preset preset) throws SAXException {
+        preset.replay(getHandler());
+    }
+
+    /**
+     * Extract the strings from a set of presets in to one catalog, references point to the individual files
+     *
+     * @param presets the PresetSet
+     * @throws SAXException if processing fails
+     */
+    void process(PresetSet presets) throws SAXException {
+        for (Preset preset : presets.getPresets()) {
+            inputFilename = preset.getSource();
+            process(preset);
+        }
+    }
+
+    /**
+     * Add the strings of a catalog that was built separately, for example for one file of a preset set
+     *
+     * @param other the other Preset2Pot
+     */
+    void add(Preset2Pot other) {
+        for (Entry<String, MultiHashMap<String, String>> entry : other.msgs.entrySet()) {
+            msgs.computeIfAbsent(entry.getKey(), k -> new MultiHashMap<>(true)).addAll(entry.getValue());
+        }
+        inputFilename = other.inputFilename;
+    }
+
+    /**
+     * Get a new handler that extracts the strings
+     * 
+     * @return a DefaultHandler
+     */
+    DefaultHandler getHandler() {
         handler = new MyHandler();
-        saxParser.parse(input, handler);
+        return handler;
     }
 
     void dump2Pot(PrintWriter pw) {
@@ -323,6 +363,7 @@ public class Preset2Pot {
         // defaults
         InputStream is = System.in;
         OutputStreamWriter os = null;
+        String[] inputs = null;
         try { // NOSONAR
             os = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
 
@@ -330,7 +371,7 @@ public class Preset2Pot {
             p.setInputFilename("stdin");
 
             // arguments
-            Option inputFile = Option.builder("i").longOpt(INPUT_OPT).hasArg().desc("input preset file, default: standard in").build();
+            Option inputFile = Option.builder("i").longOpt(INPUT_OPT).hasArgs().desc("input preset files or directories, default: standard in").build();
 
             Option outputFile = Option.builder("o").longOpt(OUTPUT_OPT).hasArg().desc("output .pot file, default: standard out").build();
 
@@ -345,9 +386,12 @@ public class Preset2Pot {
                 CommandLine line = parser.parse(options, args);
                 if (line.hasOption(INPUT_OPT)) {
                     // initialise the member variable
-                    String input = line.getOptionValue(INPUT_OPT);
-                    p.setInputFilename(input);
-                    is = new FileInputStream(input);
+                    inputs = line.getOptionValues(INPUT_OPT);
+                    if (PresetSet.isSingleFile(inputs)) {
+                        p.setInputFilename(inputs[0]);
+                        is = new FileInputStream(inputs[0]);
+                        inputs = null;
+                    }
                 }
                 if (line.hasOption(OUTPUT_OPT)) {
                     String output = line.getOptionValue(OUTPUT_OPT);
@@ -363,12 +407,21 @@ public class Preset2Pot {
             }
 
             try {
-                p.parseXML(is);
+                if (inputs != null) {
+                    p.process(PresetSet.parse(inputs));
+                } else {
+                    p.parseXML(is);
+                }
                 p.dump2Pot(new PrintWriter(os));
             } catch (FileNotFoundException | ParserConfigurationException | UnsupportedEncodingException e) {
                 e.printStackTrace();
             } catch (SAXException e) {
-                System.err.println("Error at line " + p.getLocator().getLineNumber());
+                Locator locator = p.getLocator();
+                if (e instanceof SAXParseException) {
+                    System.err.println("Error at line " + ((SAXParseException) e).getLineNumber());
+                } else if (locator != null) {
+                    System.err.println("Error at line " + locator.getLineNumber());
+                }
                 e.printStackTrace();
             }
         } catch (IOException e) {
@@ -0,0 +1,290 @@
+package ch.poole.osm.presetutils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.jetbrains.annotations.NotNull;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Write a preset in a canonical form
+ *
+ * The canonical form has one tag per line without indentation, attributes are sorted by name with namespace
+ * declarations first, comments, processing instructions and text content are removed and elements without children
+ * are written as empty elements. Two files that only differ in formatting, comments or attribute order have the same
+ * canonical form, which makes it, or its SHA-256 digest, usable as a key for caching artifacts generated from a
+ * preset. The minified variant additionally strips attributes that are only of interest to preset authors and all line
+ * breaks.
+ *
+ * The output is written directly from the SAX events, memory use only depends on the nesting depth.
+ *
+ * Licence Apache 2.0
+ *
+ * @author Simon Poole
+ *
+ */
+public final class PresetCanonicalizer extends DefaultHandler {
+
+    private static final String INPUT_OPT  = "input";
+    private static final String OUTPUT_OPT = "output";
+    private static final String MINIFY_OPT = "minify";
+    private static final String KEY_OPT    = "key";
+
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+    private static final String XMLNS           = "xmlns";
+    private static final String DIGEST          = "SHA-256";
+
+    /**
+     * Attributes that editors don't use and that are dropped when minifying
+     */
+    static final Set<String> AUTHOR_ATTRIBUTES = Collections
+            .unmodifiableSet(new HashSet<>(Arrays.asList("xmlns:xsi", "xsi:schemaLocation", "xsi:noNamespaceSchemaLocation")));
+
+    private final Writer  writer;
+    private final boolean minify;
+    private boolean       pending = false;
+    private Integer[]     order   = new Integer[0];
+
+    /**
+     * Construct a new instance
+     *
+     * @param writer the Writer to write to
+     * @param minify if true strip author only attributes and line breaks
+     */
+    private PresetCanonicalizer(@NotNull Writer writer, boolean minify) {
+        this.writer = writer;
+        this.minify = minify;
+    }
+
+    /**
+     * Write the canonical form of a preset
+     *
+     * @param input the InputStream to read the preset from
+     * @param output the OutputStream, it is flushed but not closed
+     * @param minify if true strip author only attributes and line breaks
+     * @throws ParserConfigurationException on parser setup issues
+     * @throws SAXException on parsing issues
+     * @throws IOException on reading or writing issues
+     */
+    public static void canonicalize(@NotNull InputStream input, @NotNull OutputStream output, boolean minify)
+            throws ParserConfigurationException, SAXException, IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        PresetCanonicalizer canonicalizer = new PresetCanonicalizer(writer, minify);
+        writer.write(XML_DECLARATION);
+        canonicalizer.newLine();
+        try {
+            PresetParser.newSAXParser().parse(input, canonicalizer);
+        } catch (SAXException e) {
+            // IOExceptions from writing are wrapped by the callbacks
+            if (e.getException() instanceof IOException) {
+                throw (IOException) e.getException();
+            }
+            throw e;
+        }
+        writer.flush();
+    }
+
+    /**
+     * Get a key for a preset that only changes if the canonical form changes
+     *
+     * @param input the InputStream to read the preset from
+     * @return the hex encoded SHA-256 digest of the canonical form
+     * @throws ParserConfigurationException on parser setup issues
+     * @throws SAXException on parsing issues
+     * @throws IOException on reading issues
+     */
+    @NotNull
+    public static String key(@NotNull InputStream input) throws ParserConfigurationException, SAXException, IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(DIGEST);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (DigestOutputStream output = new DigestOutputStream(new NullOutputStream(), digest)) {
+            canonicalize(input, output, false);
+        }
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(String.format("%02x", b));
+        }
+        return key.toString();
+    }
+
+    /**
+     * An OutputStream that discards its output
+     */
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+            // discard
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            // discard
+        }
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attr) throws SAXException {
+        try {
+            closePending();
+            writer.write('<');
+            writer.write(qName);
+            for (int i : sort(attr)) {
+                String name = attr.getQName(i);
+                if (minify && AUTHOR_ATTRIBUTES.contains(name)) {
+                    continue;
+                }
+                writer.write(' ');
+                writer.write(name);
+                writer.write("=\"");
+                PresetWriter.escape(writer, attr.getValue(i));
+                writer.write('"');
+            }
+            pending = true;
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        try {
+            if (pending) {
+                writer.write("/>");
+                pending = false;
+            } else {
+                writer.write("</");
+                writer.write(qName);
+                writer.write('>');
+            }
+            newLine();
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    /**
+     * Finish a start tag that turned out to have children
+     *
+     * @throws IOException if writing fails
+     */
+    private void closePending() throws IOException {
+        if (pending) {
+            writer.write('>');
+            newLine();
+            pending = false;
+        }
+    }
+
+    /**
+     * Write a line break unless we are minifying
+     *
+     * @throws IOException if writing fails
+     */
+    private void newLine() throws IOException {
+        if (!minify) {
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * Get the attribute indices sorted by name with namespace declarations first
+     *
+     * @param attr the Attributes
+     * @return an array of indices, reused between calls
+     */
+    @NotNull
+    private Integer[] sort(@NotNull Attributes attr) {
+        int count = attr.getLength();
+        if (order.length != count) {
+            order = new Integer[count];
+        }
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            String nameA = attr.getQName(a);
+            String nameB = attr.getQName(b);
+            boolean nsA = isNamespaceDeclaration(nameA);
+            boolean nsB = isNamespaceDeclaration(nameB);
+            if (nsA != nsB) {
+                return nsA ? -1 : 1;
+            }
+            return nameA.compareTo(nameB);
+        });
+        return order;
+    }
+
+    /**
+     * @param name attribute name
+     * @return true if the attribute declares a namespace
+     */
+    private static boolean isNamespaceDeclaration(@NotNull String name) {
+        return name.equals(XMLNS) || name.startsWith(XMLNS + ":");
+    }
+
+    public static void main(String[] args) {
+        // arguments
+        Option inputFile = Option.builder("i").longOpt(INPUT_OPT).hasArg().required().desc("input preset file").build();
+        Option outputFile = Option.builder("o").longOpt(OUTPUT_OPT).hasArg().desc("output file, default: standard out").build();
+        Option minifyOpt = Option.builder("m").longOpt(MINIFY_OPT).desc("strip author only attributes and line breaks").build();
+        Option keyOpt = Option.builder("k").longOpt(KEY_OPT).desc("only output the SHA-256 digest of the canonical form").build();
+
+        Options options = new Options();
+
+        options.addOption(inputFile);
+        options.addOption(outputFile);
+        options.addOption(minifyOpt);
+        options.addOption(keyOpt);
+
+        CommandLineParser parser = new DefaultParser();
+        try {
+            CommandLine line = parser.parse(options, args);
+            try (InputStream is = new BufferedInputStream(Files.newInputStream(Paths.get(line.getOptionValue(INPUT_OPT))))) {
+                if (line.hasOption(KEY_OPT)) {
+                    System.out.println(key(is)); // NOSONAR
+                } else if (line.hasOption(OUTPUT_OPT)) {
+                    try (OutputStream os = Files.newOutputStream(Paths.get(line.getOptionValue(OUTPUT_OPT)))) {
+                        canonicalize(is, os, line.hasOption(MINIFY_OPT));
+                    }
+                } else {
+                    canonicalize(is, System.out, line.hasOption(MINIFY_OPT));
+                }
+            }
+        } catch (ParseException exp) {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp(PresetCanonicalizer.class.getSimpleName(), options);
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
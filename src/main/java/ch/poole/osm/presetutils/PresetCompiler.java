@@ -0,0 +1,296 @@
+package ch.poole.osm.presetutils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.jetbrains.annotations.NotNull;
+import org.xml.sax.SAXException;
+
+/**
+ * Compile a JOSM/Vespucci format preset to the binary format read by {@link BinaryPreset}
+ *
+ * Layout, all values big endian:
+ *
+ * <pre>
+ * header       magic, version, flags and the counts and offsets of the following sections
+ * string table (count + 1) offsets followed by the UTF-8 data, every string is stored once
+ * elements     fixed width records in document order: name, line, end line, attribute start and count,
+ *              child start and count, chunk reference
+ * attributes   pairs of string indices
+ * children     element indices
+ * chunks       pairs of id string index and element index
+ * items        element indices
+ * groups       element indices
+ * </pre>
+ *
+ * References to chunks are resolved at compile time and stored as the element index of the chunk.
+ *
+ * Licence Apache 2.0
+ *
+ * @author Simon Poole
+ *
+ */
+public class PresetCompiler {
+
+    private static final String INPUT_OPT  = "input";
+    private static final String OUTPUT_OPT = "output";
+
+    private final Map<String, Integer>         stringIndex  = new HashMap<>();
+    private final List<String>                 strings      = new ArrayList<>();
+    private final Map<Preset.Element, Integer> elementIndex = new IdentityHashMap<>();
+    private final List<Preset.Element>         elements     = new ArrayList<>();
+
+    /**
+     * Compile a preset
+     *
+     * @param preset the Preset
+     * @param output the OutputStream to write to, will not be closed
+     * @throws IOException if writing fails
+     */
+    public static void compile(@NotNull Preset preset, @NotNull OutputStream output) throws IOException {
+        new PresetCompiler().write(preset, output);
+    }
+
+    /**
+     * Get the index of a String, adding it to the table if necessary
+     *
+     * @param s the String
+     * @return the index
+     */
+    private int string(@NotNull String s) {
+        Integer index = stringIndex.get(s);
+        if (index == null) {
+            index = strings.size();
+            strings.add(s);
+            stringIndex.put(s, index);
+        }
+        return index;
+    }
+
+    /**
+     * Number the elements in document order
+     *
+     * @param element the current element
+     */
+    private void number(@NotNull Preset.Element element) {
+        elementIndex.put(element, elements.size());
+        elements.add(element);
+        for (int i = 0; i < element.getChildCount(); i++) {
+            number(element.getChild(i));
+        }
+    }
+
+    /**
+     * Write the binary representation
+     *
+     * @param preset the Preset
+     * @param output the OutputStream
+     * @throws IOException if writing fails
+     */
+    private void write(@NotNull Preset preset, @NotNull OutputStream output) throws IOException {
+        number(preset.getRoot());
+        final int sourceIndex = string(preset.getSource());
+
+        // elements and the attribute and child pools
+        ByteArrayOutputStream elementBytes = new ByteArrayOutputStream();
+        DataOutputStream elementOut = new DataOutputStream(elementBytes);
+        ByteArrayOutputStream attrBytes = new ByteArrayOutputStream();
+        DataOutputStream attrOut = new DataOutputStream(attrBytes);
+        ByteArrayOutputStream childBytes = new ByteArrayOutputStream();
+        DataOutputStream childOut = new DataOutputStream(childBytes);
+        int attrCount = 0;
+        int childCount = 0;
+        for (Preset.Element element : elements) {
+            elementOut.writeInt(string(element.getName()));
+            elementOut.writeInt(element.getLine());
+            elementOut.writeInt(element.getEndLine());
+            elementOut.writeInt(attrCount);
+            elementOut.writeInt(element.getAttributeCount());
+            elementOut.writeInt(childCount);
+            elementOut.writeInt(element.getChildCount());
+            elementOut.writeInt(chunkReference(preset, element));
+            for (int i = 0; i < element.getAttributeCount(); i++) {
+                attrOut.writeInt(string(element.getAttributeName(i)));
+                attrOut.writeInt(string(element.getAttributeValue(i)));
+            }
+            attrCount += element.getAttributeCount();
+            for (int i = 0; i < element.getChildCount(); i++) {
+                childOut.writeInt(elementIndex.get(element.getChild(i)));
+            }
+            childCount += element.getChildCount();
+        }
+
+        // chunk ids need to be in the string table before it is written
+        Map<String, Preset.Element> chunks = preset.getChunks();
+        int[] chunkIds = new int[chunks.size()];
+        int[] chunkElements = new int[chunks.size()];
+        int chunkCount = 0;
+        for (Map.Entry<String, Preset.Element> chunk : chunks.entrySet()) {
+            chunkIds[chunkCount] = string(chunk.getKey());
+            chunkElements[chunkCount] = elementIndex.get(chunk.getValue());
+            chunkCount++;
+        }
+
+        // string table
+        ByteArrayOutputStream stringData = new ByteArrayOutputStream();
+        int[] stringOffsets = new int[strings.size() + 1];
+        for (int i = 0; i < strings.size(); i++) {
+            stringOffsets[i] = stringData.size();
+            stringData.write(strings.get(i).getBytes(StandardCharsets.UTF_8));
+        }
+        stringOffsets[strings.size()] = stringData.size();
+        int stringPadding = (4 - stringData.size() % 4) % 4;
+
+        // section offsets
+        List<Preset.Element> items = preset.getItems();
+        List<Preset.Element> groups = preset.getGroups();
+        int stringOffsetsOffset = BinaryPreset.HEADER_SIZE;
+        int stringDataOffset = stringOffsetsOffset + stringOffsets.length * 4;
+        int elementsOffset = stringDataOffset + stringData.size() + stringPadding;
+        int attrOffset = elementsOffset + elementBytes.size();
+        int childOffset = attrOffset + attrBytes.size();
+        int chunkOffset = childOffset + childBytes.size();
+        int itemOffset = chunkOffset + chunks.size() * 8;
+        int groupOffset = itemOffset + items.size() * 4;
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+        out.writeInt(BinaryPreset.MAGIC);
+        out.writeShort(BinaryPreset.VERSION);
+        out.writeShort(0); // flags
+        out.writeInt(sourceIndex);
+        out.writeInt(strings.size());
+        out.writeInt(stringOffsetsOffset);
+        out.writeInt(stringDataOffset);
+        out.writeInt(elements.size());
+        out.writeInt(elementsOffset);
+        out.writeInt(attrOffset);
+        out.writeInt(childOffset);
+        out.writeInt(chunks.size());
+        out.writeInt(chunkOffset);
+        out.writeInt(items.size());
+        out.writeInt(itemOffset);
+        out.writeInt(groups.size());
+        out.writeInt(groupOffset);
+        for (int offset : stringOffsets) {
+            out.writeInt(offset);
+        }
+        stringData.writeTo(out);
+        for (int i = 0; i < stringPadding; i++) {
+            out.writeByte(0);
+        }
+        elementBytes.writeTo(out);
+        attrBytes.writeTo(out);
+        childBytes.writeTo(out);
+        for (int i = 0; i < chunkCount; i++) {
+            out.writeInt(chunkIds[i]);
+            out.writeInt(chunkElements[i]);
+        }
+        for (Preset.Element item : items) {
+            out.writeInt(elementIndex.get(item));
+        }
+        for (Preset.Element group : groups) {
+            out.writeInt(elementIndex.get(group));
+        }
+        out.flush();
+    }
+
+    /**
+     * Resolve a chunk reference
+     *
+     * @param preset the Preset
+     * @param element the current element
+     * @return the element index of the referenced chunk or -1
+     */
+    private int chunkReference(@NotNull Preset preset, @NotNull Preset.Element element) {
+        if (element.getType() == ElementType.REFERENCE) {
+            String ref = element.getAttribute(PresetConstants.REF);
+            Preset.Element chunk = ref != null ? preset.getChunk(ref) : null;
+            if (chunk != null) {
+                return elementIndex.get(chunk);
+            }
+        }
+        return -1;
+    }
+
+    public static void main(String[] args) {
+        // defaults
+        InputStream is = System.in;
+        OutputStream os = System.out;
+        String inputFilename = "stdin";
+        String[] inputs = null;
+
+        // arguments
+        Option inputFile = Option.builder("i").longOpt(INPUT_OPT).hasArgs().desc("input preset files or directories, default: standard in").build();
+        Option outputFile = Option.builder("o").longOpt(OUTPUT_OPT).hasArg().desc("output compiled preset file, default: standard out").build();
+
+        Options options = new Options();
+
+        options.addOption(inputFile);
+        options.addOption(outputFile);
+
+        CommandLineParser parser = new DefaultParser();
+        try {
+            try {
+                // parse the command line arguments
+                CommandLine line = parser.parse(options, args);
+                if (line.hasOption(INPUT_OPT)) {
+                    inputs = line.getOptionValues(INPUT_OPT);
+                    if (PresetSet.isSingleFile(inputs)) {
+                        inputFilename = inputs[0];
+                        is = new FileInputStream(inputFilename);
+                        inputs = null;
+                    }
+                }
+                if (line.hasOption(OUTPUT_OPT)) {
+                    os = new FileOutputStream(line.getOptionValue(OUTPUT_OPT));
+                }
+            } catch (ParseException exp) {
+                HelpFormatter formatter = new HelpFormatter();
+                formatter.printHelp(PresetCompiler.class.getSimpleName(), options);
+                return;
+            } catch (FileNotFoundException e) {
+                System.err.println("File not found: " + e.getMessage());
+                return;
+            }
+
+            try {
+                compile(inputs != null ? PresetSet.parse(inputs).merge() : PresetParser.parse(is, inputFilename), os);
+            } catch (ParserConfigurationException | SAXException | IOException e) {
+                e.printStackTrace();
+            }
+        } finally {
+            try {
+                is.close();
+            } catch (IOException e) {
+                // NOSONAR
+            }
+            try {
+                os.close();
+            } catch (IOException e) {
+                // NOSONAR
+            }
+        }
+    }
+}
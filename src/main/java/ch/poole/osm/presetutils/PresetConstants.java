@@ -81,5 +81,8 @@ public abstract class PresetConstants {
     public static final String REF                        = "ref";
     public static final String VALUE_COUNT_KEY            = "value_count_key";
     public static final String ON                         = "on";
+    public static final String NODE                       = "node";
+    public static final String WAY                        = "way";
+    public static final String RELATION                   = "relation";
 
 }
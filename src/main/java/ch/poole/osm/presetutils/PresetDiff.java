@@ -0,0 +1,405 @@
+package ch.poole.osm.presetutils;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.xml.sax.SAXException;
+
+/**
+ * Structural diff between two versions of a preset
+ *
+ * Items are matched by their group path and name, chunks by their id. Items that are only present in one version but
+ * have the same name are reported as moved. The content hashes of matched items and chunks are compared first, only if
+ * they differ is a detailed diff of the fields, down to the changed attributes, produced. Formatting, comments and line
+ * numbers are ignored.
+ *
+ * Licence Apache 2.0
+ *
+ * @author Simon Poole
+ *
+ */
+public class PresetDiff {
+
+    private static final String REFERENCE_OPT = "reference";
+    private static final String INPUT_OPT     = "input";
+
+    private static final String PATH_SEPARATOR = "/";
+    private static final String INDENT         = "    ";
+
+    private final PrintWriter pw;
+
+    int added;
+    int removed;
+    int moved;
+    int changed;
+    int unchanged;
+
+    /**
+     * Construct a new instance
+     *
+     * @param pw the PrintWriter to write the diff to
+     */
+    PresetDiff(@NotNull PrintWriter pw) {
+        this.pw = pw;
+    }
+
+    /**
+     * Get the items of a preset keyed by their group path and name
+     *
+     * The key is the names of the enclosing groups and the item name separated by slashes, if there are multiple items
+     * with the same key, #n is appended for the n-th occurrence starting with the second one.
+     *
+     * @param preset the Preset
+     * @return a Map from key to item in document order
+     */
+    @NotNull
+    static Map<String, Preset.Element> itemsByPath(@NotNull Preset preset) {
+        Map<String, Preset.Element> items = new LinkedHashMap<>();
+        addItems(preset.getRoot(), "", items, new HashMap<>());
+        return items;
+    }
+
+    /**
+     * Recursively add the items of an element, chunks are not descended in to
+     *
+     * @param element the current element
+     * @param path the names of the enclosing groups
+     * @param items the Map to add the items to
+     * @param seen count of items per path
+     */
+    private static void addItems(@NotNull Preset.Element element, @NotNull String path, @NotNull Map<String, Preset.Element> items,
+            @NotNull Map<String, Integer> seen) {
+        for (int i = 0; i < element.getChildCount(); i++) {
+            Preset.Element child = element.getChild(i);
+            switch (child.getType()) {
+            case GROUP:
+                addItems(child, path + PATH_SEPARATOR + child.getAttribute(PresetConstants.NAME), items, seen);
+                break;
+            case ITEM:
+                String key = path + PATH_SEPARATOR + child.getAttribute(PresetConstants.NAME);
+                int count = seen.merge(key, 1, Integer::sum);
+                items.put(count > 1 ? key + "#" + count : key, child);
+                break;
+            default:
+                // nothing
+            }
+        }
+    }
+
+    /**
+     * Diff two versions of a preset
+     *
+     * @param reference the old version
+     * @param input the new version
+     */
+    void diff(@NotNull Preset reference, @NotNull Preset input) {
+        if (!differs(reference.getRoot(), input.getRoot())) {
+            pw.println("No changes");
+            return;
+        }
+        diffChunks(reference.getChunks(), input.getChunks());
+        diffItems(itemsByPath(reference), itemsByPath(input));
+    }
+
+    /**
+     * Diff the chunks
+     *
+     * @param reference the chunks of the old version
+     * @param input the chunks of the new version
+     */
+    private void diffChunks(@NotNull Map<String, Preset.Element> reference, @NotNull Map<String, Preset.Element> input) {
+        for (Entry<String, Preset.Element> entry : input.entrySet()) {
+            Preset.Element old = reference.get(entry.getKey());
+            if (old == null) {
+                pw.println("+ chunk " + entry.getKey());
+                added++;
+            } else {
+                compare("chunk " + entry.getKey(), old, entry.getValue());
+            }
+        }
+        for (String id : reference.keySet()) {
+            if (!input.containsKey(id)) {
+                pw.println("- chunk " + id);
+                removed++;
+            }
+        }
+    }
+
+    /**
+     * Diff the items
+     *
+     * @param reference the items of the old version by path
+     * @param input the items of the new version by path
+     */
+    private void diffItems(@NotNull Map<String, Preset.Element> reference, @NotNull Map<String, Preset.Element> input) {
+        // items that are only in the old version by name, candidates for moves
+        Map<String, ArrayDeque<String>> removedByName = new HashMap<>();
+        for (Entry<String, Preset.Element> entry : reference.entrySet()) {
+            if (!input.containsKey(entry.getKey())) {
+                removedByName.computeIfAbsent(entry.getValue().getAttribute(PresetConstants.NAME), k -> new ArrayDeque<>()).add(entry.getKey());
+            }
+        }
+        Set<String> movedFrom = new HashSet<>();
+        for (Entry<String, Preset.Element> entry : input.entrySet()) {
+            String path = entry.getKey();
+            Preset.Element old = reference.get(path);
+            if (old != null) {
+                compare("item " + path, old, entry.getValue());
+                continue;
+            }
+            ArrayDeque<String> candidates = removedByName.get(entry.getValue().getAttribute(PresetConstants.NAME));
+            if (candidates != null && !candidates.isEmpty()) {
+                String oldPath = candidates.poll();
+                movedFrom.add(oldPath);
+                pw.println("> item " + oldPath + " -> " + path);
+                moved++;
+                detail(reference.get(oldPath), entry.getValue(), INDENT);
+            } else {
+                pw.println("+ item " + path);
+                added++;
+            }
+        }
+        for (String path : reference.keySet()) {
+            if (!input.containsKey(path) && !movedFrom.contains(path)) {
+                pw.println("- item " + path);
+                removed++;
+            }
+        }
+    }
+
+    /**
+     * Compare two matched elements
+     *
+     * @param label label to output if they differ
+     * @param old the old element
+     * @param current the new element
+     */
+    private void compare(@NotNull String label, @NotNull Preset.Element old, @NotNull Preset.Element current) {
+        if (!differs(old, current)) {
+            unchanged++;
+            return;
+        }
+        pw.println("~ " + label);
+        changed++;
+        detail(old, current, INDENT);
+    }
+
+    /**
+     * Check if two elements differ, the hashes are compared first and the contents only if they are the same to guard
+     * against hash collisions
+     *
+     * @param old the old element
+     * @param current the new element
+     * @return true if they differ
+     */
+    private static boolean differs(@NotNull Preset.Element old, @NotNull Preset.Element current) {
+        if (old == current) {
+            return false;
+        }
+        if (old.contentHash() != current.contentHash() || !old.getName().equals(current.getName())
+                || old.getAttributeCount() != current.getAttributeCount() || old.getChildCount() != current.getChildCount()) {
+            return true;
+        }
+        for (int i = 0; i < old.getAttributeCount(); i++) {
+            if (!old.getAttributeValue(i).equals(current.getAttribute(old.getAttributeName(i)))) {
+                return true;
+            }
+        }
+        for (int i = 0; i < old.getChildCount(); i++) {
+            if (differs(old.getChild(i), current.getChild(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Output the detailed differences between two elements
+     *
+     * @param old the old element
+     * @param current the new element
+     * @param indent the current indent
+     * @return true if any differences were output
+     */
+    private boolean detail(@NotNull Preset.Element old, @NotNull Preset.Element current, @NotNull String indent) {
+        boolean found = diffAttributes(old, current, indent);
+        Map<String, Preset.Element> oldChildren = childrenByKey(old);
+        Map<String, Preset.Element> newChildren = childrenByKey(current);
+        for (Entry<String, Preset.Element> entry : newChildren.entrySet()) {
+            Preset.Element oldChild = oldChildren.get(entry.getKey());
+            if (oldChild == null) {
+                pw.println(indent + "+ " + entry.getKey());
+                found = true;
+            } else if (differs(oldChild, entry.getValue())) {
+                pw.println(indent + "~ " + entry.getKey());
+                if (!detail(oldChild, entry.getValue(), indent + INDENT)) {
+                    pw.println(indent + INDENT + "order changed");
+                }
+                found = true;
+            }
+        }
+        for (String key : oldChildren.keySet()) {
+            if (!newChildren.containsKey(key)) {
+                pw.println(indent + "- " + key);
+                found = true;
+            }
+        }
+        if (!found && differs(old, current)) {
+            pw.println(indent + "order changed");
+            found = true;
+        }
+        return found;
+    }
+
+    /**
+     * Output added, removed and changed attributes
+     *
+     * @param old the old element
+     * @param current the new element
+     * @param indent the current indent
+     * @return true if any differences were output
+     */
+    private boolean diffAttributes(@NotNull Preset.Element old, @NotNull Preset.Element current, @NotNull String indent) {
+        boolean found = false;
+        for (int i = 0; i < current.getAttributeCount(); i++) {
+            String name = current.getAttributeName(i);
+            String value = current.getAttributeValue(i);
+            String oldValue = old.getAttribute(name);
+            if (oldValue == null) {
+                pw.println(indent + "+ " + name + "=\"" + value + "\"");
+                found = true;
+            } else if (!oldValue.equals(value)) {
+                pw.println(indent + "~ " + name + "=\"" + oldValue + "\" -> \"" + value + "\"");
+                found = true;
+            }
+        }
+        for (int i = 0; i < old.getAttributeCount(); i++) {
+            String name = old.getAttributeName(i);
+            if (current.getAttribute(name) == null) {
+                pw.println(indent + "- " + name + "=\"" + old.getAttributeValue(i) + "\"");
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Key the children of an element so that they can be matched between versions
+     *
+     * @param element the element
+     * @return a Map from key to child in document order
+     */
+    @NotNull
+    private static Map<String, Preset.Element> childrenByKey(@NotNull Preset.Element element) {
+        Map<String, Preset.Element> children = new LinkedHashMap<>();
+        Map<String, Integer> seen = new HashMap<>();
+        for (int i = 0; i < element.getChildCount(); i++) {
+            Preset.Element child = element.getChild(i);
+            String key = childKey(child);
+            int count = seen.merge(key, 1, Integer::sum);
+            children.put(count > 1 ? key + "#" + count : key, child);
+        }
+        return children;
+    }
+
+    /**
+     * Get a label for an element that identifies it among its siblings
+     *
+     * @param element the element
+     * @return the label
+     */
+    @NotNull
+    private static String childKey(@NotNull Preset.Element element) {
+        String id = identifier(element);
+        return id != null ? element.getName() + " " + id : element.getName();
+    }
+
+    /**
+     * Get the attribute value that identifies an element
+     *
+     * @param element the element
+     * @return the value or null
+     */
+    @Nullable
+    private static String identifier(@NotNull Preset.Element element) {
+        switch (element.getType()) {
+        case REFERENCE:
+            return element.getAttribute(PresetConstants.REF);
+        case LIST_ENTRY:
+            return element.getAttribute(PresetConstants.VALUE);
+        case GROUP:
+        case ITEM:
+            return element.getAttribute(PresetConstants.NAME);
+        case CHUNK:
+            return element.getAttribute(PresetConstants.ID);
+        default:
+            String key = element.getAttribute(PresetConstants.KEY_ATTR);
+            return key != null ? key : element.getAttribute(PresetConstants.NAME);
+        }
+    }
+
+    /**
+     * Output a summary line
+     */
+    void summary() {
+        pw.println(added + " added, " + removed + " removed, " + moved + " moved, " + changed + " changed, " + unchanged + " unchanged");
+    }
+
+    public static void main(String[] args) {
+        // arguments
+        Option referenceFile = Option.builder("r").longOpt(REFERENCE_OPT).hasArgs().required().desc("old version preset files or directories")
+                .build();
+        Option inputFile = Option.builder("i").longOpt(INPUT_OPT).hasArgs().required().desc("new version preset files or directories").build();
+
+        Options options = new Options();
+
+        options.addOption(referenceFile);
+        options.addOption(inputFile);
+
+        CommandLineParser parser = new DefaultParser();
+        try {
+            CommandLine line = parser.parse(options, args);
+            // parsing dominates the run time, load the old version in the background
+            final String[] referenceInputs = line.getOptionValues(REFERENCE_OPT);
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            Future<Preset> future = executor.submit((Callable<Preset>) () -> PresetSet.load(referenceInputs));
+            executor.shutdown();
+            Preset input = PresetSet.load(line.getOptionValues(INPUT_OPT));
+            Preset reference = PresetSet.get(future);
+            PrintWriter pw = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            PresetDiff presetDiff = new PresetDiff(pw);
+            presetDiff.diff(reference, input);
+            presetDiff.summary();
+            pw.flush();
+        } catch (ParseException exp) {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp(PresetDiff.class.getSimpleName(), options);
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package ch.poole.osm.presetutils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.xml.sax.SAXException;
+
+/**
+ * Run PresetStats on every revision of a preset in a git repository
+ *
+ * The revisions are determined with git log, each revision is mapped to the id of the blob containing the file, and
+ * PresetStats is run once per distinct blob in parallel, so revisions with the same contents, for example after a
+ * revert, are only analysed once. The result is a CSV table with one row per revision, oldest first.
+ *
+ * Licence Apache 2.0
+ *
+ * @author Simon Poole
+ *
+ */
+public class PresetHistory {
+
+    private static final String REPO_OPT             = "repo";
+    private static final String FILE_OPT             = "file";
+    private static final String OUTPUT_OPT           = "output";
+    private static final String IGNOREDEPRECATED_OPT = "ignoredeprecated";
+
+    private static final String GIT     = "git";
+    private static final String MISSING = "missing";
+
+    static final String HEADER = "commit,date,items,unique_keys,unique_values,keys,values,tags_added,tags_removed";
+
+    /**
+     * A commit that changed the preset
+     */
+    static final class Revision {
+        final String commit;
+        final String date;
+        final String blob;
+
+        /**
+         * Construct a new instance
+         *
+         * @param commit the commit id
+         * @param date the commit date
+         * @param blob the id of the blob with the contents of the preset
+         */
+        Revision(@NotNull String commit, @NotNull String date, @NotNull String blob) {
+            this.commit = commit;
+            this.date = date;
+            this.blob = blob;
+        }
+    }
+
+    /**
+     * The stats for one version of the preset
+     */
+    static final class RevisionStats {
+        final int         items;
+        final int         uniqueKeys;
+        final int         uniqueValues;
+        final int         keyCount;
+        final int         valueCount;
+        final Set<String> tags;
+
+        /**
+         * Summarize the results of PresetStats
+         *
+         * @param stats the PresetStats
+         */
+        RevisionStats(@NotNull PresetStats stats) {
+            items = stats.items.size();
+            uniqueKeys = stats.uniqueKeys.size();
+            uniqueValues = stats.uniqueValues.size();
+            int keys = 0;
+            int values = 0;
+            for (PresetStats.ItemStats s : stats.items.values()) {
+                keys += s.keyCount;
+                values += s.valueCount;
+            }
+            keyCount = keys;
+            valueCount = values;
+            tags = new HashSet<>(stats.items.keySet());
+        }
+    }
+
+    /**
+     * Source of the contents of blobs
+     */
+    interface BlobReader {
+
+        /**
+         * Read a blob
+         *
+         * @param blob the blob id
+         * @return the contents
+         * @throws IOException if reading fails
+         */
+        @NotNull
+        byte[] read(@NotNull String blob) throws IOException;
+    }
+
+    private final boolean ignoreDeprecated;
+    private final int     threads;
+
+    int analysed = 0;
+
+    /**
+     * Construct a new instance
+     *
+     * @param ignoreDeprecated ignore deprecated items
+     * @param threads number of threads to run PresetStats on
+     */
+    PresetHistory(boolean ignoreDeprecated, int threads) {
+        this.ignoreDeprecated = ignoreDeprecated;
+        this.threads = threads;
+    }
+
+    /**
+     * Get the revisions of a file, oldest first
+     *
+     * Commits in which the file was deleted are skipped.
+     *
+     * @param repo the repository directory
+     * @param file the path of the file relative to the repository root
+     * @return a List of Revision
+     * @throws IOException if running git fails
+     */
+    @NotNull
+    static List<Revision> revisions(@NotNull Path repo, @NotNull String file) throws IOException {
+        List<String> log = git(repo, null, "log", "--reverse", "--format=%H %cI", "--", file);
+        StringBuilder objects = new StringBuilder();
+        for (String line : log) {
+            objects.append(line.substring(0, line.indexOf(' '))).append(':').append(file).append('\n');
+        }
+        List<String> blobs = git(repo, objects.toString(), "cat-file", "--batch-check=%(objectname)");
+        List<Revision> revisions = new ArrayList<>();
+        for (int i = 0; i < log.size(); i++) {
+            String blob = blobs.get(i);
+            if (!blob.endsWith(" " + MISSING)) {
+                String[] commit = log.get(i).split(" ");
+                revisions.add(new Revision(commit[0], commit[1], blob));
+            }
+        }
+        return revisions;
+    }
+
+    /**
+     * Run git and return its output
+     *
+     * @param repo the repository directory
+     * @param input input to write to git or null
+     * @param args the arguments
+     * @return the output lines
+     * @throws IOException if git fails
+     */
+    @NotNull
+    private static List<String> git(@NotNull Path repo, @Nullable String input, @NotNull String... args) throws IOException {
+        final Process process = start(repo, args);
+        // write the input on a separate thread so that git can't block on a full output pipe
+        Thread writer = new Thread(() -> {
+            try (OutputStream os = process.getOutputStream()) {
+                if (input != null) {
+                    os.write(input.getBytes(StandardCharsets.UTF_8));
+                }
+            } catch (IOException e) {
+                // git exited early, reported by waitFor
+            }
+        });
+        writer.start();
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        waitFor(process, args);
+        return lines;
+    }
+
+    /**
+     * Read a blob from a git repository
+     *
+     * @param repo the repository directory
+     * @param blob the blob id
+     * @return the contents
+     * @throws IOException if git fails
+     */
+    @NotNull
+    static byte[] readBlob(@NotNull Path repo, @NotNull String blob) throws IOException {
+        String[] args = { "cat-file", "blob", blob };
+        Process process = start(repo, args);
+        process.getOutputStream().close();
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        try (InputStream is = process.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                contents.write(buffer, 0, read);
+            }
+        }
+        waitFor(process, args);
+        return contents.toByteArray();
+    }
+
+    /**
+     * Start git, error output is passed through
+     *
+     * @param repo the repository directory
+     * @param args the arguments
+     * @return the Process
+     * @throws IOException if git can't be started
+     */
+    @NotNull
+    private static Process start(@NotNull Path repo, @NotNull String[] args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(GIT);
+        command.add("-C");
+        command.add(repo.toString());
+        command.addAll(Arrays.asList(args));
+        return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+
+    /**
+     * Wait for git to exit
+     *
+     * @param process the Process
+     * @param args the arguments for the error message
+     * @throws IOException if git failed or we were interrupted
+     */
+    private static void waitFor(@NotNull Process process, @NotNull String[] args) throws IOException {
+        try {
+            int exit = process.waitFor();
+            if (exit != 0) {
+                throw new IOException("git " + String.join(" ", args) + " exited with " + exit);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    /**
+     * Run PresetStats on every distinct blob in parallel
+     *
+     * @param revisions the revisions
+     * @param reader the source for the blob contents
+     * @return a Map from blob id to the stats, blobs that couldn't be parsed are missing
+     * @throws IOException if reading a blob fails
+     */
+    @NotNull
+    Map<String, RevisionStats> analyse(@NotNull List<Revision> revisions, @NotNull final BlobReader reader) throws IOException {
+        Map<String, Future<RevisionStats>> futures = new LinkedHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (final Revision revision : revisions) {
+                if (!futures.containsKey(revision.blob)) {
+                    futures.put(revision.blob, executor.submit((Callable<RevisionStats>) () -> analyse(revision, reader.read(revision.blob))));
+                }
+            }
+            Map<String, RevisionStats> result = new HashMap<>();
+            for (Entry<String, Future<RevisionStats>> entry : futures.entrySet()) {
+                RevisionStats stats = entry.getValue().get();
+                if (stats != null) {
+                    result.put(entry.getKey(), stats);
+                }
+            }
+            analysed = futures.size();
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Run PresetStats on one version of the preset
+     *
+     * @param revision the first Revision with this version
+     * @param contents the contents of the preset
+     * @return the stats or null if the preset couldn't be parsed
+     * @throws IOException if reading fails
+     */
+    @Nullable
+    private RevisionStats analyse(@NotNull Revision revision, @NotNull byte[] contents) throws IOException {
+        PresetStats stats = new PresetStats();
+        stats.inputFilename = revision.commit;
+        try {
+            stats.parseXML(false, ignoreDeprecated, new ByteArrayInputStream(contents));
+        } catch (SAXException | ParserConfigurationException e) {
+            System.err.println("Revision " + revision.commit + " can't be parsed: " + e.getMessage()); // NOSONAR
+            return null;
+        }
+        return new RevisionStats(stats);
+    }
+
+    /**
+     * Write the stats as CSV, one row per revision
+     *
+     * Tags added and removed are relative to the previous revision that could be parsed, revisions that couldn't be
+     * parsed only have the commit and date columns.
+     *
+     * @param revisions the revisions oldest first
+     * @param stats the stats by blob id
+     * @param pw the PrintWriter to write to
+     */
+    static void writeTable(@NotNull List<Revision> revisions, @NotNull Map<String, RevisionStats> stats, @NotNull PrintWriter pw) {
+        pw.println(HEADER);
+        Set<String> previous = Collections.emptySet();
+        for (Revision revision : revisions) {
+            RevisionStats s = stats.get(revision.blob);
+            pw.print(revision.commit + "," + revision.date);
+            if (s == null) {
+                pw.println(",,,,,,,");
+                continue;
+            }
+            int added = 0;
+            for (String tag : s.tags) {
+                if (!previous.contains(tag)) {
+                    added++;
+                }
+            }
+            int removed = 0;
+            for (String tag : previous) {
+                if (!s.tags.contains(tag)) {
+                    removed++;
+                }
+            }
+            pw.println("," + s.items + "," + s.uniqueKeys + "," + s.uniqueValues + "," + s.keyCount + "," + s.valueCount + "," + added + "," + removed);
+            previous = s.tags;
+        }
+        pw.flush();
+    }
+
+    public static void main(String[] args) {
+        // arguments
+        Option repoOpt = Option.builder("r").longOpt(REPO_OPT).hasArg().required().desc("git repository directory").build();
+        Option fileOpt = Option.builder("f").longOpt(FILE_OPT).hasArg().required().desc("preset file path relative to the repository root").build();
+        Option outputFile = Option.builder("o").longOpt(OUTPUT_OPT).hasArg().desc("output CSV file, default: standard out").build();
+        Option ignoreDeprecatedOpt = Option.builder("d").longOpt(IGNOREDEPRECATED_OPT).desc("ignore deprecated items, default: false").build();
+
+        Options options = new Options();
+
+        options.addOption(repoOpt);
+        options.addOption(fileOpt);
+        options.addOption(outputFile);
+        options.addOption(ignoreDeprecatedOpt);
+
+        CommandLineParser parser = new DefaultParser();
+        try {
+            CommandLine line = parser.parse(options, args);
+            final Path repo = Paths.get(line.getOptionValue(REPO_OPT));
+            List<Revision> revisions = revisions(repo, line.getOptionValue(FILE_OPT));
+            PresetHistory history = new PresetHistory(line.hasOption(IGNOREDEPRECATED_OPT), Runtime.getRuntime().availableProcessors());
+            Map<String, RevisionStats> stats = history.analyse(revisions, blob -> readBlob(repo, blob));
+            System.err.println(revisions.size() + " revisions, " + history.analysed + " distinct versions"); // NOSONAR
+            OutputStream os = line.hasOption(OUTPUT_OPT) ? new FileOutputStream(line.getOptionValue(OUTPUT_OPT)) : System.out;
+            try (PrintWriter pw = new PrintWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8))) {
+                writeTable(revisions, stats, pw);
+            }
+        } catch (ParseException exp) {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp(PresetHistory.class.getSimpleName(), options);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
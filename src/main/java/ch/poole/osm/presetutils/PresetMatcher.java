@@ -0,0 +1,561 @@
+package ch.poole.osm.presetutils;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.xml.sax.SAXException;
+
+/**
+ * Find the preset item that best matches a set of OSM tags
+ *
+ * All fixed key elements of an item have to match. The score of an item is the sum of the weights of its fixed tags,
+ * tags with a key from {@link Tags#OBJECT_KEYS} count most, followed by second level keys as defined in
+ * {@link Tags#SECOND_LEVEL_KEYS}, plus points for fields that match according to their match attribute. Items that
+ * don't support the geometry of the object or are not valid in the region are not considered. On a tie non-deprecated
+ * items win, then the first in document order.
+ *
+ * Everything that can be is computed when the matcher is built, candidates are found via the fixed tags of the object
+ * so a match only looks at a handful of items.
+ *
+ * Licence Apache 2.0
+ *
+ * @author Simon Poole
+ *
+ */
+public class PresetMatcher {
+
+    private static final String INPUT_OPT    = "input";
+    private static final String GEOMETRY_OPT = "geometry";
+    private static final String REGION_OPT   = "region";
+
+    static final int OBJECT_KEY_WEIGHT       = 10;
+    static final int SECOND_LEVEL_KEY_WEIGHT = 8;
+    static final int FIXED_WEIGHT            = 5;
+    static final int FIELD_VALUE_WEIGHT      = 2;
+    static final int FIELD_KEY_WEIGHT        = 1;
+
+    /**
+     * Geometry of an OSM object
+     */
+    public enum Geometry {
+        NODE(1, PresetConstants.NODE), WAY(2, PresetConstants.WAY), CLOSEDWAY(4, PresetConstants.CLOSEDWAY),
+        MULTIPOLYGON(8, PresetConstants.MULTIPOLYGON), RELATION(16, PresetConstants.RELATION), AREA(32, PresetConstants.AREA);
+
+        private final int    bit;
+        private final String typeName;
+
+        /**
+         * Construct a new Geometry
+         *
+         * @param bit the bit used in item masks
+         * @param typeName the value used in the type attribute of items
+         */
+        Geometry(int bit, @NotNull String typeName) {
+            this.bit = bit;
+            this.typeName = typeName;
+        }
+
+        /**
+         * Get the item types an object with this geometry can be tagged with
+         *
+         * @return a bit mask
+         */
+        int accepts() {
+            switch (this) {
+            case CLOSEDWAY:
+                return bit | WAY.bit | AREA.bit;
+            case MULTIPOLYGON:
+                return bit | RELATION.bit | AREA.bit;
+            default:
+                return bit;
+            }
+        }
+
+        /**
+         * Get the Geometry for a type attribute value
+         *
+         * @param typeName the type
+         * @return the Geometry or null if unknown
+         */
+        @Nullable
+        public static Geometry fromTypeName(@NotNull String typeName) {
+            for (Geometry g : values()) {
+                if (g.typeName.equals(typeName)) {
+                    return g;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Match types for fields, see the match attribute
+     */
+    private enum MatchType {
+        NONE, KEY, KEY_REQUIRED, KEY_VALUE, KEY_VALUE_REQUIRED;
+
+        /**
+         * Get the MatchType for an attribute value
+         *
+         * @param match the attribute value or null
+         * @param def default if not set or unknown
+         * @return the MatchType
+         */
+        @NotNull
+        static MatchType fromAttribute(@Nullable String match, @NotNull MatchType def) {
+            if (match == null) {
+                return def;
+            }
+            switch (match) {
+            case PresetConstants.NONE:
+                return NONE;
+            case "key":
+                return KEY;
+            case "key!":
+                return KEY_REQUIRED;
+            case "keyvalue":
+                return KEY_VALUE;
+            case "keyvalue!":
+                return KEY_VALUE_REQUIRED;
+            default:
+                return def;
+            }
+        }
+    }
+
+    /**
+     * A field that contributes to the score
+     */
+    private static final class Field {
+        final String      key;
+        final Set<String> values;
+        final MatchType   match;
+
+        /**
+         * Construct a new Field
+         *
+         * @param key the key
+         * @param values the known values or null
+         * @param match the MatchType
+         */
+        Field(@NotNull String key, @Nullable Set<String> values, @NotNull MatchType match) {
+            this.key = key;
+            this.values = values;
+            this.match = match;
+        }
+    }
+
+    /**
+     * Everything needed to score an item
+     */
+    private static final class Candidate {
+        final Preset.Element item;
+        final String[]       fixedKeys;
+        final String[]       fixedValues;
+        final int            fixedScore;
+        final Field[]        fields;
+        final int            geometries;
+        final String[]       regions;
+        final boolean        excludeRegions;
+        final boolean        deprecated;
+        final int            index;
+
+        /**
+         * Construct a new Candidate
+         *
+         * @param item the item
+         * @param index the position of the item in document order
+         * @param fixed the fixed tags
+         * @param fields the fields that can match
+         * @param geometries bit mask of the supported geometries, 0 for all
+         * @param regions the regions or null
+         * @param excludeRegions if true regions is a list of regions the item is not valid in
+         */
+        Candidate(@NotNull Preset.Element item, int index, @NotNull Map<String, String> fixed, @NotNull List<Field> fields, int geometries, @Nullable String[] regions,
+                boolean excludeRegions) {
+            this.item = item;
+            this.index = index;
+            fixedKeys = new String[fixed.size()];
+            fixedValues = new String[fixed.size()];
+            int i = 0;
+            int score = 0;
+            for (Entry<String, String> tag : fixed.entrySet()) {
+                fixedKeys[i] = tag.getKey();
+                fixedValues[i] = tag.getValue();
+                score += weight(tag.getKey(), fixed);
+                i++;
+            }
+            fixedScore = score;
+            this.fields = fields.toArray(new Field[0]);
+            this.geometries = geometries;
+            this.regions = regions;
+            this.excludeRegions = excludeRegions;
+            deprecated = PresetConstants.TRUE.equals(item.getAttribute(PresetConstants.DEPRECATED));
+        }
+    }
+
+    private final Map<String, Map<String, Candidate[]>> candidates = new HashMap<>();
+
+    /**
+     * Build a matcher for a preset
+     *
+     * @param preset the Preset
+     */
+    public PresetMatcher(@NotNull Preset preset) {
+        Builder builder = new Builder(new ChunkExpander(preset));
+        builder.collect(preset.getRoot(), null, false);
+        for (Entry<String, Map<String, List<Candidate>>> keyEntry : builder.candidates.entrySet()) {
+            Map<String, Candidate[]> byValue = new HashMap<>();
+            for (Entry<String, List<Candidate>> valueEntry : keyEntry.getValue().entrySet()) {
+                byValue.put(valueEntry.getKey(), valueEntry.getValue().toArray(new Candidate[0]));
+            }
+            candidates.put(keyEntry.getKey(), byValue);
+        }
+    }
+
+    /**
+     * State used while building the matcher
+     */
+    private static final class Builder {
+        final ChunkExpander                             expander;
+        final Map<Preset.Element, Field>                fieldCache = new IdentityHashMap<>();
+        final Map<String, Map<String, List<Candidate>>> candidates = new HashMap<>();
+        int                                             itemCount  = 0;
+
+        /**
+         * Construct a new Builder
+         *
+         * @param expander ChunkExpander for the preset
+         */
+        Builder(@NotNull ChunkExpander expander) {
+            this.expander = expander;
+        }
+
+        /**
+         * Walk the tree and add candidates for all items, regions are inherited from groups
+         *
+         * @param element the current element
+         * @param regions the inherited regions or null
+         * @param excludeRegions the inherited exclude flag
+         */
+        void collect(@NotNull Preset.Element element, @Nullable String[] regions, boolean excludeRegions) {
+            String regionsAttr = element.getAttribute(PresetConstants.REGIONS);
+            if (regionsAttr != null) {
+                regions = regionsAttr.split(PresetConstants.COMBO_DELIMITER);
+                for (int i = 0; i < regions.length; i++) {
+                    regions[i] = regions[i].trim().toUpperCase(Locale.ROOT);
+                }
+                excludeRegions = PresetConstants.TRUE.equals(element.getAttribute(PresetConstants.EXCLUDE_REGIONS));
+            }
+            ElementType type = element.getType();
+            if (type == ElementType.ITEM) {
+                Candidate candidate = candidate(element, itemCount++, regions, excludeRegions);
+                if (candidate != null) {
+                    for (int i = 0; i < candidate.fixedKeys.length; i++) {
+                        candidates.computeIfAbsent(candidate.fixedKeys[i], k -> new HashMap<>())
+                                .computeIfAbsent(candidate.fixedValues[i], v -> new ArrayList<>()).add(candidate);
+                    }
+                }
+            } else if (type == ElementType.PRESETS || type == ElementType.GROUP) {
+                for (int i = 0; i < element.getChildCount(); i++) {
+                    collect(element.getChild(i), regions, excludeRegions);
+                }
+            }
+        }
+
+        /**
+         * Create a Candidate for an item
+         *
+         * @param item the item
+         * @param index the position of the item in document order
+         * @param regions the regions or null
+         * @param excludeRegions the exclude flag
+         * @return a Candidate or null if the item doesn't have any fixed tags
+         */
+        @Nullable
+        private Candidate candidate(@NotNull Preset.Element item, int index, @Nullable String[] regions, boolean excludeRegions) {
+            Map<String, String> fixed = new HashMap<>();
+            List<Field> fields = new ArrayList<>();
+            for (Preset.Element field : expander.getFields(item)) {
+                String key = field.getAttribute(PresetConstants.KEY_ATTR);
+                if (key == null) {
+                    continue;
+                }
+                String match = field.getAttribute(PresetConstants.MATCH);
+                if (field.getType() == ElementType.KEY) {
+                    String value = field.getAttribute(PresetConstants.VALUE);
+                    if (value != null && MatchType.fromAttribute(match, MatchType.KEY_VALUE_REQUIRED) == MatchType.KEY_VALUE_REQUIRED) {
+                        fixed.put(key, value);
+                        continue;
+                    }
+                }
+                MatchType matchType = MatchType.fromAttribute(match, MatchType.KEY_VALUE);
+                if (matchType != MatchType.NONE) {
+                    // fields from chunks are shared between items
+                    fields.add(fieldCache.computeIfAbsent(field, f -> new Field(key, values(f), matchType)));
+                }
+            }
+            if (fixed.isEmpty()) {
+                return null;
+            }
+            int geometries = 0;
+            String types = item.getAttribute(PresetConstants.TYPE);
+            if (types != null) {
+                for (String t : types.split(PresetConstants.COMBO_DELIMITER)) {
+                    Geometry g = Geometry.fromTypeName(t.trim());
+                    if (g != null) {
+                        geometries |= g.bit;
+                    }
+                }
+            }
+            return new Candidate(item, index, fixed, fields, geometries, regions, excludeRegions);
+        }
+    }
+
+    /**
+     * Get the known values of a field
+     *
+     * @param field the field
+     * @return a Set of values or null if the field doesn't have a fixed set of values
+     */
+    @Nullable
+    private static Set<String> values(@NotNull Preset.Element field) {
+        switch (field.getType()) {
+        case KEY:
+            return Collections.singleton(field.getAttribute(PresetConstants.VALUE));
+        case CHECK:
+            String valueOn = field.getAttribute(PresetConstants.VALUE_ON);
+            return Collections.singleton(valueOn != null ? valueOn : PresetConstants.YES);
+        case COMBO:
+        case MULTISELECT:
+            Set<String> result = new HashSet<>();
+            String values = field.getAttribute(PresetConstants.VALUES);
+            if (values != null) {
+                String delimiter = field.getAttribute(PresetConstants.DELIMITER);
+                if (delimiter == null) {
+                    delimiter = field.getType() == ElementType.MULTISELECT ? PresetConstants.MULTISELECT_DELIMITER : PresetConstants.COMBO_DELIMITER;
+                }
+                for (String v : values.split(Pattern.quote(delimiter))) {
+                    result.add(v.trim());
+                }
+            }
+            for (int i = 0; i < field.getChildCount(); i++) {
+                String value = field.getChild(i).getAttribute(PresetConstants.VALUE);
+                if (value != null) {
+                    result.add(value);
+                }
+            }
+            return result.isEmpty() ? null : result;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Get the weight of a fixed tag
+     *
+     * @param key the key of the tag
+     * @param fixed all fixed tags of the item
+     * @return the weight
+     */
+    static int weight(@NotNull String key, @NotNull Map<String, String> fixed) {
+        if (Tags.OBJECT_KEYS.contains(key)) {
+            return OBJECT_KEY_WEIGHT;
+        }
+        for (Entry<String, String> tag : fixed.entrySet()) {
+            if (Tags.OBJECT_KEYS.contains(tag.getKey()) && (key.equals(tag.getValue()) || key.equals(Tags.SECOND_LEVEL_KEYS.get(tag.getValue())))) {
+                return SECOND_LEVEL_KEY_WEIGHT;
+            }
+        }
+        return FIXED_WEIGHT;
+    }
+
+    /**
+     * Find the best matching item
+     *
+     * @param tags the tags of the object
+     * @param geometry the geometry of the object or null if it shouldn't be checked
+     * @param region the region (ISO 3166 code, case is ignored) the object is in or null if it shouldn't be checked
+     * @return the best matching item or null if none matched
+     */
+    @Nullable
+    public Preset.Element match(@NotNull Map<String, String> tags, @Nullable Geometry geometry, @Nullable String region) {
+        // the regions of the candidates are upper case
+        String upperRegion = region != null ? region.toUpperCase(Locale.ROOT) : null;
+        // an item is found once for each of its fixed tags
+        Set<Candidate> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Entry<String, String> tag : tags.entrySet()) {
+            Map<String, Candidate[]> byValue = candidates.get(tag.getKey());
+            Candidate[] list = byValue != null ? byValue.get(tag.getValue()) : null;
+            if (list != null) {
+                found.addAll(Arrays.asList(list));
+            }
+        }
+        Candidate best = null;
+        int bestScore = -1;
+        int accepts = geometry != null ? geometry.accepts() : 0;
+        for (Candidate c : found) {
+            if ((accepts != 0 && c.geometries != 0 && (c.geometries & accepts) == 0) || !inRegion(c, upperRegion)) {
+                continue;
+            }
+            int score = score(c, tags);
+            if (score > bestScore || (score >= 0 && score == bestScore && better(c, best))) {
+                best = c;
+                bestScore = score;
+            }
+        }
+        return best != null ? best.item : null;
+    }
+
+    /**
+     * Break a tie between two candidates with the same score
+     *
+     * @param c the Candidate
+     * @param best the current best Candidate
+     * @return true if c is not deprecated and best is, or both are and c is earlier in document order
+     */
+    private static boolean better(@NotNull Candidate c, @NotNull Candidate best) {
+        if (c.deprecated != best.deprecated) {
+            return best.deprecated;
+        }
+        return c.index < best.index;
+    }
+
+    /**
+     * Check if a candidate is valid in a region
+     *
+     * @param c the Candidate
+     * @param region the region or null
+     * @return true if the item can be used
+     */
+    private static boolean inRegion(@NotNull Candidate c, @Nullable String region) {
+        if (region == null || c.regions == null) {
+            return true;
+        }
+        for (String r : c.regions) {
+            if (region.equals(r) || (region.startsWith(r) && region.length() > r.length() && region.charAt(r.length()) == '-')) {
+                return !c.excludeRegions;
+            }
+        }
+        return c.excludeRegions;
+    }
+
+    /**
+     * Score a candidate
+     *
+     * @param c the Candidate
+     * @param tags the tags of the object
+     * @return the score or -1 if the candidate doesn't match
+     */
+    private static int score(@NotNull Candidate c, @NotNull Map<String, String> tags) {
+        for (int i = 0; i < c.fixedKeys.length; i++) {
+            if (!c.fixedValues[i].equals(tags.get(c.fixedKeys[i]))) {
+                return -1;
+            }
+        }
+        int score = c.fixedScore;
+        for (Field f : c.fields) {
+            String value = tags.get(f.key);
+            switch (f.match) {
+            case KEY:
+            case KEY_REQUIRED:
+                if (value != null) {
+                    score += FIELD_KEY_WEIGHT;
+                } else if (f.match == MatchType.KEY_REQUIRED) {
+                    return -1;
+                }
+                break;
+            case KEY_VALUE:
+            case KEY_VALUE_REQUIRED:
+                if (value != null && f.values != null && f.values.contains(value)) {
+                    score += FIELD_VALUE_WEIGHT;
+                } else if (f.match == MatchType.KEY_VALUE_REQUIRED) {
+                    return -1;
+                } else if (value != null) {
+                    score += FIELD_KEY_WEIGHT;
+                }
+                break;
+            default:
+                // NONE is never added
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Parse tags in the form key=value
+     *
+     * @param args the tags
+     * @return a Map of the tags
+     */
+    @NotNull
+    static Map<String, String> parseTags(@NotNull String[] args) {
+        Map<String, String> tags = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                tags.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        return tags;
+    }
+
+    public static void main(String[] args) {
+        // arguments
+        Option inputFile = Option.builder("i").longOpt(INPUT_OPT).hasArg().required()
+                .desc("input preset file, XML or compiled, or directory, can be repeated").build();
+        Option geometryOpt = Option.builder("g").longOpt(GEOMETRY_OPT).hasArg()
+                .desc("geometry of the object: " + Arrays.toString(Geometry.values()).toLowerCase(Locale.US) + ", default: don't check").build();
+        Option regionOpt = Option.builder("r").longOpt(REGION_OPT).hasArg().desc("region the object is in, default: don't check").build();
+
+        Options options = new Options();
+
+        options.addOption(inputFile);
+        options.addOption(geometryOpt);
+        options.addOption(regionOpt);
+
+        CommandLineParser parser = new DefaultParser();
+        try {
+            CommandLine line = parser.parse(options, args);
+            Geometry geometry = null;
+            if (line.hasOption(GEOMETRY_OPT)) {
+                geometry = Geometry.valueOf(line.getOptionValue(GEOMETRY_OPT).toUpperCase(Locale.US));
+            }
+            PresetMatcher matcher = new PresetMatcher(PresetSet.load(line.getOptionValues(INPUT_OPT)));
+            Preset.Element item = matcher.match(parseTags(line.getArgs()), geometry, line.getOptionValue(REGION_OPT));
+            PrintWriter pw = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)); // NOSONAR
+            pw.println(item != null ? item.getAttribute(PresetConstants.NAME) + " (line " + item.getLine() + ")" : "no match");
+            pw.flush();
+        } catch (ParseException | IllegalArgumentException exp) {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp(PresetMatcher.class.getSimpleName() + " [options] key=value ...", options);
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package ch.poole.osm.presetutils;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.jetbrains.annotations.NotNull;
+import org.xml.sax.SAXException;
+
+/**
+ * Compare the tags of many presets and other tag sources at once
+ *
+ * Each input is loaded once in to a sorted array of distinct interned tags, the pairwise overlaps and the tags unique
+ * to each input are determined with merge based intersections that run in parallel.
+ *
+ * Licence Apache 2.0
+ *
+ * @author Simon Poole
+ *
+ */
+public class PresetOverlap {
+
+    private static final String INPUT_OPT  = "input";
+    private static final String OUTPUT_OPT = "output";
+    private static final String DEPTH_OPT  = "depth";
+    private static final String UNIQUE_OPT = "unique";
+
+    private static final char HIERARCHY_SEPARATOR = '/';
+
+    final List<String>   names = new ArrayList<>();
+    final List<String[]> tags  = new ArrayList<>();
+    int[][]              overlap;
+    int[]                unique;
+
+    private final StringPool pool = new StringPool();
+    private final int        depth;
+
+    /**
+     * Construct a new instance
+     *
+     * @param depth the number of hierarchy steps to consider, 0 = all
+     */
+    PresetOverlap(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * Add an input
+     *
+     * @param stats the tags of the input
+     */
+    void add(@NotNull TagStats stats) {
+        names.add(stats.getName());
+        tags.add(sortedTags(stats));
+    }
+
+    /**
+     * Get the distinct tags of an input truncated to depth, interned and sorted
+     *
+     * @param stats the tags of the input
+     * @return a sorted array without duplicates
+     */
+    @NotNull
+    String[] sortedTags(@NotNull TagStats stats) {
+        String[] result = new String[stats.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = pool.intern(truncate(stats.getTag(i), depth));
+        }
+        Arrays.sort(result);
+        int size = 0;
+        for (String tag : result) {
+            // interned, so equal tags are the same instance
+            if (size == 0 || result[size - 1] != tag) { // NOSONAR
+                result[size++] = tag;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Truncate a tag to a number of hierarchy steps
+     *
+     * @param tag the tag in the format h0 / h1 / h2 ....
+     * @param depth the number of hierarchy steps, 0 = all
+     * @return the truncated tag
+     */
+    @NotNull
+    static String truncate(@NotNull String tag, int depth) {
+        if (depth > 0) {
+            int pos = -1;
+            for (int i = 0; i < depth; i++) {
+                pos = tag.indexOf(HIERARCHY_SEPARATOR, pos + 1);
+                if (pos < 0) {
+                    return tag;
+                }
+            }
+            return tag.substring(0, pos).trim();
+        }
+        return tag;
+    }
+
+    /**
+     * Count the tags that two sorted arrays have in common
+     *
+     * @param a the first array
+     * @param b the second array
+     * @return the number of common tags
+     */
+    static int intersection(@NotNull String[] a, @NotNull String[] b) {
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            int c = a[i] == b[j] ? 0 : a[i].compareTo(b[j]); // NOSONAR
+            if (c == 0) {
+                count++;
+                i++;
+                j++;
+            } else if (c < 0) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the tags that are only present in one input
+     *
+     * @param index the index of the input
+     * @return a sorted array of tags
+     */
+    @NotNull
+    String[] unique(int index) {
+        String[] own = tags.get(index);
+        int[] pos = new int[tags.size()];
+        List<String> result = new ArrayList<>();
+        for (String tag : own) {
+            boolean found = false;
+            for (int k = 0; k < tags.size() && !found; k++) {
+                if (k == index) {
+                    continue;
+                }
+                String[] other = tags.get(k);
+                while (pos[k] < other.length && other[pos[k]] != tag && other[pos[k]].compareTo(tag) < 0) { // NOSONAR
+                    pos[k]++;
+                }
+                found = pos[k] < other.length && other[pos[k]] == tag; // NOSONAR
+            }
+            if (!found) {
+                result.add(tag);
+            }
+        }
+        return result.toArray(new String[0]);
+    }
+
+    /**
+     * Compute the pairwise overlaps and the number of unique tags per input in parallel
+     *
+     * @param threads the number of threads to use
+     */
+    void compute(int threads) {
+        int n = tags.size();
+        overlap = new int[n][n];
+        unique = new int[n];
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                final int a = i;
+                overlap[a][a] = tags.get(a).length;
+                futures.add(executor.submit(() -> unique[a] = unique(a).length));
+                for (int j = i + 1; j < n; j++) {
+                    final int b = j;
+                    futures.add(executor.submit(() -> {
+                        int count = intersection(tags.get(a), tags.get(b));
+                        overlap[a][b] = count;
+                        overlap[b][a] = count;
+                    }));
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Write the overlap matrix and the unique tag counts as CSV
+     *
+     * @param pw the PrintWriter to write to
+     */
+    void write(@NotNull PrintWriter pw) {
+        pw.print("Tags");
+        for (String name : names) {
+            pw.print("," + name);
+        }
+        pw.println();
+        for (int i = 0; i < names.size(); i++) {
+            pw.print(names.get(i));
+            for (int j = 0; j < names.size(); j++) {
+                pw.print("," + overlap[i][j]);
+            }
+            pw.println();
+        }
+        pw.print("Unique");
+        for (int count : unique) {
+            pw.print("," + count);
+        }
+        pw.println();
+        pw.flush();
+    }
+
+    public static void main(String[] args) {
+        // arguments
+        Option inputFile = Option.builder("i").longOpt(INPUT_OPT).hasArgs().required()
+                .desc("input preset stats files, or preset files and directories, at least two").build();
+        Option outputFile = Option.builder("o").longOpt(OUTPUT_OPT).hasArg().desc("output CSV file, default: standard out").build();
+        Option depthOpt = Option.builder("d").longOpt(DEPTH_OPT).hasArg().desc("number of hierarchy steps to consider, 0 = all and is the default")
+                .build();
+        Option uniqueOpt = Option.builder("u").longOpt(UNIQUE_OPT).hasArg().desc("list the tags that are unique to this input instead").build();
+
+        Options options = new Options();
+
+        options.addOption(inputFile);
+        options.addOption(outputFile);
+        options.addOption(depthOpt);
+        options.addOption(uniqueOpt);
+
+        CommandLineParser parser = new DefaultParser();
+        try {
+            CommandLine line = parser.parse(options, args);
+            int depth = 0;
+            if (line.hasOption(DEPTH_OPT)) {
+                try {
+                    depth = Integer.parseInt(line.getOptionValue(DEPTH_OPT));
+                } catch (NumberFormatException e) {
+                    throw new ParseException(e.getMessage());
+                }
+            }
+            String[] inputs = line.getOptionValues(INPUT_OPT);
+            PresetOverlap overlap = new PresetOverlap(depth);
+            PresetStatsPipeline pipeline = new PresetStatsPipeline(false, false);
+            for (String input : inputs) {
+                overlap.add(PresetStatsPipeline.isPreset(input) ? pipeline.stats(input) : TagStats.read(Paths.get(input)));
+            }
+            OutputStream os = line.hasOption(OUTPUT_OPT) ? new FileOutputStream(line.getOptionValue(OUTPUT_OPT)) : System.out;
+            try (PrintWriter pw = new PrintWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8))) {
+                if (line.hasOption(UNIQUE_OPT)) {
+                    int index = overlap.names.indexOf(line.getOptionValue(UNIQUE_OPT));
+                    if (index < 0) {
+                        throw new ParseException("Unknown input " + line.getOptionValue(UNIQUE_OPT));
+                    }
+                    for (String tag : overlap.unique(index)) {
+                        pw.println(tag);
+                    }
+                } else {
+                    overlap.compute(Runtime.getRuntime().availableProcessors());
+                    overlap.write(pw);
+                }
+            }
+        } catch (ParseException exp) {
+            System.err.println(exp.getMessage());
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp(PresetOverlap.class.getSimpleName(), options);
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package ch.poole.osm.presetutils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.jetbrains.annotations.NotNull;
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Parse a JOSM/Vespucci format preset in to a {@link Preset}
+ *
+ * Element names, attribute names and attribute values are interned with a {@link StringPool} per parse, which
+ * substantially reduces the size of the model as the same keys and values occur many times in a typical preset.
+ *
+ * There are two backends that produce the same model, SAX and a StAX pull parser, see {@link StaxPresetParser}. The
+ * backend can be selected with the presetutils.xml system property, valid values are "sax" and "stax", the default is
+ * sax. Both can skip elements that a tool doesn't need.
+ *
+ * @author Simon Poole
+ *
+ */
+public class PresetParser extends DefaultHandler {
+
+    static final String BACKEND_PROPERTY = "presetutils.xml";
+
+    public enum Backend {
+        SAX, STAX
+    }
+
+    private static final Preset.Element[] NO_CHILDREN = new Preset.Element[0];
+
+    /**
+     * An element that has been started but not ended yet
+     */
+    private static class OpenElement {
+        final ElementType          type;
+        final String               name;
+        final String[]             attributes;
+        final int                  line;
+        final List<Preset.Element> children = new ArrayList<>();
+
+        /**
+         * Construct a new instance
+         *
+         * @param type the ElementType
+         * @param name element name
+         * @param attributes alternating attribute names and values
+         * @param line start line
+         */
+        OpenElement(@NotNull ElementType type, @NotNull String name, @NotNull String[] attributes, int line) {
+            this.type = type;
+            this.name = name;
+            this.attributes = attributes;
+            this.line = line;
+        }
+    }
+
+    private final StringPool         pool;
+    private final Set<ElementType>   skip;
+    private final Deque<OpenElement> stack     = new ArrayDeque<>();
+    private Locator                  locator;
+    private Preset.Element           root;
+    private int                      skipDepth = 0;
+
+    /**
+     * Construct a new parser
+     *
+     * @param pool the StringPool to intern names and values with
+     * @param skip the types of elements that should be skipped together with their contents
+     */
+    private PresetParser(@NotNull StringPool pool, @NotNull Set<ElementType> skip) {
+        this.pool = pool;
+        this.skip = skip;
+    }
+
+    /**
+     * Get the backend selected by the system property
+     *
+     * @return the Backend
+     */
+    @NotNull
+    public static Backend defaultBackend() {
+        return Backend.valueOf(System.getProperty(BACKEND_PROPERTY, Backend.SAX.name()).toUpperCase(Locale.US));
+    }
+
+    /**
+     * Parse a preset
+     *
+     * @param input the InputStream to read from
+     * @return a Preset
+     * @throws ParserConfigurationException on parser setup issues
+     * @throws SAXException on parsing issues
+     * @throws IOException on reading issues
+     */
+    @NotNull
+    public static Preset parse(@NotNull InputStream input) throws ParserConfigurationException, SAXException, IOException {
+        return parse(input, "stdin");
+    }
+
+    /**
+     * Parse a preset
+     *
+     * @param input the InputStream to read from
+     * @param source name of the source, typically the file name
+     * @return a Preset
+     * @throws ParserConfigurationException on parser setup issues
+     * @throws SAXException on parsing issues
+     * @throws IOException on reading issues
+     */
+    @NotNull
+    public static Preset parse(@NotNull InputStream input, @NotNull String source) throws ParserConfigurationException, SAXException, IOException {
+        return parse(input, source, new StringPool());
+    }
+
+    /**
+     * Parse a preset, interning with a pool that can be shared with other consumers of the same input
+     *
+     * @param input the InputStream to read from
+     * @param source name of the source, typically the file name
+     * @param pool the StringPool to use
+     * @return a Preset
+     * @throws ParserConfigurationException on parser setup issues
+     * @throws SAXException on parsing issues
+     * @throws IOException on reading issues
+     */
+    @NotNull
+    public static Preset parse(@NotNull InputStream input, @NotNull String source, @NotNull StringPool pool)
+            throws ParserConfigurationException, SAXException, IOException {
+        return parse(defaultBackend(), input, source, pool, EnumSet.noneOf(ElementType.class));
+    }
+
+    /**
+     * Parse a preset skipping elements that are not needed, the skipped elements are not present in the model
+     *
+     * @param input the InputStream to read from
+     * @param source name of the source, typically the file name
+     * @param skip the types of elements that should be skipped together with their contents
+     * @return a Preset
+     * @throws ParserConfigurationException on parser setup issues
+     * @throws SAXException on parsing issues
+     * @throws IOException on reading issues
+     */
+    @NotNull
+    public static Preset parse(@NotNull InputStream input, @NotNull String source, @NotNull Set<ElementType> skip)
+            throws ParserConfigurationException, SAXException, IOException {
+        return parse(defaultBackend(), input, source, new StringPool(), skip);
+    }
+
+    /**
+     * Parse a preset with a specific backend
+     *
+     * @param backend the Backend to use
+     * @param input the InputStream to read from
+     * @param source name of the source, typically the file name
+     * @param pool the StringPool to use
+     * @param skip the types of elements that should be skipped together with their contents
+     * @return a Preset
+     * @throws ParserConfigurationException on parser setup issues
+     * @throws SAXException on parsing issues
+     * @throws IOException on reading issues
+     */
+    @NotNull
+    public static Preset parse(@NotNull Backend backend, @NotNull InputStream input, @NotNull String source, @NotNull StringPool pool,
+            @NotNull Set<ElementType> skip) throws ParserConfigurationException, SAXException, IOException {
+        if (backend == Backend.STAX) {
+            return StaxPresetParser.parse(input, source, pool, skip);
+        }
+        PresetParser parser = new PresetParser(pool, skip);
+        newSAXParser().parse(input, parser);
+        if (parser.root == null) {
+            throw new SAXException("No root element in " + source);
+        }
+        return new Preset(source, parser.root);
+    }
+
+    /**
+     * Get a SAXParser with external DTD and schema access disabled
+     *
+     * @return a SAXParser
+     * @throws ParserConfigurationException on parser setup issues
+     * @throws SAXException on parser setup issues
+     */
+    @NotNull
+    static SAXParser newSAXParser() throws ParserConfigurationException, SAXException {
+        SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
+        saxParser.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        saxParser.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+        return saxParser;
+    }
+
+    /**
+     * @return the current line number
+     */
+    private int line() {
+        return locator != null ? locator.getLineNumber() : 0;
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+        this.locator = locator;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attr) throws SAXException {
+        if (skipDepth > 0) {
+            skipDepth++;
+            return;
+        }
+        ElementType type = ElementType.fromName(qName);
+        if (skip.contains(type)) {
+            skipDepth = 1;
+            return;
+        }
+        int count = attr.getLength();
+        String[] attributes = new String[count * 2];
+        for (int i = 0; i < count; i++) {
+            attributes[i * 2] = pool.intern(attr.getQName(i));
+            attributes[i * 2 + 1] = pool.intern(attr.getValue(i));
+        }
+        stack.push(new OpenElement(type, pool.intern(qName), attributes, line()));
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        if (skipDepth > 0) {
+            skipDepth--;
+            return;
+        }
+        OpenElement open = stack.pop();
+        Preset.Element element = new Preset.Element(open.type, open.name, open.attributes, open.children.toArray(NO_CHILDREN), open.line, line());
+        OpenElement parent = stack.peek();
+        if (parent != null) {
+            parent.children.add(element);
+        } else {
+            root = element;
+        }
+    }
+}
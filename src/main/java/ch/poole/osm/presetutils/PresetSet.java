@@ -0,0 +1,347 @@
+package ch.poole.osm.presetutils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.jetbrains.annotations.NotNull;
+import org.xml.sax.SAXException;
+
+/**
+ * A main preset plus add-on presets, typically regional ones, that are used together
+ *
+ * The files are parsed concurrently, all share one {@link StringPool}. The order of the presets is the order the files
+ * were given in, files in a directory are sorted by name, so the result doesn't depend on which parse finishes first.
+ *
+ * Every file has its own chunk namespace: a chunk that has the same id as a chunk in an earlier file is renamed to
+ * <i>file name</i>:<i>id</i>, and references in the same file are changed to match. References to chunks that a file
+ * doesn't define itself resolve to the chunks of the earlier files, so add-ons can use the chunks of the main preset.
+ *
+ * @author Simon Poole
+ *
+ */
+public final class PresetSet {
+
+    private static final String PRESET_SUFFIX    = ".xml";
+    private static final String SOURCE_SEPARATOR = ",";
+
+    private final List<Preset> presets;
+
+    /**
+     * Construct a new set
+     *
+     * @param presets the presets in order
+     */
+    private PresetSet(@NotNull List<Preset> presets) {
+        this.presets = Collections.unmodifiableList(presets);
+    }
+
+    /**
+     * Check if the inputs are a single file
+     *
+     * @param inputs file and directory names
+     * @return true if there is exactly one input and it isn't a directory
+     */
+    public static boolean isSingleFile(@NotNull String... inputs) {
+        return inputs.length == 1 && !Files.isDirectory(Paths.get(inputs[0]));
+    }
+
+    /**
+     * Expand the inputs to a list of files, directories are replaced by the preset files they contain sorted by name
+     *
+     * @param inputs file and directory names
+     * @return a list of files
+     * @throws IOException if a directory can't be read
+     */
+    @NotNull
+    static List<Path> expand(@NotNull String... inputs) throws IOException {
+        List<Path> result = new ArrayList<>();
+        for (String input : inputs) {
+            Path path = Paths.get(input);
+            if (Files.isDirectory(path)) {
+                List<Path> files = new ArrayList<>();
+                try (DirectoryStream<Path> dir = Files.newDirectoryStream(path)) {
+                    for (Path file : dir) {
+                        if (Files.isRegularFile(file) && (file.getFileName().toString().endsWith(PRESET_SUFFIX) || BinaryPreset.isCompiled(file))) {
+                            files.add(file);
+                        }
+                    }
+                }
+                Collections.sort(files);
+                result.addAll(files);
+            } else {
+                result.add(path);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parse preset files and directories with one thread per available processor
+     *
+     * @param inputs file and directory names
+     * @return a PresetSet
+     * @throws ParserConfigurationException on parser setup issues
+     * @throws SAXException on parsing issues
+     * @throws IOException on reading issues
+     */
+    @NotNull
+    public static PresetSet parse(@NotNull String... inputs) throws ParserConfigurationException, SAXException, IOException {
+        return parse(expand(inputs), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Parse preset files concurrently
+     *
+     * @param files the files, XML or compiled
+     * @param threads the maximum number of threads to use
+     * @return a PresetSet
+     * @throws ParserConfigurationException on parser setup issues
+     * @throws SAXException on parsing issues
+     * @throws IOException on reading issues
+     */
+    @NotNull
+    public static PresetSet parse(@NotNull List<Path> files, int threads) throws ParserConfigurationException, SAXException, IOException {
+        if (files.isEmpty()) {
+            throw new IOException("No preset files found");
+        }
+        final StringPool pool = new StringPool();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files.size())));
+        try {
+            List<Future<Preset>> futures = new ArrayList<>();
+            for (final Path file : files) {
+                futures.add(executor.submit((Callable<Preset>) () -> load(file, pool)));
+            }
+            List<Preset> presets = new ArrayList<>();
+            for (Future<Preset> future : futures) {
+                presets.add(get(future));
+            }
+            return of(presets);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Create a set from already parsed presets, renaming clashing chunks
+     *
+     * @param presets the presets as parsed from the individual files, in order
+     * @return a PresetSet
+     */
+    @NotNull
+    static PresetSet of(@NotNull List<Preset> presets) {
+        List<Preset> namespaced = new ArrayList<>();
+        Set<String> chunkIds = new HashSet<>();
+        for (Preset preset : presets) {
+            namespaced.add(namespace(preset, chunkIds));
+        }
+        return new PresetSet(namespaced);
+    }
+
+    /**
+     * Load a single preset
+     *
+     * @param file the file, XML or compiled
+     * @param pool the StringPool to use
+     * @return a Preset
+     * @throws ParserConfigurationException on parser setup issues
+     * @throws SAXException on parsing issues
+     * @throws IOException on reading issues
+     */
+    @NotNull
+    static Preset load(@NotNull Path file, @NotNull StringPool pool) throws ParserConfigurationException, SAXException, IOException {
+        if (BinaryPreset.isCompiled(file)) {
+            return BinaryPreset.load(file).toPreset();
+        }
+        try (InputStream is = Files.newInputStream(file)) {
+            return PresetParser.parse(is, file.toString(), pool);
+        }
+    }
+
+    /**
+     * Wait for a parse and unwrap exceptions
+     *
+     * @param future the Future
+     * @return the Preset
+     * @throws ParserConfigurationException on parser setup issues
+     * @throws SAXException on parsing issues
+     * @throws IOException on reading issues
+     */
+    @NotNull
+    static Preset get(@NotNull Future<Preset> future) throws ParserConfigurationException, SAXException, IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SAXException) {
+                throw (SAXException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof ParserConfigurationException) {
+                throw (ParserConfigurationException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Rename chunks that clash with chunks of earlier files
+     *
+     * @param preset the Preset
+     * @param chunkIds the chunk ids of the earlier files, the ids of this preset are added
+     * @return the original Preset if nothing needed to be renamed or a new one
+     */
+    @NotNull
+    private static Preset namespace(@NotNull Preset preset, @NotNull Set<String> chunkIds) {
+        Map<String, String> renamed = new HashMap<>();
+        String prefix = Paths.get(preset.getSource()).getFileName().toString();
+        if (prefix.endsWith(PRESET_SUFFIX)) {
+            prefix = prefix.substring(0, prefix.length() - PRESET_SUFFIX.length());
+        }
+        for (String id : preset.getChunks().keySet()) {
+            if (chunkIds.contains(id)) {
+                renamed.put(id, prefix + ":" + id);
+            }
+        }
+        for (String id : preset.getChunks().keySet()) {
+            chunkIds.add(renamed.containsKey(id) ? renamed.get(id) : id);
+        }
+        return renamed.isEmpty() ? preset : new Preset(preset.getSource(), rename(preset.getRoot(), renamed));
+    }
+
+    /**
+     * Rename chunk ids and references
+     *
+     * @param element the current element
+     * @param renamed map from old to new id
+     * @return the original element if nothing changed or a new one
+     */
+    @NotNull
+    private static Preset.Element rename(@NotNull Preset.Element element, @NotNull Map<String, String> renamed) {
+        Preset.Element[] children = null;
+        for (int i = 0; i < element.getChildCount(); i++) {
+            Preset.Element child = element.getChild(i);
+            Preset.Element newChild = rename(child, renamed);
+            if (newChild != child && children == null) {
+                children = new Preset.Element[element.getChildCount()];
+                for (int j = 0; j < i; j++) {
+                    children[j] = element.getChild(j);
+                }
+            }
+            if (children != null) {
+                children[i] = newChild;
+            }
+        }
+        String attr = null;
+        if (element.getType() == ElementType.CHUNK) {
+            attr = PresetConstants.ID;
+        } else if (element.getType() == ElementType.REFERENCE) {
+            attr = PresetConstants.REF;
+        }
+        String newId = attr != null ? renamed.get(element.getAttribute(attr)) : null;
+        if (children == null && newId == null) {
+            return element;
+        }
+        String[] attributes = new String[element.getAttributeCount() * 2];
+        for (int i = 0; i < element.getAttributeCount(); i++) {
+            String name = element.getAttributeName(i);
+            attributes[i * 2] = name;
+            attributes[i * 2 + 1] = newId != null && name.equals(attr) ? newId : element.getAttributeValue(i);
+        }
+        if (children == null) {
+            children = new Preset.Element[element.getChildCount()];
+            for (int i = 0; i < children.length; i++) {
+                children[i] = element.getChild(i);
+            }
+        }
+        return new Preset.Element(element.getName(), attributes, children, element.getLine(), element.getEndLine());
+    }
+
+    /**
+     * @return the presets in input order
+     */
+    @NotNull
+    public List<Preset> getPresets() {
+        return presets;
+    }
+
+    /**
+     * @return the number of presets
+     */
+    public int size() {
+        return presets.size();
+    }
+
+    /**
+     * Merge the presets in to one, the root element is that of the first preset and contains the top level elements of
+     * all presets in order
+     *
+     * Line numbers are those of the individual files.
+     *
+     * @return a Preset
+     */
+    @NotNull
+    public Preset merge() {
+        if (presets.size() == 1) {
+            return presets.get(0);
+        }
+        List<Preset.Element> children = new ArrayList<>();
+        StringBuilder source = new StringBuilder();
+        for (Preset preset : presets) {
+            Preset.Element root = preset.getRoot();
+            for (int i = 0; i < root.getChildCount(); i++) {
+                children.add(root.getChild(i));
+            }
+            if (source.length() > 0) {
+                source.append(SOURCE_SEPARATOR);
+            }
+            source.append(preset.getSource());
+        }
+        Preset.Element first = presets.get(0).getRoot();
+        String[] attributes = new String[first.getAttributeCount() * 2];
+        for (int i = 0; i < first.getAttributeCount(); i++) {
+            attributes[i * 2] = first.getAttributeName(i);
+            attributes[i * 2 + 1] = first.getAttributeValue(i);
+        }
+        Preset.Element root = new Preset.Element(first.getName(), attributes, children.toArray(new Preset.Element[0]), first.getLine(),
+                first.getEndLine());
+        return new Preset(source.toString(), root);
+    }
+
+    /**
+     * Load a single preset file or a set of files and merge them
+     *
+     * @param inputs file and directory names
+     * @return a Preset
+     * @throws ParserConfigurationException on parser setup issues
+     * @throws SAXException on parsing issues
+     * @throws IOException on reading issues
+     */
+    @NotNull
+    public static Preset load(@NotNull String... inputs) throws ParserConfigurationException, SAXException, IOException {
+        if (isSingleFile(inputs)) {
+            return load(Paths.get(inputs[0]), new StringPool());
+        }
+        return parse(inputs).merge();
+    }
+}
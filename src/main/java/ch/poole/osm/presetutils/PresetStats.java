@@ -10,15 +10,23 @@ import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -51,6 +59,8 @@ public class PresetStats {
     private static final String OUTPUT           = "output";
     private static final String IGNOREDEPRECATED = "ignoredeprecated";
 
+    private static final int TAGINFO_THREADS = 4;
+
     class ItemStats {
         String                    tag        = null;
         String                    name       = null;
@@ -60,13 +70,43 @@ public class PresetStats {
         Map<String, List<String>> chunkTags  = null;
         boolean                   isChunk    = false;
         boolean                   deprecated = false;
+        List<String[]>            countTags  = null;
+        boolean                   objectTag  = false;
+
+        /**
+         * Add a tag whose taginfo count should be taken in to account
+         * 
+         * @param key the key
+         * @param value the value
+         */
+        void addCountTag(String key, String value) {
+            if (countTags == null) {
+                countTags = new ArrayList<>();
+            }
+            countTags.add(new String[] { key, value });
+        }
+
+        /**
+         * Copy the count tags of another item, used for items expanded from combos
+         * 
+         * @param other the other ItemStats
+         */
+        void copyCountTags(ItemStats other) {
+            if (other.countTags != null) {
+                countTags = new ArrayList<>(other.countTags);
+            }
+        }
     }
 
-    Map<String, ItemStats> items        = new HashMap<>();
-    Set<String>            uniqueKeys   = new HashSet<>();
-    Set<String>            uniqueValues = new HashSet<>();
-    String                 inputFilename;
-    MyHandler              handler;
+    Map<String, ItemStats>  items        = new HashMap<>();
+    Set<String>             uniqueKeys   = new HashSet<>();
+    Set<String>             uniqueValues = new HashSet<>();
+    String                  inputFilename;
+    MyHandler               handler;
+    StringPool              pool         = new StringPool();
+    CompletableFuture<Void> counts       = null;
+
+    BiFunction<String, Collection<String>, Map<String, Integer>> tagCounts = TagInfo::getTagCounts;
 
     class MyHandler extends DefaultHandler {
         private static final String GROUP              = "group";
@@ -95,6 +135,8 @@ public class PresetStats {
         boolean                     keySeen            = false;
         boolean                     secondLevelKeySeen = false;
         Map<String, ItemStats>      expandedItems      = null;
+        int                         pendingKeyCount    = 0;
+        int                         pendingValueCount  = 0;
         String                      tagKey             = null;
         String                      tagValue           = null;
         Map<String, ItemStats>      chunks             = new HashMap<>();
@@ -111,6 +153,34 @@ public class PresetStats {
             this.ignoreDeprecated = ignoreDeprecated;
         }
 
+        /**
+         * Add key and value counts to all expanded items
+         * 
+         * The counts are accumulated and only added to the items when the set of expanded items changes, or the item
+         * ends, so that fields following a combo with many values are not counted once per value
+         * 
+         * @param keys number of keys to add
+         * @param values number of values to add
+         */
+        private void addToExpanded(int keys, int values) {
+            pendingKeyCount += keys;
+            pendingValueCount += values;
+        }
+
+        /**
+         * Add the accumulated counts to the expanded items, needs to be called before expandedItems is changed
+         */
+        private void flushExpanded() {
+            if (expandedItems != null && (pendingKeyCount != 0 || pendingValueCount != 0)) {
+                for (ItemStats s : expandedItems.values()) {
+                    s.keyCount += pendingKeyCount;
+                    s.valueCount += pendingValueCount;
+                }
+            }
+            pendingKeyCount = 0;
+            pendingValueCount = 0;
+        }
+
         /**
          * ${@inheritDoc}.
          */
@@ -123,6 +193,7 @@ public class PresetStats {
                 String group = attr.getValue(NAME);
             } else if (ITEM.equals(qName)) {
                 keySeen = false;
+                flushExpanded();
                 expandedItems = null;
                 tagKey = null;
                 tagValue = null;
@@ -177,16 +248,13 @@ public class PresetStats {
                 current.keyCount++;
                 current.valueCount++;
                 if (useTagInfo) {
-                    int tagInfoCount = TagInfo.getTagCount(key, value);
-                    current.count = current.count > 0 ? Integer.min(current.count, tagInfoCount) : tagInfoCount;
+                    current.addCountTag(key, value);
                 }
             } else if (TEXT.equals(qName)) {
                 String key = attr.getValue(KEY);
                 uniqueKeys.add(key);
                 if (expandedItems != null) {
-                    for (ItemStats s : expandedItems.values()) {
-                        s.keyCount++;
-                    }
+                    addToExpanded(1, 0);
                 } else {
                     current.keyCount++;
                 }
@@ -195,9 +263,7 @@ public class PresetStats {
                 String key = attr.getValue(KEY);
                 uniqueKeys.add(key);
                 if (expandedItems != null) {
-                    for (ItemStats s : expandedItems.values()) {
-                        s.keyCount++;
-                    }
+                    addToExpanded(1, 0);
                 } else {
                     current.keyCount++;
                 }
@@ -208,6 +274,7 @@ public class PresetStats {
                 current.keyCount++;
                 String delimiter = attr.getValue(DELIMITER);
                 String valuesString = attr.getValue(VALUES);
+                flushExpanded();
                 expandedItems = null;
                 expandCombo = !secondLevelKeySeen && keySeen && (comboKey.equals(tagValue) || comboKey.equals(Tags.SECOND_LEVEL_KEYS.get(tagValue)));
                 if ((!keySeen && Tags.OBJECT_KEYS.contains(comboKey)) || expandCombo) {
@@ -215,6 +282,9 @@ public class PresetStats {
                 }
                 if (valuesString != null) {
                     String[] values = valuesString.split(delimiter != null ? delimiter : (MULTISELECT.equals(qName) ? ";" : ","));
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = pool.intern(values[i]);
+                    }
                     if (expandedItems != null) {
                         for (String v : values) {
                             if (!Tags.NOT_OBJECT_KEY_VALUES.contains(v)) {
@@ -226,8 +296,8 @@ public class PresetStats {
                                 }
                                 expandedItems.put(s.tag, s);
                                 if (useTagInfo) {
-                                    int tagInfoCount = TagInfo.getTagCount(key, v);
-                                    s.count = current.count > 0 ? Integer.min(current.count, tagInfoCount) : tagInfoCount;
+                                    s.copyCountTags(current);
+                                    s.addCountTag(key, v);
                                 }
                             }
                         }
@@ -265,8 +335,8 @@ public class PresetStats {
                                 s.tag = tagKey + "=" + tagValue + " / " + s.tag;
                                 expandedItems.put(s.tag, s);
                                 if (useTagInfo) {
-                                    int tagInfoCount = TagInfo.getTagCount(tagValue, v);
-                                    s.count = current.count > 0 ? Integer.min(current.count, tagInfoCount) : tagInfoCount;
+                                    s.copyCountTags(current);
+                                    s.addCountTag(tagValue, v);
                                 }
                             }
                             items.putAll(expandedItems);
@@ -274,19 +344,13 @@ public class PresetStats {
                         }
                     }
                     if (expandedItems != null) {
-                        for (ItemStats s : expandedItems.values()) {
-                            s.keyCount += chunk.keyCount;
-                            s.valueCount += chunk.valueCount;
-                        }
+                        addToExpanded(chunk.keyCount, chunk.valueCount);
                     } else {
-                        if (chunk.tag != null) {
-                            String[] c = chunk.tag.split("=");
-                            if (Tags.OBJECT_KEYS.contains(c[0])) { // hack alert
-                                if (current.tag != null) {
-                                    current.tag = chunk.tag + " / " + current.tag;
-                                } else {
-                                    current.tag = chunk.tag;
-                                }
+                        if (chunk.objectTag) { // hack alert
+                            if (current.tag != null) {
+                                current.tag = chunk.tag + " / " + current.tag;
+                            } else {
+                                current.tag = chunk.tag;
                             }
                         }
                         current.keyCount += chunk.keyCount;
@@ -302,10 +366,11 @@ public class PresetStats {
                     if (expandCombo) {
                         s.tag = tagKey + "=" + tagValue + " / " + s.tag;
                     }
+                    flushExpanded();
                     expandedItems.put(s.name, s);
                     if (useTagInfo) {
-                        int tagInfoCount = TagInfo.getTagCount(comboKey, value);
-                        s.count = current.count > 0 ? Integer.min(current.count, tagInfoCount) : tagInfoCount;
+                        s.copyCountTags(current);
+                        s.addCountTag(comboKey, value);
                     }
                 } else {
                     current.valueCount++;
@@ -326,6 +391,13 @@ public class PresetStats {
             }
         }
 
+        @Override
+        public void endDocument() throws SAXException {
+            if (useTagInfo) {
+                counts = resolveCounts();
+            }
+        }
+
         @Override
         public void endElement(String uri, String localMame, String qName) throws SAXException {
             if (GROUP.equals(qName)) {
@@ -336,10 +408,14 @@ public class PresetStats {
                     if (!current.deprecated || !ignoreDeprecated) {
                         items.put(current.tag, current);
                     }
+                    flushExpanded();
                     current = null;
                     expandedItems = null;
                 } else if (CHUNK.equals(qName)) {
+                    // pre-parse the tag once instead of on every reference
+                    current.objectTag = current.tag != null && Tags.OBJECT_KEYS.contains(current.tag.split("=")[0]);
                     chunks.put(current.name, current);
+                    flushExpanded();
                     current = null;
                     expandedItems = null;
                 } else if (COMBO.equals(qName) || MULTISELECT.equals(qName)) {
@@ -356,23 +432,124 @@ public class PresetStats {
     }
 
     void parseXML(boolean useTagInfo, boolean ignoreDeprecated, InputStream input) throws ParserConfigurationException, SAXException, IOException {
-        SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
+        process(useTagInfo, ignoreDeprecated, PresetParser.parse(input, inputFilename, pool));
+    }
+
+    /**
+     * Generate stats for an already parsed preset
+     * 
+     * The chunks are summarised first from their contents as expanded by ChunkExpander, so that nested references and
+     * references to chunks that are defined later in the file are resolved and each chunk is only expanded once. Then
+     * everything except the chunks is fed to the handler.
+     * 
+     * @param useTagInfo query taginfo for counts
+     * @param ignoreDeprecated ignore deprecated items
+     * @param preset the Preset
+     * @throws SAXException if processing fails
+     */
+    void process(boolean useTagInfo, boolean ignoreDeprecated, Preset preset) throws SAXException {
+        getHandler(useTagInfo, ignoreDeprecated);
+        handler.startDocument();
+        ChunkExpander expander = new ChunkExpander(preset);
+        for (Preset.Element chunk : preset.getChunks().values()) {
+            preset.replay(handler, expander.expand(chunk));
+        }
+        Preset.Element root = preset.getRoot();
+        for (int i = 0; i < root.getChildCount(); i++) {
+            Preset.Element child = root.getChild(i);
+            if (child.getType() != ElementType.CHUNK) {
+                preset.replay(handler, child);
+            }
+        }
+        handler.endDocument();
+    }
 
+    /**
+     * Get a new handler that generates the stats
+     * 
+     * @param useTagInfo query taginfo for counts
+     * @param ignoreDeprecated ignore deprecated items
+     * @return a DefaultHandler
+     */
+    DefaultHandler getHandler(boolean useTagInfo, boolean ignoreDeprecated) {
         handler = new MyHandler(useTagInfo, ignoreDeprecated);
+        return handler;
+    }
 
-        saxParser.parse(input, handler);
+    /**
+     * Resolve the taginfo counts of the collected items in the background
+     * 
+     * The tags are de-duplicated and grouped by key, each key is resolved as one batch on a small thread pool with
+     * tagCounts. The count of an item is the lowest non-zero count of its tags. If the lookup for a key fails, the
+     * tags with that key are ignored.
+     * 
+     * @return a CompletableFuture that completes when all counts have been set
+     */
+    CompletableFuture<Void> resolveCounts() {
+        final Map<String, Set<String>> tags = new LinkedHashMap<>();
+        for (ItemStats s : items.values()) {
+            if (s.countTags != null) {
+                for (String[] tag : s.countTags) {
+                    tags.computeIfAbsent(tag[0], k -> new LinkedHashSet<>()).add(tag[1]);
+                }
+            }
+        }
+        final Map<String, Map<String, Integer>> resolved = new ConcurrentHashMap<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(TAGINFO_THREADS);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (final Entry<String, Set<String>> entry : tags.entrySet()) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                Map<String, Integer> counts = tagCounts.apply(entry.getKey(), entry.getValue());
+                resolved.put(entry.getKey(), counts != null ? counts : Collections.emptyMap());
+            }, executor).exceptionally(t -> {
+                System.err.println("Getting counts for " + entry.getKey() + " failed: " + (t.getCause() != null ? t.getCause() : t));
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).thenRun(() -> {
+            for (ItemStats s : items.values()) {
+                if (s.countTags != null) {
+                    for (String[] tag : s.countTags) {
+                        Map<String, Integer> keyCounts = resolved.get(tag[0]);
+                        if (keyCounts == null) {
+                            // lookup failed, count unknown
+                            continue;
+                        }
+                        // values missing from the response count as unused
+                        int tagInfoCount = keyCounts.getOrDefault(tag[1], 0);
+                        s.count = s.count > 0 ? Integer.min(s.count, tagInfoCount) : tagInfoCount;
+                    }
+                }
+            }
+        }).whenComplete((r, t) -> executor.shutdown());
+    }
+
+    /**
+     * Get the tag coverage, waiting for the taginfo counts if necessary
+     * 
+     * @return a TagStats instance named after the input
+     */
+    TagStats getTagStats() {
+        if (counts != null) {
+            // wait for the taginfo counts
+            counts.join();
+        }
+        TagStats tagStats = new TagStats(String.valueOf(inputFilename));
+        for (ItemStats s : items.values()) {
+            tagStats.add(String.valueOf(s.tag), s.count, s.deprecated);
+        }
+        return tagStats;
     }
 
     void dumpStats(PrintWriter pw) {
+        getTagStats().write(pw);
         int itemCount = items.size();
         int keyCount = 0;
         int valueCount = 0;
         for (ItemStats s : items.values()) {
             keyCount += s.keyCount;
             valueCount += s.valueCount;
-            pw.print(s.tag + "," + s.count + "," + (s.deprecated ? "D" : "X") + "\n");
         }
-        pw.flush();
         // print stats to standard out
         System.out.print("Total items " + itemCount + "\n");
         System.out.print("Unique keys " + uniqueKeys.size() + "\n");
@@ -385,7 +562,7 @@ public class PresetStats {
 
     }
 
-    private void setInputFilename(String fn) {
+    void setInputFilename(String fn) {
         inputFilename = fn;
     }
 
@@ -395,6 +572,7 @@ public class PresetStats {
         OutputStreamWriter os = null;
         boolean useTagInfo = false;
         boolean ignoreDreprecated = false;
+        String[] inputs = null;
         try {
             os = new OutputStreamWriter(System.out, "UTF-8");
 
@@ -402,7 +580,7 @@ public class PresetStats {
             p.setInputFilename("stdin");
 
             // arguments
-            Option inputFile = Option.builder("i").longOpt(INPUT).hasArg().desc("input preset file, default: standard in").build();
+            Option inputFile = Option.builder("i").longOpt(INPUT).hasArgs().desc("input preset files or directories, default: standard in").build();
 
             Option outputFile = Option.builder("o").longOpt(OUTPUT).hasArg().desc("output stats file, default: standard out").build();
 
@@ -423,9 +601,12 @@ public class PresetStats {
                 CommandLine line = parser.parse(options, args);
                 if (line.hasOption(INPUT)) {
                     // initialise the member variable
-                    String input = line.getOptionValue(INPUT);
-                    p.setInputFilename(input);
-                    is = new FileInputStream(input);
+                    inputs = line.getOptionValues(INPUT);
+                    if (PresetSet.isSingleFile(inputs)) {
+                        p.setInputFilename(inputs[0]);
+                        is = new FileInputStream(inputs[0]);
+                        inputs = null;
+                    }
                 }
                 if (line.hasOption(OUTPUT)) {
                     String output = line.getOptionValue(OUTPUT);
@@ -443,7 +624,14 @@ public class PresetStats {
             }
 
             try {
-                p.parseXML(useTagInfo, ignoreDreprecated, is);
+                if (inputs != null) {
+                    // stats are for the merged preset so that chunks from other files are taken in to account
+                    Preset merged = PresetSet.parse(inputs).merge();
+                    p.setInputFilename(merged.getSource());
+                    p.process(useTagInfo, ignoreDreprecated, merged);
+                } else {
+                    p.parseXML(useTagInfo, ignoreDreprecated, is);
+                }
                 p.dumpStats(new PrintWriter(os));
             } catch (FileNotFoundException e) {
                 e.printStackTrace();
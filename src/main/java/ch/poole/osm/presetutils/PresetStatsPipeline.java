@@ -0,0 +1,274 @@
+package ch.poole.osm.presetutils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.xml.sax.SAXException;
+
+/**
+ * Run PresetStats, ComparePresets and MergePresetStats in one go
+ *
+ * The tag coverage of each preset is passed in memory to the compare and merge steps, writing the intermediate tag
+ * stats files is optional.
+ *
+ * Licence Apache 2.0
+ *
+ * @author Simon Poole
+ *
+ */
+public class PresetStatsPipeline {
+
+    private static final String INPUT_OPT            = "input";
+    private static final String STATS_OPT            = "stats";
+    private static final String REFERENCE_OPT        = "reference";
+    private static final String MERGED_OPT           = "merged";
+    private static final String WRITE_OPT            = "write";
+    private static final String DEPTH_OPT            = "depth";
+    private static final String TAGINFO_OPT          = "taginfo";
+    private static final String IGNOREDEPRECATED_OPT = "ignoredeprecated";
+
+    private static final String XML_EXT          = ".xml";
+    private static final String TAGS_FILE_SUFFIX = "_tags.txt";
+
+    private final boolean useTagInfo;
+    private final boolean ignoreDeprecated;
+
+    /**
+     * Construct a new instance
+     *
+     * @param useTagInfo query taginfo for counts
+     * @param ignoreDeprecated ignore deprecated items
+     */
+    PresetStatsPipeline(boolean useTagInfo, boolean ignoreDeprecated) {
+        this.useTagInfo = useTagInfo;
+        this.ignoreDeprecated = ignoreDeprecated;
+    }
+
+    /**
+     * Generate the tag coverage of a preset
+     *
+     * @param input preset file or directory
+     * @return a TagStats instance named after input
+     * @throws ParserConfigurationException on parser setup issues
+     * @throws SAXException on parsing issues
+     * @throws IOException on reading issues
+     */
+    @NotNull
+    TagStats stats(@NotNull String input) throws ParserConfigurationException, SAXException, IOException {
+        PresetStats p = new PresetStats();
+        p.setInputFilename(input);
+        p.process(useTagInfo, ignoreDeprecated, PresetSet.load(input));
+        return p.getTagStats();
+    }
+
+    /**
+     * Generate the tag coverage of several presets concurrently
+     *
+     * @param inputs preset files or directories
+     * @return a List of TagStats in the same order as inputs
+     * @throws ParserConfigurationException on parser setup issues
+     * @throws SAXException on parsing issues
+     * @throws IOException on reading issues
+     */
+    @NotNull
+    List<TagStats> stats(@NotNull String[] inputs) throws ParserConfigurationException, SAXException, IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(inputs.length, Runtime.getRuntime().availableProcessors())));
+        try {
+            List<Future<TagStats>> futures = new ArrayList<>();
+            for (String input : inputs) {
+                futures.add(executor.submit(() -> stats(input)));
+            }
+            List<TagStats> result = new ArrayList<>();
+            for (Future<TagStats> future : futures) {
+                result.add(get(future));
+            }
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Get the result of a future unwrapping the exceptions that stats can throw
+     *
+     * @param future the Future
+     * @return the TagStats
+     * @throws ParserConfigurationException on parser setup issues
+     * @throws SAXException on parsing issues
+     * @throws IOException on reading issues
+     */
+    @NotNull
+    private static TagStats get(@NotNull Future<TagStats> future) throws ParserConfigurationException, SAXException, IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ParserConfigurationException) {
+                throw (ParserConfigurationException) cause;
+            }
+            if (cause instanceof SAXException) {
+                throw (SAXException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Write the tag coverage in the format of PresetStats
+     *
+     * @param stats the TagStats
+     * @param dir the output directory
+     * @return the Path of the written file
+     * @throws IOException on writing issues
+     */
+    @NotNull
+    static Path write(@NotNull TagStats stats, @NotNull Path dir) throws IOException {
+        String name = Paths.get(stats.getName()).getFileName().toString();
+        if (name.endsWith(XML_EXT)) {
+            name = name.substring(0, name.length() - XML_EXT.length());
+        }
+        Path file = dir.resolve(name + TAGS_FILE_SUFFIX);
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            stats.write(pw);
+        }
+        return file;
+    }
+
+    /**
+     * Compare each input with the reference and merge everything in to one table
+     *
+     * @param reference the reference tags or null
+     * @param inputs the tags of the presets and of any other sources
+     * @param depth the number of hierarchies to compare, 0 = all
+     * @param comparison the PrintWriter for the comparison results
+     * @param merged the PrintWriter for the merged table or null
+     * @throws IOException if writing the merged table fails
+     */
+    static void run(@Nullable TagStats reference, @NotNull List<TagStats> inputs, int depth, @NotNull PrintWriter comparison,
+            @Nullable PrintWriter merged) throws IOException {
+        List<TagStats> all = new ArrayList<>();
+        if (reference != null) {
+            all.add(reference);
+            for (TagStats input : inputs) {
+                comparison.println(input.getName() + " compared to " + reference.getName());
+                ComparePresets.compare(reference, input, depth, comparison);
+            }
+        }
+        all.addAll(inputs);
+        if (merged != null) {
+            MergePresetStats.merge(all, merged);
+        }
+    }
+
+    /**
+     * Check if an input is a preset and not a tag stats file
+     *
+     * @param input the file or directory name
+     * @return true if input is a preset
+     */
+    static boolean isPreset(@NotNull String input) {
+        return input.endsWith(XML_EXT) || new File(input).isDirectory();
+    }
+
+    public static void main(String[] args) {
+        // arguments
+        Option inputFile = Option.builder("i").longOpt(INPUT_OPT).hasArgs().required().desc("input preset files or directories, one per preset").build();
+        Option statsFile = Option.builder("s").longOpt(STATS_OPT).hasArgs().desc("additional preset stats files, for example from TagsFromTaginfo")
+                .build();
+        Option referenceFile = Option.builder("r").longOpt(REFERENCE_OPT).hasArg()
+                .desc("reference preset or preset stats file, the inputs are compared to this").build();
+        Option mergedFile = Option.builder("m").longOpt(MERGED_OPT).hasArg().desc("merged stats output file, default: not written").build();
+        Option writeDir = Option.builder("w").longOpt(WRITE_OPT).hasArg().desc("directory to write the stats of each preset to, default: not written")
+                .build();
+        Option depthOpt = Option.builder("l").longOpt(DEPTH_OPT).hasArg().desc("number of hierarchy steps to consider, 0 = all and is the default")
+                .build();
+        Option tagInfo = Option.builder("t").longOpt(TAGINFO_OPT).desc("query taginfo for stats, default: false").build();
+        Option ignoreDeprecatedOpt = Option.builder("d").longOpt(IGNOREDEPRECATED_OPT).desc("ignore deprecated items, default: false").build();
+
+        Options options = new Options();
+
+        options.addOption(inputFile);
+        options.addOption(statsFile);
+        options.addOption(referenceFile);
+        options.addOption(mergedFile);
+        options.addOption(writeDir);
+        options.addOption(depthOpt);
+        options.addOption(tagInfo);
+        options.addOption(ignoreDeprecatedOpt);
+
+        CommandLineParser parser = new DefaultParser();
+        try {
+            CommandLine line = parser.parse(options, args);
+            int depth = 0;
+            if (line.hasOption(DEPTH_OPT)) {
+                try {
+                    depth = Integer.parseInt(line.getOptionValue(DEPTH_OPT));
+                } catch (NumberFormatException e) {
+                    throw new ParseException(e.getMessage());
+                }
+            }
+            PresetStatsPipeline pipeline = new PresetStatsPipeline(line.hasOption(TAGINFO_OPT), line.hasOption(IGNOREDEPRECATED_OPT));
+            List<TagStats> inputs = pipeline.stats(line.getOptionValues(INPUT_OPT));
+            if (line.hasOption(WRITE_OPT)) {
+                Path dir = Paths.get(line.getOptionValue(WRITE_OPT));
+                for (TagStats stats : inputs) {
+                    System.err.println("Wrote " + write(stats, dir)); // NOSONAR
+                }
+            }
+            if (line.hasOption(STATS_OPT)) {
+                for (String stats : line.getOptionValues(STATS_OPT)) {
+                    inputs.add(TagStats.read(Paths.get(stats)));
+                }
+            }
+            TagStats reference = null;
+            if (line.hasOption(REFERENCE_OPT)) {
+                String r = line.getOptionValue(REFERENCE_OPT);
+                reference = isPreset(r) ? pipeline.stats(r) : TagStats.read(Paths.get(r));
+            }
+            PrintWriter comparison = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            if (line.hasOption(MERGED_OPT)) {
+                try (PrintWriter merged = new PrintWriter(new OutputStreamWriter(new FileOutputStream(line.getOptionValue(MERGED_OPT)), StandardCharsets.UTF_8))) {
+                    run(reference, inputs, depth, comparison, merged);
+                }
+            } else {
+                run(reference, inputs, depth, comparison, null);
+            }
+            comparison.flush();
+        } catch (ParseException exp) {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp(PresetStatsPipeline.class.getSimpleName(), options);
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package ch.poole.osm.presetutils;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+/**
+ * Run a selection of CheckPreset, Preset2Pot, ListIcons, PresetStats and Preset2Html on a preset that is only parsed once
+ *
+ * The input can be an XML preset or a preset compiled with {@link PresetCompiler}
+ *
+ * Licence Apache 2.0
+ *
+ * @author Simon Poole
+ *
+ */
+public class PresetTools {
+
+    private static final String INPUT_OPT            = "input";
+    private static final String CHECK_OPT            = "check";
+    private static final String POT_OPT              = "pot";
+    private static final String ICONS_OPT            = "icons";
+    private static final String ICONMAP_OPT          = "iconmap";
+    private static final String STATS_OPT            = "stats";
+    private static final String TAGINFO_OPT          = "taginfo";
+    private static final String IGNOREDEPRECATED_OPT = "ignoredeprecated";
+    private static final String HTML_OPT             = "html";
+    private static final String VESPUCCI_OPT         = "vespucci";
+    private static final String JOSM_OPT             = "josm";
+    private static final String THREADS_OPT          = "threads";
+
+    private static final Logger LOGGER = Logger.getLogger(PresetTools.class.getName());
+
+    String       inputFilename = "stdin";
+    boolean      threaded      = false;
+    BinaryPreset compiled      = null;
+
+    CheckPreset checkPreset;
+
+    Preset2Pot  preset2Pot;
+    PrintWriter potOutput;
+
+    ListIcons   listIcons;
+    PrintWriter iconsOutput;
+    PrintWriter iconMapOutput;
+
+    PresetStats presetStats;
+    PrintWriter statsOutput;
+    boolean     useTagInfo       = false;
+    boolean     ignoreDeprecated = false;
+
+    Preset2Html preset2Html;
+    PrintWriter htmlOutput;
+
+    final StringPool pool = new StringPool();
+
+    private final FanOutHandler       fanOut = new FanOutHandler(pool);
+    private final List<QueuedHandler> queued = new ArrayList<>();
+
+    /**
+     * Add a tool handler, wrapping it in a QueuedHandler if we are running threaded
+     *
+     * @param name name of the tool
+     * @param handler the handler
+     */
+    private void addHandler(@NotNull String name, @NotNull ContentHandler handler) {
+        if (threaded) {
+            QueuedHandler q = new QueuedHandler(name, handler);
+            queued.add(q);
+            fanOut.add(q);
+        } else {
+            fanOut.add(handler);
+        }
+    }
+
+    /**
+     * Parse the input once, or use the compiled preset if set, and run all selected tools
+     *
+     * CheckPreset, Preset2Pot and ListIcons consume the replayed model, optionally each on its own thread, PresetStats
+     * and Preset2Html need the chunk references resolved and process the model afterwards.
+     *
+     * @param input the preset InputStream
+     * @throws ParserConfigurationException on parser setup issues
+     * @throws SAXException on parsing issues
+     * @throws IOException on reading issues
+     */
+    void run(@NotNull InputStream input) throws ParserConfigurationException, SAXException, IOException {
+        Preset preset;
+        if (compiled != null) {
+            preset = compiled.toPreset();
+        } else {
+            // if only the icons are needed the other elements don't have to be parsed
+            Set<ElementType> skip = listIcons != null && checkPreset == null && preset2Pot == null && presetStats == null && preset2Html == null
+                    ? ListIcons.SKIP
+                    : EnumSet.noneOf(ElementType.class);
+            preset = PresetParser.parse(PresetParser.defaultBackend(), input, inputFilename, pool, skip);
+        }
+        if (checkPreset != null) {
+            checkPreset.inputFilename = inputFilename;
+            addHandler(CheckPreset.class.getSimpleName(), checkPreset.getHandler());
+        }
+        if (preset2Pot != null) {
+            preset2Pot.inputFilename = inputFilename;
+            preset2Pot.pool = pool;
+            addHandler(Preset2Pot.class.getSimpleName(), preset2Pot.getHandler());
+        }
+        if (listIcons != null) {
+            listIcons.inputFilename = inputFilename;
+            addHandler(ListIcons.class.getSimpleName(), listIcons.getHandler(iconsOutput, iconMapOutput));
+        }
+        try {
+            preset.replay(fanOut);
+        } catch (SAXException e) {
+            for (QueuedHandler q : queued) {
+                q.abort();
+            }
+            throw e;
+        }
+        if (checkPreset != null) {
+            checkPreset.checkChunkCycles(new ChunkExpander(preset));
+        }
+        if (preset2Pot != null) {
+            preset2Pot.dump2Pot(potOutput);
+        }
+        if (presetStats != null) {
+            presetStats.inputFilename = inputFilename;
+            presetStats.pool = pool;
+            presetStats.process(useTagInfo, ignoreDeprecated, preset);
+            presetStats.dumpStats(statsOutput);
+        }
+        if (preset2Html != null) {
+            preset2Html.inputFilename = inputFilename;
+            preset2Html.process(preset, htmlOutput);
+        }
+        LOGGER.log(Level.INFO, "String pool: {0}", pool);
+    }
+
+    /**
+     * Run all selected tools on a set of presets
+     * 
+     * CheckPreset and Preset2Pot process the individual files so that messages and references point to the right
+     * file, the other tools process the merged preset. The tools run one after the other, the option to run them on
+     * their own threads is ignored.
+     *
+     * @param presets the PresetSet
+     * @throws SAXException on processing issues
+     */
+    void run(@NotNull PresetSet presets) throws SAXException {
+        if (checkPreset != null) {
+            checkPreset.process(presets);
+        }
+        if (preset2Pot != null) {
+            preset2Pot.pool = pool;
+            preset2Pot.process(presets);
+            preset2Pot.dump2Pot(potOutput);
+        }
+        Preset merged = presets.merge();
+        if (listIcons != null) {
+            listIcons.inputFilename = merged.getSource();
+            listIcons.process(merged, iconsOutput, iconMapOutput);
+        }
+        if (presetStats != null) {
+            presetStats.inputFilename = merged.getSource();
+            presetStats.pool = pool;
+            presetStats.process(useTagInfo, ignoreDeprecated, merged);
+            presetStats.dumpStats(statsOutput);
+        }
+        if (preset2Html != null) {
+            preset2Html.inputFilename = merged.getSource();
+            preset2Html.process(merged, htmlOutput);
+        }
+        LOGGER.log(Level.INFO, "String pool: {0}", pool);
+    }
+
+    /**
+     * Open an output file
+     *
+     * @param filename the file name
+     * @return a PrintWriter
+     * @throws FileNotFoundException if the file can't be created
+     */
+    @NotNull
+    private static PrintWriter open(@NotNull String filename) throws FileNotFoundException {
+        return new PrintWriter(new OutputStreamWriter(new FileOutputStream(filename), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Close a PrintWriter if not null
+     *
+     * @param pw the PrintWriter
+     */
+    private static void close(@Nullable PrintWriter pw) {
+        if (pw != null) {
+            pw.close();
+        }
+    }
+
+    public static void main(String[] args) {
+        // defaults
+        InputStream is = System.in;
+        String[] inputs = null;
+        PresetTools tools = new PresetTools();
+
+        // arguments
+        Options options = new Options();
+        options.addOption(Option.builder("i").longOpt(INPUT_OPT).hasArgs().desc("input preset files or directories, default: standard in").build());
+        options.addOption(Option.builder("c").longOpt(CHECK_OPT).desc("run CheckPreset").build());
+        options.addOption(Option.builder("p").longOpt(POT_OPT).hasArg().desc("run Preset2Pot and write the .pot file").build());
+        options.addOption(Option.builder("l").longOpt(ICONS_OPT).hasArg().desc("run ListIcons and write the icon list").build());
+        options.addOption(Option.builder("m").longOpt(ICONMAP_OPT).hasArg().desc("icon map output file for ListIcons, default: none").build());
+        options.addOption(Option.builder("s").longOpt(STATS_OPT).hasArg().desc("run PresetStats and write the stats file").build());
+        options.addOption(Option.builder("t").longOpt(TAGINFO_OPT).desc("query taginfo for stats, default: false").build());
+        options.addOption(Option.builder("d").longOpt(IGNOREDEPRECATED_OPT).desc("ignore deprecated items in stats, default: false").build());
+        options.addOption(Option.builder("w").longOpt(HTML_OPT).hasArg().desc("run Preset2Html and write the .html file").build());
+        options.addOption(Option.builder("v").longOpt(VESPUCCI_OPT).hasArg().desc("download link vespucci format, default: none").build());
+        options.addOption(Option.builder("j").longOpt(JOSM_OPT).hasArg().desc("download link JOSM format, default: none").build());
+        options.addOption(Option.builder("T").longOpt(THREADS_OPT).desc("run CheckPreset, Preset2Pot and ListIcons on their own threads").build());
+
+        CommandLineParser parser = new DefaultParser();
+        try {
+            try {
+                // parse the command line arguments
+                CommandLine line = parser.parse(options, args);
+                if (line.hasOption(INPUT_OPT)) {
+                    inputs = line.getOptionValues(INPUT_OPT);
+                    if (PresetSet.isSingleFile(inputs)) {
+                        tools.inputFilename = inputs[0];
+                        is = new FileInputStream(tools.inputFilename);
+                        Path path = Paths.get(tools.inputFilename);
+                        if (BinaryPreset.isCompiled(path)) {
+                            tools.compiled = BinaryPreset.load(path);
+                        }
+                        inputs = null;
+                    }
+                }
+                if (line.hasOption(CHECK_OPT)) {
+                    tools.checkPreset = new CheckPreset();
+                }
+                if (line.hasOption(POT_OPT)) {
+                    tools.preset2Pot = new Preset2Pot();
+                    tools.potOutput = open(line.getOptionValue(POT_OPT));
+                }
+                if (line.hasOption(ICONS_OPT)) {
+                    tools.listIcons = new ListIcons();
+                    tools.iconsOutput = open(line.getOptionValue(ICONS_OPT));
+                    if (line.hasOption(ICONMAP_OPT)) {
+                        tools.iconMapOutput = open(line.getOptionValue(ICONMAP_OPT));
+                    }
+                }
+                if (line.hasOption(STATS_OPT)) {
+                    tools.presetStats = new PresetStats();
+                    tools.statsOutput = open(line.getOptionValue(STATS_OPT));
+                    tools.useTagInfo = line.hasOption(TAGINFO_OPT);
+                    tools.ignoreDeprecated = line.hasOption(IGNOREDEPRECATED_OPT);
+                }
+                if (line.hasOption(HTML_OPT)) {
+                    tools.preset2Html = new Preset2Html();
+                    tools.htmlOutput = open(line.getOptionValue(HTML_OPT));
+                    tools.preset2Html.vespucciLink = line.getOptionValue(VESPUCCI_OPT);
+                    tools.preset2Html.josmLink = line.getOptionValue(JOSM_OPT);
+                }
+                tools.threaded = line.hasOption(THREADS_OPT);
+            } catch (ParseException exp) {
+                HelpFormatter formatter = new HelpFormatter();
+                formatter.printHelp(PresetTools.class.getSimpleName(), options);
+                return;
+            } catch (FileNotFoundException e) {
+                System.err.println("File not found: " + e.getMessage());
+                return;
+            } catch (IOException e) {
+                System.err.println("Error reading input: " + e.getMessage());
+                return;
+            }
+
+            try {
+                if (inputs != null) {
+                    tools.run(PresetSet.parse(inputs));
+                } else {
+                    tools.run(is);
+                }
+            } catch (ParserConfigurationException | SAXException | IOException e) {
+                e.printStackTrace();
+            }
+        } finally {
+            try {
+                is.close();
+            } catch (IOException e) {
+                // NOSONAR
+            }
+            close(tools.potOutput);
+            close(tools.iconsOutput);
+            close(tools.iconMapOutput);
+            close(tools.statsOutput);
+            close(tools.htmlOutput);
+            if (tools.checkPreset != null && tools.checkPreset.error) {
+                System.exit(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,536 @@
+package ch.poole.osm.presetutils;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Watch preset files and re-run CheckPreset, Preset2Pot and Preset2Html when they change
+ *
+ * The parsed models are kept in memory, only files that changed are parsed again. Items and chunks are compared by a
+ * hash of their contents that ignores line numbers, the checks are only run on the items and chunks that changed and on
+ * the items that use a changed chunk, directly or via other chunks. The translation catalog is kept per file and only
+ * re-generated for the files that changed, the HTML page is re-generated from the in memory model if anything but
+ * formatting changed.
+ *
+ * Licence Apache 2.0
+ *
+ * @author Simon Poole
+ *
+ */
+public class PresetWatcher {
+
+    private static final String INPUT_OPT    = "input";
+    private static final String CHECK_OPT    = "check";
+    private static final String POT_OPT      = "pot";
+    private static final String HTML_OPT     = "html";
+    private static final String VESPUCCI_OPT = "vespucci";
+    private static final String JOSM_OPT     = "josm";
+
+    private static final Logger LOGGER = Logger.getLogger(PresetWatcher.class.getName());
+
+    /**
+     * Time to wait for further events before processing a change, editors typically write a file in several steps
+     */
+    private static final long QUIET_PERIOD = 50;
+
+    private static final int NANOS_PER_MILLI = 1000000;
+
+    String[] inputs;
+    boolean  check        = false;
+    String   potFile      = null;
+    String   htmlFile     = null;
+    String   vespucciLink = null;
+    String   josmLink     = null;
+
+    private Map<Path, Preset>           models     = new LinkedHashMap<>();
+    private final Map<Path, Signatures> signatures = new HashMap<>();
+    private final Map<Path, Preset2Pot> catalogs   = new HashMap<>();
+
+    /**
+     * Hashes of the items and chunks of one file
+     */
+    static final class Signatures {
+        final String                      source;
+        final Map<String, Integer>        chunks     = new HashMap<>();
+        final Map<String, Integer>        itemHashes = new HashMap<>();
+        final Map<String, Preset.Element> items      = new LinkedHashMap<>();
+        final int                         hash;
+
+        /**
+         * Compute the hashes for a preset
+         *
+         * @param preset the Preset, with chunk ids already made unique over the whole set
+         */
+        Signatures(@NotNull Preset preset) {
+            source = preset.getSource();
+            hash = preset.getRoot().contentHash();
+            for (Entry<String, Preset.Element> chunk : preset.getChunks().entrySet()) {
+                chunks.put(chunk.getKey(), chunk.getValue().contentHash());
+            }
+            for (Entry<String, Preset.Element> item : PresetDiff.itemsByPath(preset).entrySet()) {
+                String key = preset.getSource() + "|" + item.getKey();
+                items.put(key, item.getValue());
+                itemHashes.put(key, item.getValue().contentHash());
+            }
+        }
+    }
+
+    /**
+     * The result of comparing two versions of a preset set
+     */
+    static final class Changes {
+        final Set<String>         chunks   = new HashSet<>();
+        final Set<Preset.Element> changed  = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Set<Preset.Element> affected = Collections.newSetFromMap(new IdentityHashMap<>());
+        boolean                   modified = false;
+
+        /**
+         * @return true if nothing but formatting changed
+         */
+        boolean isEmpty() {
+            return !modified;
+        }
+    }
+
+    /**
+     * Compare the hashes of the old and the new version and determine the affected items
+     *
+     * @param old the hashes of the previous version per file
+     * @param current the hashes of the current version per file
+     * @param merged the current version merged in to one Preset
+     * @return the Changes
+     */
+    @NotNull
+    static Changes diff(@NotNull Map<Path, Signatures> old, @NotNull Map<Path, Signatures> current, @NotNull Preset merged) {
+        Changes changes = new Changes();
+        Map<String, Integer> oldChunks = new HashMap<>();
+        Map<String, Integer> oldItems = new HashMap<>();
+        for (Signatures s : old.values()) {
+            oldChunks.putAll(s.chunks);
+            oldItems.putAll(s.itemHashes);
+        }
+        changes.modified = !old.keySet().equals(current.keySet());
+        Set<String> currentChunks = new HashSet<>();
+        for (Entry<Path, Signatures> entry : current.entrySet()) {
+            Signatures s = entry.getValue();
+            Signatures previous = old.get(entry.getKey());
+            changes.modified |= previous == null || previous.hash != s.hash;
+            for (Entry<String, Integer> chunk : s.chunks.entrySet()) {
+                if (!chunk.getValue().equals(oldChunks.get(chunk.getKey()))) {
+                    changes.chunks.add(chunk.getKey());
+                }
+                currentChunks.add(chunk.getKey());
+            }
+            for (Entry<String, Preset.Element> item : s.items.entrySet()) {
+                if (!s.itemHashes.get(item.getKey()).equals(oldItems.get(item.getKey()))) {
+                    changes.changed.add(item.getValue());
+                }
+            }
+        }
+        // references to removed chunks have to be checked too
+        for (String id : oldChunks.keySet()) {
+            if (!currentChunks.contains(id)) {
+                changes.chunks.add(id);
+            }
+        }
+        Set<String> closure = usedBy(changes.chunks, merged);
+        changes.affected.addAll(changes.changed);
+        for (Preset.Element item : merged.getItems()) {
+            if (!changes.affected.contains(item) && references(item, closure)) {
+                changes.affected.add(item);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Determine the chunks that reference any of the given chunks, directly or indirectly
+     *
+     * @param chunks the chunk ids
+     * @param preset the Preset
+     * @return the ids of the given chunks and all chunks referencing them
+     */
+    @NotNull
+    private static Set<String> usedBy(@NotNull Set<String> chunks, @NotNull Preset preset) {
+        Map<String, List<String>> referencedBy = new HashMap<>();
+        for (Entry<String, Preset.Element> chunk : preset.getChunks().entrySet()) {
+            for (String ref : collectReferences(chunk.getValue(), new HashSet<>())) {
+                referencedBy.computeIfAbsent(ref, k -> new ArrayList<>()).add(chunk.getKey());
+            }
+        }
+        Set<String> result = new HashSet<>(chunks);
+        Deque<String> todo = new ArrayDeque<>(chunks);
+        while (!todo.isEmpty()) {
+            for (String id : referencedBy.getOrDefault(todo.pop(), Collections.emptyList())) {
+                if (result.add(id)) {
+                    todo.push(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Collect the chunk references in an element and its children
+     *
+     * @param element the element
+     * @param refs set to add the references to
+     * @return refs
+     */
+    @NotNull
+    private static Set<String> collectReferences(@NotNull Preset.Element element, @NotNull Set<String> refs) {
+        if (element.getType() == ElementType.REFERENCE) {
+            String ref = element.getAttribute(PresetConstants.REF);
+            if (ref != null) {
+                refs.add(ref);
+            }
+        }
+        for (int i = 0; i < element.getChildCount(); i++) {
+            collectReferences(element.getChild(i), refs);
+        }
+        return refs;
+    }
+
+    /**
+     * Check if an element references any of the chunks
+     *
+     * @param element the element
+     * @param chunks the chunk ids
+     * @return true if a reference was found
+     */
+    private static boolean references(@NotNull Preset.Element element, @NotNull Set<String> chunks) {
+        if (chunks.isEmpty()) {
+            return false;
+        }
+        if (element.getType() == ElementType.REFERENCE && chunks.contains(element.getAttribute(PresetConstants.REF))) {
+            return true;
+        }
+        for (int i = 0; i < element.getChildCount(); i++) {
+            if (references(element.getChild(i), chunks)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reduce a preset to what is needed to check the changes
+     *
+     * Changed chunks and affected items are retained in full, other chunks are retained without contents so that the
+     * order of definitions and references can still be checked, the groups are retained if they contain anything.
+     *
+     * @param element the current element
+     * @param changes the Changes
+     * @return the reduced element or null if nothing needs to be retained
+     */
+    @Nullable
+    static Preset.Element prune(@NotNull Preset.Element element, @NotNull Changes changes) {
+        switch (element.getType()) {
+        case ITEM:
+            return changes.affected.contains(element) ? element : null;
+        case CHUNK:
+            if (changes.chunks.contains(element.getAttribute(PresetConstants.ID))) {
+                return element;
+            }
+            return new Preset.Element(element.getName(), attributes(element), null, element.getLine(), element.getEndLine());
+        case PRESETS:
+        case GROUP:
+            List<Preset.Element> children = new ArrayList<>();
+            for (int i = 0; i < element.getChildCount(); i++) {
+                Preset.Element child = prune(element.getChild(i), changes);
+                if (child != null) {
+                    children.add(child);
+                }
+            }
+            if (children.isEmpty() && element.getType() == ElementType.GROUP) {
+                return null;
+            }
+            return new Preset.Element(element.getName(), attributes(element), children.toArray(new Preset.Element[0]), element.getLine(),
+                    element.getEndLine());
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Copy the attributes of an element
+     *
+     * @param element the element
+     * @return alternating attribute names and values
+     */
+    @NotNull
+    private static String[] attributes(@NotNull Preset.Element element) {
+        String[] attributes = new String[element.getAttributeCount() * 2];
+        for (int i = 0; i < element.getAttributeCount(); i++) {
+            attributes[i * 2] = element.getAttributeName(i);
+            attributes[i * 2 + 1] = element.getAttributeValue(i);
+        }
+        return attributes;
+    }
+
+    /**
+     * Parse the files that changed and update the outputs
+     *
+     * @param changedFiles absolute paths of the files that changed, null to parse everything
+     * @throws IOException if writing the outputs fails
+     * @throws SAXException if processing fails
+     */
+    void update(@Nullable Set<Path> changedFiles) throws IOException, SAXException {
+        long start = System.nanoTime();
+        List<Path> files;
+        Map<Path, Preset> newModels = new LinkedHashMap<>();
+        // a new pool per update so that strings from previous versions are not retained
+        StringPool pool = new StringPool();
+        try {
+            files = PresetSet.expand(inputs);
+            for (Path file : files) {
+                Preset model = models.get(file);
+                if (model == null || changedFiles == null || changedFiles.contains(file.toAbsolutePath().normalize())) {
+                    model = PresetSet.load(file, pool);
+                }
+                newModels.put(file, model);
+            }
+        } catch (SAXParseException e) {
+            LOGGER.log(Level.SEVERE, "{0} line {1}: {2}", new Object[] { e.getSystemId(), e.getLineNumber(), e.getMessage() });
+            return;
+        } catch (IOException | ParserConfigurationException | SAXException e) {
+            // typically the file is still being written, we will get another event
+            LOGGER.log(Level.WARNING, "Reading input failed: {0}", e.getMessage());
+            return;
+        }
+        if (files.isEmpty()) {
+            LOGGER.log(Level.WARNING, "No preset files found");
+            return;
+        }
+        models = newModels;
+        PresetSet set = PresetSet.of(new ArrayList<>(models.values()));
+        Preset merged = set.merge();
+
+        Map<Path, Signatures> current = new LinkedHashMap<>();
+        List<Path> updated = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            Preset preset = set.getPresets().get(i);
+            Signatures previous = signatures.get(file);
+            if (previous != null && Objects.equals(previous.source, preset.getSource()) && previous.hash == preset.getRoot().contentHash()) {
+                current.put(file, previous);
+            } else {
+                current.put(file, new Signatures(preset));
+                updated.add(file);
+            }
+        }
+        if (updated.isEmpty() && current.keySet().equals(signatures.keySet())) {
+            return;
+        }
+        Changes changes = diff(signatures, current, merged);
+        signatures.clear();
+        signatures.putAll(current);
+
+        if (check && !changes.isEmpty()) {
+            check(set, merged, changes);
+        }
+        if (potFile != null) {
+            writePot(set, updated, pool);
+        }
+        if (htmlFile != null && !changes.isEmpty()) {
+            Preset2Html preset2Html = new Preset2Html();
+            preset2Html.inputFilename = merged.getSource();
+            preset2Html.vespucciLink = vespucciLink;
+            preset2Html.josmLink = josmLink;
+            try (PrintWriter pw = open(htmlFile)) {
+                preset2Html.process(merged, pw);
+            }
+        }
+        LOGGER.log(Level.INFO, "Updated in {0} ms, {1} items and {2} chunks changed, {3} items checked",
+                new Object[] { (System.nanoTime() - start) / NANOS_PER_MILLI, changes.changed.size(), changes.chunks.size(), changes.affected.size() });
+    }
+
+    /**
+     * Run CheckPreset on the changed chunks and affected items
+     *
+     * @param set the current PresetSet
+     * @param merged the merged Preset
+     * @param changes the Changes
+     * @throws SAXException if the checks fail fatally
+     */
+    private void check(@NotNull PresetSet set, @NotNull Preset merged, @NotNull Changes changes) throws SAXException {
+        CheckPreset checkPreset = new CheckPreset();
+        for (Preset preset : set.getPresets()) {
+            checkPreset.inputFilename = preset.getSource();
+            Preset.Element root = prune(preset.getRoot(), changes);
+            if (root != null) {
+                new Preset(preset.getSource(), root).replay(checkPreset.getHandler());
+            }
+        }
+        if (!changes.chunks.isEmpty()) {
+            checkPreset.checkChunkCycles(new ChunkExpander(merged));
+        }
+        if (checkPreset.error) {
+            LOGGER.log(Level.SEVERE, "Errors found");
+        }
+    }
+
+    /**
+     * Update the catalogs of the files that changed and write the combined catalog
+     *
+     * @param set the current PresetSet
+     * @param updated the files that changed
+     * @param pool the StringPool for the current update
+     * @throws IOException if writing fails
+     * @throws SAXException if processing fails
+     */
+    private void writePot(@NotNull PresetSet set, @NotNull List<Path> updated, @NotNull StringPool pool) throws IOException, SAXException {
+        List<Path> files = new ArrayList<>(models.keySet());
+        catalogs.keySet().retainAll(files);
+        for (Path file : updated) {
+            Preset preset = set.getPresets().get(files.indexOf(file));
+            Preset2Pot preset2Pot = new Preset2Pot();
+            preset2Pot.inputFilename = preset.getSource();
+            preset2Pot.pool = pool;
+            preset2Pot.process(preset);
+            catalogs.put(file, preset2Pot);
+        }
+        Preset2Pot combined = new Preset2Pot();
+        for (Path file : files) {
+            combined.add(catalogs.get(file));
+        }
+        try (PrintWriter pw = open(potFile)) {
+            combined.dump2Pot(pw);
+        }
+    }
+
+    /**
+     * Open an output file
+     *
+     * @param filename the file name
+     * @return a PrintWriter
+     * @throws IOException if the file can't be created
+     */
+    @NotNull
+    private static PrintWriter open(@NotNull String filename) throws IOException {
+        return new PrintWriter(new OutputStreamWriter(new FileOutputStream(filename), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Process the input and then wait for changes until interrupted
+     *
+     * @throws IOException if watching fails
+     * @throws SAXException if processing fails
+     * @throws InterruptedException if interrupted
+     */
+    void watch() throws IOException, SAXException, InterruptedException {
+        update(null);
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            Map<WatchKey, Path> directories = new HashMap<>();
+            for (String input : inputs) {
+                Path path = Paths.get(input).toAbsolutePath().normalize();
+                Path directory = Files.isDirectory(path) ? path : path.getParent();
+                directories.put(directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE), directory);
+            }
+            LOGGER.log(Level.INFO, "Watching {0}", directories.values());
+            while (true) { // NOSONAR
+                Set<Path> changed = new HashSet<>();
+                WatchKey key = watcher.take();
+                while (key != null) {
+                    Path directory = directories.get(key);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            changed = null;
+                        } else if (changed != null) {
+                            changed.add(directory.resolve((Path) event.context()));
+                        }
+                    }
+                    key.reset();
+                    key = watcher.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS);
+                }
+                update(changed);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        // set up logging
+        LogManager.getLogManager().reset();
+        Handler handler = new FlushStreamHandler(System.out, new SimpleFormatter()); // NOSONAR
+        handler.setLevel(Level.INFO);
+        Logger.getLogger("").addHandler(handler);
+
+        PresetWatcher p = new PresetWatcher();
+
+        // arguments
+        Options options = new Options();
+        options.addOption(Option.builder("i").longOpt(INPUT_OPT).hasArgs().required().desc("input preset files or directories").build());
+        options.addOption(Option.builder("c").longOpt(CHECK_OPT).desc("run CheckPreset on the changes").build());
+        options.addOption(Option.builder("p").longOpt(POT_OPT).hasArg().desc("run Preset2Pot and write the .pot file").build());
+        options.addOption(Option.builder("w").longOpt(HTML_OPT).hasArg().desc("run Preset2Html and write the .html file").build());
+        options.addOption(Option.builder("v").longOpt(VESPUCCI_OPT).hasArg().desc("download link vespucci format, default: none").build());
+        options.addOption(Option.builder("j").longOpt(JOSM_OPT).hasArg().desc("download link JOSM format, default: none").build());
+
+        CommandLineParser parser = new DefaultParser();
+        try {
+            CommandLine line = parser.parse(options, args);
+            p.inputs = line.getOptionValues(INPUT_OPT);
+            p.check = line.hasOption(CHECK_OPT);
+            p.potFile = line.getOptionValue(POT_OPT);
+            p.htmlFile = line.getOptionValue(HTML_OPT);
+            p.vespucciLink = line.getOptionValue(VESPUCCI_OPT);
+            p.josmLink = line.getOptionValue(JOSM_OPT);
+        } catch (ParseException exp) {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp(PresetWatcher.class.getSimpleName(), options);
+            return;
+        }
+        try {
+            p.watch();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | SAXException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package ch.poole.osm.presetutils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Write a {@link Preset} as XML
+ *
+ * Attributes are written in the order they were parsed in, elements without children are written as empty elements.
+ * Comments and text content are not part of the model and are not written.
+ *
+ * @author Simon Poole
+ *
+ */
+public final class PresetWriter {
+
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+    private static final String DEFAULT_INDENT  = "    ";
+
+    private final Writer writer;
+    private final String indent;
+
+    /**
+     * Construct a new writer
+     *
+     * @param writer the Writer to write to
+     * @param indent the string to indent each level with, if empty no line breaks are written either
+     */
+    private PresetWriter(@NotNull Writer writer, @NotNull String indent) {
+        this.writer = writer;
+        this.indent = indent;
+    }
+
+    /**
+     * Write a preset indented with four spaces per level
+     *
+     * @param preset the Preset
+     * @param output the OutputStream, it is flushed but not closed
+     * @throws IOException if writing fails
+     */
+    public static void write(@NotNull Preset preset, @NotNull OutputStream output) throws IOException {
+        write(preset, output, DEFAULT_INDENT);
+    }
+
+    /**
+     * Write a preset
+     *
+     * @param preset the Preset
+     * @param output the OutputStream, it is flushed but not closed
+     * @param indent the string to indent each level with, if empty the output is written without any line breaks
+     * @throws IOException if writing fails
+     */
+    public static void write(@NotNull Preset preset, @NotNull OutputStream output, @NotNull String indent) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        PresetWriter presetWriter = new PresetWriter(writer, indent);
+        writer.write(XML_DECLARATION);
+        presetWriter.newLine();
+        presetWriter.write(preset.getRoot(), 0);
+        presetWriter.newLine();
+        writer.flush();
+    }
+
+    /**
+     * Write an element and its children
+     *
+     * @param element the element
+     * @param level the nesting level
+     * @throws IOException if writing fails
+     */
+    private void write(@NotNull Preset.Element element, int level) throws IOException {
+        indent(level);
+        writer.write('<');
+        writer.write(element.getName());
+        for (int i = 0; i < element.getAttributeCount(); i++) {
+            writer.write(' ');
+            writer.write(element.getAttributeName(i));
+            writer.write("=\"");
+            escape(writer, element.getAttributeValue(i));
+            writer.write('"');
+        }
+        if (element.getChildCount() == 0) {
+            writer.write("/>");
+            return;
+        }
+        writer.write('>');
+        for (int i = 0; i < element.getChildCount(); i++) {
+            newLine();
+            write(element.getChild(i), level + 1);
+        }
+        newLine();
+        indent(level);
+        writer.write("</");
+        writer.write(element.getName());
+        writer.write('>');
+    }
+
+    /**
+     * Write a line break unless we are writing compact output
+     *
+     * @throws IOException if writing fails
+     */
+    private void newLine() throws IOException {
+        if (!indent.isEmpty()) {
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * Indent
+     *
+     * @param level the nesting level
+     * @throws IOException if writing fails
+     */
+    private void indent(int level) throws IOException {
+        for (int i = 0; i < level; i++) {
+            writer.write(indent);
+        }
+    }
+
+    /**
+     * Write an attribute value escaping the characters that are not allowed or would be normalized by a parser
+     *
+     * @param writer the Writer to write to
+     * @param value the value
+     * @throws IOException if writing fails
+     */
+    static void escape(@NotNull Writer writer, @NotNull String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '&':
+                writer.write("&amp;");
+                break;
+            case '<':
+                writer.write("&lt;");
+                break;
+            case '>':
+                writer.write("&gt;");
+                break;
+            case '"':
+                writer.write("&quot;");
+                break;
+            case '\n':
+                writer.write("&#10;");
+                break;
+            case '\r':
+                writer.write("&#13;");
+                break;
+            case '\t':
+                writer.write("&#9;");
+                break;
+            default:
+                writer.write(c);
+            }
+        }
+    }
+}
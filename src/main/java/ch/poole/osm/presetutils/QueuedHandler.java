@@ -0,0 +1,289 @@
+package ch.poole.osm.presetutils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Run a ContentHandler on its own thread, fed by a bounded queue of copied events
+ *
+ * Events are batched to keep the synchronization overhead low. The producer blocks when the queue is full.
+ * {@link #endDocument()} waits for the handler to finish and re-throws any exception it threw. If the handler fails
+ * the remaining events are discarded.
+ *
+ * @author Simon Poole
+ *
+ */
+public class QueuedHandler extends DefaultHandler {
+
+    private static final int DEFAULT_BATCH_SIZE = 256;
+    private static final int DEFAULT_CAPACITY   = 64;
+
+    private static final int START_DOCUMENT = 0;
+    private static final int END_DOCUMENT   = 1;
+    private static final int START_ELEMENT  = 2;
+    private static final int END_ELEMENT    = 3;
+    private static final int CHARACTERS     = 4;
+    private static final int ABORT          = 5;
+
+    /**
+     * A copied SAX event
+     */
+    private static class Event {
+        final int            type;
+        final String         name;
+        final AttributesImpl attributes;
+        final char[]         text;
+        final int            line;
+
+        /**
+         * Construct a new Event
+         *
+         * @param type event type
+         * @param name element name or null
+         * @param attributes copied attributes or null
+         * @param text copied characters or null
+         * @param line the line number
+         */
+        Event(int type, @Nullable String name, @Nullable AttributesImpl attributes, @Nullable char[] text, int line) {
+            this.type = type;
+            this.name = name;
+            this.attributes = attributes;
+            this.text = text;
+            this.line = line;
+        }
+    }
+
+    /**
+     * Locator that reports the line number stored with the event
+     */
+    private static class QueueLocator implements Locator {
+        String systemId;
+        int    line;
+
+        @Override
+        public String getPublicId() {
+            return null;
+        }
+
+        @Override
+        public String getSystemId() {
+            return systemId;
+        }
+
+        @Override
+        public int getLineNumber() {
+            return line;
+        }
+
+        @Override
+        public int getColumnNumber() {
+            return -1;
+        }
+    }
+
+    private final ContentHandler         target;
+    private final BlockingQueue<Event[]> queue;
+    private final int                    batchSize;
+    private final Thread                 thread;
+    private final QueueLocator           queueLocator = new QueueLocator();
+
+    private Locator           locator;
+    private Event[]           batch;
+    private int               batchCount;
+    private volatile Exception failure; // NOSONAR
+
+    /**
+     * Construct a new instance with default batch size and queue capacity
+     *
+     * @param name name for the thread
+     * @param target the handler to run
+     */
+    public QueuedHandler(@NotNull String name, @NotNull ContentHandler target) {
+        this(name, target, DEFAULT_BATCH_SIZE, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Construct a new instance
+     *
+     * @param name name for the thread
+     * @param target the handler to run
+     * @param batchSize number of events per batch
+     * @param capacity maximum number of batches in the queue
+     */
+    public QueuedHandler(@NotNull String name, @NotNull ContentHandler target, int batchSize, int capacity) {
+        this.target = target;
+        this.batchSize = batchSize;
+        queue = new ArrayBlockingQueue<>(capacity);
+        batch = new Event[batchSize];
+        thread = new Thread(this::consume, name);
+        thread.setDaemon(true);
+        target.setDocumentLocator(queueLocator);
+        thread.start();
+    }
+
+    /**
+     * Take batches from the queue and dispatch them to the target until the end of the document
+     */
+    private void consume() {
+        try {
+            while (true) {
+                Event[] events = queue.take();
+                for (Event event : events) {
+                    if (event == null) {
+                        break;
+                    }
+                    if (event.type == END_DOCUMENT || event.type == ABORT) {
+                        if (event.type == END_DOCUMENT && failure == null) {
+                            dispatch(event);
+                        }
+                        return;
+                    }
+                    if (failure == null) {
+                        dispatch(event);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            failure = e;
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Send an event to the target, recording any failure
+     *
+     * @param event the Event
+     */
+    private void dispatch(@NotNull Event event) {
+        try {
+            queueLocator.line = event.line;
+            switch (event.type) {
+            case START_DOCUMENT:
+                target.startDocument();
+                break;
+            case END_DOCUMENT:
+                target.endDocument();
+                break;
+            case START_ELEMENT:
+                target.startElement("", "", event.name, event.attributes);
+                break;
+            case END_ELEMENT:
+                target.endElement("", "", event.name);
+                break;
+            case CHARACTERS:
+                target.characters(event.text, 0, event.text.length);
+                break;
+            default:
+                throw new IllegalStateException("Unknown event type " + event.type);
+            }
+        } catch (Exception e) { // NOSONAR
+            failure = e;
+        }
+    }
+
+    /**
+     * Add an event to the current batch, queueing the batch when full
+     *
+     * @param event the Event
+     * @param flush queue the batch even if it isn't full
+     * @throws SAXException if the handler has failed or we were interrupted
+     */
+    private void add(@NotNull Event event, boolean flush) throws SAXException {
+        if (failure != null && event.type != ABORT) {
+            abort();
+            throw failure();
+        }
+        batch[batchCount++] = event;
+        if (flush || batchCount == batchSize) {
+            try {
+                queue.put(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SAXException(e);
+            }
+            batch = new Event[batchSize];
+            batchCount = 0;
+        }
+    }
+
+    /**
+     * @return the line number of the current event
+     */
+    private int line() {
+        return locator != null ? locator.getLineNumber() : 0;
+    }
+
+    /**
+     * Wrap the failure of the handler in a SAXException if necessary
+     *
+     * @return a SAXException
+     */
+    @NotNull
+    private SAXException failure() {
+        return failure instanceof SAXException ? (SAXException) failure : new SAXException(failure);
+    }
+
+    /**
+     * Stop the handler thread without calling endDocument, for example after a parse error
+     */
+    public void abort() {
+        if (thread.isAlive()) {
+            try {
+                add(new Event(ABORT, null, null, null, 0), true);
+            } catch (SAXException e) {
+                // can't happen for ABORT, ignore
+            }
+        }
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+        this.locator = locator;
+        queueLocator.systemId = locator.getSystemId();
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        add(new Event(START_DOCUMENT, null, null, null, line()), false);
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        add(new Event(END_DOCUMENT, null, null, null, line()), true);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SAXException(e);
+        }
+        if (failure != null) {
+            throw failure();
+        }
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+        add(new Event(START_ELEMENT, qName, new AttributesImpl(attributes), null, line()), false);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        add(new Event(END_ELEMENT, qName, null, null, line()), false);
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        char[] text = new char[length];
+        System.arraycopy(ch, start, text, 0, length);
+        add(new Event(CHARACTERS, null, null, text, line()), false);
+    }
+}
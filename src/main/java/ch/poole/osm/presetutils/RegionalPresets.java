@@ -0,0 +1,341 @@
+package ch.poole.osm.presetutils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.xml.sax.SAXException;
+
+/**
+ * Generate region specific versions of a preset
+ *
+ * Groups, items, chunks, fields and list entries that are not valid in the region are removed, as are references to
+ * removed chunks, chunks that are no longer referenced and groups that end up empty. Elements that are restricted to
+ * a subdivision of the region, for example US-CA for US, are retained together with their regions attribute so that
+ * editors can still apply the restriction. All variants are generated in parallel from one parsed preset.
+ *
+ * Licence Apache 2.0
+ *
+ * @author Simon Poole
+ *
+ */
+public class RegionalPresets {
+
+    private static final String INPUT_OPT   = "input";
+    private static final String REGIONS_OPT = "regions";
+    private static final String OUTPUT_OPT  = "output";
+
+    private static final String PRESET_SUFFIX = ".xml";
+
+    private RegionalPresets() {
+        // empty
+    }
+
+    /**
+     * Remove everything that is not valid in a region
+     *
+     * @param preset the Preset
+     * @param region the region, an ISO 3166-1 or 3166-2 code
+     * @return a new Preset
+     */
+    @NotNull
+    public static Preset prune(@NotNull Preset preset, @NotNull String region) {
+        Set<String> removedChunks = new HashSet<>();
+        Preset.Element root = filter(preset.getRoot(), region.toUpperCase(Locale.US), removedChunks);
+        if (root == null) {
+            throw new IllegalArgumentException("Preset " + preset.getSource() + " is not valid in " + region);
+        }
+        Set<String> used = usedChunks(new Preset(preset.getSource(), root));
+        Preset.Element result = removeUnused(root, used);
+        return new Preset(preset.getSource(), result != null ? result : root);
+    }
+
+    /**
+     * Check if an element is valid in a region
+     *
+     * Elements restricted to subdivisions of the region are considered valid, elements that exclude only a
+     * subdivision too.
+     *
+     * @param element the element
+     * @param region the region in upper case
+     * @return true if the element should be retained
+     */
+    static boolean isValid(@NotNull Preset.Element element, @NotNull String region) {
+        String regions = element.getAttribute(PresetConstants.REGIONS);
+        if (regions == null) {
+            return true;
+        }
+        boolean exclude = PresetConstants.TRUE.equals(element.getAttribute(PresetConstants.EXCLUDE_REGIONS));
+        for (String r : regions.split(PresetConstants.COMBO_DELIMITER)) {
+            r = r.trim().toUpperCase(Locale.US);
+            boolean covers = region.equals(r) || isSubdivision(region, r);
+            if (exclude ? covers : covers || isSubdivision(r, region)) {
+                return !exclude;
+            }
+        }
+        return exclude;
+    }
+
+    /**
+     * Check if a code is a subdivision of another
+     *
+     * @param code the code to check
+     * @param parent the potential parent
+     * @return true if code is parent followed by a dash and a subdivision code
+     */
+    private static boolean isSubdivision(@NotNull String code, @NotNull String parent) {
+        return code.length() > parent.length() && code.startsWith(parent) && code.charAt(parent.length()) == '-';
+    }
+
+    /**
+     * Remove elements that are not valid in the region and references to removed chunks
+     *
+     * @param element the current element
+     * @param region the region in upper case
+     * @param removedChunks the ids of chunks that have been removed so far
+     * @return the element, a copy with some children removed, or null if the element should be removed
+     */
+    @Nullable
+    private static Preset.Element filter(@NotNull Preset.Element element, @NotNull String region, @NotNull Set<String> removedChunks) {
+        if (!isValid(element, region)) {
+            if (element.getType() == ElementType.CHUNK) {
+                removedChunks.add(element.getAttribute(PresetConstants.ID));
+            }
+            return null;
+        }
+        if (element.getType() == ElementType.REFERENCE && removedChunks.contains(element.getAttribute(PresetConstants.REF))) {
+            return null;
+        }
+        List<Preset.Element> children = null;
+        for (int i = 0; i < element.getChildCount(); i++) {
+            Preset.Element child = element.getChild(i);
+            Preset.Element filtered = filter(child, region, removedChunks);
+            if (filtered != child && children == null) {
+                children = copy(element, i);
+            }
+            if (children != null && filtered != null) {
+                children.add(filtered);
+            }
+        }
+        return children == null ? element : replaceChildren(element, children);
+    }
+
+    /**
+     * Determine the chunks that are referenced, directly or via other chunks, from outside of chunks
+     *
+     * @param preset the Preset
+     * @return the ids of the used chunks
+     */
+    @NotNull
+    private static Set<String> usedChunks(@NotNull Preset preset) {
+        Set<String> used = new HashSet<>();
+        Deque<String> todo = new ArrayDeque<>();
+        addReferences(preset.getRoot(), used, todo);
+        while (!todo.isEmpty()) {
+            Preset.Element chunk = preset.getChunk(todo.pop());
+            if (chunk != null) {
+                for (int i = 0; i < chunk.getChildCount(); i++) {
+                    addReferences(chunk.getChild(i), used, todo);
+                }
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Add the references of an element and its children, not descending in to chunks
+     *
+     * @param element the element
+     * @param used the referenced chunk ids
+     * @param todo chunks that still need to be processed
+     */
+    private static void addReferences(@NotNull Preset.Element element, @NotNull Set<String> used, @NotNull Deque<String> todo) {
+        if (element.getType() == ElementType.CHUNK) {
+            return;
+        }
+        if (element.getType() == ElementType.REFERENCE) {
+            String ref = element.getAttribute(PresetConstants.REF);
+            if (ref != null && used.add(ref)) {
+                todo.push(ref);
+            }
+        }
+        for (int i = 0; i < element.getChildCount(); i++) {
+            addReferences(element.getChild(i), used, todo);
+        }
+    }
+
+    /**
+     * Remove unused chunks and empty groups
+     *
+     * @param element the current element
+     * @param used the ids of the used chunks
+     * @return the element, a copy with some children removed, or null if the element should be removed
+     */
+    @Nullable
+    private static Preset.Element removeUnused(@NotNull Preset.Element element, @NotNull Set<String> used) {
+        switch (element.getType()) {
+        case CHUNK:
+            return used.contains(element.getAttribute(PresetConstants.ID)) ? element : null;
+        case PRESETS:
+        case GROUP:
+            List<Preset.Element> children = null;
+            for (int i = 0; i < element.getChildCount(); i++) {
+                Preset.Element child = element.getChild(i);
+                Preset.Element result = removeUnused(child, used);
+                if (result != child && children == null) {
+                    children = copy(element, i);
+                }
+                if (children != null && result != null) {
+                    children.add(result);
+                }
+            }
+            if (element.getType() == ElementType.GROUP && (children != null ? children.isEmpty() : element.getChildCount() == 0)) {
+                return null;
+            }
+            return children == null ? element : replaceChildren(element, children);
+        default:
+            return element;
+        }
+    }
+
+    /**
+     * Copy the first children of an element
+     *
+     * @param element the element
+     * @param count the number of children to copy
+     * @return a List of children
+     */
+    @NotNull
+    private static List<Preset.Element> copy(@NotNull Preset.Element element, int count) {
+        List<Preset.Element> children = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            children.add(element.getChild(i));
+        }
+        return children;
+    }
+
+    /**
+     * Create a copy of an element with different children
+     *
+     * @param element the element
+     * @param children the new children
+     * @return a new element
+     */
+    @NotNull
+    private static Preset.Element replaceChildren(@NotNull Preset.Element element, @NotNull List<Preset.Element> children) {
+        String[] attributes = new String[element.getAttributeCount() * 2];
+        for (int i = 0; i < element.getAttributeCount(); i++) {
+            attributes[i * 2] = element.getAttributeName(i);
+            attributes[i * 2 + 1] = element.getAttributeValue(i);
+        }
+        return new Preset.Element(element.getType(), element.getName(), attributes, children.toArray(new Preset.Element[0]), element.getLine(),
+                element.getEndLine());
+    }
+
+    /**
+     * Get the output file for a region
+     *
+     * @param preset the Preset
+     * @param directory the output directory
+     * @param region the region
+     * @return the Path for the file
+     */
+    @NotNull
+    static Path outputFile(@NotNull Preset preset, @NotNull Path directory, @NotNull String region) {
+        String name = Paths.get(preset.getSource().split(",")[0]).getFileName().toString();
+        if (name.endsWith(PRESET_SUFFIX)) {
+            name = name.substring(0, name.length() - PRESET_SUFFIX.length());
+        }
+        return directory.resolve(name + "_" + region + PRESET_SUFFIX);
+    }
+
+    /**
+     * Write the variants for all regions in parallel
+     *
+     * @param preset the Preset
+     * @param regions the regions
+     * @param directory the output directory
+     * @throws IOException if writing fails
+     */
+    static void write(@NotNull final Preset preset, @NotNull String[] regions, @NotNull final Path directory) throws IOException {
+        Files.createDirectories(directory);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(regions.length, Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (final String region : regions) {
+                futures.add(executor.submit((Callable<String>) () -> {
+                    Preset pruned = prune(preset, region);
+                    Path file = outputFile(preset, directory, region);
+                    try (OutputStream os = Files.newOutputStream(file)) {
+                        PresetWriter.write(pruned, os);
+                    }
+                    return region + ": " + pruned.getItems().size() + " items " + pruned.getChunks().size() + " chunks, " + Files.size(file) + " bytes "
+                            + file;
+                }));
+            }
+            for (Future<String> future : futures) {
+                System.out.println(future.get()); // NOSONAR
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public static void main(String[] args) {
+        // arguments
+        Option inputFile = Option.builder("i").longOpt(INPUT_OPT).hasArgs().required().desc("input preset files or directories").build();
+        Option regionsOpt = Option.builder("r").longOpt(REGIONS_OPT).hasArgs().required().desc("region codes to generate presets for").build();
+        Option outputDir = Option.builder("o").longOpt(OUTPUT_OPT).hasArg().desc("output directory, default: current directory").build();
+
+        Options options = new Options();
+
+        options.addOption(inputFile);
+        options.addOption(regionsOpt);
+        options.addOption(outputDir);
+
+        CommandLineParser parser = new DefaultParser();
+        try {
+            CommandLine line = parser.parse(options, args);
+            Preset preset = PresetSet.load(line.getOptionValues(INPUT_OPT));
+            write(preset, line.getOptionValues(REGIONS_OPT), Paths.get(line.getOptionValue(OUTPUT_OPT, ".")));
+        } catch (ParseException exp) {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp(RegionalPresets.class.getSimpleName(), options);
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package ch.poole.osm.presetutils;
+
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Parse a preset in to a {@link Preset} with a StAX pull parser
+ *
+ * The resulting model is the same as the one produced by the SAX based {@link PresetParser}, but as the parser pulls
+ * the events, subtrees that are not needed can be skipped without creating any attribute arrays or strings.
+ *
+ * @author Simon Poole
+ *
+ */
+final class StaxPresetParser {
+
+    private static final Preset.Element[] NO_CHILDREN = new Preset.Element[0];
+
+    /**
+     * An element that has been started but not ended yet
+     */
+    private static final class OpenElement {
+        final ElementType          type;
+        final String               name;
+        final String[]             attributes;
+        final int                  line;
+        final List<Preset.Element> children = new ArrayList<>();
+
+        /**
+         * Construct a new instance
+         *
+         * @param type the ElementType
+         * @param name element name
+         * @param attributes alternating attribute names and values
+         * @param line start line
+         */
+        OpenElement(@NotNull ElementType type, @NotNull String name, @NotNull String[] attributes, int line) {
+            this.type = type;
+            this.name = name;
+            this.attributes = attributes;
+            this.line = line;
+        }
+    }
+
+    /**
+     * Private constructor
+     */
+    private StaxPresetParser() {
+        // empty
+    }
+
+    /**
+     * Get a XMLInputFactory with external DTD access disabled, namespace processing is turned off so that namespace
+     * declarations are retained as attributes as with the SAX parser
+     *
+     * @return a XMLInputFactory
+     */
+    @NotNull
+    private static XMLInputFactory newFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        factory.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        return factory;
+    }
+
+    /**
+     * Parse a preset
+     *
+     * @param input the InputStream to read from
+     * @param source name of the source, typically the file name
+     * @param pool the StringPool to use
+     * @param skip the types of elements that should be skipped together with their contents
+     * @return a Preset
+     * @throws SAXException on parsing issues, for compatibility with the SAX parser
+     */
+    @NotNull
+    static Preset parse(@NotNull InputStream input, @NotNull String source, @NotNull StringPool pool, @NotNull Set<ElementType> skip) throws SAXException {
+        XMLStreamReader reader = null;
+        try {
+            reader = newFactory().createXMLStreamReader(source, input);
+            Deque<OpenElement> stack = new ArrayDeque<>();
+            Preset.Element root = null;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    String name = reader.getLocalName();
+                    ElementType type = ElementType.fromName(name);
+                    if (skip.contains(type)) {
+                        skipElement(reader);
+                        break;
+                    }
+                    int count = reader.getAttributeCount();
+                    String[] attributes = new String[count * 2];
+                    for (int i = 0; i < count; i++) {
+                        attributes[i * 2] = pool.intern(reader.getAttributeLocalName(i));
+                        attributes[i * 2 + 1] = pool.intern(reader.getAttributeValue(i));
+                    }
+                    stack.push(new OpenElement(type, pool.intern(name), attributes, line(reader)));
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    OpenElement open = stack.pop();
+                    Preset.Element element = new Preset.Element(open.type, open.name, open.attributes, open.children.toArray(NO_CHILDREN), open.line,
+                            line(reader));
+                    OpenElement parent = stack.peek();
+                    if (parent != null) {
+                        parent.children.add(element);
+                    } else {
+                        root = element;
+                    }
+                    break;
+                default:
+                    // ignore text, comments and processing instructions
+                }
+            }
+            if (root == null) {
+                throw new SAXException("No root element in " + source);
+            }
+            return new Preset(source, root);
+        } catch (XMLStreamException e) {
+            Location location = e.getLocation();
+            SAXParseException ex = new SAXParseException(e.getMessage(), null, source, location != null ? location.getLineNumber() : -1,
+                    location != null ? location.getColumnNumber() : -1);
+            ex.initCause(e);
+            throw ex;
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Skip the current element and its contents
+     *
+     * @param reader the XMLStreamReader positioned on the start of the element
+     * @throws XMLStreamException on parsing issues
+     */
+    private static void skipElement(@NotNull XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * @param reader the XMLStreamReader
+     * @return the current line number
+     */
+    private static int line(@NotNull XMLStreamReader reader) {
+        Location location = reader.getLocation();
+        return location != null ? location.getLineNumber() : 0;
+    }
+
+    /**
+     * Close a XMLStreamReader if not null
+     *
+     * @param reader the XMLStreamReader
+     */
+    private static void close(@Nullable XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // NOSONAR
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package ch.poole.osm.presetutils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Pool of canonical String instances
+ *
+ * Unlike {@link String#intern()} the pool is an ordinary object, it is typically scoped to one parse and shared by the
+ * parser and all handlers that retain strings, and can be dropped together with the results. The pool keeps track of
+ * how many duplicate instances it has seen so that the effect can be reported.
+ *
+ * The pool is thread safe, as handlers may run on their own threads, see {@link QueuedHandler}.
+ *
+ * @author Simon Poole
+ *
+ */
+public class StringPool {
+
+    // rough object sizes assuming a 64bit VM with compressed oops
+    private static final int STRING_SIZE  = 24;
+    private static final int ARRAY_HEADER = 16;
+
+    private final ConcurrentMap<String, String> pool = new ConcurrentHashMap<>();
+
+    private final LongAdder lookups    = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder duplicateBytes = new LongAdder();
+
+    /**
+     * Get the canonical instance of a String, adding it to the pool if necessary
+     *
+     * @param s the String
+     * @return the canonical instance, or null if s was null
+     */
+    @Nullable
+    public String intern(@Nullable String s) {
+        if (s == null) {
+            return null;
+        }
+        lookups.increment();
+        String existing = pool.get(s);
+        if (existing == null) {
+            existing = pool.putIfAbsent(s, s);
+            if (existing == null) {
+                return s;
+            }
+        }
+        if (existing != s) {
+            duplicates.increment();
+            duplicateBytes.add(size(s));
+        }
+        return existing;
+    }
+
+    /**
+     * Estimate the heap used by a String
+     *
+     * @param s the String
+     * @return the size in bytes
+     */
+    static long size(@NotNull String s) {
+        return STRING_SIZE + ((ARRAY_HEADER + 2L * s.length() + 7) & ~7L);
+    }
+
+    /**
+     * @return the number of distinct Strings in the pool
+     */
+    public int size() {
+        return pool.size();
+    }
+
+    /**
+     * @return the number of calls to intern with a non-null argument
+     */
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    /**
+     * @return the number of duplicate instances that were replaced by the canonical one
+     */
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    /**
+     * Get an estimate of the size of all duplicate instances seen
+     *
+     * This counts every duplicate lookup, including duplicates the caller would have dropped anyway, so it is an upper
+     * bound for the heap actually saved.
+     *
+     * @return the size in bytes
+     */
+    public long getDuplicateBytes() {
+        return duplicateBytes.sum();
+    }
+
+    @Override
+    public String toString() {
+        return pool.size() + " distinct strings, " + getDuplicates() + " duplicates of " + getLookups() + " lookups replaced, approx. " + getDuplicateBytes()
+                + " bytes of duplicates seen";
+    }
+}
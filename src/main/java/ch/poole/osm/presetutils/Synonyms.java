@@ -4,7 +4,6 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
@@ -28,8 +27,6 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.jetbrains.annotations.NotNull;
 
-import com.google.gson.stream.JsonReader;
-
 /**
  * Retrieve synonyms from the iD repo
  * 
@@ -42,6 +39,8 @@ public class Synonyms {
 
     private static final int TIMEOUT = 20;
 
+    private static final String[] NAMES = { "presets", "fields", "categories", "name", "terms", "aliases" };
+
     private static List<String> excludes;
 
     private static String base;
@@ -55,7 +54,7 @@ public class Synonyms {
             base = base + "/";
         }
 
-        try (InputStream is = openConnection(new URL(base + lang + ".json")); JsonReader reader = new JsonReader(new InputStreamReader(is, "UTF-8"))) {
+        try (InputStream is = openConnection(new URL(base + lang + ".json")); JsonInput reader = JsonInputFactory.open(is, NAMES)) {
             try {
                 reader.beginObject();
                 if (reader.hasNext()) {
@@ -0,0 +1,375 @@
+package ch.poole.osm.presetutils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.jetbrains.annotations.NotNull;
+import org.xml.sax.SAXException;
+
+/**
+ * Inverted index from keys and tags to the preset items that use them
+ *
+ * Terms are either a key or key=value, the index includes fixed key elements, text and check fields, combo and
+ * multiselect values and list entries, including everything inherited from chunks. Posting lists are sorted arrays of
+ * item numbers (the position in {@link Preset#getItems()}), so AND and OR queries are simple merges.
+ *
+ * Licence Apache 2.0
+ *
+ * @author Simon Poole
+ *
+ */
+public class TagIndex {
+
+    private static final String INPUT_OPT = "input";
+    private static final String QUERY_OPT = "query";
+
+    private static final int[]   EMPTY      = new int[0];
+    private static final Pattern OR_SPLIT   = Pattern.compile("\\|");
+    private static final Pattern AND_SPLIT  = Pattern.compile("&");
+
+    private final List<Preset.Element> items;
+    private final Map<String, int[]>   postings = new HashMap<>();
+
+    /**
+     * Build an index for a preset
+     *
+     * @param preset the Preset
+     */
+    public TagIndex(@NotNull Preset preset) {
+        items = preset.getItems();
+        ChunkExpander expander = new ChunkExpander(preset);
+        Map<String, PostingList> building = new HashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            for (Preset.Element field : expander.getFields(items.get(i))) {
+                index(field, i, building);
+            }
+        }
+        for (Map.Entry<String, PostingList> entry : building.entrySet()) {
+            postings.put(entry.getKey(), entry.getValue().toArray());
+        }
+    }
+
+    /**
+     * Growable posting list used while building the index
+     */
+    private static final class PostingList {
+        int[] items = new int[4];
+        int   size  = 0;
+
+        /**
+         * Add an item, items are added in ascending order so only the last entry needs to be checked for duplicates
+         *
+         * @param item the item number
+         */
+        void add(int item) {
+            if (size > 0 && items[size - 1] == item) {
+                return;
+            }
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = item;
+        }
+
+        /**
+         * @return a trimmed copy of the items
+         */
+        @NotNull
+        int[] toArray() {
+            return Arrays.copyOf(items, size);
+        }
+    }
+
+    /**
+     * Add the terms for a field
+     *
+     * @param field the field element
+     * @param item the item number
+     * @param building the posting lists under construction
+     */
+    private static void index(@NotNull Preset.Element field, int item, @NotNull Map<String, PostingList> building) {
+        String key = field.getAttribute(PresetConstants.KEY_ATTR);
+        if (key == null) {
+            return;
+        }
+        add(key, item, building);
+        switch (field.getType()) {
+        case KEY:
+            String value = field.getAttribute(PresetConstants.VALUE);
+            if (value != null) {
+                add(key + "=" + value, item, building);
+            }
+            break;
+        case CHECK:
+            String valueOn = field.getAttribute(PresetConstants.VALUE_ON);
+            add(key + "=" + (valueOn != null ? valueOn : PresetConstants.YES), item, building);
+            break;
+        case COMBO:
+        case MULTISELECT:
+            String values = field.getAttribute(PresetConstants.VALUES);
+            if (values != null) {
+                String delimiter = field.getAttribute(PresetConstants.DELIMITER);
+                if (delimiter == null) {
+                    delimiter = field.getType() == ElementType.MULTISELECT ? PresetConstants.MULTISELECT_DELIMITER : PresetConstants.COMBO_DELIMITER;
+                }
+                for (String v : values.split(Pattern.quote(delimiter))) {
+                    add(key + "=" + v.trim(), item, building);
+                }
+            }
+            for (int i = 0; i < field.getChildCount(); i++) {
+                Preset.Element entry = field.getChild(i);
+                String entryValue = entry.getAttribute(PresetConstants.VALUE);
+                if (entry.getType() == ElementType.LIST_ENTRY && entryValue != null) {
+                    add(key + "=" + entryValue, item, building);
+                }
+            }
+            break;
+        default:
+            // only the key
+        }
+    }
+
+    /**
+     * Add an item to the posting list for a term
+     *
+     * @param term the term
+     * @param item the item number
+     * @param building the posting lists under construction
+     */
+    private static void add(@NotNull String term, int item, @NotNull Map<String, PostingList> building) {
+        building.computeIfAbsent(term, t -> new PostingList()).add(item);
+    }
+
+    /**
+     * Get the posting list for a term
+     *
+     * @param term a key or key=value
+     * @return a sorted array of item numbers, a copy that can be modified
+     */
+    @NotNull
+    public int[] get(@NotNull String term) {
+        return postings(term).clone();
+    }
+
+    /**
+     * Get the posting list for a term without copying it
+     *
+     * @param term a key or key=value
+     * @return the internal sorted array of item numbers, this must not be modified
+     */
+    @NotNull
+    private int[] postings(@NotNull String term) {
+        int[] list = postings.get(term);
+        return list != null ? list : EMPTY;
+    }
+
+    /**
+     * Get the items that match all terms
+     *
+     * @param terms keys or key=value
+     * @return a sorted array of item numbers
+     */
+    @NotNull
+    public int[] and(@NotNull String... terms) {
+        if (terms.length == 0) {
+            return EMPTY;
+        }
+        int[][] lists = new int[terms.length][];
+        for (int i = 0; i < terms.length; i++) {
+            lists[i] = postings(terms[i]);
+        }
+        // start with the shortest list to keep the intermediate results small
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+        int[] result = lists[0];
+        for (int i = 1; i < lists.length && result.length > 0; i++) {
+            result = intersect(result, lists[i]);
+        }
+        // don't hand out the posting list itself
+        return result == lists[0] ? result.clone() : result;
+    }
+
+    /**
+     * Get the items that match any of the terms
+     *
+     * @param terms keys or key=value
+     * @return a sorted array of item numbers
+     */
+    @NotNull
+    public int[] or(@NotNull String... terms) {
+        int[] result = EMPTY;
+        for (String term : terms) {
+            result = union(result, postings(term));
+        }
+        return result;
+    }
+
+    /**
+     * Evaluate a query of the form a=b &amp; c | d, &amp; binds stronger than |
+     *
+     * @param query the query
+     * @return a sorted array of item numbers
+     */
+    @NotNull
+    public int[] query(@NotNull String query) {
+        int[] result = EMPTY;
+        for (String conjunction : OR_SPLIT.split(query)) {
+            String[] terms = AND_SPLIT.split(conjunction);
+            for (int i = 0; i < terms.length; i++) {
+                terms[i] = terms[i].trim();
+            }
+            result = union(result, and(terms));
+        }
+        return result;
+    }
+
+    /**
+     * Intersect two sorted arrays
+     *
+     * @param a first array
+     * @param b second array
+     * @return the intersection
+     */
+    @NotNull
+    static int[] intersect(@NotNull int[] a, @NotNull int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Merge two sorted arrays
+     *
+     * @param a first array
+     * @param b second array
+     * @return the union, always a new array
+     */
+    @NotNull
+    static int[] union(@NotNull int[] a, @NotNull int[] b) {
+        if (a.length == 0) {
+            return b.clone();
+        }
+        if (b.length == 0) {
+            return a.clone();
+        }
+        int[] result = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                result[n++] = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                result[n++] = b[j++];
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Get an item
+     *
+     * @param item the item number
+     * @return the item element
+     */
+    @NotNull
+    public Preset.Element getItem(int item) {
+        return items.get(item);
+    }
+
+    /**
+     * @return the number of distinct terms
+     */
+    public int size() {
+        return postings.size();
+    }
+
+    /**
+     * Run a query and print the names of the matching items
+     *
+     * @param query the query
+     * @param pw the output PrintWriter
+     */
+    void printQuery(@NotNull String query, @NotNull PrintWriter pw) {
+        int[] result = query(query);
+        pw.println(query + ": " + result.length);
+        for (int item : result) {
+            Preset.Element element = getItem(item);
+            pw.println("\t" + element.getAttribute(PresetConstants.NAME) + " (line " + element.getLine() + ")");
+        }
+    }
+
+    public static void main(String[] args) {
+        // arguments
+        Option inputFile = Option.builder("i").longOpt(INPUT_OPT).hasArgs().required()
+                .desc("input preset files, XML or compiled, or directories").build();
+        Option queryOpt = Option.builder("q").longOpt(QUERY_OPT).hasArgs()
+                .desc("query, for example \"amenity=restaurant & cuisine=pizza | shop\", default: read queries from standard in").build();
+
+        Options options = new Options();
+
+        options.addOption(inputFile);
+        options.addOption(queryOpt);
+
+        CommandLineParser parser = new DefaultParser();
+        try {
+            CommandLine line = parser.parse(options, args);
+            TagIndex index = new TagIndex(PresetSet.load(line.getOptionValues(INPUT_OPT)));
+            PrintWriter pw = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)); // NOSONAR
+            if (line.hasOption(QUERY_OPT)) {
+                for (String query : line.getOptionValues(QUERY_OPT)) {
+                    index.printQuery(query, pw);
+                }
+            } else {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+                String query;
+                while ((query = reader.readLine()) != null) {
+                    if (!"".equals(query.trim())) {
+                        index.printQuery(query, pw);
+                        pw.flush();
+                    }
+                }
+            }
+            pw.flush();
+        } catch (ParseException exp) {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp(TagIndex.class.getSimpleName(), options);
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
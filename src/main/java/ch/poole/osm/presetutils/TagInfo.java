@@ -7,15 +7,23 @@ import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
+import org.jetbrains.annotations.NotNull;
+
 import com.google.gson.stream.JsonReader;
 
 public class TagInfo {
 
+    static final int BATCH_SIZE      = 1000;
+    static final int MAX_BATCH_PAGES = 3;
+
     /** the following is hardwired in iD **/
     static final Pattern canHaveUppercase = Pattern.compile("network|taxon|genus|species|brand|grape_variety|rating|:output|_hours|_times|royal_cypher");
     static final Pattern hasPunctuation   = Pattern.compile("[;,]");
@@ -287,6 +295,109 @@ public class TagInfo {
         return count;
     }
 
+    /**
+     * Get the counts for a number of values of one key
+     * 
+     * If more than one value is requested the values of the key are retrieved sorted by count in pages of
+     * BATCH_SIZE, so that typically a single request is needed instead of one per value. Values that haven't been
+     * found after MAX_BATCH_PAGES pages are retrieved individually.
+     * 
+     * @param key the key
+     * @param values the values
+     * @return a Map from value to count
+     */
+    @NotNull
+    public static Map<String, Integer> getTagCounts(@NotNull String key, @NotNull Collection<String> values) {
+        Map<String, Integer> counts = new HashMap<>();
+        if (values.size() > 1) {
+            Set<String> wanted = new HashSet<>(values);
+            int page = 1;
+            int total = 0;
+            do {
+                total = getValueCounts(key, page, wanted, counts);
+                page++;
+            } while (counts.size() < wanted.size() && total > (page - 1) * BATCH_SIZE && page <= MAX_BATCH_PAGES);
+            if (total >= 0 && total <= (page - 1) * BATCH_SIZE) {
+                // all values of the key have been seen
+                for (String value : values) {
+                    counts.putIfAbsent(value, 0);
+                }
+            }
+        }
+        for (String value : values) {
+            if (!counts.containsKey(value)) {
+                counts.put(value, getTagCount(key, value));
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Get the counts for one page of values of a key
+     * 
+     * @param key the key
+     * @param page the page starting with 1
+     * @param wanted the values we are interested in
+     * @param counts map to add the counts to
+     * @return the total number of values of the key or -1 if the request failed
+     */
+    private static int getValueCounts(@NotNull String key, int page, @NotNull Set<String> wanted, @NotNull Map<String, Integer> counts) {
+        // try not to overload taginfo
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e1) {
+            Thread.currentThread().interrupt();
+        }
+        // "https://taginfo.openstreetmap.org/api/4/key/values?key=amenity&page=1&rp=1000&sortname=count_all&sortorder=desc"
+        int total = -1;
+        try {
+            URL url = new URL("https://taginfo.openstreetmap.org/api/4/key/values?key=" + key + "&page=" + page + "&rp=" + BATCH_SIZE
+                    + "&sortname=count_all&sortorder=desc");
+            try (InputStream is = Utils.openConnection(url); JsonReader reader = new JsonReader(new InputStreamReader(is, "UTF-8"))) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String jsonName = reader.nextName();
+                    if ("total".equals(jsonName)) {
+                        total = reader.nextInt();
+                    } else if ("data".equals(jsonName)) {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            reader.beginObject();
+                            String value = null;
+                            int count = 0;
+                            while (reader.hasNext()) {
+                                jsonName = reader.nextName();
+                                if ("value".equals(jsonName)) {
+                                    value = reader.nextString();
+                                } else if ("count".equals(jsonName)) {
+                                    count = reader.nextInt();
+                                } else {
+                                    reader.skipValue();
+                                }
+                            }
+                            reader.endObject();
+                            if (wanted.contains(value)) {
+                                counts.put(value, count);
+                            }
+                        }
+                        reader.endArray();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } catch (IllegalStateException e) {
+                System.err.println(e.getMessage());
+                System.err.println(url);
+                total = -1;
+            }
+        } catch (IOException e) {
+            e.printStackTrace(System.err);
+            total = -1;
+        }
+        return total;
+    }
+
     public static List<ValueAndDescription> getCombinationKeys(String key, String filter, int minCount) {
         // "https://taginfo.openstreetmap.org/api/4/key/combinations?key=highway&page=1&rp=10&sortname=together_count&sortorder=desc"
         try {
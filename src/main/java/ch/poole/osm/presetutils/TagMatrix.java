@@ -0,0 +1,327 @@
+package ch.poole.osm.presetutils;
+
+import java.io.PrintWriter;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Columnar tag membership for many presets and other tag sources
+ *
+ * Tags are mapped to dense ids, for each column there is one BitSet for the tags that are present and one for the tags
+ * that are deprecated, plus the maximum count per tag. Set queries on the columns are evaluated with BitSet operations.
+ *
+ * Query syntax: column names combined with &amp; (and), | (or), ! (not) and parentheses, for example "a.txt &amp; b.txt
+ * &amp; !c.txt". A column can be referred to with its name, the file name part of its name, or its 1 based index.
+ *
+ * Licence Apache 2.0
+ *
+ * @author Simon Poole
+ *
+ */
+public final class TagMatrix implements MergePresetStats.RowHandler {
+
+    private final List<String>         names;
+    private final BitSet[]             present;
+    private final BitSet[]             deprecated;
+    private final List<String>         tags   = new ArrayList<>();
+    private final Map<String, Integer> ids    = new HashMap<>();
+    private int[]                      counts = new int[64];
+
+    /**
+     * Construct a new empty matrix
+     *
+     * @param names the column names
+     */
+    public TagMatrix(@NotNull List<String> names) {
+        this.names = new ArrayList<>(names);
+        present = new BitSet[names.size()];
+        deprecated = new BitSet[names.size()];
+        for (int i = 0; i < present.length; i++) {
+            present[i] = new BitSet();
+            deprecated[i] = new BitSet();
+        }
+    }
+
+    /**
+     * Get the id for a tag, adding the tag if it is new
+     *
+     * @param tag the tag
+     * @return the id
+     */
+    public int id(@NotNull String tag) {
+        Integer id = ids.get(tag);
+        if (id == null) {
+            id = tags.size();
+            ids.put(tag, id);
+            tags.add(tag);
+            if (id == counts.length) {
+                counts = Arrays.copyOf(counts, id * 2);
+            }
+            counts[id] = TagStats.NO_COUNT;
+        }
+        return id;
+    }
+
+    /**
+     * Add a tag to a column
+     *
+     * @param column the column
+     * @param tag the tag
+     * @param count the count or TagStats.NO_COUNT
+     * @param isDeprecated true if the tag is deprecated in this column
+     */
+    public void add(int column, @NotNull String tag, int count, boolean isDeprecated) {
+        int id = id(tag);
+        present[column].set(id);
+        if (isDeprecated) {
+            deprecated[column].set(id);
+        }
+        counts[id] = Math.max(counts[id], count);
+    }
+
+    /**
+     * Add all tags of a TagStats instance to a column
+     *
+     * @param column the column
+     * @param stats the TagStats
+     */
+    public void add(int column, @NotNull TagStats stats) {
+        for (int i = 0; i < stats.size(); i++) {
+            add(column, stats.getTag(i), stats.getCount(i), stats.isDeprecated(i));
+        }
+    }
+
+    @Override
+    public void row(@NotNull String tag, @NotNull boolean[] rowPresent, @NotNull boolean[] rowDeprecated, int count) {
+        int id = id(tag);
+        for (int i = 0; i < rowPresent.length; i++) {
+            if (rowPresent[i]) {
+                present[i].set(id);
+                if (rowDeprecated[i]) {
+                    deprecated[i].set(id);
+                }
+            }
+        }
+        counts[id] = Math.max(counts[id], count);
+    }
+
+    /**
+     * @return the number of distinct tags
+     */
+    public int size() {
+        return tags.size();
+    }
+
+    /**
+     * @param id the tag id
+     * @return the tag
+     */
+    @NotNull
+    public String getTag(int id) {
+        return tags.get(id);
+    }
+
+    /**
+     * @param id the tag id
+     * @return the maximum count over all columns or TagStats.NO_COUNT
+     */
+    public int getCount(int id) {
+        return counts[id];
+    }
+
+    /**
+     * Get the index of a column
+     *
+     * @param name the name, the file name part of the name or the 1 based index
+     * @return the index
+     * @throws IllegalArgumentException if there is no such column
+     */
+    public int column(@NotNull String name) {
+        int index = names.indexOf(name);
+        if (index >= 0) {
+            return index;
+        }
+        for (int i = 0; i < names.size(); i++) {
+            if (name.equals(Paths.get(names.get(i)).getFileName().toString())) {
+                return i;
+            }
+        }
+        try {
+            index = Integer.parseInt(name) - 1;
+            if (index >= 0 && index < names.size()) {
+                return index;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        throw new IllegalArgumentException("Unknown column " + name);
+    }
+
+    /**
+     * @param column the column
+     * @return a copy of the ids of the tags present in the column
+     */
+    @NotNull
+    public BitSet present(int column) {
+        return (BitSet) present[column].clone();
+    }
+
+    /**
+     * @param column the column
+     * @return a copy of the ids of the tags deprecated in the column
+     */
+    @NotNull
+    public BitSet deprecated(int column) {
+        return (BitSet) deprecated[column].clone();
+    }
+
+    /**
+     * Evaluate a set query on the columns
+     *
+     * @param expression the query
+     * @return the ids of the matching tags
+     * @throws IllegalArgumentException if the query can't be parsed
+     */
+    @NotNull
+    public BitSet query(@NotNull String expression) {
+        return new Query(expression).parse();
+    }
+
+    /**
+     * Write rows in the format of MergePresetStats
+     *
+     * @param pw the PrintWriter
+     * @param ids the ids of the tags to write
+     */
+    public void write(@NotNull PrintWriter pw, @NotNull BitSet ids) {
+        MergePresetStats.printHeader(pw, names);
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            final int row = id;
+            MergePresetStats.printRow(pw, tags.get(id), names.size(), i -> present[i].get(row), i -> deprecated[i].get(row), counts[id]);
+        }
+        pw.flush();
+    }
+
+    /**
+     * Recursive descent parser that evaluates a query while parsing it
+     */
+    private final class Query {
+        private final String expression;
+        private int          pos = 0;
+
+        /**
+         * Construct a new parser
+         *
+         * @param expression the query
+         */
+        Query(@NotNull String expression) {
+            this.expression = expression;
+        }
+
+        /**
+         * Parse and evaluate the whole query
+         *
+         * @return the result
+         */
+        @NotNull
+        BitSet parse() {
+            BitSet result = or();
+            if (peek() != 0) {
+                throw error();
+            }
+            return result;
+        }
+
+        /**
+         * or := and ( '|' and )*
+         *
+         * @return the result
+         */
+        @NotNull
+        private BitSet or() {
+            BitSet result = and();
+            while (peek() == '|') {
+                pos++;
+                result.or(and());
+            }
+            return result;
+        }
+
+        /**
+         * and := not ( '&amp;' not )*
+         *
+         * @return the result
+         */
+        @NotNull
+        private BitSet and() {
+            BitSet result = not();
+            while (peek() == '&') {
+                pos++;
+                result.and(not());
+            }
+            return result;
+        }
+
+        /**
+         * not := '!' not | '(' or ')' | column
+         *
+         * @return the result
+         */
+        @NotNull
+        private BitSet not() {
+            char c = peek();
+            if (c == '!') {
+                pos++;
+                BitSet result = new BitSet();
+                result.set(0, tags.size());
+                result.andNot(not());
+                return result;
+            }
+            if (c == '(') {
+                pos++;
+                BitSet result = or();
+                if (peek() != ')') {
+                    throw error();
+                }
+                pos++;
+                return result;
+            }
+            int start = pos;
+            while (pos < expression.length() && "&|!()".indexOf(expression.charAt(pos)) < 0) {
+                pos++;
+            }
+            String name = expression.substring(start, pos).trim();
+            if (name.isEmpty()) {
+                throw error();
+            }
+            return present(column(name));
+        }
+
+        /**
+         * Skip white space
+         *
+         * @return the next character or 0 at the end
+         */
+        private char peek() {
+            while (pos < expression.length() && Character.isWhitespace(expression.charAt(pos))) {
+                pos++;
+            }
+            return pos < expression.length() ? expression.charAt(pos) : 0;
+        }
+
+        /**
+         * @return an exception for a syntax error at the current position
+         */
+        @NotNull
+        private IllegalArgumentException error() {
+            return new IllegalArgumentException("Syntax error at position " + pos + " in " + expression);
+        }
+    }
+}
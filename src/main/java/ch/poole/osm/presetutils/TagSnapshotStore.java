@@ -0,0 +1,489 @@
+package ch.poole.osm.presetutils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.CRC32;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Append only store for a series of tag count snapshots, for example regular runs of TagsFromTaginfo
+ *
+ * Tags are mapped to ids in the order they are first seen. Every snapshot is appended as one block containing the
+ * tags that are new in the snapshot and a column with the count of every tag known so far, stored as the difference to
+ * the previous snapshot, so that unchanged counts take one byte. Layout, all fixed width values big endian:
+ *
+ * <pre>
+ * header   magic, version, flags
+ * block    payload length, payload, CRC32 of the payload
+ * payload  date, number of new tags, new tags, number of tags, zigzag varint count deltas
+ * </pre>
+ *
+ * A block that was not completely written is ignored when reading and overwritten by the next snapshot.
+ *
+ * Licence Apache 2.0
+ *
+ * @author Simon Poole
+ *
+ */
+public class TagSnapshotStore {
+
+    static final int   MAGIC       = 0x54534E50; // TSNP
+    static final short VERSION     = 1;
+    static final int   HEADER_SIZE = 8;
+
+    /** count of tags that are not in a snapshot */
+    public static final int NO_COUNT = TagStats.NO_COUNT;
+
+    private static final String STORE_OPT    = "store";
+    private static final String ADD_OPT      = "add";
+    private static final String DATE_OPT     = "date";
+    private static final String GROWTH_OPT   = "growth";
+    private static final String LAST_OPT     = "last";
+    private static final String CROSSING_OPT = "crossing";
+    private static final String SINCE_OPT    = "since";
+    private static final String LIST_OPT     = "list";
+
+    private final Path                 path;
+    private final List<String>         tags    = new ArrayList<>();
+    private final Map<String, Integer> ids     = new HashMap<>();
+    private final List<String>         dates   = new ArrayList<>();
+    private final List<int[]>          columns = new ArrayList<>();
+    private long                       validLength;
+
+    /**
+     * Open a store, the file is created when the first snapshot is added
+     *
+     * @param path the store file
+     * @throws IOException if the file can't be read or is not a snapshot store
+     */
+    public TagSnapshotStore(@NotNull Path path) throws IOException {
+        this.path = path;
+        if (Files.exists(path)) {
+            read(Files.readAllBytes(path));
+        }
+    }
+
+    /**
+     * Decode all blocks
+     *
+     * @param data the contents of the store file
+     * @throws IOException if data is not a snapshot store
+     */
+    private void read(@NotNull byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (data.length < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not a snapshot store");
+        }
+        short version = buffer.getShort(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot store version " + version);
+        }
+        int pos = HEADER_SIZE;
+        validLength = pos;
+        CRC32 crc = new CRC32();
+        while (pos + 4 <= data.length) {
+            int length = buffer.getInt(pos);
+            if (length < 0 || (long) pos + 8 + length > data.length) {
+                break;
+            }
+            crc.reset();
+            crc.update(data, pos + 4, length);
+            if ((int) crc.getValue() != buffer.getInt(pos + 4 + length)) {
+                break;
+            }
+            readBlock(new DataInputStream(new ByteArrayInputStream(data, pos + 4, length)));
+            pos += 8 + length;
+            validLength = pos;
+        }
+        if (validLength < data.length) {
+            System.err.println("Ignoring " + (data.length - validLength) + " bytes of incomplete data at the end of " + path); // NOSONAR
+        }
+    }
+
+    /**
+     * Decode one snapshot
+     *
+     * @param in the payload
+     * @throws IOException if the payload is inconsistent
+     */
+    private void readBlock(@NotNull DataInputStream in) throws IOException {
+        String date = in.readUTF();
+        int newTags = readVarInt(in);
+        for (int i = 0; i < newTags; i++) {
+            addTag(in.readUTF());
+        }
+        int count = readVarInt(in);
+        if (count != tags.size()) {
+            throw new IOException("Snapshot " + date + " has " + count + " counts for " + tags.size() + " tags");
+        }
+        int[] previous = columns.isEmpty() ? new int[0] : columns.get(columns.size() - 1);
+        int[] column = new int[count];
+        for (int id = 0; id < count; id++) {
+            column[id] = (id < previous.length ? previous[id] : NO_COUNT) + zigZagDecode(readVarInt(in));
+        }
+        dates.add(date);
+        columns.add(column);
+    }
+
+    /**
+     * Add a tag to the dictionary
+     *
+     * @param tag the tag
+     * @return the id
+     */
+    private int addTag(@NotNull String tag) {
+        int id = tags.size();
+        tags.add(tag);
+        ids.put(tag, id);
+        return id;
+    }
+
+    /**
+     * Append a snapshot
+     *
+     * @param date the ISO date of the snapshot, it must not be earlier than that of the previous snapshot
+     * @param counts the count for each tag
+     * @throws IOException if writing fails
+     */
+    public void append(@NotNull String date, @NotNull Map<String, Integer> counts) throws IOException {
+        if (!dates.isEmpty() && date.compareTo(dates.get(dates.size() - 1)) < 0) {
+            throw new IllegalArgumentException("Snapshot date " + date + " is before " + dates.get(dates.size() - 1));
+        }
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeUTF(date);
+        List<String> newTags = new ArrayList<>();
+        for (String tag : counts.keySet()) {
+            if (!ids.containsKey(tag)) {
+                newTags.add(tag);
+            }
+        }
+        writeVarInt(out, newTags.size());
+        for (String tag : newTags) {
+            out.writeUTF(tag);
+        }
+        // the dictionary is only updated once the block has been written, new tags get the ids after the known ones
+        int[] previous = columns.isEmpty() ? new int[0] : columns.get(columns.size() - 1);
+        int[] column = new int[tags.size() + newTags.size()];
+        writeVarInt(out, column.length);
+        for (int id = 0; id < column.length; id++) {
+            Integer count = counts.get(id < tags.size() ? tags.get(id) : newTags.get(id - tags.size()));
+            column[id] = count != null ? count : NO_COUNT;
+            writeVarInt(out, zigZagEncode(column[id] - (id < previous.length ? previous[id] : NO_COUNT)));
+        }
+        out.flush();
+
+        byte[] block = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(block, 0, block.length);
+        ByteBuffer buffer = ByteBuffer.allocate((validLength == 0 ? HEADER_SIZE : 0) + 8 + block.length);
+        if (validLength == 0) {
+            buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0); // flags
+        }
+        buffer.putInt(block.length).put(block).putInt((int) crc.getValue());
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // drop anything after the last complete block
+            channel.truncate(validLength);
+            channel.position(validLength);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            validLength = channel.position();
+            for (String tag : newTags) {
+                addTag(tag);
+            }
+            dates.add(date);
+            columns.add(column);
+        }
+    }
+
+    /**
+     * @return the number of snapshots
+     */
+    public int size() {
+        return dates.size();
+    }
+
+    /**
+     * @param snapshot the index of the snapshot
+     * @return the date of the snapshot
+     */
+    @NotNull
+    public String getDate(int snapshot) {
+        return dates.get(snapshot);
+    }
+
+    /**
+     * Get the count of a tag in a snapshot
+     *
+     * @param snapshot the index of the snapshot
+     * @param tag the tag
+     * @return the count or NO_COUNT if the tag is not in the snapshot
+     */
+    public int getCount(int snapshot, @NotNull String tag) {
+        Integer id = ids.get(tag);
+        return id != null ? count(columns.get(snapshot), id) : NO_COUNT;
+    }
+
+    /**
+     * Get the count for an id in a column
+     *
+     * @param column the column
+     * @param id the tag id
+     * @return the count or NO_COUNT
+     */
+    private static int count(@NotNull int[] column, int id) {
+        return id < column.length ? column[id] : NO_COUNT;
+    }
+
+    /**
+     * Get the counts of a tag in the last snapshots
+     *
+     * @param tag the tag
+     * @param last the number of snapshots, 0 for all
+     * @return the counts in date order, NO_COUNT if the tag is not in a snapshot
+     */
+    @NotNull
+    public int[] growth(@NotNull String tag, int last) {
+        int first = last <= 0 ? 0 : Math.max(0, size() - last);
+        int[] result = new int[size() - first];
+        for (int i = first; i < size(); i++) {
+            result[i - first] = getCount(i, tag);
+        }
+        return result;
+    }
+
+    /**
+     * Find the tags that crossed a count threshold between the last snapshot before a date and the latest snapshot
+     *
+     * @param threshold the threshold
+     * @param since the ISO date
+     * @return a Map from tag to the count before and the latest count, upwards and downwards crossings are included
+     */
+    @NotNull
+    public Map<String, int[]> crossing(int threshold, @NotNull String since) {
+        Map<String, int[]> result = new LinkedHashMap<>();
+        if (dates.isEmpty()) {
+            return result;
+        }
+        int[] before = new int[0];
+        for (int i = 0; i < size() && dates.get(i).compareTo(since) < 0; i++) {
+            before = columns.get(i);
+        }
+        int[] latest = columns.get(size() - 1);
+        for (int id = 0; id < tags.size(); id++) {
+            int from = count(before, id);
+            int to = count(latest, id);
+            if ((from < threshold) != (to < threshold)) {
+                result.put(tags.get(id), new int[] { from, to });
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Read the counts from a file in the PresetStats format
+     *
+     * @param file the file
+     * @return a Map from tag to count, tags without a count are skipped
+     * @throws IOException if reading fails
+     */
+    @NotNull
+    static Map<String, Integer> counts(@NotNull Path file) throws IOException {
+        TagStats stats = TagStats.read(file);
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (int i = 0; i < stats.size(); i++) {
+            if (stats.getCount(i) != NO_COUNT) {
+                counts.merge(stats.getTag(i), stats.getCount(i), Math::max);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Write an unsigned variable length int
+     *
+     * @param out the output
+     * @param value the value
+     * @throws IOException if writing fails
+     */
+    static void writeVarInt(@NotNull DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Read an unsigned variable length int
+     *
+     * @param in the input
+     * @return the value
+     * @throws IOException if reading fails
+     */
+    static int readVarInt(@NotNull DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new EOFException("Malformed varint");
+    }
+
+    /**
+     * @param value a signed value
+     * @return value mapped so that small negative values are small positive ones
+     */
+    static int zigZagEncode(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * @param value a zigzag encoded value
+     * @return the signed value
+     */
+    static int zigZagDecode(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Format a count for output
+     *
+     * @param count the count
+     * @return the count or an empty string for NO_COUNT
+     */
+    @NotNull
+    private static String format(int count) {
+        return count == NO_COUNT ? "" : Integer.toString(count);
+    }
+
+    /**
+     * Check that a value is an ISO date
+     *
+     * @param date the value
+     * @return date
+     * @throws ParseException if date is not an ISO date
+     */
+    @NotNull
+    private static String checkDate(@Nullable String date) throws ParseException {
+        try {
+            return LocalDate.parse(date).toString();
+        } catch (DateTimeParseException | NullPointerException e) { // NOSONAR
+            throw new ParseException("Not an ISO date " + date);
+        }
+    }
+
+    /**
+     * Parse a number option
+     *
+     * @param value the value
+     * @return the number
+     * @throws ParseException if value is not a number
+     */
+    private static int number(@NotNull String value) throws ParseException {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ParseException(e.getMessage());
+        }
+    }
+
+    public static void main(String[] args) {
+        // arguments
+        Option storeOpt = Option.builder("s").longOpt(STORE_OPT).hasArg().required().desc("snapshot store file").build();
+        Option addOpt = Option.builder("a").longOpt(ADD_OPT).hasArg().desc("add a tag stats file, for example the output of TagsFromTaginfo, as snapshot")
+                .build();
+        Option dateOpt = Option.builder("d").longOpt(DATE_OPT).hasArg().desc("ISO date of the added snapshot, default: today").build();
+        Option growthOpt = Option.builder("g").longOpt(GROWTH_OPT).hasArg().desc("output the counts of a tag").build();
+        Option lastOpt = Option.builder("n").longOpt(LAST_OPT).hasArg().desc("number of snapshots for growth, default: all").build();
+        Option crossingOpt = Option.builder("c").longOpt(CROSSING_OPT).hasArg().desc("output the tags whose count crossed this threshold").build();
+        Option sinceOpt = Option.builder("f").longOpt(SINCE_OPT).hasArg().desc("ISO date for crossing, default: all tags at or above the threshold").build();
+        Option listOpt = Option.builder("l").longOpt(LIST_OPT).desc("list the snapshots").build();
+
+        Options options = new Options();
+
+        options.addOption(storeOpt);
+        options.addOption(addOpt);
+        options.addOption(dateOpt);
+        options.addOption(growthOpt);
+        options.addOption(lastOpt);
+        options.addOption(crossingOpt);
+        options.addOption(sinceOpt);
+        options.addOption(listOpt);
+
+        CommandLineParser parser = new DefaultParser();
+        try {
+            CommandLine line = parser.parse(options, args);
+            TagSnapshotStore store = new TagSnapshotStore(Paths.get(line.getOptionValue(STORE_OPT)));
+            PrintWriter pw = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            if (line.hasOption(ADD_OPT)) {
+                String date = line.hasOption(DATE_OPT) ? checkDate(line.getOptionValue(DATE_OPT)) : LocalDate.now().toString();
+                store.append(date, counts(Paths.get(line.getOptionValue(ADD_OPT))));
+            }
+            if (line.hasOption(LIST_OPT)) {
+                for (int i = 0; i < store.size(); i++) {
+                    pw.println(store.getDate(i));
+                }
+            }
+            if (line.hasOption(GROWTH_OPT)) {
+                int[] counts = store.growth(line.getOptionValue(GROWTH_OPT), line.hasOption(LAST_OPT) ? number(line.getOptionValue(LAST_OPT)) : 0);
+                pw.println("date,count,change");
+                for (int i = 0; i < counts.length; i++) {
+                    boolean change = i > 0 && counts[i] != NO_COUNT && counts[i - 1] != NO_COUNT;
+                    pw.println(store.getDate(store.size() - counts.length + i) + "," + format(counts[i]) + ","
+                            + (change ? Integer.toString(counts[i] - counts[i - 1]) : ""));
+                }
+            }
+            if (line.hasOption(CROSSING_OPT)) {
+                String since = line.hasOption(SINCE_OPT) ? checkDate(line.getOptionValue(SINCE_OPT)) : "";
+                pw.println("tag,before,latest");
+                for (Entry<String, int[]> entry : store.crossing(number(line.getOptionValue(CROSSING_OPT)), since).entrySet()) {
+                    pw.println(entry.getKey() + "," + format(entry.getValue()[0]) + "," + format(entry.getValue()[1]));
+                }
+            }
+            pw.flush();
+        } catch (ParseException | IllegalArgumentException exp) {
+            System.err.println(exp.getMessage());
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp(TagSnapshotStore.class.getSimpleName(), options);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
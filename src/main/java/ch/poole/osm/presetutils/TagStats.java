@@ -0,0 +1,213 @@
+package ch.poole.osm.presetutils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The tag coverage of a preset, or of any other tag source, as produced by PresetStats
+ *
+ * Tags are stored in the order they were added together with their count and a deprecation flag. The text format is
+ * one tag per line: tag,count,X or D, the flag is optional when reading.
+ *
+ * Licence Apache 2.0
+ *
+ * @author Simon Poole
+ *
+ */
+public final class TagStats {
+
+    private static final char   SEPARATOR       = ',';
+    private static final String DEPRECATED_FLAG = "D";
+    private static final String CURRENT_FLAG    = "X";
+
+    /** count value for lines without a valid count */
+    public static final int NO_COUNT = -1;
+
+    private final String name;
+    private String[]     tags       = new String[64];
+    private int[]        counts     = new int[64];
+    private final BitSet deprecated = new BitSet();
+    private int          size       = 0;
+
+    /**
+     * Construct a new empty instance
+     *
+     * @param name a name for the source of the tags, for example the file name
+     */
+    public TagStats(@NotNull String name) {
+        this.name = name;
+    }
+
+    /**
+     * Add a tag
+     *
+     * @param tag the tag, or tags separated by " / "
+     * @param count the count or NO_COUNT
+     * @param isDeprecated true if the tag is deprecated
+     */
+    public void add(@NotNull String tag, int count, boolean isDeprecated) {
+        if (size == tags.length) {
+            tags = Arrays.copyOf(tags, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+        }
+        tags[size] = tag;
+        counts[size] = count;
+        deprecated.set(size, isDeprecated);
+        size++;
+    }
+
+    /**
+     * @return the name of the source
+     */
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of tags
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index the index
+     * @return the tag at index
+     */
+    @NotNull
+    public String getTag(int index) {
+        return tags[index];
+    }
+
+    /**
+     * @param index the index
+     * @return the count for the tag at index or NO_COUNT
+     */
+    public int getCount(int index) {
+        return counts[index];
+    }
+
+    /**
+     * @param index the index
+     * @return true if the tag at index is deprecated
+     */
+    public boolean isDeprecated(int index) {
+        return deprecated.get(index);
+    }
+
+    /**
+     * Read tag stats in the text format
+     *
+     * @param file the file
+     * @return a TagStats instance named after the file
+     * @throws IOException if reading fails
+     */
+    @NotNull
+    public static TagStats read(@NotNull Path file) throws IOException {
+        TagStats stats = new TagStats(file.toString());
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                stats.parseLine(line);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Parse one line of the text format and add it
+     *
+     * @param line the line
+     */
+    private void parseLine(@NotNull String line) {
+        add(tag(line), count(line), isDeprecated(line));
+    }
+
+    /**
+     * Get the tag from a line in the text format
+     *
+     * @param line the line
+     * @return the tag
+     */
+    @NotNull
+    static String tag(@NotNull String line) {
+        int first = line.indexOf(SEPARATOR);
+        return first < 0 ? line : line.substring(0, first);
+    }
+
+    /**
+     * Get the count from a line in the text format
+     *
+     * @param line the line
+     * @return the count or NO_COUNT if it is missing or not a number
+     */
+    static int count(@NotNull String line) {
+        int first = line.indexOf(SEPARATOR);
+        if (first < 0) {
+            return NO_COUNT;
+        }
+        int second = line.indexOf(SEPARATOR, first + 1);
+        try {
+            return Integer.parseInt(second < 0 ? line.substring(first + 1) : line.substring(first + 1, second));
+        } catch (NumberFormatException e) {
+            return NO_COUNT;
+        }
+    }
+
+    /**
+     * Get the deprecation flag from a line in the text format
+     *
+     * @param line the line
+     * @return true if the line is flagged as deprecated
+     */
+    static boolean isDeprecated(@NotNull String line) {
+        int first = line.indexOf(SEPARATOR);
+        int second = first < 0 ? -1 : line.indexOf(SEPARATOR, first + 1);
+        return second >= 0 && DEPRECATED_FLAG.equals(line.substring(second + 1));
+    }
+
+    /**
+     * Get the indices of the tags in tag order
+     *
+     * @return an array of indices
+     */
+    @NotNull
+    int[] sortedIndices() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (i1, i2) -> tags[i1].compareTo(tags[i2]));
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    /**
+     * Write the tag stats in the text format
+     *
+     * @param pw the PrintWriter, it is flushed but not closed
+     */
+    public void write(@NotNull PrintWriter pw) {
+        for (int i = 0; i < size; i++) {
+            pw.print(tags[i] + SEPARATOR + counts[i] + SEPARATOR + (deprecated.get(i) ? DEPRECATED_FLAG : CURRENT_FLAG) + "\n");
+        }
+        pw.flush();
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + size + " tags";
+    }
+}
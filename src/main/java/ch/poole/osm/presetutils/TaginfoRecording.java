@@ -0,0 +1,146 @@
+package ch.poole.osm.presetutils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Recorded taginfo responses for TagsFromTaginfo
+ *
+ * The format is one header line per response: type, key, filter and number of entries separated by tabs, -1 entries
+ * for no response, followed by one line per entry with the value and the count. Responses are replayed regardless of
+ * the minimum count they were requested with.
+ *
+ * Licence Apache 2.0
+ *
+ * @author Simon Poole
+ *
+ */
+final class TaginfoRecording implements TagsFromTaginfo.Source {
+
+    private static final String VALUES       = "values";
+    private static final String COMBINATIONS = "combinations";
+    private static final char   TAB          = '\t';
+
+    private final Map<String, List<ValueAndDescription>> responses = new HashMap<>();
+
+    /**
+     * Private constructor, use read
+     */
+    private TaginfoRecording() {
+        // empty
+    }
+
+    @Override
+    public List<ValueAndDescription> values(String key, String filter, int minCount) {
+        return responses.get(id(VALUES, key, filter));
+    }
+
+    @Override
+    public List<ValueAndDescription> combinations(String key, String filter, int minCount) {
+        return responses.get(id(COMBINATIONS, key, filter));
+    }
+
+    /**
+     * Get the id of a response
+     *
+     * @param type the request type
+     * @param key the key
+     * @param filter the filter or null
+     * @return the id
+     */
+    @NotNull
+    private static String id(@NotNull String type, @NotNull String key, @Nullable String filter) {
+        return type + TAB + key + TAB + (filter != null ? filter : "");
+    }
+
+    /**
+     * Read a recording
+     *
+     * @param file the recording
+     * @return a TaginfoRecording
+     * @throws IOException if reading fails or the file is not a recording
+     */
+    @NotNull
+    static TaginfoRecording read(@NotNull Path file) throws IOException {
+        TaginfoRecording recording = new TaginfoRecording();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] header = line.split("\t", -1);
+                if (header.length != 4) {
+                    throw new IOException("Unexpected line " + line);
+                }
+                int entries = Integer.parseInt(header[3]);
+                List<ValueAndDescription> response = entries < 0 ? null : new ArrayList<>(entries);
+                for (int i = 0; i < entries; i++) {
+                    String entry = reader.readLine();
+                    int tab = entry != null ? entry.lastIndexOf(TAB) : -1;
+                    if (tab < 0) {
+                        throw new IOException("Truncated response for " + line);
+                    }
+                    ValueAndDescription value = new ValueAndDescription();
+                    value.value = entry.substring(0, tab);
+                    value.count = Integer.parseInt(entry.substring(tab + 1));
+                    response.add(value); // NOSONAR
+                }
+                recording.responses.put(id(header[0], header[1], header[2].isEmpty() ? null : header[2]), response);
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException(e);
+        }
+        return recording;
+    }
+
+    /**
+     * Get a Source that records the responses of another Source
+     *
+     * @param source the Source
+     * @param pw the PrintWriter to write the recording to
+     * @return a recording Source
+     */
+    @NotNull
+    static TagsFromTaginfo.Source recorder(@NotNull TagsFromTaginfo.Source source, @NotNull PrintWriter pw) {
+        return new TagsFromTaginfo.Source() {
+            @Override
+            public List<ValueAndDescription> values(String key, String filter, int minCount) {
+                return write(VALUES, key, filter, source.values(key, filter, minCount));
+            }
+
+            @Override
+            public List<ValueAndDescription> combinations(String key, String filter, int minCount) {
+                return write(COMBINATIONS, key, filter, source.combinations(key, filter, minCount));
+            }
+
+            /**
+             * Write a response
+             *
+             * @param type the request type
+             * @param key the key
+             * @param filter the filter or null
+             * @param response the response
+             * @return response
+             */
+            private List<ValueAndDescription> write(String type, String key, String filter, List<ValueAndDescription> response) {
+                pw.print(id(type, key, filter) + TAB + (response != null ? response.size() : -1) + "\n");
+                if (response != null) {
+                    for (ValueAndDescription value : response) {
+                        pw.print(value.value + TAB + value.count + "\n");
+                    }
+                }
+                pw.flush();
+                return response;
+            }
+        };
+    }
+}
@@ -5,9 +5,14 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.cli.CommandLine;
@@ -17,6 +22,8 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Get tags from taginfo
@@ -34,6 +41,74 @@ public class TagsFromTaginfo {
     private static final String NOSUBTAGS = "nosubtags";
     private static final String OUTPUT    = "output";
     private static final String MINIMUM   = "minimum";
+    private static final String RECORD    = "record";
+    private static final String REPLAY    = "replay";
+
+    /**
+     * Keys that are never used as second level keys
+     */
+    static final Set<String> EXCLUDED_SUB_KEYS;
+    static {
+        Set<String> excluded = new HashSet<>(Tags.NOT_SECOND_LEVEL_KEYS);
+        excluded.addAll(Tags.OBJECT_KEYS);
+        EXCLUDED_SUB_KEYS = Collections.unmodifiableSet(excluded);
+    }
+
+    /**
+     * Second level keys and tags that are excluded for a specific top level tag, copied from
+     * Tags.NOT_SECOND_LEVEL_KEYS_2 so that lookups don't allocate
+     */
+    static final Map<String, Set<String>> EXCLUDED_BY_TAG;
+    static {
+        Map<String, Set<String>> excluded = new HashMap<>();
+        for (String tag : Tags.NOT_SECOND_LEVEL_KEYS_2.getKeys()) {
+            excluded.put(tag, new HashSet<>(Tags.NOT_SECOND_LEVEL_KEYS_2.get(tag)));
+        }
+        EXCLUDED_BY_TAG = Collections.unmodifiableMap(excluded);
+    }
+
+    /**
+     * Source of taginfo data
+     */
+    interface Source {
+
+        /**
+         * Get the values of a key
+         * 
+         * @param key the key
+         * @param filter the element type filter or null
+         * @param minCount the minimum count
+         * @return a List of values or null
+         */
+        @Nullable
+        List<ValueAndDescription> values(@NotNull String key, @Nullable String filter, int minCount);
+
+        /**
+         * Get the keys that are used together with a key
+         * 
+         * @param key the key
+         * @param filter the element type filter or null
+         * @param minCount the minimum count
+         * @return a List of keys or null
+         */
+        @Nullable
+        List<ValueAndDescription> combinations(@NotNull String key, @Nullable String filter, int minCount);
+    }
+
+    /**
+     * Source that queries the taginfo API
+     */
+    static final Source TAGINFO = new Source() {
+        @Override
+        public List<ValueAndDescription> values(String key, String filter, int minCount) {
+            return TagInfo.getOptionsFromTagInfo(key, filter, false, minCount, 0, false);
+        }
+
+        @Override
+        public List<ValueAndDescription> combinations(String key, String filter, int minCount) {
+            return TagInfo.getCombinationKeys(key, filter, minCount);
+        }
+    };
 
     class TagStats {
         String tag   = null;
@@ -42,11 +117,13 @@ public class TagsFromTaginfo {
 
     List<TagStats> tags = new ArrayList<>();
 
+    Source source = TAGINFO;
+
     void dumpTags(PrintWriter pw, int minCount, boolean addSubTags) {
         for (String object : Tags.OBJECT_KEYS) {
             String filter = Tags.KEYS_FOR_SPECIFIC_ELEMENT.get(object); // normally == null == all elements
-            List<ValueAndDescription> values = TagInfo.getOptionsFromTagInfo(object, filter, false, minCount, 0, false);
-            List<ValueAndDescription> combinationsList = TagInfo.getCombinationKeys(object, filter, minCount / 5);
+            List<ValueAndDescription> values = source.values(object, filter, minCount);
+            List<ValueAndDescription> combinationsList = source.combinations(object, filter, minCount / 5);
             Set<String> combinations = new HashSet<>();
             if (combinationsList != null) {
                 for (ValueAndDescription combination : combinationsList) {
@@ -54,6 +131,7 @@ public class TagsFromTaginfo {
                 }
             }
             if (values != null && !values.isEmpty()) {
+                Set<ValueAndDescription> valueSet = null; // only needed for lifecycle keys
                 for (ValueAndDescription value : values) {
                     if (Tags.NOT_OBJECT_KEY_VALUES.contains(value.value)) { // applies to top level keys too
                         continue;
@@ -72,30 +150,33 @@ public class TagsFromTaginfo {
                         System.out.println(subKey + " discarded because not in combinations for key " + object);
                         continue;
                     }
-                    boolean not2ndLevelKeysHasTag = Tags.NOT_SECOND_LEVEL_KEYS_2.containsKey(stats.tag);
-                    if (Tags.NOT_SECOND_LEVEL_KEYS.contains(subKey) || Tags.OBJECT_KEYS.contains(subKey)
-                            || (not2ndLevelKeysHasTag && Tags.NOT_SECOND_LEVEL_KEYS_2.get(stats.tag).contains(subKey))) {
+                    Set<String> excluded = EXCLUDED_BY_TAG.getOrDefault(stats.tag, Collections.emptySet());
+                    if (EXCLUDED_SUB_KEYS.contains(subKey) || excluded.contains(subKey)) {
                         System.out.println(subKey + " discarded because of manual discard, key " + object);
                         continue;
                     }
                     if (addSubTags) {
-                        List<ValueAndDescription> subValues = TagInfo.getOptionsFromTagInfo(subKey, filter, false, minCount / 5, 0, false);
-                        if (values != null) {
+                        List<ValueAndDescription> subValues = source.values(subKey, filter, minCount / 5);
+                        if (subValues != null) {
+                            boolean lifecycle = Tags.LIFECYCLE_KEYS.contains(subKey);
+                            if (lifecycle && valueSet == null) {
+                                valueSet = new HashSet<>(values);
+                            }
+                            String prefix = stats.tag + " / ";
                             for (ValueAndDescription sub : subValues) {
-                                if (Tags.LIFECYCLE_KEYS.contains(subKey) && !values.contains(sub)) {
+                                if (lifecycle && !valueSet.contains(sub)) {
                                     // the sub value may only be one of the top level values for this key
                                     // example highway=construction, construction=primary
                                     continue;
                                 }
                                 String subTag = subKey + "=" + sub.value;
-                                if (Tags.NOT_OBJECT_KEY_VALUES.contains(sub.value)
-                                        || (not2ndLevelKeysHasTag && Tags.NOT_SECOND_LEVEL_KEYS_2.get(stats.tag).contains(subTag))) {
+                                if (Tags.NOT_OBJECT_KEY_VALUES.contains(sub.value) || excluded.contains(subTag)) {
                                     continue;
                                 }
-                                stats = new TagStats();
-                                stats.tag = object + "=" + value.value + " / " + subTag;
-                                stats.count = Integer.min(sub.count, value.count);
-                                tags.add(stats);
+                                TagStats subStats = new TagStats();
+                                subStats.tag = prefix + subTag;
+                                subStats.count = Integer.min(sub.count, value.count);
+                                tags.add(subStats);
                             }
                         }
                     }
@@ -119,6 +200,8 @@ public class TagsFromTaginfo {
         OutputStreamWriter os = null;
         int minCount = 500;
         boolean noSubTags = false;
+        String record = null;
+        String replay = null;
         try {
             os = new OutputStreamWriter(System.out, "UTF-8");
 
@@ -128,11 +211,17 @@ public class TagsFromTaginfo {
 
             Option noSubTagsOption = Option.builder("n").longOpt(NOSUBTAGS).desc("don't add subtags, default: false").build();
 
+            Option recordOption = Option.builder("r").longOpt(RECORD).hasArg().desc("record the taginfo responses to a file").build();
+
+            Option replayOption = Option.builder("p").longOpt(REPLAY).hasArg().desc("use recorded taginfo responses instead of querying taginfo").build();
+
             Options options = new Options();
 
             options.addOption(outputFile);
             options.addOption(min);
             options.addOption(noSubTagsOption);
+            options.addOption(recordOption);
+            options.addOption(replayOption);
 
             CommandLineParser parser = new DefaultParser();
             try {
@@ -153,6 +242,8 @@ public class TagsFromTaginfo {
                     }
                 }
                 noSubTags = line.hasOption(NOSUBTAGS);
+                record = line.getOptionValue(RECORD);
+                replay = line.getOptionValue(REPLAY);
 
             } catch (ParseException exp) {
                 HelpFormatter formatter = new HelpFormatter();
@@ -163,7 +254,17 @@ public class TagsFromTaginfo {
                 return;
             }
             TagsFromTaginfo t = new TagsFromTaginfo();
-            t.dumpTags(new PrintWriter(os), minCount, !noSubTags);
+            if (replay != null) {
+                t.source = TaginfoRecording.read(Paths.get(replay));
+            }
+            if (record != null) {
+                try (PrintWriter recording = new PrintWriter(new OutputStreamWriter(new FileOutputStream(record), StandardCharsets.UTF_8))) {
+                    t.source = TaginfoRecording.recorder(t.source, recording);
+                    t.dumpTags(new PrintWriter(os), minCount, !noSubTags);
+                }
+            } else {
+                t.dumpTags(new PrintWriter(os), minCount, !noSubTags);
+            }
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
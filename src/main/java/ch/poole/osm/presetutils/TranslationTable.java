@@ -0,0 +1,288 @@
+package ch.poole.osm.presetutils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Two level translation table, for example field name -&gt; option -&gt; title
+ *
+ * The primary and secondary keys are shared between all languages, adding a language only adds one slot array plus
+ * the translations that are not already present. After calling {@link #freeze()} the keys are held in sorted arrays
+ * and lookups are simple binary searches that don't allocate.
+ *
+ * The translation for the primary key itself (for example a field label) is stored with a null secondary key.
+ *
+ * @author Simon Poole
+ *
+ */
+public class TranslationTable {
+
+    private static final String NO_SECONDARY = "";
+
+    // rough object sizes assuming a 64bit VM with compressed oops
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER  = 16;
+    private static final int REFERENCE     = 4;
+
+    private final List<String>        languages = new ArrayList<>();
+    private final Map<String, String> pool      = new HashMap<>();
+
+    // building state
+    private Map<String, Map<String, Integer>> slots         = new HashMap<>();
+    private List<String[]>                    buildingSlots = new ArrayList<>();
+    private int                               slotCount     = 0;
+
+    // frozen state
+    private String[]   primaries;
+    private int[]      primaryStart;
+    private String[]   secondaries;
+    private String[][] values;
+
+    /**
+     * Add a language to the table, languages are consulted in the order they were added
+     *
+     * @param language the language code
+     * @return the index of the language
+     */
+    public int addLanguage(@NotNull String language) {
+        if (isFrozen()) {
+            throw new IllegalStateException("Table is frozen");
+        }
+        languages.add(intern(language));
+        buildingSlots.add(new String[Math.max(16, slotCount)]);
+        return languages.size() - 1;
+    }
+
+    /**
+     * Get the languages
+     *
+     * @return the language codes in the order they were added
+     */
+    @NotNull
+    public List<String> getLanguages() {
+        return languages;
+    }
+
+    /**
+     * Add a translation
+     *
+     * @param language the language index
+     * @param primary the primary key
+     * @param secondary the secondary key or null for the translation of the primary key itself
+     * @param translation the translated text
+     */
+    public void put(int language, @NotNull String primary, @Nullable String secondary, @NotNull String translation) {
+        if (isFrozen()) {
+            throw new IllegalStateException("Table is frozen");
+        }
+        Map<String, Integer> secondaryMap = slots.get(primary);
+        if (secondaryMap == null) {
+            secondaryMap = new HashMap<>();
+            slots.put(intern(primary), secondaryMap);
+        }
+        String secondaryKey = secondary != null ? secondary : NO_SECONDARY;
+        Integer slot = secondaryMap.get(secondaryKey);
+        if (slot == null) {
+            slot = slotCount++;
+            secondaryMap.put(intern(secondaryKey), slot);
+        }
+        String[] languageSlots = buildingSlots.get(language);
+        if (slot >= languageSlots.length) {
+            languageSlots = Arrays.copyOf(languageSlots, Math.max(slot + 1, languageSlots.length * 2));
+            buildingSlots.set(language, languageSlots);
+        }
+        languageSlots[slot] = intern(translation);
+    }
+
+    /**
+     * Intern a String in the table local pool
+     *
+     * @param s the String
+     * @return the canonical instance
+     */
+    @NotNull
+    private String intern(@NotNull String s) {
+        String existing = pool.get(s);
+        if (existing == null) {
+            pool.put(s, s);
+            return s;
+        }
+        return existing;
+    }
+
+    /**
+     * Convert the table to its compact, sorted, array based form, no further translations can be added after this
+     */
+    public void freeze() {
+        if (isFrozen()) {
+            return;
+        }
+        TreeMap<String, Map<String, Integer>> sorted = new TreeMap<>(slots);
+        primaries = sorted.keySet().toArray(new String[0]);
+        primaryStart = new int[primaries.length + 1];
+        secondaries = new String[slotCount];
+        int[] remap = new int[slotCount];
+        int index = 0;
+        for (int i = 0; i < primaries.length; i++) {
+            primaryStart[i] = index;
+            for (Map.Entry<String, Integer> entry : new TreeMap<>(sorted.get(primaries[i])).entrySet()) {
+                secondaries[index] = entry.getKey();
+                remap[entry.getValue()] = index;
+                index++;
+            }
+        }
+        primaryStart[primaries.length] = index;
+        values = new String[languages.size()][];
+        for (int l = 0; l < languages.size(); l++) {
+            String[] languageSlots = buildingSlots.get(l);
+            String[] frozen = new String[slotCount];
+            for (int s = 0; s < Math.min(slotCount, languageSlots.length); s++) {
+                frozen[remap[s]] = languageSlots[s];
+            }
+            values[l] = frozen;
+        }
+        slots = null;
+        buildingSlots = null;
+        pool.clear();
+    }
+
+    /**
+     * Check if the table has been frozen
+     *
+     * @return true if frozen
+     */
+    public boolean isFrozen() {
+        return slots == null;
+    }
+
+    /**
+     * Get a translation, trying all languages in the order they were added
+     *
+     * @param primary the primary key
+     * @param secondary the secondary key or null
+     * @return the translation or null if none found
+     */
+    @Nullable
+    public String get(@NotNull String primary, @Nullable String secondary) {
+        for (int l = 0; l < languages.size(); l++) {
+            String result = get(l, primary, secondary);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get a translation for a specific language
+     *
+     * @param language the language index
+     * @param primary the primary key
+     * @param secondary the secondary key or null
+     * @return the translation or null if none found
+     */
+    @Nullable
+    public String get(int language, @NotNull String primary, @Nullable String secondary) {
+        String secondaryKey = secondary != null ? secondary : NO_SECONDARY;
+        if (!isFrozen()) {
+            Map<String, Integer> secondaryMap = slots.get(primary);
+            if (secondaryMap != null) {
+                Integer slot = secondaryMap.get(secondaryKey);
+                String[] languageSlots = buildingSlots.get(language);
+                if (slot != null && slot < languageSlots.length) {
+                    return languageSlots[slot];
+                }
+            }
+            return null;
+        }
+        int p = Arrays.binarySearch(primaries, primary);
+        if (p < 0) {
+            return null;
+        }
+        int s = Arrays.binarySearch(secondaries, primaryStart[p], primaryStart[p + 1], secondaryKey);
+        return s >= 0 ? values[language][s] : null;
+    }
+
+    /**
+     * Get the number of distinct primary/secondary key combinations
+     *
+     * @return the number of slots
+     */
+    public int size() {
+        return isFrozen() ? secondaries.length : slotCount;
+    }
+
+    /**
+     * Estimate the retained size of the frozen table in bytes
+     *
+     * Strings that are used multiple times, for example identical translations in different languages, are only
+     * counted once.
+     *
+     * @return the estimated size in bytes
+     */
+    public long retainedSize() {
+        if (!isFrozen()) {
+            throw new IllegalStateException("Table is not frozen");
+        }
+        Map<String, String> seen = new IdentityHashMap<>();
+        long size = arraySize(primaries.length, REFERENCE) + arraySize(primaryStart.length, 4) + arraySize(secondaries.length, REFERENCE);
+        size += arraySize(values.length, REFERENCE);
+        for (String s : primaries) {
+            size += stringSize(s, seen);
+        }
+        for (String s : secondaries) {
+            size += stringSize(s, seen);
+        }
+        for (String[] languageValues : values) {
+            size += arraySize(languageValues.length, REFERENCE);
+            for (String s : languageValues) {
+                size += stringSize(s, seen);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Estimate the size of an array
+     *
+     * @param length the array length
+     * @param elementSize the size of an element
+     * @return the size in bytes
+     */
+    private static long arraySize(int length, int elementSize) {
+        return align(ARRAY_HEADER + (long) length * elementSize);
+    }
+
+    /**
+     * Estimate the size of a String if it hasn't been counted yet
+     *
+     * @param s the String
+     * @param seen Strings that have already been counted
+     * @return the size in bytes
+     */
+    private static long stringSize(@Nullable String s, @NotNull Map<String, String> seen) {
+        if (s == null || seen.put(s, s) != null) {
+            return 0;
+        }
+        // hash, coder and value reference plus the backing array
+        return align(OBJECT_HEADER + 4 + 4 + REFERENCE) + arraySize(s.length(), 2);
+    }
+
+    /**
+     * Align to 8 bytes
+     *
+     * @param size the size
+     * @return the aligned size
+     */
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
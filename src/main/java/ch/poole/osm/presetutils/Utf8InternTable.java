@@ -0,0 +1,175 @@
+package ch.poole.osm.presetutils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Open addressing table that maps UTF-8 byte sequences to String instances, this allows looking up strings without
+ * decoding them first
+ *
+ * @author Simon Poole
+ *
+ */
+class Utf8InternTable {
+
+    private static final int MAX_SIZE = 1 << 18;
+
+    private byte[][] keys;
+    private int[]    hashes;
+    private String[] strings;
+    private int      size = 0;
+
+    /**
+     * Construct a new table
+     *
+     * @param initialCapacity initial capacity, will be rounded up to a power of 2
+     */
+    Utf8InternTable(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(16, initialCapacity) - 1) << 1;
+        keys = new byte[capacity][];
+        hashes = new int[capacity];
+        strings = new String[capacity];
+    }
+
+    /**
+     * Calculate the hash for a byte sequence, this is the same calculation that is used while scanning the input
+     *
+     * @param bytes the bytes
+     * @return the hash
+     */
+    static int hash(@NotNull byte[] bytes) {
+        int hash = 0;
+        for (byte b : bytes) {
+            hash = 31 * hash + b;
+        }
+        return hash;
+    }
+
+    /**
+     * Spread the hash bits
+     *
+     * @param hash the original hash
+     * @return the spread hash
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Add a String to the table
+     *
+     * @param s the String
+     */
+    void add(@NotNull String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes);
+        if (get(ByteBuffer.wrap(bytes), 0, bytes.length, hash) == null) {
+            put(bytes, hash, s);
+        }
+    }
+
+    /**
+     * Look up a byte sequence
+     *
+     * @param buffer the buffer holding the bytes
+     * @param start start offset
+     * @param length length of the sequence
+     * @param hash pre-calculated hash
+     * @return the String or null if not found
+     */
+    @Nullable
+    String get(@NotNull ByteBuffer buffer, int start, int length, int hash) {
+        int mask = keys.length - 1;
+        int i = spread(hash) & mask;
+        byte[] key;
+        while ((key = keys[i]) != null) {
+            if (hashes[i] == hash && key.length == length && equal(buffer, start, key)) {
+                return strings[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Compare a byte sequence with a key
+     *
+     * @param buffer the buffer holding the bytes
+     * @param start start offset
+     * @param key the key
+     * @return true if the bytes are the same
+     */
+    private static boolean equal(@NotNull ByteBuffer buffer, int start, @NotNull byte[] key) {
+        for (int j = 0; j < key.length; j++) {
+            if (buffer.get(start + j) != key[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add an entry, the caller must have checked that it isn't present yet
+     *
+     * @param key the UTF-8 bytes
+     * @param hash pre-calculated hash
+     * @param s the String
+     */
+    void put(@NotNull byte[] key, int hash, @NotNull String s) {
+        if (size >= MAX_SIZE) {
+            return;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            resize();
+        }
+        insert(key, hash, s);
+        size++;
+    }
+
+    /**
+     * Insert in to the arrays
+     *
+     * @param key the UTF-8 bytes
+     * @param hash pre-calculated hash
+     * @param s the String
+     */
+    private void insert(@NotNull byte[] key, int hash, @NotNull String s) {
+        int mask = keys.length - 1;
+        int i = spread(hash) & mask;
+        while (keys[i] != null) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        hashes[i] = hash;
+        strings[i] = s;
+    }
+
+    /**
+     * Double the size of the table
+     */
+    private void resize() {
+        byte[][] oldKeys = keys;
+        int[] oldHashes = hashes;
+        String[] oldStrings = strings;
+        keys = new byte[oldKeys.length * 2][];
+        hashes = new int[oldKeys.length * 2];
+        strings = new String[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                insert(oldKeys[i], oldHashes[i], oldStrings[i]);
+            }
+        }
+    }
+
+    /**
+     * Get the number of entries
+     *
+     * @return the number of entries
+     */
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,672 @@
+package ch.poole.osm.presetutils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * JsonInput implementation that works directly on UTF-8 encoded bytes, typically from a memory mapped file
+ *
+ * Property names are compared against pre-encoded byte constants and are only decoded to a String the first time they
+ * are encountered, short values are interned in the same way. The state handling closely follows the Gson JsonReader,
+ * but this implementation is strict and doesn't support any of the lenient extensions.
+ *
+ * @author Simon Poole
+ *
+ */
+public class Utf8JsonInput implements JsonInput {
+
+    private static final int MAX_INTERN_LENGTH = 64;
+
+    private static final int EMPTY_ARRAY       = 1;
+    private static final int NONEMPTY_ARRAY    = 2;
+    private static final int EMPTY_OBJECT      = 3;
+    private static final int DANGLING_NAME     = 4;
+    private static final int NONEMPTY_OBJECT   = 5;
+    private static final int EMPTY_DOCUMENT    = 6;
+    private static final int NONEMPTY_DOCUMENT = 7;
+
+    private static final int PEEKED_NONE         = 0;
+    private static final int PEEKED_BEGIN_OBJECT = 1;
+    private static final int PEEKED_END_OBJECT   = 2;
+    private static final int PEEKED_BEGIN_ARRAY  = 3;
+    private static final int PEEKED_END_ARRAY    = 4;
+    private static final int PEEKED_TRUE         = 5;
+    private static final int PEEKED_FALSE        = 6;
+    private static final int PEEKED_NULL         = 7;
+    private static final int PEEKED_STRING       = 8;
+    private static final int PEEKED_NAME         = 9;
+    private static final int PEEKED_NUMBER       = 10;
+    private static final int PEEKED_EOF          = 11;
+
+    private static final byte[] TRUE_BYTES  = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE_BYTES = "false".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL_BYTES  = "null".getBytes(StandardCharsets.US_ASCII);
+
+    private final ByteBuffer buffer;
+    private final ByteBuffer view;
+    private final byte[]     array;
+    private final int        arrayOffset;
+    private final int        limit;
+    private int              pos;
+
+    private int   peeked    = PEEKED_NONE;
+    private int[] stack     = new int[32];
+    private int   stackSize = 0;
+
+    private final Utf8InternTable names  = new Utf8InternTable(256);
+    private final Utf8InternTable values = new Utf8InternTable(4096);
+
+    private final StringPool      pool;
+
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Construct a new instance
+     *
+     * @param buffer a ByteBuffer containing UTF-8 encoded JSON, reading starts at the current position
+     * @param knownNames property names that are expected to occur, these will be pre-encoded
+     */
+    public Utf8JsonInput(@NotNull ByteBuffer buffer, @NotNull String... knownNames) {
+        this(buffer, null, knownNames);
+    }
+
+    /**
+     * Construct a new instance that shares interned strings with other inputs via a StringPool
+     *
+     * @param buffer a ByteBuffer containing UTF-8 encoded JSON, reading starts at the current position
+     * @param pool StringPool for strings that are added to the intern tables or null
+     * @param knownNames property names that are expected to occur, these will be pre-encoded
+     */
+    public Utf8JsonInput(@NotNull ByteBuffer buffer, @Nullable StringPool pool, @NotNull String... knownNames) {
+        this.buffer = buffer;
+        this.pool = pool;
+        view = buffer.duplicate();
+        if (buffer.hasArray()) {
+            array = buffer.array();
+            arrayOffset = buffer.arrayOffset();
+        } else {
+            array = null;
+            arrayOffset = 0;
+        }
+        pos = buffer.position();
+        limit = buffer.limit();
+        // skip BOM
+        if (limit - pos >= 3 && buffer.get(pos) == (byte) 0xEF && buffer.get(pos + 1) == (byte) 0xBB && buffer.get(pos + 2) == (byte) 0xBF) {
+            pos += 3;
+        }
+        stack[stackSize++] = EMPTY_DOCUMENT;
+        for (String name : knownNames) {
+            names.add(pool != null ? pool.intern(name) : name);
+        }
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        int p = peekInternal();
+        if (p != PEEKED_BEGIN_OBJECT) {
+            throw unexpected(JsonToken.BEGIN_OBJECT);
+        }
+        push(EMPTY_OBJECT);
+        peeked = PEEKED_NONE;
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        int p = peekInternal();
+        if (p != PEEKED_END_OBJECT) {
+            throw unexpected(JsonToken.END_OBJECT);
+        }
+        stackSize--;
+        peeked = PEEKED_NONE;
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        int p = peekInternal();
+        if (p != PEEKED_BEGIN_ARRAY) {
+            throw unexpected(JsonToken.BEGIN_ARRAY);
+        }
+        push(EMPTY_ARRAY);
+        peeked = PEEKED_NONE;
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        int p = peekInternal();
+        if (p != PEEKED_END_ARRAY) {
+            throw unexpected(JsonToken.END_ARRAY);
+        }
+        stackSize--;
+        peeked = PEEKED_NONE;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        int p = peekInternal();
+        return p != PEEKED_END_OBJECT && p != PEEKED_END_ARRAY && p != PEEKED_EOF;
+    }
+
+    @Override
+    public JsonToken peek() throws IOException {
+        switch (peekInternal()) {
+        case PEEKED_BEGIN_OBJECT:
+            return JsonToken.BEGIN_OBJECT;
+        case PEEKED_END_OBJECT:
+            return JsonToken.END_OBJECT;
+        case PEEKED_BEGIN_ARRAY:
+            return JsonToken.BEGIN_ARRAY;
+        case PEEKED_END_ARRAY:
+            return JsonToken.END_ARRAY;
+        case PEEKED_NAME:
+            return JsonToken.NAME;
+        case PEEKED_TRUE:
+        case PEEKED_FALSE:
+            return JsonToken.BOOLEAN;
+        case PEEKED_NULL:
+            return JsonToken.NULL;
+        case PEEKED_STRING:
+            return JsonToken.STRING;
+        case PEEKED_NUMBER:
+            return JsonToken.NUMBER;
+        case PEEKED_EOF:
+        default:
+            return JsonToken.END_DOCUMENT;
+        }
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        int p = peekInternal();
+        if (p != PEEKED_NAME) {
+            throw unexpected(JsonToken.NAME);
+        }
+        String result = readString(names);
+        peeked = PEEKED_NONE;
+        return result;
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        int p = peekInternal();
+        String result;
+        if (p == PEEKED_STRING) {
+            result = readString(values);
+        } else if (p == PEEKED_NUMBER) {
+            result = readNumber();
+        } else {
+            throw unexpected(JsonToken.STRING);
+        }
+        peeked = PEEKED_NONE;
+        return result;
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException {
+        int p = peekInternal();
+        if (p == PEEKED_TRUE || p == PEEKED_FALSE) {
+            peeked = PEEKED_NONE;
+            return p == PEEKED_TRUE;
+        }
+        throw unexpected(JsonToken.BOOLEAN);
+    }
+
+    @Override
+    public int nextInt() throws IOException {
+        String number = numberText();
+        try {
+            return Integer.parseInt(number);
+        } catch (NumberFormatException e) {
+            double d = Double.parseDouble(number);
+            int result = (int) d;
+            if (result != d) {
+                throw new NumberFormatException("Expected an int but was " + number + " at offset " + pos);
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public double nextDouble() throws IOException {
+        return Double.parseDouble(numberText());
+    }
+
+    /**
+     * Get the text of a number or a string containing a number
+     *
+     * @return the text
+     * @throws IOException on IO and parse errors
+     */
+    @NotNull
+    private String numberText() throws IOException {
+        int p = peekInternal();
+        String result;
+        if (p == PEEKED_NUMBER) {
+            result = readNumber();
+        } else if (p == PEEKED_STRING) {
+            result = readString(null);
+        } else {
+            throw unexpected(JsonToken.NUMBER);
+        }
+        peeked = PEEKED_NONE;
+        return result;
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+        int count = 0;
+        do {
+            switch (peekInternal()) {
+            case PEEKED_BEGIN_ARRAY:
+                push(EMPTY_ARRAY);
+                count++;
+                break;
+            case PEEKED_BEGIN_OBJECT:
+                push(EMPTY_OBJECT);
+                count++;
+                break;
+            case PEEKED_END_ARRAY:
+            case PEEKED_END_OBJECT:
+                stackSize--;
+                count--;
+                break;
+            case PEEKED_NAME:
+            case PEEKED_STRING:
+                skipString();
+                break;
+            case PEEKED_NUMBER:
+                skipNumber();
+                break;
+            case PEEKED_EOF:
+                throw syntaxError("Unexpected end of input");
+            default:
+                // literals are already consumed
+            }
+            peeked = PEEKED_NONE;
+        } while (count > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        peeked = PEEKED_NONE;
+        stack[0] = NONEMPTY_DOCUMENT;
+        stackSize = 1;
+        pos = limit;
+    }
+
+    /**
+     * Push a new scope on the stack
+     *
+     * @param scope the scope
+     */
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            int[] newStack = new int[stackSize * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+        stack[stackSize++] = scope;
+    }
+
+    /**
+     * Return the current peeked value, determining it if necessary
+     *
+     * @return the peeked value
+     * @throws IOException on IO and parse errors
+     */
+    private int peekInternal() throws IOException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        return p;
+    }
+
+    /**
+     * Determine the next token
+     *
+     * @return the peeked value
+     * @throws IOException on IO and parse errors
+     */
+    private int doPeek() throws IOException {
+        int scope = stack[stackSize - 1];
+        if (scope == EMPTY_ARRAY) {
+            stack[stackSize - 1] = NONEMPTY_ARRAY;
+        } else if (scope == NONEMPTY_ARRAY) {
+            int c = nextNonWhitespace();
+            if (c == ']') {
+                return peeked = PEEKED_END_ARRAY; // NOSONAR
+            } else if (c != ',') {
+                throw syntaxError("Unterminated array");
+            }
+        } else if (scope == EMPTY_OBJECT || scope == NONEMPTY_OBJECT) {
+            stack[stackSize - 1] = DANGLING_NAME;
+            if (scope == NONEMPTY_OBJECT) {
+                int c = nextNonWhitespace();
+                if (c == '}') {
+                    return peeked = PEEKED_END_OBJECT; // NOSONAR
+                } else if (c != ',') {
+                    throw syntaxError("Unterminated object");
+                }
+            }
+            int c = nextNonWhitespace();
+            if (c == '"') {
+                return peeked = PEEKED_NAME; // NOSONAR
+            } else if (c == '}' && scope == EMPTY_OBJECT) {
+                return peeked = PEEKED_END_OBJECT; // NOSONAR
+            }
+            throw syntaxError("Expected name");
+        } else if (scope == DANGLING_NAME) {
+            stack[stackSize - 1] = NONEMPTY_OBJECT;
+            if (nextNonWhitespace() != ':') {
+                throw syntaxError("Expected ':'");
+            }
+        } else if (scope == EMPTY_DOCUMENT) {
+            stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+        } else if (scope == NONEMPTY_DOCUMENT) {
+            if (nextNonWhitespace() == -1) {
+                return peeked = PEEKED_EOF; // NOSONAR
+            }
+            throw syntaxError("Trailing content after document");
+        }
+
+        int c = nextNonWhitespace();
+        switch (c) {
+        case ']':
+            if (scope == EMPTY_ARRAY) {
+                return peeked = PEEKED_END_ARRAY; // NOSONAR
+            }
+            throw syntaxError("Unexpected value");
+        case '"':
+            return peeked = PEEKED_STRING; // NOSONAR
+        case '{':
+            return peeked = PEEKED_BEGIN_OBJECT; // NOSONAR
+        case '[':
+            return peeked = PEEKED_BEGIN_ARRAY; // NOSONAR
+        case 't':
+            consumeLiteral(TRUE_BYTES);
+            return peeked = PEEKED_TRUE; // NOSONAR
+        case 'f':
+            consumeLiteral(FALSE_BYTES);
+            return peeked = PEEKED_FALSE; // NOSONAR
+        case 'n':
+            consumeLiteral(NULL_BYTES);
+            return peeked = PEEKED_NULL; // NOSONAR
+        case -1:
+            throw syntaxError("Unexpected end of input");
+        default:
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                pos--; // number starts at the current character
+                return peeked = PEEKED_NUMBER; // NOSONAR
+            }
+            throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    /**
+     * Consume a literal, the first byte has already been consumed
+     *
+     * @param literal the literal
+     * @throws MalformedJsonException if the input doesn't match
+     */
+    private void consumeLiteral(@NotNull byte[] literal) throws MalformedJsonException {
+        int start = pos - 1;
+        if (start + literal.length > limit) {
+            throw syntaxError("Unexpected end of input");
+        }
+        for (int i = 1; i < literal.length; i++) {
+            if (buffer.get(start + i) != literal[i]) {
+                throw syntaxError("Unexpected literal");
+            }
+        }
+        pos = start + literal.length;
+    }
+
+    /**
+     * Get the next non-whitespace character
+     *
+     * @return the character or -1 if the end of input has been reached
+     */
+    private int nextNonWhitespace() {
+        while (pos < limit) {
+            byte b = buffer.get(pos++);
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return b;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Read a string, the opening quote has already been consumed
+     *
+     * @param table an intern table to use or null
+     * @return the String
+     * @throws IOException on IO and parse errors
+     */
+    @NotNull
+    private String readString(@Nullable Utf8InternTable table) throws IOException {
+        final int start = pos;
+        int hash = 0;
+        boolean ascii = true;
+        int p = start;
+        while (true) {
+            if (p >= limit) {
+                throw syntaxError("Unterminated string");
+            }
+            byte b = buffer.get(p);
+            if (b == '"') {
+                break;
+            } else if (b == '\\') {
+                return readEscapedString(start);
+            }
+            ascii &= b >= 0;
+            hash = 31 * hash + b;
+            p++;
+        }
+        pos = p + 1;
+        int length = p - start;
+        if (table != null && length <= MAX_INTERN_LENGTH) {
+            String result = table.get(buffer, start, length, hash);
+            if (result == null) {
+                result = decode(start, length, ascii);
+                if (pool != null) {
+                    result = pool.intern(result);
+                }
+                table.put(copy(start, length), hash, result);
+            }
+            return result;
+        }
+        return decode(start, length, ascii);
+    }
+
+    /**
+     * Slow path for strings that contain escapes, these are not interned
+     *
+     * @param start start offset of the string
+     * @return the String
+     * @throws IOException on IO and parse errors
+     */
+    @NotNull
+    private String readEscapedString(int start) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        int runStart = start;
+        boolean ascii = true;
+        int p = start;
+        while (true) {
+            if (p >= limit) {
+                throw syntaxError("Unterminated string");
+            }
+            byte b = buffer.get(p);
+            if (b == '"' || b == '\\') {
+                builder.append(decode(runStart, p - runStart, ascii));
+                ascii = true;
+                p++;
+                if (b == '"') {
+                    break;
+                }
+                if (p >= limit) {
+                    throw syntaxError("Unterminated escape sequence");
+                }
+                byte escaped = buffer.get(p++);
+                switch (escaped) {
+                case 'u':
+                    if (p + 4 > limit) {
+                        throw syntaxError("Unterminated escape sequence");
+                    }
+                    int c = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(buffer.get(p++), 16);
+                        if (digit < 0) {
+                            throw syntaxError("Invalid unicode escape");
+                        }
+                        c = (c << 4) + digit;
+                    }
+                    builder.append((char) c);
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case '"':
+                case '\\':
+                case '/':
+                    builder.append((char) escaped);
+                    break;
+                default:
+                    throw syntaxError("Invalid escape sequence");
+                }
+                runStart = p;
+            } else {
+                ascii &= b >= 0;
+                p++;
+            }
+        }
+        pos = p;
+        return builder.toString();
+    }
+
+    /**
+     * Skip a string, the opening quote has already been consumed
+     *
+     * @throws MalformedJsonException if the string isn't terminated
+     */
+    private void skipString() throws MalformedJsonException {
+        while (pos < limit) {
+            byte b = buffer.get(pos++);
+            if (b == '"') {
+                return;
+            } else if (b == '\\') {
+                pos++;
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    /**
+     * Read a number as a String
+     *
+     * @return the number as a String
+     */
+    @NotNull
+    private String readNumber() {
+        int start = pos;
+        skipNumber();
+        return decode(start, pos - start, true);
+    }
+
+    /**
+     * Skip over a number
+     */
+    private void skipNumber() {
+        while (pos < limit) {
+            byte b = buffer.get(pos);
+            if ((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E') {
+                pos++;
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Decode a range of the buffer to a String
+     *
+     * @param start start offset
+     * @param length length in bytes
+     * @param ascii if true the range only contains ASCII characters
+     * @return a String
+     */
+    @NotNull
+    private String decode(int start, int length, boolean ascii) {
+        if (length == 0) {
+            return "";
+        }
+        if (array != null) {
+            return new String(array, arrayOffset + start, length, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        view.limit(start + length);
+        view.position(start);
+        view.get(scratch, 0, length);
+        return new String(scratch, 0, length, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copy a range of the buffer
+     *
+     * @param start start offset
+     * @param length length in bytes
+     * @return a new byte array
+     */
+    @NotNull
+    private byte[] copy(int start, int length) {
+        byte[] result = new byte[length];
+        view.limit(start + length);
+        view.position(start);
+        view.get(result, 0, length);
+        return result;
+    }
+
+    /**
+     * Create an exception for an unexpected token
+     *
+     * @param expected the expected token
+     * @return an IllegalStateException
+     * @throws IOException on IO and parse errors
+     */
+    @NotNull
+    private IllegalStateException unexpected(@NotNull JsonToken expected) throws IOException {
+        return new IllegalStateException("Expected " + expected + " but was " + peek() + " at offset " + pos);
+    }
+
+    /**
+     * Create an exception for a syntax error
+     *
+     * @param message the error message
+     * @return a MalformedJsonException
+     */
+    @NotNull
+    private MalformedJsonException syntaxError(@NotNull String message) {
+        return new MalformedJsonException(message + " at offset " + pos);
+    }
+}
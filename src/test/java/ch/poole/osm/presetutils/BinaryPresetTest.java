@@ -0,0 +1,77 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class BinaryPresetTest {
+
+    /**
+     * Compile the test preset
+     * 
+     * @param preset the parsed Preset
+     * @return a BinaryPreset
+     */
+    private static BinaryPreset compile(Preset preset) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PresetCompiler.compile(preset, out);
+        return new BinaryPreset(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    /**
+     * Check that the compiled preset produces the same SAX events as the XML, both replayed directly and via the
+     * materialized model
+     */
+    @Test
+    public void roundTrip() throws ParserConfigurationException, SAXException, IOException {
+        Preset preset = PresetParserTest.parse();
+        PresetParserTest.RecordingHandler xml = new PresetParserTest.RecordingHandler();
+        preset.replay(xml);
+
+        BinaryPreset binary = compile(preset);
+        PresetParserTest.RecordingHandler replayed = new PresetParserTest.RecordingHandler();
+        binary.replay(replayed);
+        assertEquals(xml.events, replayed.events);
+
+        PresetParserTest.RecordingHandler materialized = new PresetParserTest.RecordingHandler();
+        binary.toPreset().replay(materialized);
+        assertEquals(xml.events, materialized.events);
+        assertEquals(PresetParserTest.TEST_PRESET, binary.getSource());
+    }
+
+    /**
+     * Check the indices and chunk references
+     */
+    @Test
+    public void indices() throws ParserConfigurationException, SAXException, IOException {
+        Preset preset = PresetParserTest.parse();
+        BinaryPreset binary = compile(preset);
+        assertEquals(preset.getElementCount(), binary.getElementCount());
+        assertEquals(3, binary.getItemCount());
+        assertEquals(2, binary.getGroupCount());
+        assertEquals(3, binary.getChunkCount());
+        int restaurant = binary.getItem(0);
+        assertEquals("Restaurant", binary.getAttribute(restaurant, PresetConstants.NAME));
+        assertEquals(ElementType.ITEM, binary.getType(restaurant));
+        int reference = binary.getChild(restaurant, 2);
+        assertEquals(ElementType.REFERENCE, binary.getType(reference));
+        assertEquals(binary.getChunk("name"), binary.getReferencedChunk(reference));
+        assertEquals("name", binary.getAttribute(binary.getReferencedChunk(reference), PresetConstants.ID));
+        assertEquals(-1, binary.getChunk("missing"));
+    }
+
+    /**
+     * Check that other files are rejected
+     */
+    @Test(expected = IOException.class)
+    public void notCompiled() throws IOException {
+        new BinaryPreset(ByteBuffer.wrap(new byte[BinaryPreset.HEADER_SIZE]));
+    }
+}
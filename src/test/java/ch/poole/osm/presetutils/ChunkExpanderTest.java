@@ -0,0 +1,60 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class ChunkExpanderTest {
+
+    /**
+     * Check that items are flattened and chunk contents are shared
+     */
+    @Test
+    public void expand() throws ParserConfigurationException, SAXException, IOException {
+        Preset preset = PresetParserTest.parse();
+        ChunkExpander expander = new ChunkExpander(preset);
+        Preset.Element restaurant = preset.getItems().get(0);
+        List<Preset.Element> fields = expander.getFields(restaurant);
+        StringBuilder keys = new StringBuilder();
+        for (Preset.Element field : fields) {
+            keys.append(field.getAttribute(PresetConstants.KEY_ATTR)).append(' ');
+        }
+        assertEquals("amenity name cuisine addr:street addr:housenumber name outdoor_seating diet ", keys.toString());
+        // list entries from the chunk are inlined in the combo
+        assertEquals(4, fields.get(2).getChildCount());
+        // same instance for all reference sites
+        assertSame(expander.expandChunk("name").get(0), fields.get(1));
+        assertSame(expander.expandChunk("name").get(0), fields.get(5));
+        assertSame(expander.expandChunk("address").get(2), fields.get(5));
+        // memoized
+        assertSame(expander.expand(restaurant), expander.expand(restaurant));
+        expander.expandAll();
+        assertEquals(0, expander.getUnresolved().size());
+        assertEquals(0, expander.getCycles().size());
+    }
+
+    /**
+     * Check that cycles and missing chunks are detected
+     */
+    @Test
+    public void cycles() throws ParserConfigurationException, SAXException, IOException {
+        String xml = "<presets><chunk id=\"a\"><text key=\"a\"/><reference ref=\"b\"/></chunk><chunk id=\"b\"><reference ref=\"a\"/></chunk>"
+                + "<item name=\"x\"><reference ref=\"a\"/><reference ref=\"missing\"/></item></presets>";
+        Preset preset = PresetParserTest.parse(xml);
+        ChunkExpander expander = new ChunkExpander(preset);
+        expander.expandAll();
+        assertEquals(Arrays.asList(Arrays.asList("a", "b")), expander.getCycles());
+        assertEquals(1, expander.getUnresolved().size());
+        assertEquals("missing", expander.getUnresolved().get(0).getAttribute(PresetConstants.REF));
+        assertNull(expander.expandChunk("missing"));
+    }
+}
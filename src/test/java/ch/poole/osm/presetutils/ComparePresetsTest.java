@@ -0,0 +1,57 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ComparePresetsTest {
+
+    /**
+     * Check the coverage for all depths and per top level key from one pass
+     */
+    @Test
+    public void coverage() {
+        TagStats reference = new TagStats("reference");
+        reference.add("amenity=cafe", 1, false);
+        reference.add("amenity=restaurant / cuisine=pizza", 1, false);
+        reference.add("amenity=restaurant / cuisine=pizza / diet:vegan=yes", 1, false);
+        reference.add("shop=bakery", 1, false);
+        TagStats input = new TagStats("input");
+        input.add("amenity=cafe", 1, false);
+        input.add("amenity=restaurant / cuisine=burger", 1, false);
+        input.add("amenity=restaurant / cuisine=pizza", 1, false);
+        input.add("shop=florist", 1, false);
+
+        Map<String, ComparePresets.Coverage> coverage = ComparePresets.coverage(ComparePresets.Trie.of(reference), ComparePresets.Trie.of(input));
+        ComparePresets.Coverage total = coverage.get("*");
+        assertEquals(3, total.height());
+        // depth 1: amenity=cafe, amenity=restaurant, shop=...
+        assertEquals(3, total.reference(1));
+        assertEquals(3, total.input(1));
+        assertEquals(2, total.both(1));
+        // depth 2: amenity=cafe, amenity=restaurant / cuisine=..., shop=...
+        assertEquals(3, total.reference(2));
+        assertEquals(4, total.input(2));
+        assertEquals(2, total.both(2));
+        // all: the input has amenity=cafe and amenity=restaurant / cuisine=pizza
+        assertEquals(4, total.reference(0));
+        assertEquals(4, total.input(0));
+        assertEquals(2, total.both(0));
+        assertEquals(2, total.both(3));
+
+        assertEquals(3, coverage.get("amenity").input(0));
+        assertEquals(2, coverage.get("amenity").both(0));
+        assertEquals(0, coverage.get("shop").both(0));
+
+        StringWriter out = new StringWriter();
+        ComparePresets.compare(reference, input, 1, new PrintWriter(out));
+        String[] lines = out.toString().split("\\R");
+        assertEquals("Total tags in reference 3", lines[0]);
+        assertEquals("Tags in input preset and reference 2 66.66667%", lines[2]);
+        assertEquals("Tags in input preset not in reference 1", lines[3]);
+    }
+}
@@ -0,0 +1,55 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MergePresetStatsTest {
+
+    /**
+     * Check that unsorted inputs are split in to sorted runs and merged in tag order
+     */
+    @Test
+    public void externalSort() throws IOException {
+        Path sorted = Files.createTempFile("sorted", "_tags.txt");
+        Path unsorted = Files.createTempFile("unsorted", "_tags.txt");
+        try {
+            Files.write(sorted, Arrays.asList("amenity=bar,7,X", "amenity=cafe,3,X", "shop=bakery,1,D"), StandardCharsets.UTF_8);
+            Files.write(unsorted, Arrays.asList("shop=florist,2,X", "amenity=cafe,5,D", "amenity=atm,1,X", "amenity=cafe,4,X", "amenity=bar,none,X"),
+                    StandardCharsets.UTF_8);
+            assertTrue(MergePresetStats.isSorted(sorted));
+            assertFalse(MergePresetStats.isSorted(unsorted));
+
+            List<MergePresetStats.Cursor> cursors = new ArrayList<>();
+            cursors.addAll(MergePresetStats.open(0, sorted, 2));
+            List<MergePresetStats.Cursor> runs = MergePresetStats.open(1, unsorted, 2);
+            assertEquals(3, runs.size());
+            cursors.addAll(runs);
+            StringWriter out = new StringWriter();
+            MergePresetStats.merge(Arrays.asList("a", "b"), cursors, new PrintWriter(out));
+            String[] lines = out.toString().split("\\R");
+            assertEquals(6, lines.length);
+            assertEquals("Tag,a,b,Count", lines[0]);
+            assertEquals("amenity=atm,,X,1", lines[1]);
+            assertEquals("amenity=bar,X,X,7", lines[2]);
+            assertEquals("amenity=cafe,X,D,5", lines[3]);
+            assertEquals("shop=bakery,D,,1", lines[4]);
+            assertEquals("shop=florist,,X,2", lines[5]);
+        } finally {
+            Files.delete(sorted);
+            Files.delete(unsorted);
+        }
+    }
+}
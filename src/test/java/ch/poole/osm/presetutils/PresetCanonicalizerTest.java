@@ -0,0 +1,79 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class PresetCanonicalizerTest {
+
+    private static final String PRESET = "<presets xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" version=\"1\" xmlns=\"test\">\n"
+            + "    <!-- food -->\n    <group name=\"Food\">\n        <item type=\"node\" name=\"Cafe\">\n"
+            + "            <key value=\"cafe\" key=\"amenity\"></key>\n        </item>\n    </group>\n</presets>\n";
+
+    private static final String REFORMATTED = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<presets version=\"1\" xmlns=\"test\" "
+            + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"><group name=\"Food\"><item name=\"Cafe\" type=\"node\">"
+            + "<key key=\"amenity\" value=\"cafe\"/></item></group></presets>";
+
+    /**
+     * @param xml the preset
+     * @return an InputStream for it
+     */
+    private static InputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Canonicalize a preset
+     *
+     * @param xml the preset
+     * @param minify minify if true
+     * @return the output
+     */
+    private static String canonicalize(String xml, boolean minify) throws ParserConfigurationException, SAXException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PresetCanonicalizer.canonicalize(stream(xml), out, minify);
+        return out.toString("UTF-8");
+    }
+
+    /**
+     * Check that formatting, comments and attribute order don't change the canonical form and key
+     */
+    @Test
+    public void canonical() throws ParserConfigurationException, SAXException, IOException {
+        String canonical = canonicalize(PRESET, false);
+        assertEquals(canonical, canonicalize(REFORMATTED, false));
+        assertTrue(canonical.contains("<presets xmlns=\"test\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" version=\"1\">\n"));
+        assertTrue(canonical.contains("\n<key key=\"amenity\" value=\"cafe\"/>\n"));
+        assertFalse(canonical.contains("food"));
+        assertEquals(PresetCanonicalizer.key(stream(PRESET)), PresetCanonicalizer.key(stream(REFORMATTED)));
+        assertFalse(PresetCanonicalizer.key(stream(PRESET)).equals(PresetCanonicalizer.key(stream(PRESET.replace("cafe", "bar")))));
+    }
+
+    /**
+     * Check that minified output strips author attributes and parses to the same model
+     */
+    @Test
+    public void minify() throws ParserConfigurationException, SAXException, IOException {
+        String minified = canonicalize(PRESET, true);
+        assertFalse(minified.contains("xsi"));
+        assertFalse(minified.contains("\n"));
+        try (InputStream is = getClass().getResourceAsStream("/test-preset.xml")) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            PresetCanonicalizer.canonicalize(is, out, true);
+            Preset preset = PresetParserTest.parse(out.toString("UTF-8"));
+            assertEquals(PresetParserTest.parse().getElementCount(), preset.getElementCount());
+            assertEquals("A bakery & more", preset.getItems().get(2).getChild(1).getAttribute(PresetConstants.TEXT));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class PresetDiffTest {
+
+    private static final String OLD = "<presets>\n<chunk id=\"name\"><text key=\"name\"/></chunk>\n<group name=\"Shops\">\n"
+            + "<item name=\"Shop\"><key key=\"shop\" value=\"yes\"/><reference ref=\"name\"/></item>\n"
+            + "<item name=\"Bank\"><key key=\"amenity\" value=\"bank\"/></item>\n"
+            + "<item name=\"Kiosk\"><key key=\"shop\" value=\"kiosk\"/></item>\n</group>\n</presets>";
+
+    private static final String NEW = "<presets>\n\n<chunk id=\"name\"><text key=\"name\" length=\"255\"/></chunk>\n<group name=\"Shops\">\n"
+            + "<item name=\"Shop\"><key key=\"shop\" value=\"yes\"/><reference ref=\"name\"/></item>\n"
+            + "<item name=\"Bakery\"><key key=\"shop\" value=\"bakery\"/></item>\n</group>\n<group name=\"Money\">\n"
+            + "<item name=\"Bank\"><key key=\"amenity\" value=\"bank\"/><check key=\"atm\"/></item>\n</group>\n</presets>";
+
+    /**
+     * Check that added, removed, moved and changed items and chunks are reported
+     */
+    @Test
+    public void diff() throws ParserConfigurationException, SAXException, IOException {
+        StringWriter out = new StringWriter();
+        PresetDiff presetDiff = new PresetDiff(new PrintWriter(out));
+        presetDiff.diff(PresetParserTest.parse(OLD), PresetParserTest.parse(NEW));
+        String result = out.toString().replace(System.lineSeparator(), "\n");
+        assertEquals(1, presetDiff.added);
+        assertEquals(1, presetDiff.removed);
+        assertEquals(1, presetDiff.moved);
+        assertEquals(1, presetDiff.changed);
+        assertEquals(1, presetDiff.unchanged);
+        assertTrue(result.contains("~ chunk name\n    ~ text name\n        + length=\"255\"\n"));
+        assertTrue(result.contains("+ item /Shops/Bakery\n"));
+        assertTrue(result.contains("- item /Shops/Kiosk\n"));
+        assertTrue(result.contains("> item /Shops/Bank -> /Money/Bank\n    + check atm\n"));
+    }
+
+    /**
+     * Check that formatting changes and the order of attributes are ignored
+     */
+    @Test
+    public void noChanges() throws ParserConfigurationException, SAXException, IOException {
+        StringWriter out = new StringWriter();
+        PresetDiff presetDiff = new PresetDiff(new PrintWriter(out));
+        String reordered = OLD.replace("\n", "\n\n  ").replace("key=\"amenity\" value=\"bank\"", "value=\"bank\" key=\"amenity\"");
+        presetDiff.diff(PresetParserTest.parse(OLD), PresetParserTest.parse(reordered));
+        assertEquals("No changes" + System.lineSeparator(), out.toString());
+    }
+}
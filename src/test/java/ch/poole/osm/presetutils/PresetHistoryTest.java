@@ -0,0 +1,59 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class PresetHistoryTest {
+
+    private static final String V1 = "<presets><group name=\"Food\"><item name=\"Cafe\"><key key=\"amenity\" value=\"cafe\"/><text key=\"name\"/></item>"
+            + "</group></presets>";
+    private static final String V2 = "<presets><group name=\"Food\"><item name=\"Cafe\"><key key=\"amenity\" value=\"cafe\"/><text key=\"name\"/></item>"
+            + "<item name=\"Bar\"><key key=\"amenity\" value=\"bar\"/></item></group></presets>";
+
+    /**
+     * Check that identical blobs are analysed once and that the table has one row per revision
+     */
+    @Test
+    public void history() throws IOException {
+        final Map<String, String> blobs = new HashMap<>();
+        blobs.put("b1", V1);
+        blobs.put("b2", V2);
+        blobs.put("b3", "<presets");
+        List<PresetHistory.Revision> revisions = Arrays.asList(new PresetHistory.Revision("c1", "2020-01-01", "b1"),
+                new PresetHistory.Revision("c2", "2020-02-01", "b2"), new PresetHistory.Revision("c3", "2020-03-01", "b1"),
+                new PresetHistory.Revision("c4", "2020-04-01", "b3"));
+        final List<String> read = Collections.synchronizedList(new ArrayList<>());
+        PresetHistory history = new PresetHistory(false, 2);
+        Map<String, PresetHistory.RevisionStats> stats = history.analyse(revisions, blob -> {
+            read.add(blob);
+            return blobs.get(blob).getBytes(StandardCharsets.UTF_8);
+        });
+        assertEquals(3, history.analysed);
+        assertEquals(3, read.size());
+        assertNull(stats.get("b3"));
+        assertEquals(2, stats.get("b2").items);
+
+        StringWriter out = new StringWriter();
+        PresetHistory.writeTable(revisions, stats, new PrintWriter(out));
+        String[] lines = out.toString().split("\\R");
+        assertEquals(5, lines.length);
+        assertEquals(PresetHistory.HEADER, lines[0]);
+        assertEquals("c1,2020-01-01,1,2,1,2,1,1,0", lines[1]);
+        assertEquals("c2,2020-02-01,2,2,2,3,2,1,0", lines[2]);
+        assertEquals("c3,2020-03-01,1,2,1,2,1,0,1", lines[3]);
+        assertEquals("c4,2020-04-01,,,,,,,", lines[4]);
+    }
+}
@@ -0,0 +1,91 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class PresetMatcherTest {
+
+    /**
+     * Get the name of the matched item
+     *
+     * @param matcher the PresetMatcher
+     * @param geometry the geometry or null
+     * @param region the region or null
+     * @param tags tags in the form key=value
+     * @return the name of the item or null
+     */
+    @Nullable
+    private static String match(PresetMatcher matcher, @Nullable PresetMatcher.Geometry geometry, @Nullable String region, String... tags) {
+        Map<String, String> map = PresetMatcher.parseTags(tags);
+        Preset.Element item = matcher.match(map, geometry, region);
+        return item != null ? item.getAttribute(PresetConstants.NAME) : null;
+    }
+
+    /**
+     * Check geometry and region handling
+     */
+    @Test
+    public void geometryAndRegions() throws ParserConfigurationException, SAXException, IOException {
+        PresetMatcher matcher = new PresetMatcher(PresetParserTest.parse());
+        assertEquals("Restaurant", match(matcher, null, null, "amenity=restaurant", "cuisine=pizza"));
+        assertNull(match(matcher, null, null, "amenity=bar"));
+        assertEquals("Restaurant", match(matcher, PresetMatcher.Geometry.MULTIPOLYGON, null, "amenity=restaurant"));
+        assertNull(match(matcher, PresetMatcher.Geometry.MULTIPOLYGON, null, "amenity=cafe"));
+        assertEquals("Cafe", match(matcher, PresetMatcher.Geometry.CLOSEDWAY, "DE-BY", "amenity=cafe"));
+        assertNull(match(matcher, null, "US", "amenity=cafe"));
+        assertEquals("Bakery", match(matcher, null, "CH", "shop=bakery"));
+        assertNull(match(matcher, null, "US", "shop=bakery"));
+    }
+
+    /**
+     * Check that the more specific item wins and deprecated items lose ties
+     */
+    @Test
+    public void scoring() throws ParserConfigurationException, SAXException, IOException {
+        String xml = "<presets><item name=\"old\" deprecated=\"true\"><key key=\"amenity\" value=\"restaurant\"/></item>"
+                + "<item name=\"restaurant\"><key key=\"amenity\" value=\"restaurant\"/><combo key=\"cuisine\" values=\"pizza,burger\"/>"
+                + "<check key=\"takeaway\" match=\"key!\"/></item>"
+                + "<item name=\"pizza\"><key key=\"amenity\" value=\"restaurant\"/><key key=\"cuisine\" value=\"pizza\"/></item>"
+                + "<item name=\"vending\"><key key=\"amenity\" value=\"vending_machine\"/><key key=\"vending\" value=\"drinks\"/></item>"
+                + "<item name=\"drinks\"><key key=\"amenity\" value=\"vending_machine\"/><key key=\"drink\" value=\"water\"/></item></presets>";
+        PresetMatcher matcher = new PresetMatcher(PresetParserTest.parse(xml));
+        assertEquals("old", match(matcher, null, null, "amenity=restaurant"));
+        assertEquals("restaurant", match(matcher, null, null, "amenity=restaurant", "takeaway=yes"));
+        assertEquals("pizza", match(matcher, null, null, "amenity=restaurant", "cuisine=pizza", "takeaway=yes"));
+        // second level keys weigh more than other fixed tags
+        assertEquals("vending", match(matcher, null, null, "amenity=vending_machine", "vending=drinks", "drink=water"));
+    }
+
+    /**
+     * Check that ties between items found via different tags go to the first in document order
+     */
+    @Test
+    public void documentOrder() throws ParserConfigurationException, SAXException, IOException {
+        String xml = "<presets><group regions=\"DE, CH\"><item name=\"bakery\"><key key=\"shop\" value=\"bakery\"/></item></group>"
+                + "<item name=\"cafe\"><key key=\"amenity\" value=\"cafe\"/></item></presets>";
+        PresetMatcher matcher = new PresetMatcher(PresetParserTest.parse(xml));
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("amenity", "cafe");
+        tags.put("shop", "bakery");
+        assertEquals("bakery", matcher.match(tags, null, null).getAttribute(PresetConstants.NAME));
+        tags.remove("amenity");
+        tags.put("amenity", "cafe");
+        assertEquals("bakery", matcher.match(tags, null, null).getAttribute(PresetConstants.NAME));
+        // regions are trimmed
+        assertEquals("bakery", matcher.match(tags, null, "CH").getAttribute(PresetConstants.NAME));
+        assertEquals("cafe", matcher.match(tags, null, "US").getAttribute(PresetConstants.NAME));
+        // region codes are case insensitive
+        assertEquals("bakery", matcher.match(tags, null, "ch").getAttribute(PresetConstants.NAME));
+        assertEquals("bakery", matcher.match(tags, null, "ch-zh").getAttribute(PresetConstants.NAME));
+    }
+}
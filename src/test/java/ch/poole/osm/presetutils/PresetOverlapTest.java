@@ -0,0 +1,65 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class PresetOverlapTest {
+
+    /**
+     * Check the pairwise overlaps and unique tags of three inputs
+     */
+    @Test
+    public void overlap() {
+        PresetOverlap overlap = new PresetOverlap(0);
+        overlap.add(stats("a", "shop=bakery", "amenity=cafe", "amenity=bar", "amenity=cafe"));
+        overlap.add(stats("b", "amenity=cafe", "amenity=pub"));
+        overlap.add(stats("c", "amenity=bar", "amenity=cafe", "tourism=hotel"));
+        overlap.compute(2);
+        assertEquals(3, overlap.overlap[0][0]);
+        assertEquals(1, overlap.overlap[0][1]);
+        assertEquals(2, overlap.overlap[2][0]);
+        assertEquals(1, overlap.overlap[1][2]);
+        assertArrayEquals(new String[] { "shop=bakery" }, overlap.unique(0));
+        assertArrayEquals(new String[] { "amenity=pub" }, overlap.unique(1));
+        assertArrayEquals(new String[] { "tourism=hotel" }, overlap.unique(2));
+
+        StringWriter out = new StringWriter();
+        overlap.write(new PrintWriter(out));
+        String[] lines = out.toString().split("\\R");
+        assertEquals("Tags,a,b,c", lines[0]);
+        assertEquals("a,3,1,2", lines[1]);
+        assertEquals("Unique,1,1,1", lines[4]);
+    }
+
+    /**
+     * Check truncation to a depth
+     */
+    @Test
+    public void depth() {
+        assertEquals("amenity=restaurant", PresetOverlap.truncate("amenity=restaurant / cuisine=pizza", 1));
+        assertEquals("amenity=restaurant / cuisine=pizza", PresetOverlap.truncate("amenity=restaurant / cuisine=pizza", 2));
+        PresetOverlap overlap = new PresetOverlap(1);
+        overlap.add(stats("a", "amenity=restaurant / cuisine=pizza", "amenity=restaurant"));
+        assertEquals(1, overlap.tags.get(0).length);
+    }
+
+    /**
+     * Create TagStats from tags
+     *
+     * @param name the name
+     * @param tags the tags
+     * @return a TagStats instance
+     */
+    private static TagStats stats(String name, String... tags) {
+        TagStats stats = new TagStats(name);
+        for (String tag : tags) {
+            stats.add(tag, 1, false);
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,153 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+public class PresetParserTest {
+
+    static final String TEST_PRESET = "/test-preset.xml";
+
+    /**
+     * Record the SAX events including line numbers
+     */
+    static class RecordingHandler extends DefaultHandler {
+        final List<String> events = new ArrayList<>();
+        Locator            locator;
+
+        @Override
+        public void setDocumentLocator(Locator locator) {
+            this.locator = locator;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attr) {
+            StringBuilder builder = new StringBuilder("<" + qName + "@" + locator.getLineNumber());
+            for (int i = 0; i < attr.getLength(); i++) {
+                builder.append(" " + attr.getQName(i) + "=" + attr.getValue(i));
+            }
+            events.add(builder.toString());
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            events.add("</" + qName + "@" + locator.getLineNumber());
+        }
+    }
+
+    /**
+     * Parse the test preset
+     * 
+     * @return a Preset
+     */
+    static Preset parse() throws ParserConfigurationException, SAXException, IOException {
+        try (InputStream is = PresetParserTest.class.getResourceAsStream(TEST_PRESET)) {
+            return PresetParser.parse(is, TEST_PRESET);
+        }
+    }
+
+    /**
+     * Parse a preset from a String
+     * 
+     * @param xml the preset
+     * @return a Preset
+     */
+    static Preset parse(String xml) throws ParserConfigurationException, SAXException, IOException {
+        return PresetParser.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), "test.xml");
+    }
+
+    /**
+     * Check that replaying the model produces the same events as parsing the XML
+     */
+    @Test
+    public void replay() throws ParserConfigurationException, SAXException, IOException {
+        RecordingHandler direct = new RecordingHandler();
+        try (InputStream is = PresetParserTest.class.getResourceAsStream(TEST_PRESET)) {
+            PresetParser.newSAXParser().parse(is, direct);
+        }
+        RecordingHandler replayed = new RecordingHandler();
+        parse().replay(replayed);
+        assertEquals(direct.events, replayed.events);
+    }
+
+    /**
+     * Check the indices and interning
+     */
+    @Test
+    public void model() throws ParserConfigurationException, SAXException, IOException {
+        Preset preset = parse();
+        assertEquals(3, preset.getItems().size());
+        assertEquals(2, preset.getGroups().size());
+        assertEquals(3, preset.getChunks().size());
+        Preset.Element restaurant = preset.getItems().get(0);
+        assertEquals("Restaurant", restaurant.getAttribute(PresetConstants.NAME));
+        assertEquals(17, restaurant.getLine());
+        assertEquals(ElementType.LINK, restaurant.getChild(0).getType());
+        assertEquals(ElementType.KEY, restaurant.getChild(1).getType());
+        Preset.Element cafe = preset.getItems().get(1);
+        assertSame(restaurant.getChild(1).getAttribute(PresetConstants.KEY_ATTR), cafe.getChild(0).getAttribute(PresetConstants.KEY_ATTR));
+        assertNotNull(preset.getChunk("address"));
+        assertEquals("A bakery & more", preset.getItems().get(2).getChild(1).getAttribute(PresetConstants.TEXT));
+    }
+
+    /**
+     * Parse the test preset with a specific backend
+     * 
+     * @param backend the backend
+     * @param skip element types to skip
+     * @return a Preset
+     */
+    static Preset parse(PresetParser.Backend backend, Set<ElementType> skip) throws ParserConfigurationException, SAXException, IOException {
+        try (InputStream is = PresetParserTest.class.getResourceAsStream(TEST_PRESET)) {
+            return PresetParser.parse(backend, is, TEST_PRESET, new StringPool(), skip);
+        }
+    }
+
+    /**
+     * Check that the StAX backend produces the same model, including line numbers
+     */
+    @Test
+    public void stax() throws ParserConfigurationException, SAXException, IOException {
+        RecordingHandler sax = new RecordingHandler();
+        parse(PresetParser.Backend.SAX, EnumSet.noneOf(ElementType.class)).replay(sax);
+        RecordingHandler stax = new RecordingHandler();
+        parse(PresetParser.Backend.STAX, EnumSet.noneOf(ElementType.class)).replay(stax);
+        assertEquals(sax.events, stax.events);
+    }
+
+    /**
+     * Check that skipped elements are not in the model with both backends
+     */
+    @Test
+    public void skip() throws ParserConfigurationException, SAXException, IOException {
+        for (PresetParser.Backend backend : PresetParser.Backend.values()) {
+            Preset preset = parse(backend, EnumSet.of(ElementType.KEY, ElementType.COMBO));
+            assertEquals(3, preset.getItems().size());
+            Preset.Element restaurant = preset.getItems().get(0);
+            for (Preset.Element child : restaurant.getChildren()) {
+                assertTrue(child.getType() != ElementType.KEY && child.getType() != ElementType.COMBO);
+            }
+            Preset.Element full = parse().getItems().get(0);
+            assertTrue(restaurant.getChildCount() < full.getChildCount());
+            assertEquals(full.getEndLine(), restaurant.getEndLine());
+        }
+    }
+}
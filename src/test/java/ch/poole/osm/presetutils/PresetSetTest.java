@@ -0,0 +1,81 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class PresetSetTest {
+
+    private static final String MAIN  = "<presets><chunk id=\"name\"><text key=\"name\"/></chunk>"
+            + "<item name=\"Shop\"><key key=\"shop\" value=\"yes\"/><reference ref=\"name\"/></item></presets>";
+    private static final String ADDON = "<presets><chunk id=\"name\"><text key=\"name:en\"/></chunk>"
+            + "<item name=\"Bank\"><key key=\"amenity\" value=\"bank\"/><reference ref=\"name\"/></item></presets>";
+
+    private Path folder;
+
+    @Before
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("presetset");
+    }
+
+    @After
+    public void teardown() throws IOException {
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(folder)) {
+            for (Path file : dir) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(folder);
+    }
+
+    /**
+     * Write a preset file
+     *
+     * @param name the file name
+     * @param content the preset
+     * @throws IOException if writing fails
+     */
+    private void write(String name, String content) throws IOException {
+        Files.write(folder.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Check that a directory is read in name order and clashing chunks are renamed
+     */
+    @Test
+    public void namespace() throws ParserConfigurationException, SAXException, IOException {
+        write("b-addon.xml", ADDON);
+        write("a-main.xml", MAIN);
+        write("readme.txt", "not a preset");
+        List<Path> files = PresetSet.expand(folder.toString());
+        assertEquals(2, files.size());
+        PresetSet set = PresetSet.parse(files, 2);
+        assertEquals(2, set.size());
+        assertTrue(set.getPresets().get(0).getSource().endsWith("a-main.xml"));
+        Preset addon = set.getPresets().get(1);
+        assertNotNull(addon.getChunks().get("b-addon:name"));
+        Preset merged = set.merge();
+        List<Preset.Element> items = merged.getItems();
+        assertEquals(Arrays.asList("Shop", "Bank"), Arrays.asList(items.get(0).getAttribute(PresetConstants.NAME), items.get(1).getAttribute(PresetConstants.NAME)));
+        assertEquals(2, merged.getChunks().size());
+        // each item uses the chunk from its own file
+        ChunkExpander expander = new ChunkExpander(merged);
+        assertEquals("name", expander.getFields(items.get(0)).get(1).getAttribute(PresetConstants.KEY_ATTR));
+        assertEquals("name:en", expander.getFields(items.get(1)).get(1).getAttribute(PresetConstants.KEY_ATTR));
+    }
+}
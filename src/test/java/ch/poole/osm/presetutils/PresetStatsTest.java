@@ -0,0 +1,118 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class PresetStatsTest {
+
+    /**
+     * Check that taginfo counts are resolved after parsing, once per key, and combined per item
+     */
+    @Test
+    public void deferredCounts() throws ParserConfigurationException, SAXException, IOException {
+        PresetStats stats = new PresetStats();
+        final List<String> keys = Collections.synchronizedList(new ArrayList<>());
+        stats.tagCounts = (key, values) -> {
+            keys.add(key);
+            Map<String, Integer> counts = new HashMap<>();
+            for (String value : values) {
+                counts.put(value, value.length());
+            }
+            return counts;
+        };
+        stats.process(true, false, PresetParserTest.parse());
+        assertNotNull(stats.counts);
+        StringWriter out = new StringWriter();
+        stats.dumpStats(new PrintWriter(out));
+        assertEquals(keys.size(), new HashSet<>(keys).size());
+        assertTrue(keys.contains("amenity"));
+        assertEquals(4, stats.items.get("amenity=cafe").count);
+        // the lowest count of the tags of the item
+        assertEquals(8, stats.items.get("cuisine=regional").count);
+        assertEquals(10, stats.items.get("amenity=restaurant").count);
+        assertTrue(out.toString().contains("amenity=cafe,4,X\n"));
+    }
+
+    /**
+     * Check that nothing is looked up without taginfo
+     */
+    @Test
+    public void noCounts() throws ParserConfigurationException, SAXException, IOException {
+        PresetStats stats = new PresetStats();
+        stats.tagCounts = (key, values) -> {
+            throw new IllegalStateException("unexpected lookup");
+        };
+        stats.process(false, false, PresetParserTest.parse());
+        assertNull(stats.counts);
+        stats.dumpStats(new PrintWriter(new StringWriter()));
+        assertEquals(0, stats.items.get("amenity=cafe").count);
+    }
+
+    /**
+     * Check that values missing from a taginfo response count as 0
+     */
+    @Test
+    public void missingCounts() throws ParserConfigurationException, SAXException, IOException {
+        PresetStats stats = new PresetStats();
+        stats.tagCounts = (key, values) -> "amenity".equals(key) ? null : new HashMap<>();
+        stats.process(true, false, PresetParserTest.parse());
+        stats.dumpStats(new PrintWriter(new StringWriter()));
+        assertEquals(0, stats.items.get("amenity=cafe").count);
+        assertEquals(0, stats.items.get("cuisine=regional").count);
+    }
+
+    /**
+     * Check that a failing lookup only affects the tags with that key
+     */
+    @Test
+    public void failedLookup() throws ParserConfigurationException, SAXException, IOException {
+        PresetStats stats = new PresetStats();
+        stats.tagCounts = (key, values) -> {
+            if ("cuisine".equals(key)) {
+                throw new IllegalStateException("taginfo not available");
+            }
+            Map<String, Integer> counts = new HashMap<>();
+            for (String value : values) {
+                counts.put(value, value.length());
+            }
+            return counts;
+        };
+        stats.process(true, false, PresetParserTest.parse());
+        StringWriter out = new StringWriter();
+        stats.dumpStats(new PrintWriter(out));
+        assertEquals(4, stats.items.get("amenity=cafe").count);
+        assertEquals(10, stats.items.get("cuisine=regional").count);
+        assertTrue(out.toString().contains("amenity=cafe,4,X\n"));
+    }
+
+    /**
+     * Check that references to chunks defined later and nested references are resolved
+     */
+    @Test
+    public void chunks() throws ParserConfigurationException, SAXException, IOException {
+        String xml = "<presets><item name=\"Cafe\"><key key=\"amenity\" value=\"cafe\"/><reference ref=\"address\"/></item>"
+                + "<chunk id=\"address\"><text key=\"addr:street\"/><reference ref=\"name\"/></chunk>"
+                + "<chunk id=\"name\"><text key=\"name\"/></chunk></presets>";
+        PresetStats stats = new PresetStats();
+        stats.process(false, false, PresetParserTest.parse(xml));
+        assertEquals(3, stats.items.get("amenity=cafe").keyCount);
+        assertTrue(stats.uniqueKeys.contains("name"));
+    }
+}
@@ -0,0 +1,91 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class PresetWatcherTest {
+
+    private static final String PRESET = "<presets>\n<chunk id=\"name\"><text key=\"name\"/></chunk>\n"
+            + "<chunk id=\"address\"><reference ref=\"name\"/><text key=\"addr:street\"/></chunk>\n<group name=\"Shops\">\n"
+            + "<item name=\"Shop\"><key key=\"shop\" value=\"yes\"/><reference ref=\"address\"/></item>\n"
+            + "<item name=\"Bank\"><key key=\"amenity\" value=\"bank\"/></item>\n</group>\n</presets>";
+
+    private static final Path FILE = Paths.get("test.xml");
+
+    /**
+     * Compute the hashes of a preset
+     *
+     * @param preset the Preset
+     * @return a map from file to the Signatures
+     */
+    private static Map<Path, PresetWatcher.Signatures> signatures(Preset preset) {
+        return Collections.singletonMap(FILE, new PresetWatcher.Signatures(preset));
+    }
+
+    /**
+     * Find an item by name in the affected items
+     *
+     * @param changes the Changes
+     * @param name the name
+     * @return true if found
+     */
+    private static boolean affected(PresetWatcher.Changes changes, String name) {
+        for (Preset.Element item : changes.affected) {
+            if (name.equals(item.getAttribute(PresetConstants.NAME))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check that changes to a chunk are propagated to the items using it via other chunks
+     */
+    @Test
+    public void chunkChange() throws ParserConfigurationException, SAXException, IOException {
+        Map<Path, PresetWatcher.Signatures> old = signatures(PresetParserTest.parse(PRESET));
+        Preset preset = PresetParserTest.parse(PRESET.replace("key=\"name\"", "key=\"name\" length=\"255\""));
+        PresetWatcher.Changes changes = PresetWatcher.diff(old, signatures(preset), preset);
+        assertEquals(Collections.singleton("name"), changes.chunks);
+        assertTrue(changes.changed.isEmpty());
+        assertEquals(1, changes.affected.size());
+        assertTrue(affected(changes, "Shop"));
+        // only the changed chunk is retained in full
+        Preset.Element root = PresetWatcher.prune(preset.getRoot(), changes);
+        assertNotNull(root);
+        Preset pruned = new Preset(FILE.toString(), root);
+        assertEquals(1, pruned.getChunk("name").getChildCount());
+        assertEquals(0, pruned.getChunk("address").getChildCount());
+        assertEquals(1, pruned.getItems().size());
+    }
+
+    /**
+     * Check that only the changed item is affected and that formatting changes are ignored
+     */
+    @Test
+    public void itemChange() throws ParserConfigurationException, SAXException, IOException {
+        Map<Path, PresetWatcher.Signatures> old = signatures(PresetParserTest.parse(PRESET));
+        Preset preset = PresetParserTest.parse(PRESET.replace("bank", "atm"));
+        PresetWatcher.Changes changes = PresetWatcher.diff(old, signatures(preset), preset);
+        assertTrue(changes.chunks.isEmpty());
+        assertEquals(1, changes.affected.size());
+        assertTrue(affected(changes, "Bank"));
+
+        preset = PresetParserTest.parse("\n\n" + PRESET);
+        changes = PresetWatcher.diff(old, signatures(preset), preset);
+        assertTrue(changes.isEmpty());
+        assertTrue(changes.affected.isEmpty());
+    }
+}
@@ -0,0 +1,55 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+public class QueuedHandlerTest {
+
+    /**
+     * Check that direct and queued handlers see the same events and line numbers
+     */
+    @Test
+    public void fanOut() throws ParserConfigurationException, SAXException, IOException {
+        PresetParserTest.RecordingHandler direct = new PresetParserTest.RecordingHandler();
+        PresetParserTest.RecordingHandler queued = new PresetParserTest.RecordingHandler();
+        FanOutHandler fanOut = new FanOutHandler();
+        fanOut.add(direct);
+        // small batches and queue to exercise blocking
+        fanOut.add(new QueuedHandler("test", queued, 3, 2));
+        try (InputStream is = QueuedHandlerTest.class.getResourceAsStream(PresetParserTest.TEST_PRESET)) {
+            PresetParser.newSAXParser().parse(is, fanOut);
+        }
+        assertEquals(direct.events, queued.events);
+    }
+
+    /**
+     * Check that an exception in the queued handler is propagated
+     */
+    @Test
+    public void failure() throws ParserConfigurationException, IOException {
+        QueuedHandler handler = new QueuedHandler("test", new DefaultHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attr) throws SAXException {
+                if (PresetConstants.ITEM.equals(qName)) {
+                    throw new SAXException("failed");
+                }
+            }
+        }, 3, 2);
+        try (InputStream is = QueuedHandlerTest.class.getResourceAsStream(PresetParserTest.TEST_PRESET)) {
+            PresetParser.newSAXParser().parse(is, handler);
+            fail("should have thrown");
+        } catch (SAXException e) {
+            assertEquals("failed", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class RegionalPresetsTest {
+
+    private static final String PRESET = "<presets>" //
+            + "<chunk id=\"us_address\" regions=\"US\"><text key=\"addr:state\"/></chunk>" //
+            + "<chunk id=\"cuisine\"><list_entry value=\"pizza\"/><list_entry value=\"kebab\" regions=\"DE,CH\"/></chunk>" //
+            + "<chunk id=\"unused\"><text key=\"note\"/></chunk>" //
+            + "<group name=\"Food\">" //
+            + "<item name=\"Restaurant\"><key key=\"amenity\" value=\"restaurant\"/><reference ref=\"us_address\"/>"
+            + "<combo key=\"cuisine\"><reference ref=\"cuisine\"/></combo></item>" //
+            + "<item name=\"Diner\" regions=\"US-CA,US-NV\"><key key=\"amenity\" value=\"diner\"/></item>" //
+            + "</group>" //
+            + "<group name=\"Swiss\" regions=\"CH\"><item name=\"Alp\"><key key=\"tourism\" value=\"alpine_hut\"/></item></group>" //
+            + "<group name=\"Misc\"><item name=\"Kiosk\" regions=\"CH\" exclude_regions=\"true\"><key key=\"shop\" value=\"kiosk\"/></item></group>" //
+            + "</presets>";
+
+    /**
+     * Find an item by name
+     *
+     * @param preset the Preset
+     * @param name the name
+     * @return the item or null
+     */
+    private static Preset.Element item(Preset preset, String name) {
+        for (Preset.Element item : preset.getItems()) {
+            if (name.equals(item.getAttribute(PresetConstants.NAME))) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check pruning for a country with subdivision specific items
+     */
+    @Test
+    public void us() throws ParserConfigurationException, SAXException, IOException {
+        Preset us = RegionalPresets.prune(PresetParserTest.parse(PRESET), "us");
+        assertNotNull(item(us, "Diner"));
+        assertNotNull(item(us, "Kiosk"));
+        assertNull(item(us, "Alp"));
+        assertEquals(2, us.getGroups().size());
+        assertNotNull(us.getChunk("us_address"));
+        assertNull(us.getChunk("unused"));
+        assertEquals(1, us.getChunk("cuisine").getChildCount());
+    }
+
+    /**
+     * Check that references to removed chunks are removed and excluded items are dropped
+     */
+    @Test
+    public void ch() throws ParserConfigurationException, SAXException, IOException {
+        Preset ch = RegionalPresets.prune(PresetParserTest.parse(PRESET), "CH");
+        assertNull(ch.getChunk("us_address"));
+        assertNull(item(ch, "Diner"));
+        assertNull(item(ch, "Kiosk"));
+        assertNotNull(item(ch, "Alp"));
+        assertEquals(2, ch.getGroups().size());
+        Preset.Element restaurant = item(ch, "Restaurant");
+        assertEquals(2, restaurant.getChildCount());
+        assertEquals(2, ch.getChunk("cuisine").getChildCount());
+        assertEquals(ElementType.COMBO, restaurant.getChild(1).getType());
+    }
+
+    /**
+     * Check that written presets parse to the same model
+     */
+    @Test
+    public void write() throws ParserConfigurationException, SAXException, IOException {
+        Preset preset = PresetParserTest.parse();
+        for (String indent : new String[] { "    ", "" }) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            PresetWriter.write(preset, out, indent);
+            Preset written = PresetParserTest.parse(out.toString("UTF-8"));
+            assertEquals(preset.getElementCount(), written.getElementCount());
+            assertEquals("A bakery & more", written.getItems().get(2).getChild(1).getAttribute(PresetConstants.TEXT));
+            ByteArrayOutputStream again = new ByteArrayOutputStream();
+            PresetWriter.write(written, again, indent);
+            assertEquals(out.toString("UTF-8"), again.toString("UTF-8"));
+        }
+    }
+}
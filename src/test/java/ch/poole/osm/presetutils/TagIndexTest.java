@@ -0,0 +1,71 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class TagIndexTest {
+
+    /**
+     * Check fixed keys, combo values, list entries and chunk inherited fields
+     */
+    @Test
+    public void terms() throws ParserConfigurationException, SAXException, IOException {
+        TagIndex index = new TagIndex(PresetParserTest.parse());
+        assertArrayEquals(new int[] { 0 }, index.get("amenity=restaurant"));
+        assertArrayEquals(new int[] { 0, 1 }, index.get("amenity"));
+        // list entries from a chunk and inline
+        assertArrayEquals(new int[] { 0 }, index.get("cuisine=pizza"));
+        assertArrayEquals(new int[] { 0 }, index.get("cuisine=regional"));
+        // values attribute
+        assertArrayEquals(new int[] { 1 }, index.get("cuisine=ice_cream"));
+        assertArrayEquals(new int[] { 0 }, index.get("diet=vegetarian"));
+        assertArrayEquals(new int[] { 0 }, index.get("outdoor_seating=yes"));
+        // inherited from nested chunks
+        assertArrayEquals(new int[] { 0, 1, 2 }, index.get("name"));
+        assertArrayEquals(new int[] { 0, 1 }, index.get("addr:street"));
+        assertArrayEquals(new int[0], index.get("shop=supermarket"));
+        assertEquals("Bakery", index.getItem(index.get("shop=bakery")[0]).getAttribute(PresetConstants.NAME));
+    }
+
+    /**
+     * Check AND and OR queries
+     */
+    @Test
+    public void queries() throws ParserConfigurationException, SAXException, IOException {
+        TagIndex index = new TagIndex(PresetParserTest.parse());
+        assertArrayEquals(new int[] { 0 }, index.and("amenity=restaurant", "cuisine=pizza"));
+        assertArrayEquals(new int[0], index.and("amenity=cafe", "cuisine=pizza"));
+        assertArrayEquals(new int[] { 0, 1 }, index.or("amenity=cafe", "cuisine=pizza"));
+        assertArrayEquals(new int[] { 0, 2 }, index.query("amenity=restaurant & cuisine=pizza | shop=bakery"));
+        assertArrayEquals(new int[] { 1, 2 }, index.query("shop | name & cuisine=coffee_shop"));
+    }
+
+    /**
+     * Check that modifying a result doesn't change the index
+     */
+    @Test
+    public void copies() throws ParserConfigurationException, SAXException, IOException {
+        TagIndex index = new TagIndex(PresetParserTest.parse());
+        index.get("amenity")[0] = 9;
+        index.and("amenity")[0] = 9;
+        index.or("amenity")[0] = 9;
+        index.query("amenity")[0] = 9;
+        assertArrayEquals(new int[] { 0, 1 }, index.get("amenity"));
+    }
+
+    /**
+     * Check the merge helpers
+     */
+    @Test
+    public void merge() {
+        assertArrayEquals(new int[] { 3, 7 }, TagIndex.intersect(new int[] { 1, 3, 5, 7 }, new int[] { 2, 3, 7, 9 }));
+        assertArrayEquals(new int[] { 1, 2, 3, 5, 7, 9 }, TagIndex.union(new int[] { 1, 3, 5, 7 }, new int[] { 2, 3, 7, 9 }));
+    }
+}
@@ -0,0 +1,51 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.junit.Test;
+
+public class TagMatrixTest {
+
+    /**
+     * Check set queries and output in the MergePresetStats format
+     */
+    @Test
+    public void query() {
+        TagMatrix matrix = new TagMatrix(Arrays.asList("dir/a.txt", "b.txt", "c.txt"));
+        matrix.add(0, "amenity=bar", 7, false);
+        matrix.add(0, "amenity=cafe", 3, false);
+        matrix.add(1, "amenity=cafe", 5, true);
+        matrix.add(1, "shop=bakery", TagStats.NO_COUNT, false);
+        matrix.add(2, "amenity=cafe", 1, false);
+        matrix.add(0, "shop=bakery", 2, false);
+        assertEquals(3, matrix.size());
+
+        BitSet result = matrix.query("a.txt & b.txt & !c.txt");
+        assertEquals(1, result.cardinality());
+        assertEquals("shop=bakery", matrix.getTag(result.nextSetBit(0)));
+        assertEquals(3, matrix.query("1 | (b.txt & c.txt)").cardinality());
+        assertEquals(0, matrix.query("!dir/a.txt").cardinality());
+        assertEquals(5, matrix.getCount(matrix.id("amenity=cafe")));
+
+        StringWriter out = new StringWriter();
+        matrix.write(new PrintWriter(out), matrix.query("2"));
+        String[] lines = out.toString().split("\\R");
+        assertEquals("Tag,dir/a.txt,b.txt,c.txt,Count", lines[0]);
+        assertEquals("amenity=cafe,X,D,X,5", lines[1]);
+        assertEquals("shop=bakery,X,X,,2", lines[2]);
+
+        try {
+            matrix.query("a.txt & (b.txt");
+            fail("should have thrown");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("Syntax error"));
+        }
+    }
+}
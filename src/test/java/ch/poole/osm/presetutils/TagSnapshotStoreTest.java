@@ -0,0 +1,130 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TagSnapshotStoreTest {
+
+    /**
+     * Check that appended snapshots can be read back and queried
+     */
+    @Test
+    public void snapshots() throws IOException {
+        Path file = Files.createTempFile("snapshots", ".bin");
+        Files.delete(file);
+        try {
+            TagSnapshotStore store = new TagSnapshotStore(file);
+            store.append("2026-01-01", counts("amenity=cafe", 100, "amenity=bar", 5));
+            store.append("2026-02-01", counts("amenity=cafe", 90, "amenity=bar", 20, "shop=bakery", 3));
+            store.append("2026-03-01", counts("amenity=cafe", 110, "shop=bakery", 12));
+
+            store = new TagSnapshotStore(file);
+            assertEquals(3, store.size());
+            assertEquals("2026-02-01", store.getDate(1));
+            assertArrayEquals(new int[] { 100, 90, 110 }, store.growth("amenity=cafe", 0));
+            assertArrayEquals(new int[] { 20, TagSnapshotStore.NO_COUNT }, store.growth("amenity=bar", 2));
+            assertArrayEquals(new int[] { TagSnapshotStore.NO_COUNT, TagSnapshotStore.NO_COUNT }, store.growth("unknown=tag", 2));
+
+            Map<String, int[]> crossing = store.crossing(10, "2026-01-15");
+            assertEquals(1, crossing.size());
+            assertArrayEquals(new int[] { TagSnapshotStore.NO_COUNT, 12 }, crossing.get("shop=bakery"));
+            crossing = store.crossing(10, "2026-02-15");
+            assertEquals(2, crossing.size());
+            assertArrayEquals(new int[] { 20, TagSnapshotStore.NO_COUNT }, crossing.get("amenity=bar"));
+            assertArrayEquals(new int[] { 3, 12 }, crossing.get("shop=bakery"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Check that an incomplete last block is ignored and replaced by the next snapshot
+     */
+    @Test
+    public void truncated() throws IOException {
+        Path file = Files.createTempFile("snapshots", ".bin");
+        Files.delete(file);
+        try {
+            TagSnapshotStore store = new TagSnapshotStore(file);
+            store.append("2026-01-01", counts("amenity=cafe", 100));
+            store.append("2026-02-01", counts("amenity=cafe", 200));
+            long size = Files.size(file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(Files.size(file) - 2);
+            }
+            store = new TagSnapshotStore(file);
+            assertEquals(1, store.size());
+            store.append("2026-03-01", counts("amenity=cafe", 300));
+            store = new TagSnapshotStore(file);
+            assertArrayEquals(new int[] { 100, 300 }, store.growth("amenity=cafe", 0));
+            assertEquals(size, Files.size(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Check that a failed append doesn't leave unwritten tags in the dictionary
+     */
+    @Test
+    public void failedAppend() throws IOException {
+        Path file = Files.createTempFile("snapshots", ".bin");
+        Files.delete(file);
+        try {
+            TagSnapshotStore store = new TagSnapshotStore(file);
+            // a directory can't be opened for writing
+            Files.createDirectory(file);
+            try {
+                store.append("2026-01-01", counts("amenity=cafe", 100));
+                fail("append should fail");
+            } catch (IOException e) {
+                // expected
+            }
+            Files.delete(file);
+            assertEquals(0, store.size());
+            store.append("2026-02-01", counts("shop=bakery", 3));
+            store = new TagSnapshotStore(file);
+            assertEquals(1, store.size());
+            assertArrayEquals(new int[] { 3 }, store.growth("shop=bakery", 0));
+            assertArrayEquals(new int[] { TagSnapshotStore.NO_COUNT }, store.growth("amenity=cafe", 0));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Check the varint and zigzag encoding
+     */
+    @Test
+    public void zigZag() {
+        for (int value : new int[] { 0, 1, -1, 63, -64, Integer.MAX_VALUE, Integer.MIN_VALUE }) {
+            assertEquals(value, TagSnapshotStore.zigZagDecode(TagSnapshotStore.zigZagEncode(value)));
+        }
+        assertEquals(1, TagSnapshotStore.zigZagEncode(-1));
+    }
+
+    /**
+     * Create a Map of counts
+     *
+     * @param tagsAndCounts alternating tags and counts
+     * @return a Map from tag to count
+     */
+    private static Map<String, Integer> counts(Object... tagsAndCounts) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (int i = 0; i < tagsAndCounts.length; i += 2) {
+            counts.put((String) tagsAndCounts[i], (Integer) tagsAndCounts[i + 1]);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,64 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class TagStatsTest {
+
+    /**
+     * Check that the text format is read and written unchanged
+     */
+    @Test
+    public void roundTrip() throws IOException {
+        Path file = Files.createTempFile("test", "_tags.txt");
+        try {
+            String text = "amenity=cafe,10,X\namenity=restaurant / cuisine=pizza,2,D\nshop=bakery,-1,X\n";
+            Files.write(file, Arrays.asList("amenity=cafe,10", "amenity=restaurant / cuisine=pizza,2,D", "shop=bakery,none,X"),
+                    StandardCharsets.UTF_8);
+            TagStats stats = TagStats.read(file);
+            assertEquals(3, stats.size());
+            assertFalse(stats.isDeprecated(0));
+            assertTrue(stats.isDeprecated(1));
+            assertEquals(TagStats.NO_COUNT, stats.getCount(2));
+            StringWriter out = new StringWriter();
+            stats.write(new PrintWriter(out));
+            assertEquals(text, out.toString());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Check that a preset is compared and merged without intermediate files
+     */
+    @Test
+    public void pipeline() throws ParserConfigurationException, SAXException, IOException {
+        TagStats input = new PresetStatsPipeline(false, false).stats("src/test/resources/test-preset.xml");
+        TagStats reference = new TagStats("reference");
+        reference.add("amenity=cafe", 5, false);
+        reference.add("shop=florist", 3, false);
+        StringWriter comparison = new StringWriter();
+        StringWriter merged = new StringWriter();
+        PresetStatsPipeline.run(reference, Arrays.asList(input), 0, new PrintWriter(comparison), new PrintWriter(merged));
+        assertTrue(comparison.toString().contains("Total tags in reference 2"));
+        assertTrue(comparison.toString().contains("Tags in input preset and reference 1 50.0%"));
+        String[] lines = merged.toString().split("\\R");
+        assertEquals("Tag,reference,src/test/resources/test-preset.xml,Count", lines[0]);
+        assertTrue(Arrays.asList(lines).contains("amenity=cafe,X,X,5"));
+        assertTrue(Arrays.asList(lines).contains("shop=florist,X,,3"));
+    }
+}
@@ -0,0 +1,114 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TagsFromTaginfoTest {
+
+    /**
+     * Canned taginfo responses for highway
+     */
+    static final TagsFromTaginfo.Source SOURCE = new TagsFromTaginfo.Source() {
+        @Override
+        public List<ValueAndDescription> values(String key, String filter, int minCount) {
+            switch (key) {
+            case "highway":
+                return list("construction", 100, "service", 90, "primary", 80, "residential", 70);
+            case "construction":
+                return list("primary", 10, "unknown", 20);
+            case "service":
+                return list("driveway", 50, "repair", 60);
+            default:
+                return null;
+            }
+        }
+
+        @Override
+        public List<ValueAndDescription> combinations(String key, String filter, int minCount) {
+            return "highway".equals(key) ? list("construction", 0, "service", 0, "residential", 0) : null;
+        }
+    };
+
+    /**
+     * Create a list of values
+     *
+     * @param valuesAndCounts alternating values and counts
+     * @return a List of ValueAndDescription
+     */
+    static List<ValueAndDescription> list(Object... valuesAndCounts) {
+        List<ValueAndDescription> result = new ArrayList<>();
+        for (int i = 0; i < valuesAndCounts.length; i += 2) {
+            ValueAndDescription value = new ValueAndDescription();
+            value.value = (String) valuesAndCounts[i];
+            value.count = (Integer) valuesAndCounts[i + 1];
+            result.add(value);
+        }
+        return result;
+    }
+
+    /**
+     * Check the lifecycle and exclusion rules
+     */
+    @Test
+    public void subTags() {
+        String out = dump(SOURCE);
+        List<String> lines = Arrays.asList(out.split("\n"));
+        assertTrue(lines.contains("highway=construction,100"));
+        assertTrue(lines.contains("highway=construction / construction=primary,10"));
+        // not a highway value
+        assertFalse(out.contains("construction=unknown"));
+        assertTrue(lines.contains("highway=service / service=driveway,50"));
+        // excluded for highway=service
+        assertFalse(out.contains("service=repair"));
+        // residential is excluded as sub key of highway=residential
+        assertTrue(lines.contains("highway=residential,70"));
+        assertFalse(out.contains("highway=residential /"));
+        // no values
+        assertTrue(lines.contains("amenity,0"));
+    }
+
+    /**
+     * Check that replaying a recording gives the same output
+     */
+    @Test
+    public void recording() throws IOException {
+        Path file = Files.createTempFile("taginfo", ".txt");
+        try {
+            String recorded;
+            try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+                recorded = dump(TaginfoRecording.recorder(SOURCE, pw));
+            }
+            assertEquals(recorded, dump(TaginfoRecording.read(file)));
+            assertEquals(dump(SOURCE), recorded);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Run TagsFromTaginfo with a source
+     *
+     * @param source the Source
+     * @return the output
+     */
+    private static String dump(TagsFromTaginfo.Source source) {
+        TagsFromTaginfo t = new TagsFromTaginfo();
+        t.source = source;
+        StringWriter out = new StringWriter();
+        t.dumpTags(new PrintWriter(out), 10, true);
+        return out.toString();
+    }
+}
@@ -0,0 +1,38 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TranslationTableTest {
+
+    /**
+     * Check lookups and language fallback before and after freezing
+     */
+    @Test
+    public void lookup() {
+        TranslationTable table = new TranslationTable();
+        int de = table.addLanguage("de");
+        int en = table.addLanguage("en");
+        table.put(de, "cuisine", null, "K\u00fcche");
+        table.put(de, "cuisine", "pizza", "Pizza");
+        table.put(en, "cuisine", "pizza", "Pizza");
+        table.put(en, "cuisine", "burger", "Burger");
+        table.put(en, "access", null, "Access");
+        for (int i = 0; i < 2; i++) {
+            assertEquals("K\u00fcche", table.get("cuisine", null));
+            assertEquals("Burger", table.get("cuisine", "burger"));
+            assertNull(table.get(de, "cuisine", "burger"));
+            assertEquals("Access", table.get("access", null));
+            assertNull(table.get("access", "yes"));
+            assertNull(table.get("surface", null));
+            assertSame(table.get(de, "cuisine", "pizza"), table.get(en, "cuisine", "pizza"));
+            table.freeze();
+        }
+        assertEquals(4, table.size());
+        assertTrue(table.retainedSize() > 0);
+    }
+}
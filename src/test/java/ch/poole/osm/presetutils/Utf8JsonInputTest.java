@@ -0,0 +1,109 @@
+package ch.poole.osm.presetutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.gson.stream.JsonToken;
+
+public class Utf8JsonInputTest {
+
+    private static final String JSON = "\ufeff{\"presets\": {\"amenity/cafe\": {\"name\": \"Caf\u00e9\", \"terms\": \"coffee,tea\", \"searchable\": false,"
+            + " \"tags\": {\"amenity\": \"cafe\"}, \"geometry\": [\"point\", \"area\"], \"matchScore\": 0.5, \"count\": -12, \"big\": 1.5e3,"
+            + " \"escaped\": \"a\\\"b\\\\c\\/d\\n\\u00e9\\ud83d\\ude00\", \"nothing\": null, \"empty\": {}, \"emptyArray\": [ ]},"
+            + " \"amenity/bar\": {\"name\": \"Bar\", \"tags\": {\"amenity\": \"bar\"}, \"geometry\": [\"point\", \"area\"], \"skipped\": {\"a\": [1, {\"b\": [true]}]}}}}";
+
+    /**
+     * Walk the complete input and record the tokens and values
+     *
+     * @param input the JsonInput
+     * @return a list of tokens and values
+     * @throws IOException if parsing fails
+     */
+    private static List<String> walk(JsonInput input) throws IOException {
+        List<String> result = new ArrayList<>();
+        int depth = 0;
+        do {
+            JsonToken token = input.peek();
+            result.add(token.name());
+            switch (token) {
+            case BEGIN_OBJECT:
+                input.beginObject();
+                depth++;
+                break;
+            case END_OBJECT:
+                input.endObject();
+                depth--;
+                break;
+            case BEGIN_ARRAY:
+                input.beginArray();
+                depth++;
+                break;
+            case END_ARRAY:
+                input.endArray();
+                depth--;
+                break;
+            case NAME:
+                String name = input.nextName();
+                result.add(name);
+                if ("skipped".equals(name)) {
+                    input.skipValue();
+                }
+                break;
+            case NUMBER:
+                result.add(Double.toString(input.nextDouble()));
+                break;
+            case BOOLEAN:
+                result.add(Boolean.toString(input.nextBoolean()));
+                break;
+            default:
+                if (token == JsonToken.NULL) {
+                    input.skipValue();
+                } else {
+                    result.add(input.nextString());
+                }
+            }
+        } while (depth > 0);
+        result.add(input.peek().name());
+        return result;
+    }
+
+    /**
+     * Check that both implementations produce the same results
+     */
+    @Test
+    public void sameAsGson() throws IOException {
+        byte[] bytes = JSON.getBytes(StandardCharsets.UTF_8);
+        List<String> gson = walk(JsonInputFactory.open(JsonInputFactory.Kind.GSON, new ByteArrayInputStream(bytes, 3, bytes.length - 3)));
+        List<String> utf8 = walk(JsonInputFactory.open(JsonInputFactory.Kind.UTF8, new ByteArrayInputStream(bytes)));
+        assertEquals(gson, utf8);
+    }
+
+    /**
+     * Check that names and values are interned
+     */
+    @Test
+    public void interned() throws IOException {
+        String known = new String("amenity".toCharArray());
+        JsonInput input = JsonInputFactory.open(JsonInputFactory.Kind.UTF8,
+                new ByteArrayInputStream("[{\"amenity\": \"cafe\"}, {\"amenity\": \"cafe\"}]".getBytes(StandardCharsets.UTF_8)), known);
+        input.beginArray();
+        input.beginObject();
+        assertSame(known, input.nextName());
+        String value = input.nextString();
+        input.endObject();
+        input.beginObject();
+        assertSame(known, input.nextName());
+        assertSame(value, input.nextString());
+        input.endObject();
+        input.endArray();
+        assertEquals(JsonToken.END_DOCUMENT, input.peek());
+    }
+}